@@ -16,17 +16,21 @@
 package org.gradle.api.internal.changedetection.state;
 
 import org.gradle.cache.PersistentIndexedCache;
+import org.gradle.cache.internal.LockFreeLookup;
+import org.gradle.internal.Cast;
 import org.gradle.internal.id.IdGenerator;
 import org.gradle.internal.id.RandomLongIdGenerator;
 import org.gradle.internal.serialize.Serializer;
 
 public class CacheBackedFileSnapshotRepository implements FileSnapshotRepository {
     private final PersistentIndexedCache<Long, FileCollectionSnapshot> cache;
+    private final LockFreeLookup<Long, FileCollectionSnapshot> loadedSnapshots;
     private IdGenerator<Long> idGenerator = new RandomLongIdGenerator();
 
     public CacheBackedFileSnapshotRepository(TaskArtifactStateCacheAccess cacheAccess, Serializer<FileCollectionSnapshot> serializer, IdGenerator<Long> idGenerator) {
         this.idGenerator = idGenerator;
         cache = cacheAccess.createCache("fileSnapshots", Long.class, serializer);
+        loadedSnapshots = cache instanceof LockFreeLookup ? Cast.<LockFreeLookup<Long, FileCollectionSnapshot>>uncheckedCast(cache) : null;
     }
 
     public Long add(FileCollectionSnapshot snapshot) {
@@ -39,6 +43,10 @@ public class CacheBackedFileSnapshotRepository implements FileSnapshotRepository
         return cache.get(id);
     }
 
+    public FileCollectionSnapshot getIfLoaded(Long id) {
+        return loadedSnapshots == null ? null : loadedSnapshots.getIfLoaded(id);
+    }
+
     public void remove(Long id) {
         cache.remove(id);
     }
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import org.gradle.cache.PersistentIndexedCache;
+import org.gradle.execution.taskgraph.TaskDurationHistory;
+import org.gradle.internal.Factory;
+import org.gradle.internal.serialize.BaseSerializerFactory;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps task durations in the task history cache. The duration of a task is the average of its previous duration and the duration of its most recent execution,
+ * so that a single slow or fast execution does not replace the estimate.
+ */
+public class CacheBackedTaskDurationHistory implements TaskDurationHistory {
+    private final TaskArtifactStateCacheAccess cacheAccess;
+    private final PersistentIndexedCache<String, Long> durationCache;
+
+    public CacheBackedTaskDurationHistory(TaskArtifactStateCacheAccess cacheAccess) {
+        this.cacheAccess = cacheAccess;
+        durationCache = cacheAccess.createCache("taskDurations", String.class, BaseSerializerFactory.LONG_SERIALIZER);
+    }
+
+    public Map<String, Long> getDurations(final Collection<String> taskPaths) {
+        return cacheAccess.useCache("Load task durations", new Factory<Map<String, Long>>() {
+            public Map<String, Long> create() {
+                Map<String, Long> durations = new HashMap<String, Long>();
+                for (String taskPath : taskPaths) {
+                    Long duration = durationCache.get(taskPath);
+                    if (duration != null) {
+                        durations.put(taskPath, duration);
+                    }
+                }
+                return durations;
+            }
+        });
+    }
+
+    public void recordDurations(final Map<String, Long> durations) {
+        cacheAccess.useCache("Record task durations", new Runnable() {
+            public void run() {
+                for (Map.Entry<String, Long> entry : durations.entrySet()) {
+                    Long previous = durationCache.get(entry.getKey());
+                    long duration = previous == null ? entry.getValue() : (previous + entry.getValue()) / 2;
+                    durationCache.put(entry.getKey(), duration);
+                }
+            }
+        });
+    }
+}
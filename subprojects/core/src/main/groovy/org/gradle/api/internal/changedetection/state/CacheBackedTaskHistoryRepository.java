@@ -17,6 +17,8 @@ package org.gradle.api.internal.changedetection.state;
 
 import org.gradle.api.internal.TaskInternal;
 import org.gradle.cache.PersistentIndexedCache;
+import org.gradle.cache.internal.LockFreeLookup;
+import org.gradle.internal.Cast;
 import org.gradle.internal.Factory;
 import org.gradle.internal.serialize.Decoder;
 import org.gradle.internal.serialize.Encoder;
@@ -29,12 +31,14 @@ public class CacheBackedTaskHistoryRepository implements TaskHistoryRepository {
     private final TaskArtifactStateCacheAccess cacheAccess;
     private final FileSnapshotRepository snapshotRepository;
     private final PersistentIndexedCache<String, TaskHistory> taskHistoryCache;
+    private final LockFreeLookup<String, TaskHistory> loadedTaskHistory;
     private final TaskHistorySerializer serializer = new TaskHistorySerializer();
 
     public CacheBackedTaskHistoryRepository(TaskArtifactStateCacheAccess cacheAccess, FileSnapshotRepository snapshotRepository) {
         this.cacheAccess = cacheAccess;
         this.snapshotRepository = snapshotRepository;
         taskHistoryCache = cacheAccess.createCache("taskArtifacts", String.class, serializer);
+        loadedTaskHistory = taskHistoryCache instanceof LockFreeLookup ? Cast.<LockFreeLookup<String, TaskHistory>>uncheckedCast(taskHistoryCache) : null;
     }
 
     public History getHistory(final TaskInternal task) {
@@ -86,6 +90,12 @@ public class CacheBackedTaskHistoryRepository implements TaskHistoryRepository {
     }
 
     private TaskHistory loadHistory(final TaskInternal task) {
+        if (loadedTaskHistory != null) {
+            TaskHistory history = loadedTaskHistory.getIfLoaded(task.getPath());
+            if (history != null) {
+                return history;
+            }
+        }
         return cacheAccess.useCache("Load task history", new Factory<TaskHistory>() {
             public TaskHistory create() {
                 ClassLoader original = serializer.getClassLoader();
@@ -166,13 +176,24 @@ public class CacheBackedTaskHistoryRepository implements TaskHistoryRepository {
         }
     }
 
-    private static class TaskHistory {
+    static class TaskHistory {
         private static final int MAX_HISTORY_ENTRIES = 3;
         private final List<LazyTaskExecution> configurations = new ArrayList<LazyTaskExecution>();
         public String toString() {
             return super.toString() + "[" + configurations.size() + "]";
         }
 
+        /**
+         * Returns an estimate of the number of bytes of heap retained by this history. The file snapshots are not included, as they are cached separately.
+         */
+        long getEstimatedSize() {
+            long size = 32 + 16L * configurations.size();
+            for (LazyTaskExecution execution : configurations) {
+                size += execution.getEstimatedSize();
+            }
+            return size;
+        }
+
         public void beforeSerialized() {
             //cleaning up the transient fields, so that any in-memory caching is happy
             for (LazyTaskExecution c : configurations) {
@@ -193,6 +214,9 @@ public class CacheBackedTaskHistoryRepository implements TaskHistoryRepository {
 
         @Override
         public FileCollectionSnapshot getInputFilesSnapshot() {
+            if (inputFilesSnapshot == null) {
+                inputFilesSnapshot = snapshotRepository.getIfLoaded(inputFilesSnapshotId);
+            }
             if (inputFilesSnapshot == null) {
                 inputFilesSnapshot = cacheAccess.useCache("fetch input files", new Factory<FileCollectionSnapshot>() {
                     public FileCollectionSnapshot create() {
@@ -203,6 +227,24 @@ public class CacheBackedTaskHistoryRepository implements TaskHistoryRepository {
             return inputFilesSnapshot;
         }
 
+        long getEstimatedSize() {
+            long size = 64 + InMemoryTaskArtifactCache.EntryWeigher.estimate(getTaskClass());
+            if (getOutputFiles() != null) {
+                for (String path : getOutputFiles()) {
+                    size += 32 + InMemoryTaskArtifactCache.EntryWeigher.estimate(path);
+                }
+            }
+            if (getInputProperties() != null) {
+                for (Map.Entry<String, Object> property : getInputProperties().entrySet()) {
+                    size += 32 + InMemoryTaskArtifactCache.EntryWeigher.estimate(property.getKey());
+                    // The other values are usually small: numbers, booleans, or collections of these
+                    Object value = property.getValue();
+                    size += value instanceof String ? InMemoryTaskArtifactCache.EntryWeigher.estimate(value) : 64;
+                }
+            }
+            return size;
+        }
+
         @Override
         public void setInputFilesSnapshot(FileCollectionSnapshot inputFilesSnapshot) {
             this.inputFilesSnapshot = inputFilesSnapshot;
@@ -211,6 +253,9 @@ public class CacheBackedTaskHistoryRepository implements TaskHistoryRepository {
 
         @Override
         public FileCollectionSnapshot getOutputFilesSnapshot() {
+            if (outputFilesSnapshot == null) {
+                outputFilesSnapshot = snapshotRepository.getIfLoaded(outputFilesSnapshotId);
+            }
             if (outputFilesSnapshot == null) {
                 outputFilesSnapshot = cacheAccess.useCache("fetch output files", new Factory<FileCollectionSnapshot>() {
                     public FileCollectionSnapshot create() {
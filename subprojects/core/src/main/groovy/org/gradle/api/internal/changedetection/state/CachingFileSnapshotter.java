@@ -15,9 +15,13 @@
  */
 package org.gradle.api.internal.changedetection.state;
 
+import org.gradle.api.Nullable;
 import org.gradle.api.internal.hash.Hasher;
 import org.gradle.cache.PersistentIndexedCache;
 import org.gradle.cache.PersistentStore;
+import org.gradle.cache.internal.LockFreeLookup;
+import org.gradle.internal.Cast;
+import org.gradle.internal.filewatch.FileStatCache;
 import org.gradle.internal.serialize.Decoder;
 import org.gradle.internal.serialize.Encoder;
 import org.gradle.internal.serialize.Serializer;
@@ -26,29 +30,95 @@ import java.io.File;
 
 public class CachingFileSnapshotter implements FileSnapshotter {
     private final PersistentIndexedCache<File, FileInfo> cache;
+    private final LockFreeLookup<File, FileInfo> loadedSnapshots;
     private final Hasher hasher;
+    private final FileStatCache statCache;
     private final FileInfoSerializer serializer = new FileInfoSerializer();
 
     public CachingFileSnapshotter(Hasher hasher, PersistentStore store) {
+        this(hasher, store, "fileHashes");
+    }
+
+    /**
+     * Hashes calculated using different algorithms must be kept in separate caches, so that hashes calculated using one algorithm are never compared with hashes
+     * calculated using another.
+     */
+    public CachingFileSnapshotter(Hasher hasher, PersistentStore store, String cacheName) {
+        this(hasher, store, cacheName, FileStatCache.UNCACHED);
+    }
+
+    public CachingFileSnapshotter(Hasher hasher, PersistentStore store, String cacheName, FileStatCache statCache) {
         this.hasher = hasher;
-        this.cache = store.createCache("fileHashes", File.class, serializer);
+        this.statCache = statCache;
+        this.cache = store.createCache(cacheName, File.class, serializer);
+        this.loadedSnapshots = cache instanceof LockFreeLookup ? Cast.<LockFreeLookup<File, FileInfo>>uncheckedCast(cache) : null;
     }
 
     public FileInfo snapshot(File file) {
         FileInfo info = cache.get(file);
 
-        long length = file.length();
-        long timestamp = file.lastModified();
-        if (info != null && length == info.length && timestamp == info.timestamp) {
+        FileStatCache.FileStat stat = statCache.stat(file);
+        long length = stat.getLength();
+        long timestamp = stat.getLastModified();
+        if (info != null && info.isUpToDate(length, timestamp)) {
             return info;
         }
 
-        byte[] hash = hasher.hash(file);
-        info = new FileInfo(hash, length, timestamp);
+        info = calculateSnapshot(file, length, timestamp);
         cache.put(file, info);
         return info;
     }
 
+    public FileInfo findLoadedSnapshot(File file, FileStatCache.FileStat stat) {
+        return findLoadedSnapshot(file, stat.getLength(), stat.getLastModified());
+    }
+
+    /**
+     * Returns the snapshot of the given file, if it is already held in memory and matches the given length and timestamp. Does not require the cache lock and may
+     * be called concurrently.
+     */
+    @Nullable
+    public FileInfo findLoadedSnapshot(File file, long length, long timestamp) {
+        if (loadedSnapshots == null) {
+            return null;
+        }
+        FileInfo info = loadedSnapshots.getIfLoaded(file);
+        if (info != null && info.isUpToDate(length, timestamp)) {
+            return info;
+        }
+        return null;
+    }
+
+    public FileStatCache.FileStat stat(File file) {
+        return statCache.stat(file);
+    }
+
+    /**
+     * Returns the cached snapshot of the given file, if it matches the given length and timestamp. Must be called while holding the cache lock.
+     */
+    @Nullable
+    public FileInfo findCachedSnapshot(File file, long length, long timestamp) {
+        FileInfo info = cache.get(file);
+        if (info != null && info.isUpToDate(length, timestamp)) {
+            return info;
+        }
+        return null;
+    }
+
+    /**
+     * Calculates a snapshot of the given file, without using the cache. Does not require the cache lock and may be called concurrently.
+     */
+    public FileInfo calculateSnapshot(File file, long length, long timestamp) {
+        return new FileInfo(hasher.hash(file), length, timestamp);
+    }
+
+    /**
+     * Stores the given snapshot in the cache. Must be called while holding the cache lock.
+     */
+    public void cacheSnapshot(File file, FileInfo info) {
+        cache.put(file, info);
+    }
+
     public static class FileInfo implements FileSnapshot {
         private final byte[] hash;
         private final long timestamp;
@@ -63,6 +133,10 @@ public class CachingFileSnapshotter implements FileSnapshotter {
         public byte[] getHash() {
             return hash;
         }
+
+        boolean isUpToDate(long length, long timestamp) {
+            return this.length == length && this.timestamp == timestamp;
+        }
     }
 
     private static class FileInfoSerializer implements Serializer<FileInfo> {
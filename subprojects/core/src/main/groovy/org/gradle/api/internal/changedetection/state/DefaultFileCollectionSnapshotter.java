@@ -17,18 +17,18 @@
 package org.gradle.api.internal.changedetection.state;
 
 import org.gradle.api.file.FileCollection;
-import org.gradle.api.internal.file.collections.SimpleFileCollection;
+import org.gradle.internal.filewatch.FileStatCache;
 import org.gradle.internal.serialize.SerializerRegistry;
-import org.gradle.util.ChangeListener;
-import org.gradle.util.NoOpChangeListener;
 
 import java.io.File;
-import java.math.BigInteger;
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
 
 public class DefaultFileCollectionSnapshotter implements FileCollectionSnapshotter {
     private final FileSnapshotter snapshotter;
-    private TaskArtifactStateCacheAccess cacheAccess;
+    private final TaskArtifactStateCacheAccess cacheAccess;
 
     public DefaultFileCollectionSnapshotter(FileSnapshotter snapshotter, TaskArtifactStateCacheAccess cacheAccess) {
         this.snapshotter = snapshotter;
@@ -40,170 +40,50 @@ public class DefaultFileCollectionSnapshotter implements FileCollectionSnapshott
     }
 
     public FileCollectionSnapshot emptySnapshot() {
-        return new FileCollectionSnapshotImpl(new HashMap<String, IncrementalFileSnapshot>());
+        return new FileCollectionSnapshotImpl.Builder().build();
     }
 
     public FileCollectionSnapshot snapshot(FileCollection input) {
         final Set<File> files = input.getAsFileTree().getFiles();
         if (files.isEmpty()) {
-            return new FileCollectionSnapshotImpl(Collections.<String, IncrementalFileSnapshot>emptyMap());
+            return emptySnapshot();
         }
-        final Map<String, IncrementalFileSnapshot> snapshots = new HashMap<String, IncrementalFileSnapshot>();
-        cacheAccess.useCache("Create file snapshot", new Runnable() {
-            public void run() {
-                for (File file : files) {
-                    if (file.isFile()) {
-                        snapshots.put(file.getAbsolutePath(), new FileHashSnapshot(snapshotter.snapshot(file).getHash()));
-                    } else if (file.isDirectory()) {
-                        snapshots.put(file.getAbsolutePath(), new DirSnapshot());
-                    } else {
-                        snapshots.put(file.getAbsolutePath(), new MissingFileSnapshot());
-                    }
-                }
-            }
-        });
-        return new FileCollectionSnapshotImpl(snapshots);
+        return snapshotFiles(files);
     }
 
-    static interface IncrementalFileSnapshot {
-        boolean isUpToDate(IncrementalFileSnapshot snapshot);
-    }
-
-    static class FileHashSnapshot implements IncrementalFileSnapshot, FileSnapshot {
-        final byte[] hash;
-
-        public FileHashSnapshot(byte[] hash) {
-            this.hash = hash;
-        }
-
-        public boolean isUpToDate(IncrementalFileSnapshot snapshot) {
-            if (!(snapshot instanceof FileHashSnapshot)) {
-                return false;
-            }
-
-            FileHashSnapshot other = (FileHashSnapshot) snapshot;
-            return Arrays.equals(hash, other.hash);
-        }
-
-        @Override
-        public String toString() {
-            return new BigInteger(1, hash).toString(16);
-        }
-
-        public byte[] getHash() {
-            return hash;
-        }
-    }
-
-    static class DirSnapshot implements IncrementalFileSnapshot {
-        public boolean isUpToDate(IncrementalFileSnapshot snapshot) {
-            return snapshot instanceof DirSnapshot;
-        }
-    }
-
-    static class MissingFileSnapshot implements IncrementalFileSnapshot {
-        public boolean isUpToDate(IncrementalFileSnapshot snapshot) {
-            return snapshot instanceof MissingFileSnapshot;
-        }
-    }
-
-    static class FileCollectionSnapshotImpl implements FileCollectionSnapshot {
-        final Map<String, IncrementalFileSnapshot> snapshots;
-
-        public FileCollectionSnapshotImpl(Map<String, IncrementalFileSnapshot> snapshots) {
-            this.snapshots = snapshots;
-        }
-
-        public FileCollection getFiles() {
-            List<File> files = new ArrayList<File>();
-            for (Map.Entry<String, IncrementalFileSnapshot> entry : snapshots.entrySet()) {
-                if (entry.getValue() instanceof FileHashSnapshot) {
-                    files.add(new File(entry.getKey()));
-                }
+    /**
+     * Snapshots each of the given files. The cache is only locked when some of the files have no snapshot held in memory.
+     */
+    FileCollectionSnapshotImpl snapshotFiles(final Collection<File> files) {
+        final FileCollectionSnapshotImpl.Builder builder = new FileCollectionSnapshotImpl.Builder();
+        final List<File> notLoaded = new ArrayList<File>();
+        for (File file : files) {
+            FileStatCache.FileStat stat = snapshotter.stat(file);
+            switch (stat.getType()) {
+                case File:
+                    FileSnapshot snapshot = snapshotter.findLoadedSnapshot(file, stat);
+                    if (snapshot != null) {
+                        builder.addFile(file.getAbsolutePath(), snapshot.getHash());
+                    } else {
+                        notLoaded.add(file);
+                    }
+                    break;
+                case Directory:
+                    builder.addDirectory(file.getAbsolutePath());
+                    break;
+                default:
+                    builder.addMissing(file.getAbsolutePath());
             }
-            return new SimpleFileCollection(files);
         }
-
-        public FilesSnapshotSet getSnapshot() {
-            return new FilesSnapshotSet() {
-                public FileSnapshot findSnapshot(File file) {
-                    IncrementalFileSnapshot s = snapshots.get(file.getAbsolutePath());
-                    if (s instanceof FileSnapshot) {
-                        return (FileSnapshot) s;
+        if (!notLoaded.isEmpty()) {
+            cacheAccess.useCache("Create file snapshot", new Runnable() {
+                public void run() {
+                    for (File file : notLoaded) {
+                        builder.addFile(file.getAbsolutePath(), snapshotter.snapshot(file).getHash());
                     }
-                    return null;
                 }
-            };
+            });
         }
-
-        public ChangeIterator<String> iterateChangesSince(FileCollectionSnapshot oldSnapshot) {
-            FileCollectionSnapshotImpl other = (FileCollectionSnapshotImpl) oldSnapshot;
-            final Map<String, IncrementalFileSnapshot> otherSnapshots = new HashMap<String, IncrementalFileSnapshot>(other.snapshots);
-            final Iterator<String> currentFiles = snapshots.keySet().iterator();
-
-            return new ChangeIterator<String>() {
-                private Iterator<String> removedFiles;
-
-                public boolean next(ChangeListener<String> listener) {
-                    while (currentFiles.hasNext()) {
-                        String currentFile = currentFiles.next();
-                        IncrementalFileSnapshot otherFile = otherSnapshots.remove(currentFile);
-
-                        if (otherFile == null) {
-                            listener.added(currentFile);
-                            return true;
-                        } else if (!snapshots.get(currentFile).isUpToDate(otherFile)) {
-                            listener.changed(currentFile);
-                            return true;
-                        }
-                    }
-
-                    // Create a single iterator to use for all of the removed files
-                    if (removedFiles == null) {
-                        removedFiles = otherSnapshots.keySet().iterator();
-                    }
-
-                    if (removedFiles.hasNext()) {
-                        listener.removed(removedFiles.next());
-                        return true;
-                    }
-
-                    return false;
-                }
-            };
-        }
-
-        public Diff changesSince(final FileCollectionSnapshot oldSnapshot) {
-            final FileCollectionSnapshotImpl other = (FileCollectionSnapshotImpl) oldSnapshot;
-            return new Diff() {
-                public FileCollectionSnapshot applyTo(FileCollectionSnapshot snapshot) {
-                    return applyTo(snapshot, new NoOpChangeListener<Merge>());
-                }
-
-                public FileCollectionSnapshot applyTo(FileCollectionSnapshot snapshot, final ChangeListener<Merge> listener) {
-                    FileCollectionSnapshotImpl target = (FileCollectionSnapshotImpl) snapshot;
-                    final Map<String, IncrementalFileSnapshot> newSnapshots = new HashMap<String, IncrementalFileSnapshot>(target.snapshots);
-                    diff(snapshots, other.snapshots, new MapMergeChangeListener<String, IncrementalFileSnapshot>(listener, newSnapshots));
-                    return new FileCollectionSnapshotImpl(newSnapshots);
-                }
-            };
-        }
-
-        private void diff(Map<String, IncrementalFileSnapshot> snapshots, Map<String, IncrementalFileSnapshot> oldSnapshots,
-                          ChangeListener<Map.Entry<String, IncrementalFileSnapshot>> listener) {
-            Map<String, IncrementalFileSnapshot> otherSnapshots = new HashMap<String, IncrementalFileSnapshot>(oldSnapshots);
-            for (Map.Entry<String, IncrementalFileSnapshot> entry : snapshots.entrySet()) {
-                IncrementalFileSnapshot otherFile = otherSnapshots.remove(entry.getKey());
-                if (otherFile == null) {
-                    listener.added(entry);
-                } else if (!entry.getValue().isUpToDate(otherFile)) {
-                    listener.changed(entry);
-                }
-            }
-            for (Map.Entry<String, IncrementalFileSnapshot> entry : otherSnapshots.entrySet()) {
-                listener.removed(entry);
-            }
-        }
-
+        return builder.build();
     }
 }
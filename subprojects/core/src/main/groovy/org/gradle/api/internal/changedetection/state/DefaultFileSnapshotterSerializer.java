@@ -20,45 +20,44 @@ import org.gradle.internal.serialize.Decoder;
 import org.gradle.internal.serialize.Encoder;
 import org.gradle.internal.serialize.Serializer;
 
-import java.util.HashMap;
-import java.util.Map;
-
-class DefaultFileSnapshotterSerializer implements Serializer<DefaultFileCollectionSnapshotter.FileCollectionSnapshotImpl> {
-    public DefaultFileCollectionSnapshotter.FileCollectionSnapshotImpl read(Decoder decoder) throws Exception {
-        Map<String, DefaultFileCollectionSnapshotter.IncrementalFileSnapshot> snapshots = new HashMap<String, DefaultFileCollectionSnapshotter.IncrementalFileSnapshot>();
-        DefaultFileCollectionSnapshotter.FileCollectionSnapshotImpl snapshot = new DefaultFileCollectionSnapshotter.FileCollectionSnapshotImpl(snapshots);
+/**
+ * Writes the entries of a {@link FileCollectionSnapshotImpl} in path order, each path as the length of the prefix it shares with the previous path plus the remaining
+ * characters. Reading builds the compact snapshot directly from the stream.
+ */
+class DefaultFileSnapshotterSerializer implements Serializer<FileCollectionSnapshotImpl> {
+    public FileCollectionSnapshotImpl read(Decoder decoder) throws Exception {
         int snapshotsCount = decoder.readSmallInt();
+        FileCollectionSnapshotImpl.SortedBuilder builder = new FileCollectionSnapshotImpl.SortedBuilder(snapshotsCount);
+        String previous = "";
         for (int i = 0; i < snapshotsCount; i++) {
-            String key = decoder.readString();
+            int prefixLength = decoder.readSmallInt();
+            String key = previous.substring(0, prefixLength).concat(decoder.readString());
             byte fileSnapshotKind = decoder.readByte();
-            if (fileSnapshotKind == 1) {
-                snapshots.put(key, new DefaultFileCollectionSnapshotter.DirSnapshot());
-            } else if (fileSnapshotKind == 2) {
-                snapshots.put(key, new DefaultFileCollectionSnapshotter.MissingFileSnapshot());
-            } else if (fileSnapshotKind == 3) {
+            if (fileSnapshotKind == FileCollectionSnapshotImpl.DIR || fileSnapshotKind == FileCollectionSnapshotImpl.MISSING) {
+                builder.add(key, fileSnapshotKind, null);
+            } else if (fileSnapshotKind == FileCollectionSnapshotImpl.FILE) {
                 byte hashSize = decoder.readByte();
                 byte[] hash = new byte[hashSize];
                 decoder.readBytes(hash);
-                snapshots.put(key, new DefaultFileCollectionSnapshotter.FileHashSnapshot(hash));
+                builder.add(key, fileSnapshotKind, hash);
             } else {
                 throw new RuntimeException("Unable to read serialized file collection snapshot. Unrecognized value found in the data stream.");
             }
+            previous = key;
         }
-        return snapshot;
+        return builder.build();
     }
 
-    public void write(Encoder encoder, DefaultFileCollectionSnapshotter.FileCollectionSnapshotImpl value) throws Exception {
-        encoder.writeSmallInt(value.snapshots.size());
-        for (String key : value.snapshots.keySet()) {
-            encoder.writeString(key);
-            DefaultFileCollectionSnapshotter.IncrementalFileSnapshot incrementalFileSnapshot = value.snapshots.get(key);
-            if (incrementalFileSnapshot instanceof DefaultFileCollectionSnapshotter.DirSnapshot) {
-                encoder.writeByte((byte) 1);
-            } else if (incrementalFileSnapshot instanceof DefaultFileCollectionSnapshotter.MissingFileSnapshot) {
-                encoder.writeByte((byte) 2);
-            } else if (incrementalFileSnapshot instanceof DefaultFileCollectionSnapshotter.FileHashSnapshot) {
-                encoder.writeByte((byte) 3);
-                byte[] hash = ((DefaultFileCollectionSnapshotter.FileHashSnapshot) incrementalFileSnapshot).hash;
+    public void write(Encoder encoder, FileCollectionSnapshotImpl value) throws Exception {
+        int count = value.size();
+        encoder.writeSmallInt(count);
+        for (int i = 0; i < count; i++) {
+            encoder.writeSmallInt(value.getPrefixLength(i));
+            encoder.writeString(value.getSuffix(i));
+            byte kind = value.getKind(i);
+            encoder.writeByte(kind);
+            if (kind == FileCollectionSnapshotImpl.FILE) {
+                byte[] hash = value.getHash(i);
                 encoder.writeByte((byte) hash.length);
                 encoder.writeBytes(hash);
             }
@@ -0,0 +1,575 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.internal.file.collections.SimpleFileCollection;
+import org.gradle.util.ChangeListener;
+import org.gradle.util.NoOpChangeListener;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.util.*;
+
+/**
+ * An immutable snapshot of a collection of files, held in a compact form.
+ *
+ * <p>The entries are sorted by path. Each path is stored as the length of the prefix it shares with the previous path, plus the remaining characters.
+ * Every {@value #RESTART_INTERVAL}th path is stored in full, so that a path can be located using a binary search. The kind of each entry is held in a byte array,
+ * and the hashes of all files are packed into a single byte array. Two snapshots are compared by merging their entries in a single pass.</p>
+ */
+class FileCollectionSnapshotImpl implements FileCollectionSnapshot {
+    static final byte DIR = 1;
+    static final byte MISSING = 2;
+    static final byte FILE = 3;
+
+    static final int RESTART_INTERVAL = 16;
+
+    private final int count;
+    private final int[] prefixLengths;
+    private final int[] suffixOffsets;
+    private final char[] suffixes;
+    private final byte[] kinds;
+    private final int[] hashOffsets;
+    private final byte[] hashes;
+
+    private FileCollectionSnapshotImpl(int count, int[] prefixLengths, int[] suffixOffsets, char[] suffixes, byte[] kinds, int[] hashOffsets, byte[] hashes) {
+        this.count = count;
+        this.prefixLengths = prefixLengths;
+        this.suffixOffsets = suffixOffsets;
+        this.suffixes = suffixes;
+        this.kinds = kinds;
+        this.hashOffsets = hashOffsets;
+        this.hashes = hashes;
+    }
+
+    int size() {
+        return count;
+    }
+
+    /**
+     * Returns an estimate of the number of bytes of heap retained by this snapshot.
+     */
+    long getEstimatedSize() {
+        return 48 + 6 * 16
+                + 4L * prefixLengths.length + 4L * suffixOffsets.length + 2L * suffixes.length + kinds.length + 4L * hashOffsets.length + hashes.length;
+    }
+
+    int getPrefixLength(int index) {
+        return prefixLengths[index];
+    }
+
+    String getSuffix(int index) {
+        return new String(suffixes, suffixOffsets[index], suffixOffsets[index + 1] - suffixOffsets[index]);
+    }
+
+    byte getKind(int index) {
+        return kinds[index];
+    }
+
+    byte[] getHash(int index) {
+        return Arrays.copyOfRange(hashes, hashOffsets[index], hashOffsets[index + 1]);
+    }
+
+    PathCursor cursor() {
+        return new PathCursor();
+    }
+
+    public FileCollection getFiles() {
+        List<File> files = new ArrayList<File>();
+        PathCursor cursor = cursor();
+        while (cursor.next()) {
+            if (kinds[cursor.index] == FILE) {
+                files.add(new File(cursor.path()));
+            }
+        }
+        return new SimpleFileCollection(files);
+    }
+
+    public FilesSnapshotSet getSnapshot() {
+        return new FilesSnapshotSet() {
+            public FileSnapshot findSnapshot(File file) {
+                int index = indexOf(file.getAbsolutePath());
+                if (index >= 0 && kinds[index] == FILE) {
+                    return new FileHashSnapshot(getHash(index));
+                }
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Returns the index of the entry with the given path, or -1 when there is no such entry.
+     */
+    int indexOf(String path) {
+        if (count == 0) {
+            return -1;
+        }
+
+        // Find the last restart point whose path is less than or equal to the target path
+        int low = 0;
+        int high = (count - 1) / RESTART_INTERVAL;
+        int block = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int start = mid * RESTART_INTERVAL;
+            int cmp = compare(suffixes, suffixOffsets[start], suffixOffsets[start + 1] - suffixOffsets[start], path);
+            if (cmp == 0) {
+                return start;
+            }
+            if (cmp < 0) {
+                block = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (block < 0) {
+            return -1;
+        }
+
+        // Scan the block
+        PathCursor cursor = new PathCursor(block * RESTART_INTERVAL);
+        int end = Math.min(count, (block + 1) * RESTART_INTERVAL);
+        while (cursor.next() && cursor.index < end) {
+            int cmp = compare(cursor.buffer, 0, cursor.length, path);
+            if (cmp == 0) {
+                return cursor.index;
+            }
+            if (cmp > 0) {
+                break;
+            }
+        }
+        return -1;
+    }
+
+    public ChangeIterator<String> iterateChangesSince(FileCollectionSnapshot oldSnapshot) {
+        final Differ differ = new Differ(this, (FileCollectionSnapshotImpl) oldSnapshot);
+        return new ChangeIterator<String>() {
+            public boolean next(ChangeListener<String> listener) {
+                if (!differ.next()) {
+                    return false;
+                }
+                switch (differ.change) {
+                    case ADDED:
+                        listener.added(differ.current.path());
+                        break;
+                    case REMOVED:
+                        listener.removed(differ.previous.path());
+                        break;
+                    default:
+                        listener.changed(differ.current.path());
+                }
+                return true;
+            }
+        };
+    }
+
+    public Diff changesSince(final FileCollectionSnapshot oldSnapshot) {
+        final FileCollectionSnapshotImpl other = (FileCollectionSnapshotImpl) oldSnapshot;
+        return new Diff() {
+            public FileCollectionSnapshot applyTo(FileCollectionSnapshot snapshot) {
+                return applyTo(snapshot, new NoOpChangeListener<Merge>());
+            }
+
+            public FileCollectionSnapshot applyTo(FileCollectionSnapshot snapshot, ChangeListener<Merge> listener) {
+                return merge(other, (FileCollectionSnapshotImpl) snapshot, listener);
+            }
+        };
+    }
+
+    private FileCollectionSnapshotImpl merge(FileCollectionSnapshotImpl oldSnapshot, FileCollectionSnapshotImpl target, ChangeListener<Merge> listener) {
+        SortedBuilder builder = new SortedBuilder(Math.max(count, target.count));
+        PathCursor targetCursor = target.cursor();
+        boolean hasTarget = targetCursor.next();
+
+        Differ differ = new Differ(this, oldSnapshot);
+        while (differ.next()) {
+            DefaultMerge merge = new DefaultMerge();
+            switch (differ.change) {
+                case ADDED:
+                    listener.added(merge);
+                    break;
+                case REMOVED:
+                    listener.removed(merge);
+                    break;
+                default:
+                    listener.changed(merge);
+            }
+            if (merge.ignore) {
+                continue;
+            }
+
+            PathCursor changed = differ.change == REMOVED ? differ.previous : differ.current;
+            int cmp = -1;
+            while (hasTarget && (cmp = targetCursor.compareTo(changed)) < 0) {
+                builder.add(targetCursor);
+                hasTarget = targetCursor.next();
+            }
+            if (hasTarget && cmp == 0) {
+                // Replaced or removed by this change
+                hasTarget = targetCursor.next();
+            }
+            if (differ.change != REMOVED) {
+                builder.add(differ.current);
+            }
+        }
+        while (hasTarget) {
+            builder.add(targetCursor);
+            hasTarget = targetCursor.next();
+        }
+        return builder.build();
+    }
+
+    private boolean isUpToDate(int index, FileCollectionSnapshotImpl other, int otherIndex) {
+        byte kind = kinds[index];
+        if (kind != other.kinds[otherIndex]) {
+            return false;
+        }
+        if (kind != FILE) {
+            return true;
+        }
+        int start = hashOffsets[index];
+        int length = hashOffsets[index + 1] - start;
+        int otherStart = other.hashOffsets[otherIndex];
+        if (length != other.hashOffsets[otherIndex + 1] - otherStart) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (hashes[start + i] != other.hashes[otherStart + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int compare(char[] chars, int offset, int length, String path) {
+        int pathLength = path.length();
+        int max = Math.min(length, pathLength);
+        for (int i = 0; i < max; i++) {
+            int diff = chars[offset + i] - path.charAt(i);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return length - pathLength;
+    }
+
+    /**
+     * Decodes the paths of the snapshot in order, into a reusable buffer.
+     */
+    class PathCursor {
+        private char[] buffer = new char[128];
+        private int length;
+        private int index;
+
+        PathCursor() {
+            this(0);
+        }
+
+        private PathCursor(int start) {
+            index = start - 1;
+        }
+
+        boolean next() {
+            if (index >= count) {
+                return false;
+            }
+            index++;
+            if (index == count) {
+                return false;
+            }
+            int prefixLength = prefixLengths[index];
+            int start = suffixOffsets[index];
+            int suffixLength = suffixOffsets[index + 1] - start;
+            int newLength = prefixLength + suffixLength;
+            if (newLength > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(newLength, buffer.length * 2));
+            }
+            System.arraycopy(suffixes, start, buffer, prefixLength, suffixLength);
+            length = newLength;
+            return true;
+        }
+
+        String path() {
+            return new String(buffer, 0, length);
+        }
+
+        int compareTo(PathCursor other) {
+            int max = Math.min(length, other.length);
+            for (int i = 0; i < max; i++) {
+                int diff = buffer[i] - other.buffer[i];
+                if (diff != 0) {
+                    return diff;
+                }
+            }
+            return length - other.length;
+        }
+
+        FileCollectionSnapshotImpl getSnapshot() {
+            return FileCollectionSnapshotImpl.this;
+        }
+    }
+
+    private static final int ADDED = 0;
+    private static final int REMOVED = 1;
+    private static final int CHANGED = 2;
+
+    /**
+     * Walks the entries of two snapshots side by side, stopping at each difference. The cursors are only advanced on the following call, so that the
+     * path of the current difference can be read from them.
+     */
+    private static class Differ {
+        final PathCursor current;
+        final PathCursor previous;
+        private boolean hasCurrent;
+        private boolean hasPrevious;
+        private boolean advanceCurrent = true;
+        private boolean advancePrevious = true;
+        int change;
+
+        Differ(FileCollectionSnapshotImpl current, FileCollectionSnapshotImpl previous) {
+            this.current = current.cursor();
+            this.previous = previous.cursor();
+        }
+
+        boolean next() {
+            while (true) {
+                if (advanceCurrent) {
+                    hasCurrent = current.next();
+                    advanceCurrent = false;
+                }
+                if (advancePrevious) {
+                    hasPrevious = previous.next();
+                    advancePrevious = false;
+                }
+                if (!hasCurrent && !hasPrevious) {
+                    return false;
+                }
+                int cmp = !hasCurrent ? 1 : !hasPrevious ? -1 : current.compareTo(previous);
+                if (cmp < 0) {
+                    advanceCurrent = true;
+                    change = ADDED;
+                    return true;
+                }
+                if (cmp > 0) {
+                    advancePrevious = true;
+                    change = REMOVED;
+                    return true;
+                }
+                advanceCurrent = true;
+                advancePrevious = true;
+                if (!current.getSnapshot().isUpToDate(current.index, previous.getSnapshot(), previous.index)) {
+                    change = CHANGED;
+                    return true;
+                }
+            }
+        }
+    }
+
+    private static class DefaultMerge implements Merge {
+        private boolean ignore;
+
+        public void ignore() {
+            ignore = true;
+        }
+    }
+
+    static class FileHashSnapshot implements FileSnapshot {
+        private final byte[] hash;
+
+        FileHashSnapshot(byte[] hash) {
+            this.hash = hash;
+        }
+
+        public byte[] getHash() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return new BigInteger(1, hash).toString(16);
+        }
+    }
+
+    /**
+     * Builds a snapshot from entries added in any order. When the same path is added more than once, the last entry wins.
+     */
+    static class Builder {
+        private final List<Entry> entries = new ArrayList<Entry>();
+
+        Builder addFile(String path, byte[] hash) {
+            entries.add(new Entry(path, FILE, hash));
+            return this;
+        }
+
+        Builder addDirectory(String path) {
+            entries.add(new Entry(path, DIR, null));
+            return this;
+        }
+
+        Builder addMissing(String path) {
+            entries.add(new Entry(path, MISSING, null));
+            return this;
+        }
+
+        FileCollectionSnapshotImpl build() {
+            // A stable sort, so the last of several entries with the same path is the last added
+            Collections.sort(entries);
+            SortedBuilder builder = new SortedBuilder(entries.size());
+            for (int i = 0; i < entries.size(); i++) {
+                Entry entry = entries.get(i);
+                if (i + 1 < entries.size() && entries.get(i + 1).path.equals(entry.path)) {
+                    continue;
+                }
+                builder.add(entry.path, entry.kind, entry.hash);
+            }
+            return builder.build();
+        }
+
+        private static class Entry implements Comparable<Entry> {
+            final String path;
+            final byte kind;
+            final byte[] hash;
+
+            Entry(String path, byte kind, byte[] hash) {
+                this.path = path;
+                this.kind = kind;
+                this.hash = hash;
+            }
+
+            public int compareTo(Entry other) {
+                return path.compareTo(other.path);
+            }
+        }
+    }
+
+    /**
+     * Builds a snapshot from entries added in strictly ascending path order.
+     */
+    static class SortedBuilder {
+        private int count;
+        private int[] prefixLengths;
+        private int[] suffixOffsets;
+        private char[] suffixes;
+        private byte[] kinds;
+        private int[] hashOffsets;
+        private byte[] hashes;
+        private char[] previous = new char[128];
+        private int previousLength;
+
+        SortedBuilder(int expectedCount) {
+            int capacity = Math.max(expectedCount, 1);
+            prefixLengths = new int[capacity];
+            suffixOffsets = new int[capacity + 1];
+            suffixes = new char[capacity * 32];
+            kinds = new byte[capacity];
+            hashOffsets = new int[capacity + 1];
+            hashes = new byte[capacity * 16];
+        }
+
+        void add(String path, byte kind, byte[] hash) {
+            int length = path.length();
+            char[] chars = length <= previous.length ? previous : new char[length];
+            int prefixLength = sharedPrefixLength(path);
+            path.getChars(prefixLength, length, chars, prefixLength);
+            if (chars != previous) {
+                System.arraycopy(previous, 0, chars, 0, prefixLength);
+            }
+            append(chars, prefixLength, length, kind, hash, 0, hash == null ? 0 : hash.length);
+        }
+
+        void add(PathCursor cursor) {
+            FileCollectionSnapshotImpl snapshot = cursor.getSnapshot();
+            int index = cursor.index;
+            int prefixLength = sharedPrefixLength(cursor.buffer, cursor.length);
+            int hashStart = snapshot.hashOffsets[index];
+            append(cursor.buffer, prefixLength, cursor.length, snapshot.kinds[index], snapshot.hashes, hashStart, snapshot.hashOffsets[index + 1] - hashStart);
+        }
+
+        private int sharedPrefixLength(String path) {
+            if (count % RESTART_INTERVAL == 0) {
+                return 0;
+            }
+            int max = Math.min(previousLength, path.length());
+            int i = 0;
+            while (i < max && previous[i] == path.charAt(i)) {
+                i++;
+            }
+            return i;
+        }
+
+        private int sharedPrefixLength(char[] path, int length) {
+            if (count % RESTART_INTERVAL == 0) {
+                return 0;
+            }
+            int max = Math.min(previousLength, length);
+            int i = 0;
+            while (i < max && previous[i] == path[i]) {
+                i++;
+            }
+            return i;
+        }
+
+        private void append(char[] path, int prefixLength, int length, byte kind, byte[] hash, int hashStart, int hashLength) {
+            if (count == kinds.length) {
+                int capacity = count * 2;
+                prefixLengths = Arrays.copyOf(prefixLengths, capacity);
+                suffixOffsets = Arrays.copyOf(suffixOffsets, capacity + 1);
+                kinds = Arrays.copyOf(kinds, capacity);
+                hashOffsets = Arrays.copyOf(hashOffsets, capacity + 1);
+            }
+            int suffixStart = suffixOffsets[count];
+            int suffixLength = length - prefixLength;
+            if (suffixStart + suffixLength > suffixes.length) {
+                suffixes = Arrays.copyOf(suffixes, Math.max(suffixStart + suffixLength, suffixes.length * 2));
+            }
+            System.arraycopy(path, prefixLength, suffixes, suffixStart, suffixLength);
+            int hashOffset = hashOffsets[count];
+            if (hashOffset + hashLength > hashes.length) {
+                hashes = Arrays.copyOf(hashes, Math.max(hashOffset + hashLength, hashes.length * 2));
+            }
+            if (hashLength > 0) {
+                System.arraycopy(hash, hashStart, hashes, hashOffset, hashLength);
+            }
+
+            prefixLengths[count] = prefixLength;
+            suffixOffsets[count + 1] = suffixStart + suffixLength;
+            kinds[count] = kind;
+            hashOffsets[count + 1] = hashOffset + hashLength;
+            count++;
+
+            if (path != previous) {
+                if (length > previous.length) {
+                    previous = new char[Math.max(length, previous.length * 2)];
+                }
+                System.arraycopy(path, 0, previous, 0, length);
+            }
+            previousLength = length;
+        }
+
+        FileCollectionSnapshotImpl build() {
+            return new FileCollectionSnapshotImpl(count,
+                    Arrays.copyOf(prefixLengths, count),
+                    Arrays.copyOf(suffixOffsets, count + 1),
+                    Arrays.copyOf(suffixes, suffixOffsets[count]),
+                    Arrays.copyOf(kinds, count),
+                    Arrays.copyOf(hashOffsets, count + 1),
+                    Arrays.copyOf(hashes, hashOffsets[count]));
+        }
+    }
+}
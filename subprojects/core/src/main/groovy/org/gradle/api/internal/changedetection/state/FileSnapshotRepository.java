@@ -15,9 +15,17 @@
  */
 package org.gradle.api.internal.changedetection.state;
 
+import org.gradle.api.Nullable;
+
 public interface FileSnapshotRepository {
     FileCollectionSnapshot get(Long id);
 
+    /**
+     * Returns the snapshot with the given id, if it is already held in memory. Does not require the cache lock.
+     */
+    @Nullable
+    FileCollectionSnapshot getIfLoaded(Long id);
+
     Long add(FileCollectionSnapshot snapshot);
 
     void remove(Long id);
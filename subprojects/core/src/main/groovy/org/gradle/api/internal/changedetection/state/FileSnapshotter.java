@@ -16,6 +16,9 @@
 
 package org.gradle.api.internal.changedetection.state;
 
+import org.gradle.api.Nullable;
+import org.gradle.internal.filewatch.FileStatCache;
+
 import java.io.File;
 
 public interface FileSnapshotter {
@@ -24,4 +27,17 @@ public interface FileSnapshotter {
      */
     FileSnapshot snapshot(File file);
 
+    /**
+     * Returns the current type, length and timestamp of the given file. Does not require the cache lock and may be called concurrently.
+     */
+    FileStatCache.FileStat stat(File file);
+
+    /**
+     * Returns a snapshot of the current content of the given file, if one is already held in memory and matches the given stat. Does not require the cache lock
+     * and may be called concurrently.
+     *
+     * @return the snapshot, or null when {@link #snapshot(File)} must be used instead, while holding the cache lock.
+     */
+    @Nullable
+    FileSnapshot findLoadedSnapshot(File file, FileStatCache.FileStat stat);
 }
@@ -18,109 +18,300 @@ package org.gradle.api.internal.changedetection.state;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
 import org.gradle.api.logging.Logger;
 import org.gradle.api.logging.Logging;
 import org.gradle.cache.internal.CacheDecorator;
+import org.gradle.cache.internal.DefaultCacheAccess;
 import org.gradle.cache.internal.FileLock;
+import org.gradle.cache.internal.LockFreeLookup;
 import org.gradle.cache.internal.MultiProcessSafePersistentIndexedCache;
+import org.gradle.internal.TimeProvider;
+import org.gradle.internal.TrueTimeProvider;
+import org.gradle.internal.UncheckedException;
 
 import java.io.File;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Keeps the entries of the task artifact caches in memory, so that they can be reused across builds in the daemon.
+ * <p>
+ * The caches are bounded by the estimated number of bytes retained by their entries rather than by the number of entries. A share of the max heap is
+ * set aside for the caches (see {@link #HEAP_PERCENTAGE_PROPERTY}) and divided between the caches according to {@link #CACHE_SHARES}.
+ * <p>
+ * When the backing caches discard entries that have not been used recently, the entries served from memory are reported to the backing cache as used,
+ * at most once an hour for each cache, so that entries a daemon uses in every build are kept.
+ */
 public class InMemoryTaskArtifactCache implements CacheDecorator {
+    public static final String HEAP_PERCENTAGE_PROPERTY = "org.gradle.taskartifacts.heappercentage";
+
     private final static Logger LOG = Logging.getLogger(InMemoryTaskArtifactCache.class);
     private final static Object NULL = new Object();
 
-    private static final Map<String, Integer> CACHE_CAPS = new HashMap<String, Integer>();
+    private static final int DEFAULT_HEAP_PERCENTAGE = 20;
+    // Used when the JVM does not report a max heap size
+    private static final long DEFAULT_MAX_HEAP = 1024L * 1024 * 1024;
+    // Entry use is recorded with a resolution of days, so reporting the entries served from memory once an hour is plenty
+    private static final long ACCESS_RECORDING_INTERVAL = TimeUnit.HOURS.toMillis(1);
+
+    // Percentage of the memory budget for each cache. Only one of the file hash caches is used by a build.
+    private static final Map<String, Integer> CACHE_SHARES = new HashMap<String, Integer>();
 
     static {
-        //it's the simplest implementation, not very nice
-        //at very least, the max size should be provided at creation, by the creator of the cache
-        //however, max size is a bit awkward in general and we should look into other options,
-        //like using the Weighter and relate the cache size to the available heap, etc.
-        CACHE_CAPS.put("fileSnapshots", 10000);
-        CACHE_CAPS.put("taskArtifacts", 2000);
-        CACHE_CAPS.put("outputFileStates", 3000);
-        CACHE_CAPS.put("fileHashes", 140000);
-        CACHE_CAPS.put("compilationState", 1000);
-
-        //In general, the in-memory cache must be capped at some level, otherwise it is reduces performance in truly gigantic builds
+        CACHE_SHARES.put("fileSnapshots", 40);
+        CACHE_SHARES.put("taskArtifacts", 10);
+        CACHE_SHARES.put("outputFileStates", 5);
+        CACHE_SHARES.put("fileHashes", 35);
+        CACHE_SHARES.put("fileHashesMurmur3", 35);
+        CACHE_SHARES.put("compilationState", 9);
+        CACHE_SHARES.put("taskDurations", 1);
     }
 
-    private final Object lock = new Object();
     private final Cache<String, Cache<Object, Object>> cache = CacheBuilder.newBuilder()
-            .maximumSize(CACHE_CAPS.size() * 2) //X2 to factor in a child build (for example buildSrc)
+            .maximumSize(CACHE_SHARES.size() * 2) //X2 to factor in a child build (for example buildSrc)
             .build();
 
-    private final Map<String, FileLock.State> states = new HashMap<String, FileLock.State>();
+    private final ConcurrentMap<String, String> cacheNames = new ConcurrentHashMap<String, String>();
+    private final ConcurrentMap<String, FileLock.State> states = new ConcurrentHashMap<String, FileLock.State>();
+    private final ConcurrentMap<String, Long> accessesRecorded = new ConcurrentHashMap<String, Long>();
+    private final long budget;
+    private final boolean recordAccess;
+    private final TimeProvider timeProvider;
+
+    public InMemoryTaskArtifactCache() {
+        this(Runtime.getRuntime().maxMemory(), Integer.getInteger(HEAP_PERCENTAGE_PROPERTY, DEFAULT_HEAP_PERCENTAGE), DefaultCacheAccess.isEntryAccessRecorded(), new TrueTimeProvider());
+    }
+
+    InMemoryTaskArtifactCache(long maxHeap, int heapPercentage) {
+        this(maxHeap, heapPercentage, false, new TrueTimeProvider());
+    }
+
+    InMemoryTaskArtifactCache(long maxHeap, int heapPercentage, boolean recordAccess, TimeProvider timeProvider) {
+        if (heapPercentage < 0 || heapPercentage > 100) {
+            throw new IllegalArgumentException(String.format("Invalid value for %s: %s. It must be between 0 and 100.", HEAP_PERCENTAGE_PROPERTY, heapPercentage));
+        }
+        this.budget = (maxHeap == Long.MAX_VALUE ? DEFAULT_MAX_HEAP : maxHeap) / 100 * heapPercentage;
+        this.recordAccess = recordAccess;
+        this.timeProvider = timeProvider;
+    }
 
     public <K, V> MultiProcessSafePersistentIndexedCache<K, V> decorate(final String cacheId, String cacheName, final MultiProcessSafePersistentIndexedCache<K, V> original) {
-        final Cache<Object, Object> data = loadData(cacheId, cacheName);
+        return new InMemoryDecoratedCache<K, V>(cacheId, loadData(cacheId, cacheName), original);
+    }
 
-        return new MultiProcessSafePersistentIndexedCache<K, V>() {
-            public void close() {
-                original.close();
-            }
+    /**
+     * Returns the hit, miss and eviction statistics of each cache, by cache name.
+     */
+    public Map<String, CacheStats> getStatistics() {
+        Map<String, CacheStats> statistics = new TreeMap<String, CacheStats>();
+        for (Map.Entry<String, Cache<Object, Object>> entry : cache.asMap().entrySet()) {
+            String cacheName = cacheNames.get(entry.getKey());
+            CacheStats stats = entry.getValue().stats();
+            CacheStats previous = statistics.get(cacheName);
+            statistics.put(cacheName, previous == null ? stats : previous.plus(stats));
+        }
+        return statistics;
+    }
 
-            public V get(K key) {
-                assert key instanceof String || key instanceof Long || key instanceof File : "Unsupported key type: " + key;
-                Object value = data.getIfPresent(key);
-                if (value == NULL) {
-                    return null;
+    /**
+     * Logs the hit, miss and eviction statistics of each cache since the daemon started, so that the heap share of the caches can be tuned.
+     */
+    public void logStatistics() {
+        for (Map.Entry<String, CacheStats> entry : getStatistics().entrySet()) {
+            CacheStats stats = entry.getValue();
+            LOG.info("In-memory {} cache: hits: {}, misses: {}, evictions: {}", entry.getKey(), stats.hitCount(), stats.missCount(), stats.evictionCount());
+        }
+    }
+
+    long getMaximumWeight(String cacheName) {
+        Integer share = CACHE_SHARES.get(cacheName);
+        if (share == null) {
+            throw new IllegalArgumentException(String.format("Cannot cache '%s' in memory, as it has no share of the heap.", cacheName));
+        }
+        return budget / 100 * share;
+    }
+
+    private Cache<Object, Object> loadData(String cacheId, final String cacheName) {
+        Cache<Object, Object> theData = cache.getIfPresent(cacheId);
+        if (theData != null) {
+            CacheStats stats = theData.stats();
+            LOG.info("In-memory cache of {}: Size{{}}, hits: {}, misses: {}, evictions: {}", cacheId, theData.size(), stats.hitCount(), stats.missCount(), stats.evictionCount());
+            return theData;
+        }
+        final long maxWeight = getMaximumWeight(cacheName);
+        try {
+            return cache.get(cacheId, new Callable<Cache<Object, Object>>() {
+                public Cache<Object, Object> call() {
+                    cacheNames.put(cacheId, cacheName);
+                    // Use a single segment: the maximum weight is divided evenly between the segments, and an entry that outweighs the share of its
+                    // segment would be evicted as soon as it is added
+                    return CacheBuilder.newBuilder()
+                            .maximumWeight(maxWeight)
+                            .weigher(EntryWeigher.INSTANCE)
+                            .concurrencyLevel(1)
+                            .recordStats()
+                            .build();
                 }
-                if (value != null) {
-                    return (V) value;
+            });
+        } catch (ExecutionException e) {
+            throw UncheckedException.throwAsUncheckedException(e.getCause());
+        }
+    }
+
+    /**
+     * Estimates the number of bytes retained by a cache entry, assuming a 64-bit JVM with compressed references. The estimate only needs to be
+     * good enough to keep the caches in proportion to the heap.
+     */
+    static class EntryWeigher implements Weigher<Object, Object> {
+        static final EntryWeigher INSTANCE = new EntryWeigher();
+
+        // The entry in the Guava cache
+        private static final int ENTRY_SIZE = 48;
+        // The size assumed for values whose structure is unknown
+        static final int DEFAULT_VALUE_SIZE = 1024;
+
+        public int weigh(Object key, Object value) {
+            return (int) Math.min(Integer.MAX_VALUE, ENTRY_SIZE + estimate(key) + estimate(value));
+        }
+
+        static long estimate(Object object) {
+            if (object == NULL) {
+                return 0;
+            }
+            if (object instanceof String) {
+                return 40 + 2L * ((String) object).length();
+            }
+            if (object instanceof Long) {
+                return 16;
+            }
+            if (object instanceof File) {
+                return 16 + estimate(((File) object).getPath());
+            }
+            if (object instanceof CachingFileSnapshotter.FileInfo) {
+                return 32 + 16 + ((CachingFileSnapshotter.FileInfo) object).getHash().length;
+            }
+            if (object instanceof CacheBackedTaskHistoryRepository.TaskHistory) {
+                return ((CacheBackedTaskHistoryRepository.TaskHistory) object).getEstimatedSize();
+            }
+            if (object instanceof FileCollectionSnapshotImpl) {
+                return ((FileCollectionSnapshotImpl) object).getEstimatedSize();
+            }
+            if (object instanceof OutputFilesCollectionSnapshotter.OutputFilesSnapshot) {
+                OutputFilesCollectionSnapshotter.OutputFilesSnapshot snapshot = (OutputFilesCollectionSnapshotter.OutputFilesSnapshot) object;
+                long size = 64 + estimate(snapshot.filesSnapshot);
+                for (String path : snapshot.rootFileIds.keySet()) {
+                    size += ENTRY_SIZE + estimate(path) + estimate(0L);
                 }
-                V out = original.get(key);
-                data.put(key, out == null ? NULL : out);
-                return out;
+                return size;
             }
+            return DEFAULT_VALUE_SIZE;
+        }
+    }
 
-            public void put(K key, V value) {
-                original.put(key, value);
-                data.put(key, value);
+    /**
+     * Serves reads from memory where possible. While this process holds the lock on the backing cache, no other process can change the backing cache, so entries that
+     * have already been loaded can be read by any thread without taking the lock.
+     */
+    private class InMemoryDecoratedCache<K, V> implements MultiProcessSafePersistentIndexedCache<K, V>, LockFreeLookup<K, V> {
+        private final String cacheId;
+        private final Cache<Object, Object> data;
+        private final MultiProcessSafePersistentIndexedCache<K, V> original;
+        // The keys served from memory while their use is being recorded, otherwise null
+        private volatile Set<K> accessed;
+        private volatile boolean upToDate;
+
+        InMemoryDecoratedCache(String cacheId, Cache<Object, Object> data, MultiProcessSafePersistentIndexedCache<K, V> original) {
+            this.cacheId = cacheId;
+            this.data = data;
+            this.original = original;
+        }
+
+        public void close() {
+            Set<K> accessed = this.accessed;
+            this.accessed = null;
+            if (accessed != null && !accessed.isEmpty()) {
+                original.entriesAccessed(accessed);
+                accessesRecorded.put(cacheId, timeProvider.getCurrentTime());
             }
+            original.close();
+        }
+
+        public void entriesAccessed(Iterable<? extends K> keys) {
+            original.entriesAccessed(keys);
+        }
 
-            public void remove(K key) {
-                data.put(key, NULL);
-                original.remove(key);
+        private void servedFromMemory(K key) {
+            Set<K> accessed = this.accessed;
+            if (accessed != null) {
+                accessed.add(key);
             }
+        }
 
-            public void onStartWork(String operationDisplayName, FileLock.State currentCacheState) {
-                boolean outOfDate;
-                synchronized (lock) {
-                    FileLock.State previousState = states.get(cacheId);
-                    outOfDate = previousState == null || currentCacheState.hasBeenUpdatedSince(previousState);
-                }
+        public V get(K key) {
+            assert key instanceof String || key instanceof Long || key instanceof File : "Unsupported key type: " + key;
+            Object value = data.getIfPresent(key);
+            if (value == NULL) {
+                return null;
+            }
+            if (value != null) {
+                servedFromMemory(key);
+                return (V) value;
+            }
+            V out = original.get(key);
+            data.put(key, out == null ? NULL : out);
+            return out;
+        }
 
-                if (outOfDate) {
-                    LOG.info("Invalidating in-memory cache of {}", cacheId);
-                    data.invalidateAll();
-                }
+        public V getIfLoaded(K key) {
+            if (!upToDate) {
+                return null;
+            }
+            Object value = data.getIfPresent(key);
+            if (value == NULL) {
+                return null;
             }
+            if (value != null) {
+                servedFromMemory(key);
+            }
+            return (V) value;
+        }
+
+        public void put(K key, V value) {
+            original.put(key, value);
+            data.put(key, value);
+        }
 
-            public void onEndWork(FileLock.State currentCacheState) {
-                synchronized (lock) {
-                    states.put(cacheId, currentCacheState);
+        public void remove(K key) {
+            data.put(key, NULL);
+            original.remove(key);
+        }
+
+        public void onStartWork(String operationDisplayName, FileLock.State currentCacheState) {
+            FileLock.State previousState = states.get(cacheId);
+            boolean outOfDate = previousState == null || currentCacheState.hasBeenUpdatedSince(previousState);
+
+            if (outOfDate) {
+                LOG.info("Invalidating in-memory cache of {}", cacheId);
+                data.invalidateAll();
+            }
+            if (recordAccess && accessed == null) {
+                Long lastRecorded = accessesRecorded.get(cacheId);
+                if (lastRecorded == null || lastRecorded < timeProvider.getCurrentTime() - ACCESS_RECORDING_INTERVAL) {
+                    accessed = Collections.newSetFromMap(new ConcurrentHashMap<K, Boolean>());
                 }
             }
-        };
-    }
+            upToDate = true;
+        }
 
-    private Cache<Object, Object> loadData(String cacheId, String cacheName) {
-        Cache<Object, Object> theData;
-        synchronized (lock) {
-            theData = this.cache.getIfPresent(cacheId);
-            if (theData != null) {
-                LOG.info("In-memory cache of {}: Size{{}}, {}", cacheId, theData.size() , theData.stats());
-            } else {
-                Integer maxSize = CACHE_CAPS.get(cacheName);
-                assert maxSize != null : "Unknown cache.";
-                theData = CacheBuilder.newBuilder().maximumSize(maxSize).build();
-                this.cache.put(cacheId, theData);
-            }
+        public void onEndWork(FileLock.State currentCacheState) {
+            upToDate = false;
+            states.put(cacheId, currentCacheState);
         }
-        return theData;
     }
 }
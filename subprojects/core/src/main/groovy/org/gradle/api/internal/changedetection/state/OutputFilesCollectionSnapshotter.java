@@ -18,6 +18,8 @@ package org.gradle.api.internal.changedetection.state;
 
 import org.gradle.api.file.FileCollection;
 import org.gradle.cache.PersistentIndexedCache;
+import org.gradle.cache.internal.LockFreeLookup;
+import org.gradle.internal.Cast;
 import org.gradle.internal.id.IdGenerator;
 import org.gradle.internal.serialize.DefaultSerializerRegistry;
 import org.gradle.internal.serialize.LongSerializer;
@@ -45,6 +47,7 @@ public class OutputFilesCollectionSnapshotter implements FileCollectionSnapshott
     private final IdGenerator<Long> idGenerator;
     private final TaskArtifactStateCacheAccess cacheAccess;
     private final PersistentIndexedCache<String, Long> dirIdentifierCache;
+    private final LockFreeLookup<String, Long> loadedDirIdentifiers;
 
     public OutputFilesCollectionSnapshotter(FileCollectionSnapshotter snapshotter, IdGenerator<Long> idGenerator,
                                             TaskArtifactStateCacheAccess cacheAccess) {
@@ -52,6 +55,7 @@ public class OutputFilesCollectionSnapshotter implements FileCollectionSnapshott
         this.idGenerator = idGenerator;
         this.cacheAccess = cacheAccess;
         dirIdentifierCache = cacheAccess.createCache("outputFileStates", String.class, new LongSerializer());
+        loadedDirIdentifiers = dirIdentifierCache instanceof LockFreeLookup ? Cast.<LockFreeLookup<String, Long>>uncheckedCast(dirIdentifierCache) : null;
     }
 
     public void registerSerializers(SerializerRegistry<FileCollectionSnapshot> registry) {
@@ -67,25 +71,36 @@ public class OutputFilesCollectionSnapshotter implements FileCollectionSnapshott
     public OutputFilesSnapshot snapshot(final FileCollection files) {
         final Map<String, Long> snapshotDirIds = new HashMap<String, Long>();
         final Set<File> theFiles = files.getFiles();
-        cacheAccess.useCache("create dir snapshots", new Runnable() {
-            public void run() {
-                for (File file : theFiles) {
-                    Long dirId;
-                    if (file.exists()) {
-                        dirId = dirIdentifierCache.get(file.getAbsolutePath());
-                        if (dirId == null) {
-                            dirId = idGenerator.generateId();
-                            dirIdentifierCache.put(file.getAbsolutePath(), dirId);
+        final List<File> notLoaded = new ArrayList<File>();
+        for (File file : theFiles) {
+            Long dirId = loadedDirIdentifiers == null ? null : loadedDirIdentifiers.getIfLoaded(file.getAbsolutePath());
+            if (dirId != null && file.exists()) {
+                snapshotDirIds.put(file.getAbsolutePath(), dirId);
+            } else {
+                notLoaded.add(file);
+            }
+        }
+        if (!notLoaded.isEmpty()) {
+            cacheAccess.useCache("create dir snapshots", new Runnable() {
+                public void run() {
+                    for (File file : notLoaded) {
+                        Long dirId;
+                        if (file.exists()) {
+                            dirId = dirIdentifierCache.get(file.getAbsolutePath());
+                            if (dirId == null) {
+                                dirId = idGenerator.generateId();
+                                dirIdentifierCache.put(file.getAbsolutePath(), dirId);
+                            }
+                        } else {
+                            dirIdentifierCache.remove(file.getAbsolutePath());
+                            dirId = null;
                         }
-                    } else {
-                        dirIdentifierCache.remove(file.getAbsolutePath());
-                        dirId = null;
+                        snapshotDirIds.put(file.getAbsolutePath(), dirId);
                     }
-                    snapshotDirIds.put(file.getAbsolutePath(), dirId);
-                }
 
-            }
-        });
+                }
+            });
+        }
         return new OutputFilesSnapshot(snapshotDirIds, snapshotter.snapshot(files));
     }
 
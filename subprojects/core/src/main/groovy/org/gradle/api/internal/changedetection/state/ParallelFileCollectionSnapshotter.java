@@ -0,0 +1,255 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.internal.filewatch.FileStatCache;
+import org.gradle.internal.operations.BuildOperation;
+import org.gradle.internal.operations.BuildOperationProcessor;
+import org.gradle.internal.operations.BuildOperationQueue;
+import org.gradle.internal.operations.BuildOperationWorker;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A {@link FileCollectionSnapshotter} that spreads the work of snapshotting a large collection of files across the build operation workers.
+ *
+ * <p>Snapshotting happens in stages. The files are first inspected in batches by the workers, which also pick up any file hashes already held in memory. The persistent
+ * file hash cache is then consulted for the remaining regular files in a single cache operation. The files whose cached hash is missing or out of date are then hashed in batches by the workers, and finally the new hashes are written
+ * back to the cache in a single cache operation. The workers never access the cache, so the cache lock is only held while the cache is actually being used.</p>
+ */
+public class ParallelFileCollectionSnapshotter extends DefaultFileCollectionSnapshotter {
+    public static final String TOGGLE = "org.gradle.snapshot.parallel";
+
+    private final static Logger LOGGER = Logging.getLogger(ParallelFileCollectionSnapshotter.class);
+
+    static final int BATCH_SIZE = 256;
+
+    private final CachingFileSnapshotter snapshotter;
+    private final TaskArtifactStateCacheAccess cacheAccess;
+    private final BuildOperationProcessor buildOperationProcessor;
+
+    public ParallelFileCollectionSnapshotter(CachingFileSnapshotter snapshotter, TaskArtifactStateCacheAccess cacheAccess, BuildOperationProcessor buildOperationProcessor) {
+        super(snapshotter, cacheAccess);
+        this.snapshotter = snapshotter;
+        this.cacheAccess = cacheAccess;
+        this.buildOperationProcessor = buildOperationProcessor;
+        LOGGER.info("parallel file snapshotting is enabled");
+    }
+
+    @Override
+    FileCollectionSnapshotImpl snapshotFiles(Collection<File> files) {
+        if (files.size() <= BATCH_SIZE) {
+            // Not worth the hand-off to the workers
+            return super.snapshotFiles(files);
+        }
+
+        final List<FileBatch> batches = partition(files);
+        runInParallel(batches, new InspectFiles(snapshotter));
+
+        final List<FileBatch> notLoadedBatches = new ArrayList<FileBatch>();
+        for (FileBatch batch : batches) {
+            if (batch.notLoaded) {
+                notLoadedBatches.add(batch);
+            }
+        }
+
+        final List<FileBatch> staleBatches = new ArrayList<FileBatch>();
+        if (!notLoadedBatches.isEmpty()) {
+            cacheAccess.useCache("Find cached file hashes", new Runnable() {
+                public void run() {
+                    for (FileBatch batch : notLoadedBatches) {
+                        if (batch.findCachedSnapshots(snapshotter)) {
+                            staleBatches.add(batch);
+                        }
+                    }
+                }
+            });
+        }
+
+        if (!staleBatches.isEmpty()) {
+            runInParallel(staleBatches, new HashFiles(snapshotter));
+            cacheAccess.useCache("Update file hashes", new Runnable() {
+                public void run() {
+                    for (FileBatch batch : staleBatches) {
+                        batch.cacheCalculatedSnapshots(snapshotter);
+                    }
+                }
+            });
+        }
+
+        FileCollectionSnapshotImpl.Builder builder = new FileCollectionSnapshotImpl.Builder();
+        for (FileBatch batch : batches) {
+            batch.addTo(builder);
+        }
+        return builder.build();
+    }
+
+    private static List<FileBatch> partition(Collection<File> files) {
+        List<FileBatch> batches = new ArrayList<FileBatch>(files.size() / BATCH_SIZE + 1);
+        List<File> current = new ArrayList<File>(BATCH_SIZE);
+        for (File file : files) {
+            current.add(file);
+            if (current.size() == BATCH_SIZE) {
+                batches.add(new FileBatch(current));
+                current = new ArrayList<File>(BATCH_SIZE);
+            }
+        }
+        if (!current.isEmpty()) {
+            batches.add(new FileBatch(current));
+        }
+        return batches;
+    }
+
+    private void runInParallel(List<FileBatch> batches, BuildOperationWorker<FileBatch> worker) {
+        BuildOperationQueue<FileBatch> queue = buildOperationProcessor.newQueue(worker, null);
+        for (FileBatch batch : batches) {
+            queue.add(batch);
+        }
+        queue.waitForCompletion();
+    }
+
+    /**
+     * A batch of files to snapshot. Each stage writes to its own slots in the batch, and results are published to the next stage by waiting for the completion of the
+     * build operation queue.
+     */
+    private static class FileBatch implements BuildOperation {
+        private final File[] files;
+        private final FileStatCache.FileStat.Type[] types;
+        private final long[] lengths;
+        private final long[] timestamps;
+        private final CachingFileSnapshotter.FileInfo[] snapshots;
+        private final boolean[] calculated;
+        private boolean notLoaded;
+
+        FileBatch(List<File> files) {
+            this.files = files.toArray(new File[files.size()]);
+            int count = this.files.length;
+            types = new FileStatCache.FileStat.Type[count];
+            lengths = new long[count];
+            timestamps = new long[count];
+            snapshots = new CachingFileSnapshotter.FileInfo[count];
+            calculated = new boolean[count];
+        }
+
+        public String getDescription() {
+            return String.format("snapshot %d files starting with %s", files.length, files[0]);
+        }
+
+        void inspect(CachingFileSnapshotter snapshotter) {
+            for (int i = 0; i < files.length; i++) {
+                File file = files[i];
+                FileStatCache.FileStat stat = snapshotter.stat(file);
+                types[i] = stat.getType();
+                if (types[i] == FileStatCache.FileStat.Type.File) {
+                    lengths[i] = stat.getLength();
+                    timestamps[i] = stat.getLastModified();
+                    snapshots[i] = snapshotter.findLoadedSnapshot(file, lengths[i], timestamps[i]);
+                    notLoaded |= snapshots[i] == null;
+                }
+            }
+        }
+
+        /**
+         * Looks up the cached snapshots of the regular files in this batch. Must be called while holding the cache lock.
+         *
+         * @return true when some of the files need to be hashed.
+         */
+        boolean findCachedSnapshots(CachingFileSnapshotter snapshotter) {
+            boolean stale = false;
+            for (int i = 0; i < files.length; i++) {
+                if (types[i] == FileStatCache.FileStat.Type.File && snapshots[i] == null) {
+                    snapshots[i] = snapshotter.findCachedSnapshot(files[i], lengths[i], timestamps[i]);
+                    stale |= snapshots[i] == null;
+                }
+            }
+            return stale;
+        }
+
+        void calculateSnapshots(CachingFileSnapshotter snapshotter) {
+            for (int i = 0; i < files.length; i++) {
+                if (types[i] == FileStatCache.FileStat.Type.File && snapshots[i] == null) {
+                    snapshots[i] = snapshotter.calculateSnapshot(files[i], lengths[i], timestamps[i]);
+                    calculated[i] = true;
+                }
+            }
+        }
+
+        /**
+         * Writes the snapshots calculated by this batch to the cache. Must be called while holding the cache lock.
+         */
+        void cacheCalculatedSnapshots(CachingFileSnapshotter snapshotter) {
+            for (int i = 0; i < files.length; i++) {
+                if (calculated[i]) {
+                    snapshotter.cacheSnapshot(files[i], snapshots[i]);
+                }
+            }
+        }
+
+        void addTo(FileCollectionSnapshotImpl.Builder builder) {
+            for (int i = 0; i < files.length; i++) {
+                String path = files[i].getAbsolutePath();
+                switch (types[i]) {
+                    case File:
+                        builder.addFile(path, snapshots[i].getHash());
+                        break;
+                    case Directory:
+                        builder.addDirectory(path);
+                        break;
+                    default:
+                        builder.addMissing(path);
+                }
+            }
+        }
+    }
+
+    private static class InspectFiles implements BuildOperationWorker<FileBatch> {
+        private final CachingFileSnapshotter snapshotter;
+
+        InspectFiles(CachingFileSnapshotter snapshotter) {
+            this.snapshotter = snapshotter;
+        }
+
+        public String getDisplayName() {
+            return "file inspector";
+        }
+
+        public void execute(FileBatch batch) {
+            batch.inspect(snapshotter);
+        }
+    }
+
+    private static class HashFiles implements BuildOperationWorker<FileBatch> {
+        private final CachingFileSnapshotter snapshotter;
+
+        HashFiles(CachingFileSnapshotter snapshotter) {
+            this.snapshotter = snapshotter;
+        }
+
+        public String getDisplayName() {
+            return "file hasher";
+        }
+
+        public void execute(FileBatch batch) {
+            batch.calculateSnapshots(snapshotter);
+        }
+    }
+}
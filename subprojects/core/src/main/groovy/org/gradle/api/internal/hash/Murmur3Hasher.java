@@ -0,0 +1,147 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.hash;
+
+import org.gradle.api.UncheckedIOException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Calculates the 128 bit MurmurHash3 (x64 variant) of the content of a file. This is a non-cryptographic hash, which is considerably cheaper to calculate than MD5.
+ *
+ * <p>The file is read through a direct buffer owned by the calling thread, and the hash is calculated straight from the buffer without copying the content to the heap.
+ * The result is the same as Guava's {@code Hashing.murmur3_128()}.</p>
+ *
+ * <p>This implementation is thread-safe.</p>
+ */
+public class Murmur3Hasher implements Hasher {
+    public static final String TOGGLE = "org.gradle.hash.murmur3";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private static final ThreadLocal<ByteBuffer> BUFFER = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    };
+
+    public byte[] hash(File file) {
+        try {
+            FileInputStream inputStream = new FileInputStream(file);
+            try {
+                return hash(inputStream.getChannel());
+            } finally {
+                inputStream.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Failed to create MurmurHash3 hash for file %s.", file.getAbsolutePath()), e);
+        }
+    }
+
+    private byte[] hash(FileChannel channel) throws IOException {
+        ByteBuffer buffer = BUFFER.get();
+        buffer.clear();
+        long h1 = 0;
+        long h2 = 0;
+        long length = 0;
+        while (true) {
+            int read = channel.read(buffer);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+            buffer.flip();
+            while (buffer.remaining() >= 16) {
+                h1 ^= mixK1(buffer.getLong());
+                h1 = Long.rotateLeft(h1, 27);
+                h1 += h2;
+                h1 = h1 * 5 + 0x52dce729;
+
+                h2 ^= mixK2(buffer.getLong());
+                h2 = Long.rotateLeft(h2, 31);
+                h2 += h1;
+                h2 = h2 * 5 + 0x38495ab5;
+            }
+            buffer.compact();
+        }
+
+        // Process the remaining 0 - 15 bytes
+        buffer.flip();
+        int remaining = buffer.remaining();
+        long k1 = 0;
+        long k2 = 0;
+        for (int i = remaining - 1; i >= 8; i--) {
+            k2 ^= (long) (buffer.get(i) & 0xff) << ((i - 8) * 8);
+        }
+        for (int i = Math.min(remaining, 8) - 1; i >= 0; i--) {
+            k1 ^= (long) (buffer.get(i) & 0xff) << (i * 8);
+        }
+        if (remaining > 8) {
+            h2 ^= mixK2(k2);
+        }
+        if (remaining > 0) {
+            h1 ^= mixK1(k1);
+        }
+
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+        h1 += h2;
+        h2 += h1;
+
+        byte[] result = new byte[16];
+        for (int i = 0; i < 8; i++) {
+            result[i] = (byte) (h1 >>> (i * 8));
+            result[i + 8] = (byte) (h2 >>> (i * 8));
+        }
+        return result;
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        k1 *= C2;
+        return k1;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        k2 *= C1;
+        return k2;
+    }
+
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
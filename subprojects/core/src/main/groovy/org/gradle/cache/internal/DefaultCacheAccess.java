@@ -21,17 +21,21 @@ import org.gradle.api.logging.Logging;
 import org.gradle.cache.CacheOpenException;
 import org.gradle.cache.PersistentIndexedCacheParameters;
 import org.gradle.cache.internal.btree.BTreePersistentIndexedCache;
+import org.gradle.cache.internal.btree.MappedFileBlockStore;
 import org.gradle.cache.internal.cacheops.CacheAccessOperationsStack;
 import org.gradle.cache.internal.filelock.LockOptions;
 import org.gradle.internal.Factories;
 import org.gradle.internal.Factory;
 import org.gradle.internal.UncheckedException;
 import org.gradle.internal.concurrent.CompositeStoppable;
+import org.gradle.internal.os.OperatingSystem;
 import org.gradle.internal.serialize.Serializer;
 
 import java.io.File;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -41,6 +45,24 @@ import static org.gradle.cache.internal.FileLockManager.LockMode.Shared;
 
 @ThreadSafe
 public class DefaultCacheAccess implements CacheCoordinator {
+    /**
+     * Enables compaction of the cache files when the cache is closed and no other process is waiting for it, at most once a day, and only when a file has doubled
+     * in size since it was last compacted or its entries may have become old enough to be discarded.
+     */
+    public static final String COMPACTION_TOGGLE = "org.gradle.cache.compaction";
+    /**
+     * The number of days after which cache entries that have not been used are discarded by compaction.
+     */
+    public static final String MAX_ENTRY_AGE_PROPERTY = "org.gradle.cache.compaction.maxage";
+
+    private static final long COMPACTION_INTERVAL = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * Returns true when compaction discards entries by age, so that the use of entries must be recorded even when they are served from memory.
+     */
+    public static boolean isEntryAccessRecorded() {
+        return Boolean.getBoolean(COMPACTION_TOGGLE) && Integer.getInteger(MAX_ENTRY_AGE_PROPERTY) != null;
+    }
 
     private final static Logger LOG = Logging.getLogger(DefaultCacheAccess.class);
 
@@ -51,6 +73,7 @@ public class DefaultCacheAccess implements CacheCoordinator {
     private final CacheInitializationAction initializationAction;
     private final FileAccess fileAccess = new UnitOfWorkFileAccess();
     private final Set<MultiProcessSafePersistentIndexedCache> caches = new HashSet<MultiProcessSafePersistentIndexedCache>();
+    private final Set<BTreePersistentIndexedCache<?, ?>> compactableCaches = new HashSet<BTreePersistentIndexedCache<?, ?>>();
     private final Lock lock = new ReentrantLock();
     private final Condition condition = lock.newCondition();
     private Thread owner;
@@ -159,6 +182,10 @@ public class DefaultCacheAccess implements CacheCoordinator {
                 throw new IllegalStateException(String.format("Cannot close %s as it is currently being used by another thread.", cacheDisplayName));
             }
             if (fileLock != null) {
+                // Compaction can take a while, so it is skipped when another process is waiting for the lock
+                if (!contended) {
+                    compactCaches();
+                }
                 closeFileLock();
             }
             if (cacheClosedCount != 1) {
@@ -171,6 +198,19 @@ public class DefaultCacheAccess implements CacheCoordinator {
         }
     }
 
+    private void compactCaches() {
+        for (final BTreePersistentIndexedCache<?, ?> cache : compactableCaches) {
+            if (cache.isOpen()) {
+                fileAccess.writeFile(new Runnable() {
+                    public void run() {
+                        cache.maybeCompact();
+                    }
+                });
+            }
+        }
+        compactableCaches.clear();
+    }
+
     public void useCache(String operationDisplayName, Runnable action) {
         useCache(operationDisplayName, Factories.toFactory(action));
     }
@@ -339,7 +379,32 @@ public class DefaultCacheAccess implements CacheCoordinator {
     }
 
     <K, V> BTreePersistentIndexedCache<K, V> doCreateCache(File cacheFile, Serializer<K> keySerializer, Serializer<V> valueSerializer) {
-        return new BTreePersistentIndexedCache<K, V>(cacheFile, keySerializer, valueSerializer);
+        String cacheName = cacheFile.getName().substring(0, cacheFile.getName().length() - ".bin".length());
+        // Files that are mapped into memory cannot be truncated or deleted on Windows
+        BTreePersistentIndexedCache<K, V> cache;
+        if (MappedFileBlockStore.isEnabledFor(cacheName) && !OperatingSystem.current().isWindows()) {
+            cache = new BTreePersistentIndexedCache<K, V>(cacheFile, new MappedFileBlockStore(cacheFile), keySerializer, valueSerializer, (short) 512, 512);
+        } else {
+            cache = new BTreePersistentIndexedCache<K, V>(cacheFile, keySerializer, valueSerializer);
+        }
+        if (Boolean.getBoolean(COMPACTION_TOGGLE)) {
+            Integer maxEntryAgeDays = Integer.getInteger(MAX_ENTRY_AGE_PROPERTY);
+            cache.enableCompaction(COMPACTION_INTERVAL, maxEntryAgeDays == null ? -1 : TimeUnit.DAYS.toMillis(maxEntryAgeDays));
+            lock.lock();
+            try {
+                // The cache is created again each time the lock is acquired, so forget those that have since been closed
+                Iterator<BTreePersistentIndexedCache<?, ?>> iterator = compactableCaches.iterator();
+                while (iterator.hasNext()) {
+                    if (!iterator.next().isOpen()) {
+                        iterator.remove();
+                    }
+                }
+                compactableCaches.add(cache);
+            } finally {
+                lock.unlock();
+            }
+        }
+        return cache;
     }
 
     private boolean onStartWork() {
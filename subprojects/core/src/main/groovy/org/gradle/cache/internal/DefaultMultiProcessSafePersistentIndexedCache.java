@@ -64,6 +64,15 @@ public class DefaultMultiProcessSafePersistentIndexedCache<K, V> implements Mult
         });
     }
 
+    public void entriesAccessed(final Iterable<? extends K> keys) {
+        final BTreePersistentIndexedCache<K, V> cache = getCache();
+        fileAccess.writeFile(new Runnable() {
+            public void run() {
+                cache.entriesAccessed(keys);
+            }
+        });
+    }
+
     public void onStartWork(String operationDisplayName, FileLock.State currentCacheState) {
     }
 
@@ -84,7 +93,7 @@ public class DefaultMultiProcessSafePersistentIndexedCache<K, V> implements Mult
         }
     }
 
-    private PersistentIndexedCache<K, V> getCache() {
+    private BTreePersistentIndexedCache<K, V> getCache() {
         if (cache == null) {
             // Use writeFile because the cache can internally recover from datafile
             // corruption, so we don't care at this level if it's corrupt
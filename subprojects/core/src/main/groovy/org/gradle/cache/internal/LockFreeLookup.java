@@ -0,0 +1,34 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal;
+
+import net.jcip.annotations.ThreadSafe;
+import org.gradle.api.Nullable;
+
+/**
+ * Implemented by caches that keep entries in memory, so that entries that have already been loaded can be read without locking the cache.
+ */
+@ThreadSafe
+public interface LockFreeLookup<K, V> {
+    /**
+     * Returns the value for the given key, if it has already been loaded into memory and is known to be up-to-date. Does not require the cache lock.
+     *
+     * @return the value, or null when the value must be read from the cache while holding the cache lock.
+     */
+    @Nullable
+    V getIfLoaded(K key);
+}
@@ -25,4 +25,9 @@ public interface MultiProcessSafePersistentIndexedCache<K, V> extends
      * Note: this method is called before {@link UnitOfWorkParticipant#onEndWork(org.gradle.cache.internal.FileLock.State)}.
      */
     void close(); //so that we don't have to handle IOException (do we need this?)
+
+    /**
+     * Records that the entries with the given keys have been used without being read from this cache, so that they are not discarded as unused.
+     */
+    void entriesAccessed(Iterable<? extends K> keys);
 }
\ No newline at end of file
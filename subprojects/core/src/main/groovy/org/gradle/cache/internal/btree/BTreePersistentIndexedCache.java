@@ -15,8 +15,11 @@
  */
 package org.gradle.cache.internal.btree;
 
+import com.google.common.io.Files;
 import org.gradle.api.UncheckedIOException;
 import org.gradle.cache.PersistentIndexedCache;
+import org.gradle.internal.TimeProvider;
+import org.gradle.internal.TrueTimeProvider;
 import org.gradle.internal.serialize.Serializer;
 import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
 import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
@@ -43,13 +46,23 @@ import java.util.*;
 // todo - use more efficient lookup for free block with nearest size
 public class BTreePersistentIndexedCache<K, V> implements PersistentIndexedCache<K, V> {
     private static final Logger LOGGER = LoggerFactory.getLogger(BTreePersistentIndexedCache.class);
+    private static final int COMPACTION_FLUSH_INTERVAL = 256;
+    private static final int COMPACTION_GROWTH_FACTOR = 2;
     private final File cacheFile;
     private final Serializer<K> keySerializer;
     private final Serializer<V> serializer;
     private final short maxChildIndexEntries;
     private final int minIndexChildNodes;
+    private final int maxFreeListEntries;
     private final StateCheckBlockStore store;
+    private final TimeProvider timeProvider;
     private HeaderBlock header;
+    private long compactionInterval = -1;
+    private long maxEntryAge = -1;
+    // Null when compaction is not enabled
+    private EntryAccessTimes accessTimes;
+    // When true, entries are added in key order, so index blocks are split to leave the left block full
+    private boolean appending;
 
     public BTreePersistentIndexedCache(File cacheFile, Serializer<K> keySerializer, Serializer<V> valueSerializer) {
         this(cacheFile, keySerializer, valueSerializer, (short) 512, 512);
@@ -57,12 +70,27 @@ public class BTreePersistentIndexedCache<K, V> implements PersistentIndexedCache
 
     public BTreePersistentIndexedCache(File cacheFile, Serializer<K> keySerializer, Serializer<V> valueSerializer,
                                        short maxChildIndexEntries, int maxFreeListEntries) {
+        this(cacheFile, new FileBackedBlockStore(cacheFile), keySerializer, valueSerializer, maxChildIndexEntries, maxFreeListEntries);
+    }
+
+    /**
+     * Creates a cache that stores its blocks in the given store, which must be backed by the given file.
+     */
+    public BTreePersistentIndexedCache(File cacheFile, BlockStore fileStore, Serializer<K> keySerializer, Serializer<V> valueSerializer,
+                                       short maxChildIndexEntries, int maxFreeListEntries) {
+        this(cacheFile, fileStore, keySerializer, valueSerializer, maxChildIndexEntries, maxFreeListEntries, new TrueTimeProvider());
+    }
+
+    BTreePersistentIndexedCache(File cacheFile, BlockStore fileStore, Serializer<K> keySerializer, Serializer<V> valueSerializer,
+                                short maxChildIndexEntries, int maxFreeListEntries, TimeProvider timeProvider) {
         this.cacheFile = cacheFile;
         this.keySerializer = keySerializer;
         this.serializer = valueSerializer;
         this.maxChildIndexEntries = maxChildIndexEntries;
         this.minIndexChildNodes = maxChildIndexEntries / 2;
-        BlockStore cachingStore = new CachingBlockStore(new FileBackedBlockStore(cacheFile), IndexBlock.class, FreeListBlockStore.FreeListBlock.class);
+        this.maxFreeListEntries = maxFreeListEntries;
+        this.timeProvider = timeProvider;
+        BlockStore cachingStore = new CachingBlockStore(fileStore, IndexBlock.class, FreeListBlockStore.FreeListBlock.class);
         store = new StateCheckBlockStore(new FreeListBlockStore(cachingStore, maxFreeListEntries));
         try {
             open();
@@ -76,6 +104,20 @@ public class BTreePersistentIndexedCache<K, V> implements PersistentIndexedCache
         return String.format("cache %s (%s)", cacheFile.getName(), cacheFile);
     }
 
+    /**
+     * Enables {@link #maybeCompact()} for this cache. The time of the last compaction and, when entries are discarded by age, the time each entry was last
+     * used, are kept in a separate file next to the cache file. The format of the cache file itself does not change. Only the header of that file is read here.
+     *
+     * @param compactionInterval the minimum time between compactions, in milliseconds.
+     * @param maxEntryAge entries that have not been read or written for this time, in milliseconds, are discarded by the compaction. Use a negative value to keep all entries.
+     */
+    public void enableCompaction(long compactionInterval, long maxEntryAge) {
+        this.compactionInterval = compactionInterval;
+        this.maxEntryAge = maxEntryAge;
+        accessTimes = new EntryAccessTimes(new File(cacheFile.getParentFile(), cacheFile.getName() + ".access"));
+        accessTimes.open(timeProvider.getCurrentTime(), cacheFile.length());
+    }
+
     private void open() throws Exception {
         LOGGER.debug("Opening {}", this);
         try {
@@ -116,11 +158,13 @@ public class BTreePersistentIndexedCache<K, V> implements PersistentIndexedCache
     public V get(K key) {
         try {
             try {
-                DataBlock block = header.getRoot().get(key);
-                if (block != null) {
-                    return block.getValue();
+                Lookup lookup = header.getRoot().find(key);
+                if (lookup.entry == null) {
+                    return null;
                 }
-                return null;
+                DataBlock block = store.read(lookup.entry.dataBlock, DataBlock.class);
+                entryAccessed(lookup.entry.hashCode);
+                return block.getValue();
             } catch (CorruptedCacheException e) {
                 rebuild();
                 return null;
@@ -132,11 +176,8 @@ public class BTreePersistentIndexedCache<K, V> implements PersistentIndexedCache
 
     public void put(K key, V value) {
         try {
-            MessageDigestStream digestStream = new MessageDigestStream();
-            KryoBackedEncoder encoder = new KryoBackedEncoder(digestStream);
-            keySerializer.write(encoder, key);
-            encoder.flush();
-            long hashCode = digestStream.getChecksum();
+            long hashCode = hashKey(key);
+            entryAccessed(hashCode);
             Lookup lookup = header.getRoot().find(hashCode);
             boolean needNewBlock = true;
             if (lookup.entry != null) {
@@ -163,6 +204,9 @@ public class BTreePersistentIndexedCache<K, V> implements PersistentIndexedCache
             if (lookup.entry == null) {
                 return;
             }
+            if (accessTimes != null) {
+                accessTimes.removed(lookup.entry.hashCode);
+            }
             lookup.indexBlock.remove(lookup.entry);
             DataBlock block = store.read(lookup.entry.dataBlock, DataBlock.class);
             store.remove(block);
@@ -172,6 +216,38 @@ public class BTreePersistentIndexedCache<K, V> implements PersistentIndexedCache
         }
     }
 
+    /**
+     * Records that the entries with the given keys have been used, without reading them. This is for entries that a caller has served from memory, so
+     * that compaction does not discard them as unused. Does nothing unless compaction discards entries by age.
+     */
+    public void entriesAccessed(Iterable<? extends K> keys) {
+        if (accessTimes == null || maxEntryAge < 0) {
+            return;
+        }
+        try {
+            long now = timeProvider.getCurrentTime();
+            for (K key : keys) {
+                accessTimes.accessed(hashKey(key), now);
+            }
+        } catch (Exception e) {
+            throw new UncheckedIOException(String.format("Could not record the use of entries of %s.", this), e);
+        }
+    }
+
+    private long hashKey(K key) throws Exception {
+        MessageDigestStream digestStream = new MessageDigestStream();
+        KryoBackedEncoder encoder = new KryoBackedEncoder(digestStream);
+        keySerializer.write(encoder, key);
+        encoder.flush();
+        return digestStream.getChecksum();
+    }
+
+    private void entryAccessed(long hashCode) {
+        if (accessTimes != null && maxEntryAge >= 0) {
+            accessTimes.accessed(hashCode, timeProvider.getCurrentTime());
+        }
+    }
+
     private IndexBlock load(BlockPointer pos, IndexRoot root, IndexBlock parent, int index) {
         IndexBlock block = store.read(pos, IndexBlock.class);
         block.root = root;
@@ -192,12 +268,151 @@ public class BTreePersistentIndexedCache<K, V> implements PersistentIndexedCache
     public void close() {
         LOGGER.debug("Closing {}", this);
         try {
+            if (store.isOpen() && accessTimes != null) {
+                accessTimes.save();
+            }
             store.close();
         } catch (Exception e) {
             throw new UncheckedIOException(e);
         }
     }
 
+    /**
+     * Compacts this cache when compaction is enabled, the cache has not been compacted within the compaction interval, and there is enough to reclaim: the
+     * file has grown to {@value #COMPACTION_GROWTH_FACTOR} times its length after the last compaction, or entries may have become old enough to be discarded.
+     * A failure to compact is logged. The caller must hold the lock of the cache file, and should only call this when no other process is waiting for it,
+     * as compaction may take a while.
+     */
+    public void maybeCompact() {
+        if (accessTimes == null || !store.isOpen()) {
+            return;
+        }
+        long now = timeProvider.getCurrentTime();
+        long lastCompacted = accessTimes.getLastCompacted();
+        if (lastCompacted >= now - compactionInterval) {
+            return;
+        }
+        boolean grown = cacheFile.length() >= accessTimes.getLengthAfterCompaction() * COMPACTION_GROWTH_FACTOR;
+        boolean expired = maxEntryAge >= 0 && lastCompacted < now - maxEntryAge;
+        if (!grown && !expired) {
+            return;
+        }
+        try {
+            compact(maxEntryAge);
+        } catch (UncheckedIOException e) {
+            LOGGER.warn(String.format("Could not compact %s.", this), e);
+        }
+    }
+
+    /**
+     * Rewrites the live entries of this cache into a new file, in key order and without any free space.
+     *
+     * @param maxEntryAge entries that have not been read or written for this time, in milliseconds, are discarded. Use a negative value to keep all entries.
+     * @return the number of bytes reclaimed.
+     */
+    public long compact(long maxEntryAge) {
+        try {
+            return doCompact(maxEntryAge);
+        } catch (Exception e) {
+            throw new UncheckedIOException(String.format("Could not compact %s.", this), e);
+        }
+    }
+
+    private long doCompact(long maxEntryAge) throws Exception {
+        LOGGER.debug("Compacting {}", this);
+        long now = timeProvider.getCurrentTime();
+        long minAccessTime = maxEntryAge < 0 ? Long.MIN_VALUE : now - maxEntryAge;
+        long lengthBefore = cacheFile.length();
+        File compactedFile = new File(cacheFile.getParentFile(), cacheFile.getName() + ".compact");
+        compactedFile.delete();
+        CompactionResult result = new CompactionResult(now);
+        try {
+            BTreePersistentIndexedCache<K, V> compacted = new BTreePersistentIndexedCache<K, V>(compactedFile, new FileBackedBlockStore(compactedFile), keySerializer, serializer,
+                    maxChildIndexEntries, maxFreeListEntries, timeProvider);
+            try {
+                compacted.appending = true;
+                copyTo(header.getRoot(), compacted, minAccessTime, result);
+                compacted.appending = false;
+                compacted.rebalanceRightmostBlocks();
+            } finally {
+                compacted.close();
+            }
+        } catch (CorruptedCacheException e) {
+            compactedFile.delete();
+            rebuild();
+            return 0;
+        } catch (Exception e) {
+            compactedFile.delete();
+            throw e;
+        }
+
+        store.close();
+        Files.move(compactedFile, cacheFile);
+        doOpen();
+        if (accessTimes != null) {
+            accessTimes.compacted(now, cacheFile.length(), result.accessTimes);
+            accessTimes.save();
+        }
+
+        long reclaimed = lengthBefore - cacheFile.length();
+        LOGGER.info("Compacted {}: kept {} entries, discarded {} entries not used recently, reclaimed {} bytes.", this, result.kept, result.discarded, reclaimed);
+        return reclaimed;
+    }
+
+    private void copyTo(IndexBlock current, BTreePersistentIndexedCache<K, V> target, long minAccessTime, CompactionResult result) throws Exception {
+        for (IndexEntry entry : current.entries) {
+            if (!entry.childIndexBlock.isNull()) {
+                copyTo(store.read(entry.childIndexBlock, IndexBlock.class), target, minAccessTime, result);
+            }
+            // An entry added by a version that does not record access times is treated as used now
+            Long lastAccessed = accessTimes == null ? null : accessTimes.getLastAccessed(entry.hashCode);
+            long accessTime = lastAccessed == null ? result.time : lastAccessed;
+            if (accessTime < minAccessTime) {
+                result.discarded++;
+            } else {
+                DataBlock block = store.read(entry.dataBlock, DataBlock.class);
+                target.putSerialised(entry.hashCode, block.serialisedValue);
+                result.accessTimes.put(entry.hashCode, accessTime);
+                if (++result.kept % COMPACTION_FLUSH_INTERVAL == 0) {
+                    target.store.flush();
+                }
+            }
+        }
+        if (!current.tailPos.isNull()) {
+            copyTo(store.read(current.tailPos, IndexBlock.class), target, minAccessTime, result);
+        }
+    }
+
+    /**
+     * Blocks are split so that the right block has only a single entry when appending entries, so the blocks on the right edge of the tree may have too few entries once all entries have been added.
+     */
+    private void rebalanceRightmostBlocks() throws Exception {
+        for (int depth = getRightmostPath().size() - 1; depth >= 0; depth--) {
+            List<IndexBlock> path = getRightmostPath();
+            if (depth < path.size()) {
+                path.get(depth).maybeMerge();
+            }
+        }
+    }
+
+    private List<IndexBlock> getRightmostPath() throws Exception {
+        List<IndexBlock> path = new ArrayList<IndexBlock>();
+        IndexBlock block = header.getRoot();
+        path.add(block);
+        while (!block.tailPos.isNull()) {
+            block = load(block.tailPos, block.root, block, block.entries.size());
+            path.add(block);
+        }
+        return path;
+    }
+
+    private void putSerialised(long hashCode, byte[] serialisedValue) throws Exception {
+        Lookup lookup = header.getRoot().find(hashCode);
+        DataBlock block = new DataBlock(serialisedValue);
+        store.write(block);
+        lookup.indexBlock.put(hashCode, block.getPos());
+    }
+
     public boolean isOpen() {
         return store.isOpen();
     }
@@ -205,8 +420,11 @@ public class BTreePersistentIndexedCache<K, V> implements PersistentIndexedCache
     private void rebuild() throws Exception {
         LOGGER.warn(String.format("%s is corrupt. Discarding.", this));
         store.clear();
-        close();
+        store.close();
         doOpen();
+        if (accessTimes != null) {
+            accessTimes.clear(timeProvider.getCurrentTime(), cacheFile.length());
+        }
     }
 
     public void verify() {
@@ -406,7 +624,7 @@ public class BTreePersistentIndexedCache<K, V> implements PersistentIndexedCache
 
         private void maybeSplit() throws Exception {
             if (entries.size() > maxChildIndexEntries) {
-                int splitPos = entries.size() / 2;
+                int splitPos = appending ? entries.size() - 2 : entries.size() / 2;
                 IndexEntry splitEntry = entries.remove(splitPos);
                 if (parent == null) {
                     parent = root.newRoot();
@@ -440,15 +658,6 @@ public class BTreePersistentIndexedCache<K, V> implements PersistentIndexedCache
             maybeSplit();
         }
 
-        public DataBlock get(K key) throws Exception {
-            Lookup lookup = find(key);
-            if (lookup.entry == null) {
-                return null;
-            }
-
-            return store.read(lookup.entry.dataBlock, DataBlock.class);
-        }
-
         public Lookup find(K key) throws Exception {
             MessageDigestStream digestStream = new MessageDigestStream();
             KryoBackedEncoder encoder = new KryoBackedEncoder(digestStream);
@@ -649,6 +858,11 @@ public class BTreePersistentIndexedCache<K, V> implements PersistentIndexedCache
             size = serialisedValue.length;
         }
 
+        private DataBlock(byte[] serialisedValue) {
+            this.serialisedValue = serialisedValue;
+            size = serialisedValue.length;
+        }
+
         public void setValue(V value) throws Exception {
             ByteArrayOutputStream outStr = new ByteArrayOutputStream();
             KryoBackedEncoder encoder = new KryoBackedEncoder(outStr);
@@ -697,6 +911,17 @@ public class BTreePersistentIndexedCache<K, V> implements PersistentIndexedCache
         }
     }
 
+    private static class CompactionResult {
+        final long time;
+        final Map<Long, Long> accessTimes = new HashMap<Long, Long>();
+        int kept;
+        int discarded;
+
+        CompactionResult(long time) {
+            this.time = time;
+        }
+    }
+
     private static class MessageDigestStream extends OutputStream {
         MessageDigest messageDigest;
 
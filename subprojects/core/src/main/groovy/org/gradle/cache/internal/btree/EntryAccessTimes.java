@@ -0,0 +1,208 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal.btree;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The times at which the entries of a cache were last used, and the time at which the cache was last compacted. These are kept in a file next to the
+ * cache file rather than in the cache file, so that the cache file keeps the format that other Gradle versions sharing it expect. Those versions do
+ * not update the access times, so an entry without an access time is treated as used when it is first seen.
+ *
+ * <p>The file starts with a header, followed by a log of access records. Opening only reads the header, and closing appends the entries used since.
+ * The whole log is only read when a compaction needs the access times, or when the log has grown enough to be worth rewriting.</p>
+ */
+class EntryAccessTimes {
+    private static final Logger LOGGER = LoggerFactory.getLogger(EntryAccessTimes.class);
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 4 + 8 + 8 + 4;
+    private static final int RECORD_SIZE = 8 + 8;
+    // The log is rewritten once it holds this many more records than when it was last rewritten
+    private static final int MIN_REWRITE_RECORDS = 4096;
+    private final File file;
+    // The entries used since the file was opened
+    private final Map<Long, Long> used = new HashMap<Long, Long>();
+    // The access times read from the file. Null until needed
+    private Map<Long, Long> lastAccessed;
+    private long lastCompacted;
+    private long lengthAfterCompaction;
+    private int records;
+    private int recordsAtRewrite;
+    private boolean rewrite;
+
+    EntryAccessTimes(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads the header of the file. A missing or unreadable file is started afresh, as if the cache had been compacted now.
+     *
+     * @param cacheLength the current length of the cache file.
+     */
+    void open(long now, long cacheLength) {
+        used.clear();
+        lastAccessed = null;
+        rewrite = false;
+        if (file.isFile()) {
+            try {
+                DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file), HEADER_SIZE));
+                try {
+                    if (inputStream.readInt() == VERSION) {
+                        lastCompacted = inputStream.readLong();
+                        lengthAfterCompaction = inputStream.readLong();
+                        recordsAtRewrite = inputStream.readInt();
+                        records = (int) ((file.length() - HEADER_SIZE) / RECORD_SIZE);
+                        return;
+                    }
+                } finally {
+                    inputStream.close();
+                }
+            } catch (IOException e) {
+                LOGGER.debug(String.format("Could not read %s. Discarding.", file), e);
+            }
+        }
+        reset(now, cacheLength, new HashMap<Long, Long>());
+    }
+
+    void save() {
+        if (!rewrite && records + used.size() > recordsAtRewrite * 2 + MIN_REWRITE_RECORDS) {
+            // Collapse the records of entries that were used several times
+            rewrite = true;
+        }
+        try {
+            if (rewrite) {
+                Map<Long, Long> accessTimes = getAccessTimes();
+                writeRecords(accessTimes, false);
+                records = accessTimes.size();
+                recordsAtRewrite = records;
+            } else if (!used.isEmpty()) {
+                writeRecords(used, true);
+                records += used.size();
+            }
+        } catch (IOException e) {
+            // Losing the access times only means that some entries are kept for longer
+            LOGGER.debug(String.format("Could not write %s.", file), e);
+        }
+        if (lastAccessed != null) {
+            lastAccessed.putAll(used);
+        }
+        used.clear();
+        rewrite = false;
+    }
+
+    private void writeRecords(Map<Long, Long> accessTimes, boolean append) throws IOException {
+        DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, append)));
+        try {
+            if (!append) {
+                outputStream.writeInt(VERSION);
+                outputStream.writeLong(lastCompacted);
+                outputStream.writeLong(lengthAfterCompaction);
+                outputStream.writeInt(accessTimes.size());
+            }
+            for (Map.Entry<Long, Long> entry : accessTimes.entrySet()) {
+                outputStream.writeLong(entry.getKey());
+                outputStream.writeLong(entry.getValue());
+            }
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    long getLastCompacted() {
+        return lastCompacted;
+    }
+
+    /**
+     * Returns the length of the cache file after it was last compacted.
+     */
+    long getLengthAfterCompaction() {
+        return lengthAfterCompaction;
+    }
+
+    /**
+     * Returns the time at which the given entry was last used, or null when this is not known. Reads the whole file when first called.
+     */
+    Long getLastAccessed(long hashCode) {
+        Long time = used.get(hashCode);
+        return time != null ? time : loadAccessTimes().get(hashCode);
+    }
+
+    void accessed(long hashCode, long now) {
+        if (!used.containsKey(hashCode)) {
+            used.put(hashCode, now);
+        }
+    }
+
+    void removed(long hashCode) {
+        used.remove(hashCode);
+    }
+
+    /**
+     * Replaces the access times with those of the entries kept by a compaction.
+     */
+    void compacted(long now, long cacheLength, Map<Long, Long> retained) {
+        reset(now, cacheLength, retained);
+    }
+
+    void clear(long now, long cacheLength) {
+        reset(now, cacheLength, new HashMap<Long, Long>());
+    }
+
+    private void reset(long now, long cacheLength, Map<Long, Long> accessTimes) {
+        used.clear();
+        lastAccessed = new HashMap<Long, Long>(accessTimes);
+        lastCompacted = now;
+        lengthAfterCompaction = cacheLength;
+        records = 0;
+        recordsAtRewrite = 0;
+        rewrite = true;
+    }
+
+    private Map<Long, Long> getAccessTimes() {
+        Map<Long, Long> accessTimes = new HashMap<Long, Long>(loadAccessTimes());
+        accessTimes.putAll(used);
+        return accessTimes;
+    }
+
+    private Map<Long, Long> loadAccessTimes() {
+        if (lastAccessed != null) {
+            return lastAccessed;
+        }
+        lastAccessed = new HashMap<Long, Long>();
+        try {
+            DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                inputStream.skipBytes(HEADER_SIZE);
+                // Later records are more recent
+                for (int i = 0; i < records; i++) {
+                    lastAccessed.put(inputStream.readLong(), inputStream.readLong());
+                }
+            } finally {
+                inputStream.close();
+            }
+        } catch (IOException e) {
+            LOGGER.debug(String.format("Could not read %s. Treating all entries as used now.", file), e);
+            lastAccessed.clear();
+        }
+        return lastAccessed;
+    }
+}
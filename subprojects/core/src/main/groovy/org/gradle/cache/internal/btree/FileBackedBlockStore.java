@@ -20,7 +20,6 @@ import org.gradle.internal.io.RandomAccessFileInputStream;
 import org.gradle.internal.io.RandomAccessFileOutputStream;
 
 import java.io.*;
-import java.util.zip.CRC32;
 
 public class FileBackedBlockStore implements BlockStore {
     private RandomAccessFile file;
@@ -243,67 +242,4 @@ public class FileBackedBlockStore implements BlockStore {
                     FileBackedBlockStore.this));
         }
     }
-
-    private static class Crc32InputStream extends FilterInputStream {
-        private final CRC32 checksum;
-
-        private Crc32InputStream(InputStream inputStream) {
-            super(inputStream);
-            checksum = new CRC32();
-        }
-
-        @Override
-        public int read() throws IOException {
-            int b = in.read();
-            if (b >= 0) {
-                checksum.update(b);
-            }
-            return b;
-        }
-
-        @Override
-        public int read(byte[] bytes) throws IOException {
-            int count = in.read(bytes);
-            if (count > 0) {
-                checksum.update(bytes, 0, count);
-            }
-            return count;
-        }
-
-        @Override
-        public int read(byte[] bytes, int offset, int max) throws IOException {
-            int count = in.read(bytes, offset, max);
-            if (count > 0) {
-                checksum.update(bytes, offset, count);
-            }
-            return count;
-        }
-    }
-
-    private static class Crc32OutputStream extends FilterOutputStream {
-        private final CRC32 checksum;
-
-        private Crc32OutputStream(OutputStream outputStream) {
-            super(outputStream);
-            this.checksum = new CRC32();
-        }
-
-        @Override
-        public void write(int b) throws IOException {
-            checksum.update(b);
-            out.write(b);
-        }
-
-        @Override
-        public void write(byte[] bytes) throws IOException {
-            checksum.update(bytes);
-            out.write(bytes);
-        }
-
-        @Override
-        public void write(byte[] bytes, int offset, int count) throws IOException {
-            checksum.update(bytes, offset, count);
-            out.write(bytes, offset, count);
-        }
-    }
 }
@@ -0,0 +1,398 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.cache.internal.btree;
+
+import org.gradle.api.UncheckedIOException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link BlockStore} that reads and writes blocks through memory mapped regions of the cache file, rather than seeking and reading or writing the file
+ * for each block. Payloads are read directly from the mapped regions. Uses the same file format as {@link FileBackedBlockStore}.
+ *
+ * <p>While the store is open, the file is grown a region at a time. The file is truncated to the end of the last block when the store is closed.
+ * When a store was not closed, for example because the process was killed, the zero padding is ignored when the file is opened again.</p>
+ */
+public class MappedFileBlockStore implements BlockStore {
+    /**
+     * A comma separated list of the names of the caches that should use this store, or {@code all}.
+     */
+    public static final String TOGGLE = "org.gradle.btree.mapped";
+
+    static final int DEFAULT_REGION_SIZE = 4 * 1024 * 1024;
+
+    private final File cacheFile;
+    private final int regionSize;
+    private final List<MappedByteBuffer> regions = new ArrayList<MappedByteBuffer>();
+    private RandomAccessFile file;
+    private FileChannel channel;
+    // The end of the last block written. The file may be longer than this while the store is open
+    private long length;
+    private long nextBlock;
+    private Factory factory;
+
+    public MappedFileBlockStore(File cacheFile) {
+        this(cacheFile, DEFAULT_REGION_SIZE);
+    }
+
+    MappedFileBlockStore(File cacheFile, int regionSize) {
+        this.cacheFile = cacheFile;
+        this.regionSize = regionSize;
+    }
+
+    /**
+     * Returns true when the given cache should use this store.
+     */
+    public static boolean isEnabledFor(String cacheName) {
+        String caches = System.getProperty(TOGGLE);
+        if (caches == null) {
+            return false;
+        }
+        for (String name : caches.split(",")) {
+            if (name.trim().equals("all") || name.trim().equals(cacheName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("cache '%s'", cacheFile);
+    }
+
+    public void open(Runnable runnable, Factory factory) {
+        this.factory = factory;
+        try {
+            cacheFile.getParentFile().mkdirs();
+            file = new RandomAccessFile(cacheFile, "rw");
+            channel = file.getChannel();
+            long fileLength = file.length();
+            length = fileLength == 0 ? 0 : endOfData(fileLength);
+            nextBlock = length;
+            if (length == 0) {
+                runnable.run();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the end of the last block, ignoring any zero padding left behind by a store that was not closed. Each block ends with a checksum, which is a
+     * long holding an unsigned int, so the last block ends at most a long past the last non-zero byte. Any bytes of padding kept by this are never read.
+     */
+    private long endOfData(long fileLength) throws IOException {
+        byte[] buffer = new byte[8192];
+        long end = fileLength;
+        while (end > 0) {
+            int count = (int) Math.min(buffer.length, end);
+            long start = end - count;
+            file.seek(start);
+            file.readFully(buffer, 0, count);
+            for (int i = count - 1; i >= 0; i--) {
+                if (buffer[i] != 0) {
+                    return Math.min(fileLength, start + i + 1 + Block.LONG_SIZE);
+                }
+            }
+            end = start;
+        }
+        return 0;
+    }
+
+    public void close() {
+        regions.clear();
+        try {
+            try {
+                channel.truncate(length);
+            } finally {
+                file.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void clear() {
+        regions.clear();
+        try {
+            file.setLength(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        length = 0;
+        nextBlock = 0;
+    }
+
+    public void attach(BlockPayload block) {
+        if (block.getBlock() == null) {
+            block.setBlock(new BlockImpl(block));
+        }
+    }
+
+    public void remove(BlockPayload block) {
+        BlockImpl blockImpl = (BlockImpl) block.getBlock();
+        blockImpl.detach();
+    }
+
+    public void flush() {
+    }
+
+    public <T extends BlockPayload> T readFirst(Class<T> payloadType) {
+        return read(new BlockPointer(0), payloadType);
+    }
+
+    public <T extends BlockPayload> T read(BlockPointer pos, Class<T> payloadType) {
+        assert !pos.isNull();
+        try {
+            T payload = payloadType.cast(factory.create(payloadType));
+            BlockImpl block = new BlockImpl(payload, pos);
+            block.read();
+            return payload;
+        } catch (CorruptedCacheException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void write(BlockPayload block) {
+        BlockImpl blockImpl = (BlockImpl) block.getBlock();
+        try {
+            blockImpl.write();
+        } catch (CorruptedCacheException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private long alloc(long length) {
+        long pos = nextBlock;
+        nextBlock += length;
+        return pos;
+    }
+
+    /**
+     * Returns the region containing the given position, mapping regions as required. Mapping a region past the end of the file grows the file.
+     */
+    private ByteBuffer region(long pos) throws IOException {
+        int index = (int) (pos / regionSize);
+        while (regions.size() <= index) {
+            regions.add(channel.map(FileChannel.MapMode.READ_WRITE, (long) regions.size() * regionSize, regionSize));
+        }
+        ByteBuffer region = regions.get(index).duplicate();
+        region.position((int) (pos % regionSize));
+        return region;
+    }
+
+    private void put(long pos, byte[] bytes, int offset, int count) throws IOException {
+        while (count > 0) {
+            ByteBuffer region = region(pos);
+            int chunk = Math.min(count, region.remaining());
+            region.put(bytes, offset, chunk);
+            pos += chunk;
+            offset += chunk;
+            count -= chunk;
+        }
+    }
+
+    private final class BlockImpl extends Block {
+        private static final int HEADER_SIZE = 2 + INT_SIZE;
+        private static final int TAIL_SIZE = LONG_SIZE;
+        static final int BLOCK_MARKER = 0xCC;
+
+        private BlockPointer pos;
+        private int payloadSize;
+
+        private BlockImpl(BlockPayload payload, BlockPointer pos) {
+            this(payload);
+            setPos(pos);
+        }
+
+        public BlockImpl(BlockPayload payload) {
+            super(payload);
+            pos = null;
+            payloadSize = -1;
+        }
+
+        @Override
+        public boolean hasPos() {
+            return pos != null;
+        }
+
+        @Override
+        public BlockPointer getPos() {
+            if (pos == null) {
+                pos = new BlockPointer(alloc(getSize()));
+            }
+            return pos;
+        }
+
+        @Override
+        public void setPos(BlockPointer pos) {
+            assert this.pos == null && !pos.isNull();
+            this.pos = pos;
+        }
+
+        public int getSize() {
+            if (payloadSize < 0) {
+                payloadSize = getPayload().getSize();
+            }
+            return payloadSize + HEADER_SIZE + TAIL_SIZE;
+        }
+
+        @Override
+        public void setSize(int size) {
+            int newPayloadSize = size - HEADER_SIZE - TAIL_SIZE;
+            assert newPayloadSize >= payloadSize;
+            payloadSize = newPayloadSize;
+        }
+
+        public void write() throws Exception {
+            long pos = getPos().getPos();
+
+            BlockBuffer buffer = new BlockBuffer(getSize());
+            Crc32OutputStream checkSumOutputStream = new Crc32OutputStream(buffer);
+            DataOutputStream outputStream = new DataOutputStream(checkSumOutputStream);
+
+            BlockPayload payload = getPayload();
+
+            // Write header
+            outputStream.writeByte(BLOCK_MARKER);
+            outputStream.writeByte(payload.getType());
+            outputStream.writeInt(payloadSize);
+            long finalSize = pos + HEADER_SIZE + TAIL_SIZE + payloadSize;
+
+            // Write body
+            payload.write(outputStream);
+
+            // Write checksum
+            outputStream.writeLong(checkSumOutputStream.checksum.getValue());
+            outputStream.close();
+
+            buffer.writeTo(pos);
+            length = Math.max(length, finalSize);
+        }
+
+        public void read() throws Exception {
+            long pos = getPos().getPos();
+            assert pos >= 0;
+            if (pos + HEADER_SIZE >= length) {
+                throw blockCorruptedException();
+            }
+
+            Crc32InputStream checkSumInputStream = new Crc32InputStream(new RegionInputStream(pos));
+            DataInputStream inputStream = new DataInputStream(checkSumInputStream);
+
+            BlockPayload payload = getPayload();
+
+            // Read header
+            byte type = inputStream.readByte();
+            if (type != (byte) BLOCK_MARKER) {
+                throw blockCorruptedException();
+            }
+            type = inputStream.readByte();
+            if (type != (byte) payload.getType()) {
+                throw blockCorruptedException();
+            }
+
+            // Read body
+            payloadSize = inputStream.readInt();
+            if (pos + HEADER_SIZE + TAIL_SIZE + payloadSize > length) {
+                throw blockCorruptedException();
+            }
+            payload.read(inputStream);
+
+            // Read and verify checksum
+            long actualChecksum = checkSumInputStream.checksum.getValue();
+            long checksum = inputStream.readLong();
+            if (actualChecksum != checksum) {
+                throw blockCorruptedException();
+            }
+            inputStream.close();
+        }
+
+        public RuntimeException blockCorruptedException() {
+            return new CorruptedCacheException(String.format("Corrupted %s found in %s.", this,
+                    MappedFileBlockStore.this));
+        }
+    }
+
+    /**
+     * Collects the content of a block, so that it can be copied into the mapped regions in one go.
+     */
+    private class BlockBuffer extends ByteArrayOutputStream {
+        private BlockBuffer(int size) {
+            super(size);
+        }
+
+        void writeTo(long pos) throws IOException {
+            put(pos, buf, 0, count);
+        }
+    }
+
+    /**
+     * Reads the content of the store, starting at the given position.
+     */
+    private class RegionInputStream extends InputStream {
+        private long pos;
+        private ByteBuffer region;
+
+        private RegionInputStream(long pos) {
+            this.pos = pos;
+        }
+
+        private boolean next() throws IOException {
+            if (pos >= length) {
+                return false;
+            }
+            if (region == null || !region.hasRemaining()) {
+                region = region(pos);
+                region.limit((int) Math.min(region.capacity(), region.position() + length - pos));
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!next()) {
+                return -1;
+            }
+            pos++;
+            return region.get() & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int max) throws IOException {
+            if (max == 0) {
+                return 0;
+            }
+            if (!next()) {
+                return -1;
+            }
+            int count = Math.min(max, region.remaining());
+            region.get(bytes, offset, count);
+            pos += count;
+            return count;
+        }
+    }
+}
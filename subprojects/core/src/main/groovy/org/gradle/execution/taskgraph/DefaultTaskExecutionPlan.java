@@ -54,6 +54,15 @@ import java.util.concurrent.locks.ReentrantLock;
 /**
  * A reusable implementation of TaskExecutionPlan. The {@link #addToTaskGraph(java.util.Collection)} and {@link #clear()} methods are NOT threadsafe, and callers must synchronize access to these
  * methods.
+ *
+ * <p>While executing, each task keeps a count of its dependencies that are not complete. When a task completes, the counts of the tasks that depend on it are
+ * decremented, and those that reach zero are added to the ready queue of the worker that completed the task (see {@link ReadyTaskQueues}). A ready task that
+ * cannot run because of a task that is running in the same project, or a running task with overlapping outputs, waits until that task completes. This means
+ * that finding the next task and completing a task take time proportional to the number of dependents, rather than to the size of the plan, and only as many
+ * idle workers as there are new ready tasks are woken up.</p>
+ *
+ * <p>Ready tasks are started in order of the estimated duration of the longest path of dependents that starts with them, so that long chains of tasks are
+ * started early. Durations are taken from the {@link TaskDurationHistory}, and the durations of the tasks executed by this build are recorded there.</p>
  */
 public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
 
@@ -62,12 +71,13 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
     private final static Logger LOGGER = Logging.getLogger(DefaultTaskExecutionPlan.class);
 
     private final Lock lock = new ReentrantLock();
-    private final Condition condition = lock.newCondition();
+    private final Condition workAvailable = lock.newCondition();
+    private final Condition allTasksCompleted = lock.newCondition();
     private final Set<TaskInfo> tasksInUnknownState = new LinkedHashSet<TaskInfo>();
     private final Set<TaskInfo> entryTasks = new LinkedHashSet<TaskInfo>();
     private final TaskDependencyGraph graph = new TaskDependencyGraph();
     private final LinkedHashMap<Task, TaskInfo> executionPlan = new LinkedHashMap<Task, TaskInfo>();
-    private final List<TaskInfo> executionQueue = new LinkedList<TaskInfo>();
+    private final List<TaskInfo> executionQueue = new ArrayList<TaskInfo>();
     private final List<Throwable> failures = new ArrayList<Throwable>();
     private Spec<? super Task> filter = Specs.satisfyAll();
 
@@ -80,19 +90,43 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
     private final Map<Task, Boolean> isParallelSafeCache = Maps.newIdentityHashMap();
     private boolean tasksCancelled;
 
+    // Scheduling state, set up when execution starts
+    private boolean schedulingStarted;
+    private final ReadyTaskQueues readyQueues = new ReadyTaskQueues();
+    private final Multimap<String, TaskInfo> waitingForProject = ArrayListMultimap.create();
+    private final Multimap<TaskInternal, TaskInfo> waitingForOutputs = ArrayListMultimap.create();
+    // The number of tasks that are not complete and have not been handed to a worker
+    private int tasksToSchedule;
+    // The number of tasks that are not complete
+    private int incompleteTasks;
+    // The number of tasks added to the ready queues since workers were last signalled
+    private int tasksQueued;
+    private int idleWorkers;
+
     private final boolean intraProjectParallelization;
+    private final TaskDurationHistory durationHistory;
+    private final Map<String, Long> measuredDurations = new HashMap<String, Long>();
 
-    public DefaultTaskExecutionPlan(BuildCancellationToken cancellationToken, boolean intraProjectParallelization) {
+    public DefaultTaskExecutionPlan(BuildCancellationToken cancellationToken, boolean intraProjectParallelization, TaskDurationHistory durationHistory) {
         this.cancellationToken = cancellationToken;
         this.intraProjectParallelization = intraProjectParallelization;
+        this.durationHistory = durationHistory;
 
         if (intraProjectParallelization) {
             LOGGER.info("intra project task parallelization is enabled");
         }
     }
 
+    public DefaultTaskExecutionPlan(BuildCancellationToken cancellationToken, boolean intraProjectParallelization) {
+        this(cancellationToken, intraProjectParallelization, TaskDurationHistory.NONE);
+    }
+
+    public DefaultTaskExecutionPlan(BuildCancellationToken cancellationToken, TaskDurationHistory durationHistory) {
+        this(cancellationToken, Boolean.getBoolean(INTRA_PROJECT_TOGGLE), durationHistory);
+    }
+
     public DefaultTaskExecutionPlan(BuildCancellationToken cancellationToken) {
-        this(cancellationToken, Boolean.getBoolean(INTRA_PROJECT_TOGGLE));
+        this(cancellationToken, TaskDurationHistory.NONE);
     }
 
     public void addToTaskGraph(Collection<? extends Task> tasks) {
@@ -315,6 +349,7 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
         }
         executionQueue.clear();
         executionQueue.addAll(executionPlan.values());
+        resetScheduling();
     }
 
     private void maybeRemoveProcessedShouldRunAfterEdge(Stack<GraphEdge> walkedShouldRunAfterEdges, TaskInfo taskNode) {
@@ -442,6 +477,8 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
             canonicalizedOutputCache.clear();
             isParallelSafeCache.clear();
             runningTasks.clear();
+            measuredDurations.clear();
+            resetScheduling();
         } finally {
             lock.unlock();
         }
@@ -462,42 +499,48 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
     public TaskInfo getTaskToExecute() {
         lock.lock();
         try {
+            startScheduling();
             while (true) {
                 if (cancellationToken.isCancellationRequested()) {
                     if (abortExecution()) {
                         tasksCancelled = true;
                     }
                 }
-                TaskInfo nextMatching = null;
-                boolean allTasksComplete = true;
-                Iterator<TaskInfo> iterator = executionQueue.iterator();
-                while (iterator.hasNext()) {
-                    TaskInfo taskInfo = iterator.next();
-                    allTasksComplete = allTasksComplete && taskInfo.isComplete();
-                    if (taskInfo.isReady() && taskInfo.allDependenciesComplete() && canRunWithWithCurrentlyExecutedTasks(taskInfo)) {
-                        nextMatching = taskInfo;
-                        iterator.remove();
-                        break;
-                    }
-                }
-                if (allTasksComplete) {
+                if (tasksToSchedule == 0) {
+                    signalWorkers();
                     return null;
                 }
+                TaskInfo nextMatching = readyQueues.poll();
                 if (nextMatching == null) {
+                    signalWorkers();
+                    idleWorkers++;
                     try {
-                        condition.await();
+                        workAvailable.await();
                     } catch (InterruptedException e) {
                         throw new RuntimeException(e);
+                    } finally {
+                        idleWorkers--;
                     }
+                    continue;
+                }
+                if (!nextMatching.isReady() || nextMatching.incompleteDependencies > 0) {
+                    // Skipped or a dependency was enforced since the task was queued. It is queued again when its dependencies complete
+                    nextMatching.queued = false;
+                    continue;
+                }
+                if (!canRunWithWithCurrentlyExecutedTasks(nextMatching)) {
+                    continue;
+                }
+                nextMatching.queued = false;
+                tasksToSchedule--;
+                if (nextMatching.allDependenciesSuccessful()) {
+                    nextMatching.executionStarted = System.nanoTime();
+                    nextMatching.startExecution();
+                    recordTaskStarted(nextMatching);
+                    signalWorkers();
+                    return nextMatching;
                 } else {
-                    if (nextMatching.allDependenciesSuccessful()) {
-                        nextMatching.startExecution();
-                        recordTaskStarted(nextMatching);
-                        return nextMatching;
-                    } else {
-                        nextMatching.skipExecution();
-                        condition.signalAll();
-                    }
+                    skipTask(nextMatching);
                 }
             }
         } finally {
@@ -505,16 +548,143 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
         }
     }
 
+    private void startScheduling() {
+        if (schedulingStarted) {
+            return;
+        }
+        schedulingStarted = true;
+        for (TaskInfo taskInfo : executionQueue) {
+            resetSchedulingState(taskInfo);
+            for (TaskInfo dependency : Iterables.concat(taskInfo.getMustSuccessors(), taskInfo.getDependencySuccessors())) {
+                resetSchedulingState(dependency);
+            }
+        }
+        for (int i = 0; i < executionQueue.size(); i++) {
+            executionQueue.get(i).planIndex = i;
+        }
+        for (TaskInfo taskInfo : executionQueue) {
+            for (TaskInfo dependency : Iterables.concat(taskInfo.getMustSuccessors(), taskInfo.getDependencySuccessors())) {
+                dependency.dependents.add(taskInfo);
+                if (!dependency.isComplete()) {
+                    taskInfo.incompleteDependencies++;
+                }
+            }
+            if (!taskInfo.isComplete()) {
+                tasksToSchedule++;
+                incompleteTasks++;
+            }
+        }
+        estimateCriticalPaths();
+        for (TaskInfo taskInfo : executionQueue) {
+            if (taskInfo.isReady() && taskInfo.incompleteDependencies == 0) {
+                taskInfo.queued = true;
+                readyQueues.addInitial(taskInfo);
+            }
+        }
+    }
+
+    /**
+     * Calculates the estimated duration of the longest path of dependents starting with each task. The dependents of a task are always later in the plan.
+     */
+    private void estimateCriticalPaths() {
+        List<String> taskPaths = new ArrayList<String>(executionQueue.size());
+        for (TaskInfo taskInfo : executionQueue) {
+            taskPaths.add(taskInfo.getTask().getPath());
+        }
+        Map<String, Long> durations = durationHistory.getDurations(taskPaths);
+        if (durations.isEmpty()) {
+            return;
+        }
+        for (int i = executionQueue.size() - 1; i >= 0; i--) {
+            TaskInfo taskInfo = executionQueue.get(i);
+            long longestDependentPath = 0;
+            for (TaskInfo dependent : taskInfo.dependents) {
+                longestDependentPath = Math.max(longestDependentPath, dependent.criticalPathDuration);
+            }
+            Long duration = durations.get(taskPaths.get(i));
+            taskInfo.criticalPathDuration = longestDependentPath + (duration == null ? 0 : duration);
+        }
+    }
+
+    private void resetSchedulingState(TaskInfo taskInfo) {
+        taskInfo.planIndex = -1;
+        taskInfo.incompleteDependencies = 0;
+        taskInfo.dependents.clear();
+        taskInfo.queued = false;
+        taskInfo.criticalPathDuration = 0;
+    }
+
+    private void resetScheduling() {
+        schedulingStarted = false;
+        readyQueues.clear();
+        waitingForProject.clear();
+        waitingForOutputs.clear();
+        tasksToSchedule = 0;
+        incompleteTasks = 0;
+        tasksQueued = 0;
+    }
+
+    private void maybeQueue(TaskInfo taskInfo) {
+        if (taskInfo.planIndex >= 0 && !taskInfo.queued && taskInfo.isReady() && taskInfo.incompleteDependencies == 0) {
+            taskInfo.queued = true;
+            readyQueues.add(taskInfo);
+            tasksQueued++;
+        }
+    }
+
+    private void requeue(Collection<TaskInfo> waitingTasks) {
+        for (TaskInfo taskInfo : waitingTasks) {
+            readyQueues.add(taskInfo);
+            tasksQueued++;
+        }
+    }
+
+    private void skipTask(TaskInfo taskInfo) {
+        taskInfo.skipExecution();
+        incompleteTasks--;
+        dependencyCompleted(taskInfo);
+    }
+
+    private void dependencyCompleted(TaskInfo taskInfo) {
+        for (TaskInfo dependent : taskInfo.dependents) {
+            if (--dependent.incompleteDependencies == 0) {
+                maybeQueue(dependent);
+            }
+        }
+    }
+
+    /**
+     * Wakes up as many idle workers as there are tasks queued since the last call, or all of them when there is nothing left to schedule.
+     */
+    private void signalWorkers() {
+        if (tasksToSchedule == 0) {
+            workAvailable.signalAll();
+        } else {
+            for (int i = Math.min(tasksQueued, idleWorkers); i > 0; i--) {
+                workAvailable.signal();
+            }
+        }
+        tasksQueued = 0;
+        if (incompleteTasks == 0) {
+            allTasksCompleted.signalAll();
+        }
+    }
+
+    /**
+     * Returns true when the given task can run alongside the tasks that are currently running. Otherwise, the task waits until the running task that prevents it from running completes.
+     */
     private boolean canRunWithWithCurrentlyExecutedTasks(TaskInfo taskInfo) {
         TaskInternal task = taskInfo.getTask();
         String projectPath = task.getProject().getPath();
 
         if (isParallelizable(task)) {
             if (projectsWithRunningNonParallelizableTasks.contains(projectPath)) {
+                waitingForProject.put(projectPath, taskInfo);
                 return false;
             }
         } else {
             if (projectsWithRunningTasks.contains(projectPath)) {
+                waitingForProject.put(projectPath, taskInfo);
                 return false;
             }
         }
@@ -524,6 +694,7 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
             return true;
         } else {
             LOGGER.info("Cannot execute task " + task.getPath() + " in parallel with task " + overlap.left.getPath() + " due to overlapping output: " + overlap.right);
+            waitingForOutputs.put(overlap.left, taskInfo);
         }
 
         return false;
@@ -633,6 +804,8 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
         canonicalizedOutputCache.remove(task);
         isParallelSafeCache.remove(task);
         runningTasks.remove(task);
+        requeue(waitingForProject.removeAll(projectPath));
+        requeue(waitingForOutputs.removeAll(task));
     }
 
     public void taskComplete(TaskInfo taskInfo) {
@@ -643,14 +816,25 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
                 handleFailure(taskInfo);
             }
 
+            recordDuration(taskInfo);
             taskInfo.finishExecution();
+            incompleteTasks--;
             recordTaskCompleted(taskInfo);
-            condition.signalAll();
+            dependencyCompleted(taskInfo);
+            signalWorkers();
         } finally {
             lock.unlock();
         }
     }
 
+    private void recordDuration(TaskInfo taskInfo) {
+        TaskInternal task = taskInfo.getTask();
+        // Only tasks whose actions were executed, as an up-to-date or failed execution says little about how long the task takes
+        if (task.getState().getExecuted() && !task.getState().getSkipped() && !taskInfo.isFailed()) {
+            measuredDurations.put(task.getPath(), (System.nanoTime() - taskInfo.executionStarted) / 1000000);
+        }
+    }
+
     private void enforceFinalizerTasks(TaskInfo taskInfo) {
         for (TaskInfo finalizerNode : taskInfo.getFinalizers()) {
             if (finalizerNode.isRequired() || finalizerNode.isMustNotRun()) {
@@ -663,7 +847,18 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
         for (TaskInfo dependencyNode : node.getDependencySuccessors()) {
             enforceWithDependencies(dependencyNode);
         }
-        if (node.isMustNotRun() || node.isRequired()) {
+        if (node.isMustNotRun()) {
+            node.enforceRun();
+            // The task was complete and now has to run
+            if (node.planIndex >= 0) {
+                tasksToSchedule++;
+                incompleteTasks++;
+            }
+            for (TaskInfo dependent : node.dependents) {
+                dependent.incompleteDependencies++;
+            }
+            maybeQueue(node);
+        } else if (node.isRequired()) {
             node.enforceRun();
         }
     }
@@ -693,7 +888,8 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
         boolean aborted = false;
         for (TaskInfo taskInfo : executionPlan.values()) {
             if (taskInfo.isRequired()) {
-                taskInfo.skipExecution();
+                tasksToSchedule--;
+                skipTask(taskInfo);
                 aborted = true;
             }
         }
@@ -703,13 +899,18 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
     public void awaitCompletion() {
         lock.lock();
         try {
-            while (!allTasksComplete()) {
+            startScheduling();
+            while (incompleteTasks > 0) {
                 try {
-                    condition.await();
+                    allTasksCompleted.await();
                 } catch (InterruptedException e) {
                     throw new RuntimeException(e);
                 }
             }
+            if (!measuredDurations.isEmpty()) {
+                durationHistory.recordDurations(new HashMap<String, Long>(measuredDurations));
+                measuredDurations.clear();
+            }
             rethrowFailures();
         } finally {
             lock.unlock();
@@ -731,15 +932,6 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
         throw UncheckedException.throwAsUncheckedException(failures.get(0));
     }
 
-    private boolean allTasksComplete() {
-        for (TaskInfo taskInfo : executionPlan.values()) {
-            if (!taskInfo.isComplete()) {
-                return false;
-            }
-        }
-        return true;
-    }
-
     private static class GraphEdge {
         private final TaskInfo from;
         private final TaskInfo to;
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.taskgraph;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * The tasks whose dependencies are complete, kept in a queue per worker thread. Tasks that become ready when a worker completes a task are added to the queue of
+ * that worker, and a worker that has nothing in its own queue steals from the longest queue of the other workers. Each queue puts the tasks on the longest path of
+ * dependents first, estimated from the durations of earlier executions, then orders tasks by their position in the execution plan.
+ *
+ * <p>Not thread safe. The execution plan holds its lock while using this.</p>
+ */
+class ReadyTaskQueues {
+    private static final Comparator<TaskInfo> EXECUTION_ORDER = new Comparator<TaskInfo>() {
+        public int compare(TaskInfo left, TaskInfo right) {
+            if (left.criticalPathDuration != right.criticalPathDuration) {
+                return left.criticalPathDuration > right.criticalPathDuration ? -1 : 1;
+            }
+            return left.planIndex - right.planIndex;
+        }
+    };
+
+    // The tasks that are ready when execution starts, shared by all workers
+    private final PriorityQueue<TaskInfo> initialTasks = new PriorityQueue<TaskInfo>(11, EXECUTION_ORDER);
+    private final Map<Thread, PriorityQueue<TaskInfo>> workerQueues = new HashMap<Thread, PriorityQueue<TaskInfo>>();
+
+    void addInitial(TaskInfo taskInfo) {
+        initialTasks.add(taskInfo);
+    }
+
+    /**
+     * Adds a task to the queue of the current worker.
+     */
+    void add(TaskInfo taskInfo) {
+        queueForCurrentWorker().add(taskInfo);
+    }
+
+    /**
+     * Takes the next task for the current worker: the first task from either the worker's own queue or the initial tasks, otherwise a task stolen from another worker.
+     *
+     * @return the task, or null when all queues are empty.
+     */
+    TaskInfo poll() {
+        PriorityQueue<TaskInfo> ownQueue = queueForCurrentWorker();
+        TaskInfo own = ownQueue.peek();
+        TaskInfo initial = initialTasks.peek();
+        if (own != null && (initial == null || EXECUTION_ORDER.compare(own, initial) < 0)) {
+            return ownQueue.poll();
+        }
+        if (initial != null) {
+            return initialTasks.poll();
+        }
+        PriorityQueue<TaskInfo> victim = null;
+        for (PriorityQueue<TaskInfo> queue : workerQueues.values()) {
+            if (victim == null || queue.size() > victim.size()) {
+                victim = queue;
+            }
+        }
+        return victim == null ? null : victim.poll();
+    }
+
+    void clear() {
+        initialTasks.clear();
+        workerQueues.clear();
+    }
+
+    private PriorityQueue<TaskInfo> queueForCurrentWorker() {
+        Thread worker = Thread.currentThread();
+        PriorityQueue<TaskInfo> queue = workerQueues.get(worker);
+        if (queue == null) {
+            queue = new PriorityQueue<TaskInfo>(11, EXECUTION_ORDER);
+            workerQueues.put(worker, queue);
+        }
+        return queue;
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.taskgraph;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The durations of the tasks executed by earlier builds, used to estimate how long the tasks of a build will take.
+ */
+public interface TaskDurationHistory {
+    TaskDurationHistory NONE = new TaskDurationHistory() {
+        public Map<String, Long> getDurations(Collection<String> taskPaths) {
+            return Collections.emptyMap();
+        }
+
+        public void recordDurations(Map<String, Long> durations) {
+        }
+    };
+
+    /**
+     * Returns the estimated duration in milliseconds of each of the given tasks, by task path. Tasks with no recorded duration are not included.
+     */
+    Map<String, Long> getDurations(Collection<String> taskPaths);
+
+    /**
+     * Records the durations in milliseconds of tasks that have been executed, by task path.
+     */
+    void recordDurations(Map<String, Long> durations);
+}
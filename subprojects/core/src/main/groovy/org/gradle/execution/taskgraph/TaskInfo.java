@@ -19,6 +19,8 @@ package org.gradle.execution.taskgraph;
 import com.google.common.collect.Iterables;
 import org.gradle.api.internal.TaskInternal;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.TreeSet;
 
 public class TaskInfo implements Comparable<TaskInfo> {
@@ -37,6 +39,20 @@ public class TaskInfo implements Comparable<TaskInfo> {
     private final TreeSet<TaskInfo> shouldSuccessors = new TreeSet<TaskInfo>();
     private final TreeSet<TaskInfo> finalizers = new TreeSet<TaskInfo>();
 
+    // Scheduling state, maintained by the execution plan while holding its lock
+    // The position of this task in the execution plan, or -1 when the task is not in the plan
+    int planIndex = -1;
+    // The number of dependency and must run after successors that are not complete
+    int incompleteDependencies;
+    // The tasks that have this task as a dependency or must run after successor
+    final List<TaskInfo> dependents = new ArrayList<TaskInfo>();
+    // Whether this task is in a ready queue or waiting for a running task to complete
+    boolean queued;
+    // The estimated duration of the longest path of dependents starting with this task, in milliseconds
+    long criticalPathDuration;
+    // When this task started executing, from System.nanoTime()
+    long executionStarted;
+
     public TaskInfo(TaskInternal task) {
         this.task = task;
         this.state = TaskExecutionState.UNKNOWN;
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.filewatch;
+
+import org.gradle.api.Action;
+import org.gradle.api.UncheckedIOException;
+import org.gradle.api.internal.file.FileSystemSubset;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.concurrent.CompositeStoppable;
+import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.internal.os.OperatingSystem;
+import org.gradle.util.GFileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link FileStatCache} that remembers the type, length and timestamp of each file in the watched directory trees, and uses a {@link FileWatcher} per tree to
+ * find out about changes. When anything changes in a directory, all results for the files in that directory are discarded. When a watcher fails, all results are
+ * discarded and the tree is no longer cached.
+ *
+ * <p>File system events are delivered asynchronously, so the cache may not have seen a change yet when asked for a result. When changes are expected,
+ * a cookie file is created in each watched tree and the cache waits for the event for this file to arrive. All events caused by earlier changes have been
+ * handled by then. This relies on the watcher delivering events in order, which is why only Linux is supported.</p>
+ */
+public class DefaultFileStatCache implements FileStatCache, Stoppable {
+    public static final String TOGGLE = "org.gradle.filewatch.statcache";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DefaultFileStatCache.class);
+    private static final long SYNC_TIMEOUT_SECONDS = 10;
+
+    private final FileWatcherFactory fileWatcherFactory;
+    private final boolean supported;
+    private final List<WatchedRoot> roots = new CopyOnWriteArrayList<WatchedRoot>();
+    private final Set<File> unwatchableRoots = new HashSet<File>();
+    private final ConcurrentMap<File, CachedDirectory> directories = new ConcurrentHashMap<File, CachedDirectory>();
+    private final ConcurrentMap<File, CountDownLatch> pendingCookies = new ConcurrentHashMap<File, CountDownLatch>();
+    private final AtomicLong changesExpected = new AtomicLong();
+    private final AtomicLong cookieCounter = new AtomicLong();
+    private final Object syncLock = new Object();
+    private volatile long changesSynced;
+    private boolean stopped;
+
+    public DefaultFileStatCache(FileWatcherFactory fileWatcherFactory) {
+        this(fileWatcherFactory, OperatingSystem.current());
+    }
+
+    DefaultFileStatCache(FileWatcherFactory fileWatcherFactory, OperatingSystem operatingSystem) {
+        this.fileWatcherFactory = fileWatcherFactory;
+        this.supported = operatingSystem.isLinux();
+        if (!supported) {
+            LOGGER.info("Not caching file lengths and timestamps, as file system events are not guaranteed to be ordered on {}.", operatingSystem);
+        }
+    }
+
+    public FileStat stat(File file) {
+        if (changesSynced < changesExpected.get()) {
+            sync();
+        }
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent == null || !isWatched(parent)) {
+            return FileStat.of(file);
+        }
+        CachedDirectory directory = directories.get(parent);
+        if (directory == null) {
+            directory = new CachedDirectory();
+            CachedDirectory existing = directories.putIfAbsent(parent, directory);
+            if (existing != null) {
+                directory = existing;
+            }
+        }
+
+        String name = file.getName();
+        FileStat stat = directory.files.get(name);
+        if (stat != null && directory.valid) {
+            return stat;
+        }
+        stat = FileStat.of(file);
+        if (directory.valid) {
+            // If the directory is invalidated concurrently, this entry ends up in a directory that is no longer reachable
+            directory.files.put(name, stat);
+        }
+        return stat;
+    }
+
+    public void watch(File directory) {
+        if (!supported) {
+            return;
+        }
+        File root = directory.getAbsoluteFile();
+        if (isWatched(root)) {
+            return;
+        }
+        synchronized (this) {
+            if (stopped || isWatched(root) || unwatchableRoots.contains(root)) {
+                return;
+            }
+            // Cookies are created inside the tree, so that their events are delivered by the same watcher as the events for the files in the tree
+            File cookieDir = new File(root, ".gradle");
+            try {
+                GFileUtils.mkdirs(cookieDir);
+                WatchedRoot watchedRoot = new WatchedRoot(root, cookieDir);
+                watchedRoot.watcher = fileWatcherFactory.watch(FileSystemSubset.builder().add(root).build(), watchedRoot, new FileWatcherListener() {
+                    public void onChange(FileWatcher watcher, FileWatcherEvent event) {
+                        handle(event);
+                    }
+                });
+                roots.add(watchedRoot);
+            } catch (Exception e) {
+                LOGGER.info("Could not watch {}. Not caching file lengths and timestamps for it.", root, e);
+                unwatchableRoots.add(root);
+            }
+        }
+    }
+
+    public void expectChanges() {
+        changesExpected.incrementAndGet();
+    }
+
+    public void stop() {
+        synchronized (this) {
+            stopped = true;
+        }
+        try {
+            CompositeStoppable stoppable = new CompositeStoppable();
+            for (WatchedRoot root : roots) {
+                stoppable.add(root.watcher);
+            }
+            roots.clear();
+            stoppable.stop();
+        } finally {
+            invalidateAll();
+            for (CountDownLatch latch : pendingCookies.values()) {
+                latch.countDown();
+            }
+        }
+    }
+
+    private boolean isWatched(File directory) {
+        for (WatchedRoot root : roots) {
+            if (root.contains(directory)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void handle(FileWatcherEvent event) {
+        File file = event.getFile();
+        if (file == null) {
+            invalidateAll();
+            return;
+        }
+        File parent = file.getParentFile();
+        if (parent != null) {
+            invalidate(parent);
+        }
+        // The file may be a directory that has been deleted or replaced
+        invalidate(file);
+        if (event.getType() == FileWatcherEvent.Type.CREATE) {
+            CountDownLatch latch = pendingCookies.get(file);
+            if (latch != null) {
+                latch.countDown();
+            }
+        }
+    }
+
+    private void sync() {
+        synchronized (syncLock) {
+            long expected = changesExpected.get();
+            if (changesSynced >= expected) {
+                return;
+            }
+            for (WatchedRoot root : roots) {
+                if (!syncWith(root)) {
+                    LOGGER.info("Did not receive file system events for {} in time. Discarding all cached file lengths and timestamps.", root.dir);
+                    invalidateAll();
+                }
+            }
+            changesSynced = expected;
+        }
+    }
+
+    private boolean syncWith(WatchedRoot root) {
+        File cookie = new File(root.cookieDir, "stat-cache-" + cookieCounter.incrementAndGet() + ".cookie");
+        CountDownLatch latch = new CountDownLatch(1);
+        pendingCookies.put(cookie, latch);
+        try {
+            return cookie.createNewFile() && latch.await(SYNC_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        } finally {
+            pendingCookies.remove(cookie);
+            cookie.delete();
+        }
+    }
+
+    private void invalidate(File path) {
+        CachedDirectory directory = directories.remove(path);
+        if (directory != null) {
+            directory.valid = false;
+        }
+    }
+
+    private void invalidateAll() {
+        for (File path : directories.keySet()) {
+            invalidate(path);
+        }
+    }
+
+    private class WatchedRoot implements Action<Throwable> {
+        private final File dir;
+        private final String prefix;
+        private final File cookieDir;
+        private FileWatcher watcher;
+
+        WatchedRoot(File dir, File cookieDir) {
+            this.dir = dir;
+            this.prefix = dir.getPath() + File.separator;
+            this.cookieDir = cookieDir;
+        }
+
+        boolean contains(File directory) {
+            return directory.equals(dir) || directory.getPath().startsWith(prefix);
+        }
+
+        public void execute(Throwable throwable) {
+            LOGGER.info("Stopped watching {}. Not caching file lengths and timestamps for it.", dir, throwable);
+            synchronized (DefaultFileStatCache.this) {
+                roots.remove(this);
+                unwatchableRoots.add(dir);
+            }
+            invalidateAll();
+        }
+    }
+
+    private static class CachedDirectory {
+        private final ConcurrentMap<String, FileStat> files = new ConcurrentHashMap<String, FileStat>();
+        private volatile boolean valid = true;
+    }
+}
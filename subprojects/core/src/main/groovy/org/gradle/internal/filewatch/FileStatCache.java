@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.filewatch;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.File;
+
+/**
+ * Provides the type, length and timestamp of files. An implementation may remember these values and reuse them for as long as it knows that the file has not changed.
+ */
+@ThreadSafe
+public interface FileStatCache {
+
+    /**
+     * Reads the type, length and timestamp of the file from the file system on every call.
+     */
+    FileStatCache UNCACHED = new FileStatCache() {
+        public FileStat stat(File file) {
+            return FileStat.of(file);
+        }
+
+        public void watch(File directory) {
+        }
+
+        public void expectChanges() {
+        }
+    };
+
+    /**
+     * Returns the current type, length and timestamp of the given file.
+     */
+    FileStat stat(File file);
+
+    /**
+     * Requests that the files in the given directory tree be cached. Files outside the watched directory trees are always read from the file system.
+     */
+    void watch(File directory);
+
+    /**
+     * Notifies this cache that the file system may have been changed, for example by a task that has just run.
+     * <p>
+     * The cache will catch up with all changes made before this method was called before it returns any further results.
+     */
+    void expectChanges();
+
+    class FileStat {
+        public enum Type {
+            File, Directory, Missing
+        }
+
+        private static final FileStat DIRECTORY = new FileStat(Type.Directory, 0, 0);
+        private static final FileStat MISSING = new FileStat(Type.Missing, 0, 0);
+
+        private final Type type;
+        private final long length;
+        private final long lastModified;
+
+        public FileStat(long length, long lastModified) {
+            this(Type.File, length, lastModified);
+        }
+
+        private FileStat(Type type, long length, long lastModified) {
+            this.type = type;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+        public static FileStat of(File file) {
+            if (file.isFile()) {
+                return new FileStat(file.length(), file.lastModified());
+            }
+            if (file.isDirectory()) {
+                return DIRECTORY;
+            }
+            return MISSING;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * The length of the file. Only meaningful for a regular file.
+         */
+        public long getLength() {
+            return length;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+    }
+}
@@ -44,7 +44,9 @@ import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.environment.GradleBuildEnvironment;
 import org.gradle.internal.event.DefaultListenerManager;
 import org.gradle.internal.event.ListenerManager;
+import org.gradle.internal.filewatch.DefaultFileStatCache;
 import org.gradle.internal.filewatch.DefaultFileWatcherFactory;
+import org.gradle.internal.filewatch.FileStatCache;
 import org.gradle.internal.filewatch.FileWatcherFactory;
 import org.gradle.internal.nativeintegration.ProcessEnvironment;
 import org.gradle.internal.nativeintegration.filesystem.FileSystem;
@@ -238,6 +240,14 @@ public class GlobalScopeServices {
         return new DefaultFileWatcherFactory(executorFactory);
     }
 
+    FileStatCache createFileStatCache(GradleBuildEnvironment buildEnvironment, FileWatcherFactory fileWatcherFactory) {
+        if (buildEnvironment.isLongLivingProcess() && Boolean.getBoolean(DefaultFileStatCache.TOGGLE)) {
+            LOGGER.info("File length and timestamp caching is enabled.");
+            return new DefaultFileStatCache(fileWatcherFactory);
+        }
+        return FileStatCache.UNCACHED;
+    }
+
     BuildSession createBuildSession() {
         return new DefaultBuildSession();
     }
@@ -27,6 +27,7 @@ import org.gradle.execution.*;
 import org.gradle.execution.commandline.CommandLineTaskConfigurer;
 import org.gradle.execution.commandline.CommandLineTaskParser;
 import org.gradle.execution.taskgraph.DefaultTaskGraphExecuter;
+import org.gradle.execution.taskgraph.TaskDurationHistory;
 import org.gradle.execution.taskgraph.TaskPlanExecutor;
 import org.gradle.initialization.BuildCancellationToken;
 import org.gradle.internal.concurrent.CompositeStoppable;
@@ -93,8 +94,8 @@ public class GradleScopeServices extends DefaultServiceRegistry {
         };
     }
 
-    TaskGraphExecuter createTaskGraphExecuter(ListenerManager listenerManager, TaskPlanExecutor taskPlanExecutor, BuildCancellationToken cancellationToken) {
-        return new DefaultTaskGraphExecuter(listenerManager, taskPlanExecutor, cancellationToken);
+    TaskGraphExecuter createTaskGraphExecuter(ListenerManager listenerManager, TaskPlanExecutor taskPlanExecutor, BuildCancellationToken cancellationToken, TaskDurationHistory taskDurationHistory) {
+        return new DefaultTaskGraphExecuter(listenerManager, taskPlanExecutor, cancellationToken, taskDurationHistory);
     }
 
     ServiceRegistryFactory createServiceRegistryFactory(final ServiceRegistry services) {
@@ -15,24 +15,32 @@
  */
 package org.gradle.internal.service.scopes;
 
+import org.gradle.BuildAdapter;
+import org.gradle.BuildResult;
 import org.gradle.StartParameter;
+import org.gradle.api.Task;
 import org.gradle.api.execution.TaskActionListener;
+import org.gradle.api.execution.TaskExecutionListener;
 import org.gradle.api.execution.internal.TaskInputsListener;
 import org.gradle.api.internal.changedetection.TaskArtifactStateRepository;
 import org.gradle.api.internal.changedetection.changes.DefaultTaskArtifactStateRepository;
 import org.gradle.api.internal.changedetection.changes.ShortCircuitTaskArtifactStateRepository;
 import org.gradle.api.internal.changedetection.state.*;
 import org.gradle.api.internal.hash.DefaultHasher;
+import org.gradle.api.internal.hash.Murmur3Hasher;
 import org.gradle.api.internal.tasks.TaskExecuter;
 import org.gradle.api.internal.tasks.execution.*;
 import org.gradle.api.invocation.Gradle;
+import org.gradle.api.tasks.TaskState;
 import org.gradle.cache.CacheRepository;
 import org.gradle.cache.internal.CacheDecorator;
+import org.gradle.execution.taskgraph.TaskDurationHistory;
 import org.gradle.execution.taskgraph.TaskPlanExecutor;
 import org.gradle.execution.taskgraph.TaskPlanExecutorFactory;
 import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.environment.GradleBuildEnvironment;
 import org.gradle.internal.event.ListenerManager;
+import org.gradle.internal.filewatch.FileStatCache;
 import org.gradle.internal.id.RandomLongIdGenerator;
 import org.gradle.internal.operations.BuildOperationProcessor;
 import org.gradle.internal.operations.DefaultBuildOperationProcessor;
@@ -70,22 +78,58 @@ public class TaskExecutionServices {
         );
     }
 
-    TaskArtifactStateCacheAccess createCacheAccess(Gradle gradle, CacheRepository cacheRepository, InMemoryTaskArtifactCache inMemoryTaskArtifactCache, GradleBuildEnvironment environment) {
+    TaskArtifactStateCacheAccess createCacheAccess(Gradle gradle, CacheRepository cacheRepository, final InMemoryTaskArtifactCache inMemoryTaskArtifactCache, GradleBuildEnvironment environment,
+                                                   ListenerManager listenerManager) {
         CacheDecorator decorator;
         if (environment.isLongLivingProcess()) {
             decorator = inMemoryTaskArtifactCache;
+            listenerManager.addListener(new BuildAdapter() {
+                @Override
+                public void buildFinished(BuildResult result) {
+                    inMemoryTaskArtifactCache.logStatistics();
+                }
+            });
         } else {
             decorator = new NoOpDecorator();
         }
         return new DefaultTaskArtifactStateCacheAccess(gradle, cacheRepository, decorator);
     }
 
-    FileSnapshotter createFileSnapshotter(TaskArtifactStateCacheAccess cacheAccess) {
-        return new CachingFileSnapshotter(new DefaultHasher(), cacheAccess);
+    CachingFileSnapshotter createFileSnapshotter(TaskArtifactStateCacheAccess cacheAccess, final FileStatCache statCache, ListenerManager listenerManager) {
+        // Files may have changed since the previous build, and may be changed by any task that runs, inside or outside its declared outputs.
+        // The cache catches up with the file system events before the next file is inspected, so tasks that inspect no files share a single sync
+        statCache.expectChanges();
+        listenerManager.addListener(new TaskExecutionListener() {
+            public void beforeExecute(Task task) {
+                statCache.watch(task.getProject().getRootProject().getProjectDir());
+            }
+
+            public void afterExecute(Task task, TaskState state) {
+            }
+        });
+        listenerManager.addListener(new TaskActionListener() {
+            public void beforeActions(Task task) {
+            }
+
+            public void afterActions(Task task) {
+                statCache.expectChanges();
+            }
+        });
+
+        if (Boolean.getBoolean(Murmur3Hasher.TOGGLE)) {
+            return new CachingFileSnapshotter(new Murmur3Hasher(), cacheAccess, "fileHashesMurmur3", statCache);
+        }
+        return new CachingFileSnapshotter(new DefaultHasher(), cacheAccess, "fileHashes", statCache);
     }
 
-    TaskArtifactStateRepository createTaskArtifactStateRepository(Instantiator instantiator, TaskArtifactStateCacheAccess cacheAccess, StartParameter startParameter, FileSnapshotter fileSnapshotter) {
-        FileCollectionSnapshotter fileCollectionSnapshotter = new DefaultFileCollectionSnapshotter(fileSnapshotter, cacheAccess);
+    TaskArtifactStateRepository createTaskArtifactStateRepository(Instantiator instantiator, TaskArtifactStateCacheAccess cacheAccess, StartParameter startParameter, CachingFileSnapshotter fileSnapshotter,
+                                                                  BuildOperationProcessor buildOperationProcessor) {
+        FileCollectionSnapshotter fileCollectionSnapshotter;
+        if (Boolean.getBoolean(ParallelFileCollectionSnapshotter.TOGGLE)) {
+            fileCollectionSnapshotter = new ParallelFileCollectionSnapshotter(fileSnapshotter, cacheAccess, buildOperationProcessor);
+        } else {
+            fileCollectionSnapshotter = new DefaultFileCollectionSnapshotter(fileSnapshotter, cacheAccess);
+        }
 
         FileCollectionSnapshotter outputFilesSnapshotter = new OutputFilesCollectionSnapshotter(fileCollectionSnapshotter, new RandomLongIdGenerator(), cacheAccess);
 
@@ -114,6 +158,14 @@ public class TaskExecutionServices {
         return new TaskPlanExecutorFactory(startParameter.getParallelThreadCount(), executorFactory).create();
     }
 
+    TaskDurationHistory createTaskDurationHistory(StartParameter startParameter, TaskArtifactStateCacheAccess cacheAccess) {
+        // The order of tasks is only affected by their durations when executing tasks in parallel
+        if (startParameter.getParallelThreadCount() == 0) {
+            return TaskDurationHistory.NONE;
+        }
+        return new CacheBackedTaskDurationHistory(cacheAccess);
+    }
+
     BuildOperationProcessor createBuildOperationProcessor(StartParameter startParameter, ExecutorFactory executorFactory) {
         return new DefaultBuildOperationProcessor(executorFactory, startParameter.getMaxWorkerCount());
     }
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state
+
+import org.gradle.cache.PersistentIndexedCache
+import org.gradle.execution.taskgraph.TaskDurationHistory
+import org.gradle.internal.Factory
+import spock.lang.Specification
+
+class CacheBackedTaskDurationHistoryTest extends Specification {
+    final TaskArtifactStateCacheAccess cacheAccess = Mock()
+    final PersistentIndexedCache<String, Long> durationCache = Mock()
+    TaskDurationHistory history
+
+    def setup() {
+        1 * cacheAccess.createCache("taskDurations", String, _) >> durationCache
+        _ * cacheAccess.useCache(_, _ as Factory) >> { String operation, Factory action -> action.create() }
+        _ * cacheAccess.useCache(_, _ as Runnable) >> { String operation, Runnable action -> action.run() }
+        history = new CacheBackedTaskDurationHistory(cacheAccess)
+    }
+
+    def "returns the durations of the tasks that have one"() {
+        when:
+        def durations = history.getDurations([":a", ":b"])
+
+        then:
+        durations == [":a": 12L]
+        1 * durationCache.get(":a") >> 12L
+        1 * durationCache.get(":b") >> null
+    }
+
+    def "records the average of the previous and the measured duration"() {
+        when:
+        history.recordDurations([":a": 20L, ":b": 30L])
+
+        then:
+        1 * durationCache.get(":a") >> 10L
+        1 * durationCache.put(":a", 15L)
+        1 * durationCache.get(":b") >> null
+        1 * durationCache.put(":b", 30L)
+    }
+}
@@ -18,6 +18,7 @@ package org.gradle.api.internal.changedetection.state
 
 import org.gradle.api.internal.hash.Hasher
 import org.gradle.cache.PersistentIndexedCache
+import org.gradle.internal.filewatch.FileStatCache
 import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
 import org.junit.Rule
 import spock.lang.Specification
@@ -103,4 +104,22 @@ class CachingFileSnapshotterTest extends Specification {
         1 * cache.get(file) >> new CachingFileSnapshotter.FileInfo(hash, file.length(), file.lastModified())
         0 * _._
     }
+
+    def usesLengthAndTimestampFromStatCache() {
+        given:
+        def statCache = Mock(FileStatCache)
+        1 * cacheAccess.createCache("fileHashes", _, _) >> cache
+        hasher = new CachingFileSnapshotter(target, cacheAccess, "fileHashes", statCache)
+
+        when:
+        def result = hasher.snapshot(file)
+
+        then:
+        result.hash == hash
+
+        and:
+        1 * cache.get(file) >> new CachingFileSnapshotter.FileInfo(hash, 12, 34)
+        1 * statCache.stat(file) >> new FileStatCache.FileStat(12, 34)
+        0 * _._
+    }
 }
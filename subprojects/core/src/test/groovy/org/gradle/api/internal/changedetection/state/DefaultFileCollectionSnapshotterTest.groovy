@@ -17,6 +17,7 @@ package org.gradle.api.internal.changedetection.state
 
 import org.gradle.api.file.FileCollection
 import org.gradle.api.file.FileTree
+import org.gradle.internal.filewatch.FileStatCache
 import org.gradle.internal.hash.HashUtil
 import org.gradle.test.fixtures.file.TestFile
 import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
@@ -42,6 +43,8 @@ public class DefaultFileCollectionSnapshotterTest extends Specification {
         cacheAccess.useCache(_, _) >> { String name, Runnable action ->
             action.run()
         }
+        fileSnapshotter.stat(_) >> { File file -> FileStatCache.FileStat.of(file) }
+        fileSnapshotter.findLoadedSnapshot(_, _) >> null
     }
 
     def getFilesReturnsOnlyTheFilesWhichExisted() {
@@ -342,6 +345,29 @@ public class DefaultFileCollectionSnapshotterTest extends Specification {
         0 * _
     }
 
+    def doesNotLockCacheWhenAllFileSnapshotsAreLoaded() {
+        given:
+        def fileSnapshotter = Mock(FileSnapshotter)
+        def cacheAccess = Mock(TaskArtifactStateCacheAccess)
+        def snapshotter = new DefaultFileCollectionSnapshotter(fileSnapshotter, cacheAccess)
+        TestFile file = tmpDir.createFile('file')
+        TestFile dir = tmpDir.createDir('dir')
+
+        when:
+        def snapshot = snapshotter.snapshot(files(file, dir))
+
+        then:
+        snapshot.files.files as List == [file]
+
+        and:
+        2 * fileSnapshotter.stat(_) >> { File f -> FileStatCache.FileStat.of(f) }
+        1 * fileSnapshotter.findLoadedSnapshot(file, _) >> Stub(FileSnapshot) {
+            getHash() >> [1] as byte[]
+        }
+        0 * fileSnapshotter._
+        0 * cacheAccess._
+    }
+
     private FileCollection files(File... files) {
         FileTree collection = Mock(FileTree.class)
         _ * collection.asFileTree >> collection
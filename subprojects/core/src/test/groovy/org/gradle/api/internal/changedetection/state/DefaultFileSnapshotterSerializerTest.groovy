@@ -24,15 +24,31 @@ class DefaultFileSnapshotterSerializerTest extends SerializerSpec {
 
     def "reads and writes the snapshot"() {
         when:
-        DefaultFileCollectionSnapshotter.FileCollectionSnapshotImpl out = serialize(new DefaultFileCollectionSnapshotter.FileCollectionSnapshotImpl([
-                "1": new DefaultFileCollectionSnapshotter.DirSnapshot(),
-                "2": new DefaultFileCollectionSnapshotter.MissingFileSnapshot(),
-                "3": new DefaultFileCollectionSnapshotter.FileHashSnapshot("foo".bytes)]), serializer)
+        FileCollectionSnapshotImpl out = serialize(new FileCollectionSnapshotImpl.Builder()
+                .addDirectory("1")
+                .addMissing("2")
+                .addFile("3", "foo".bytes)
+                .build(), serializer)
 
         then:
-        out.snapshots.size() == 3
-        out.snapshots['1'] instanceof DefaultFileCollectionSnapshotter.DirSnapshot
-        out.snapshots['2'] instanceof DefaultFileCollectionSnapshotter.MissingFileSnapshot
-        ((DefaultFileCollectionSnapshotter.FileHashSnapshot) out.snapshots['3']).hash == "foo".bytes
+        out.size() == 3
+        out.getKind(out.indexOf("1")) == FileCollectionSnapshotImpl.DIR
+        out.getKind(out.indexOf("2")) == FileCollectionSnapshotImpl.MISSING
+        out.getKind(out.indexOf("3")) == FileCollectionSnapshotImpl.FILE
+        out.getHash(out.indexOf("3")) == "foo".bytes
+    }
+
+    def "reads and writes paths that share prefixes"() {
+        given:
+        def builder = new FileCollectionSnapshotImpl.Builder()
+        def paths = (0..<50).collect { "/some/dir/${it % 3}/file${it}.txt".toString() }
+        paths.each { builder.addFile(it, it.bytes) }
+
+        when:
+        FileCollectionSnapshotImpl out = serialize(builder.build(), serializer)
+
+        then:
+        out.size() == 50
+        paths.every { out.getHash(out.indexOf(it)) == it.bytes }
     }
 }
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state
+
+import org.gradle.util.ChangeListener
+import spock.lang.Specification
+
+class FileCollectionSnapshotImplTest extends Specification {
+    def listener = Mock(ChangeListener)
+
+    def "finds entries by path"() {
+        given:
+        def paths = (0..<100).collect { "/root/dir${it % 7}/file${it}".toString() }
+        def builder = new FileCollectionSnapshotImpl.Builder()
+        paths.each { builder.addFile(it, [it.length()] as byte[]) }
+        def snapshot = builder.build()
+
+        expect:
+        paths.every { snapshot.getHash(snapshot.indexOf(it)) == [it.length()] as byte[] }
+        snapshot.indexOf("/") == -1
+        snapshot.indexOf("/root/dir3") == -1
+        snapshot.indexOf("/root/dir9/file") == -1
+        snapshot.getSnapshot().findSnapshot(new File(paths[42])).hash == [paths[42].length()] as byte[]
+    }
+
+    def "last entry wins when a path is added more than once"() {
+        when:
+        def snapshot = new FileCollectionSnapshotImpl.Builder()
+                .addFile("/a", [1] as byte[])
+                .addMissing("/a")
+                .addDirectory("/b")
+                .build()
+
+        then:
+        snapshot.size() == 2
+        snapshot.getKind(snapshot.indexOf("/a")) == FileCollectionSnapshotImpl.MISSING
+    }
+
+    def "reports changes in path order"() {
+        given:
+        def old = new FileCollectionSnapshotImpl.Builder()
+                .addFile("/b", [1] as byte[])
+                .addFile("/c", [1] as byte[])
+                .addDirectory("/d")
+                .build()
+        def current = new FileCollectionSnapshotImpl.Builder()
+                .addDirectory("/d")
+                .addFile("/c", [2] as byte[])
+                .addFile("/a", [1] as byte[])
+                .build()
+
+        when:
+        def changes = current.iterateChangesSince(old)
+        while (changes.next(listener)) {
+        }
+
+        then:
+        1 * listener.added("/a")
+
+        then:
+        1 * listener.removed("/b")
+
+        then:
+        1 * listener.changed("/c")
+        0 * listener._
+    }
+
+    def "merges changes into target snapshot"() {
+        given:
+        def old = new FileCollectionSnapshotImpl.Builder()
+                .addFile("/b", [1] as byte[])
+                .addFile("/c", [1] as byte[])
+                .build()
+        def current = new FileCollectionSnapshotImpl.Builder()
+                .addFile("/a", [1] as byte[])
+                .addFile("/c", [2] as byte[])
+                .build()
+        def target = new FileCollectionSnapshotImpl.Builder()
+                .addFile("/b", [1] as byte[])
+                .addFile("/c", [1] as byte[])
+                .addFile("/d", [1] as byte[])
+                .build()
+
+        when:
+        FileCollectionSnapshotImpl merged = current.changesSince(old).applyTo(target)
+
+        then:
+        merged.size() == 3
+        merged.getHash(merged.indexOf("/a")) == [1] as byte[]
+        merged.indexOf("/b") == -1
+        merged.getHash(merged.indexOf("/c")) == [2] as byte[]
+        merged.getHash(merged.indexOf("/d")) == [1] as byte[]
+    }
+}
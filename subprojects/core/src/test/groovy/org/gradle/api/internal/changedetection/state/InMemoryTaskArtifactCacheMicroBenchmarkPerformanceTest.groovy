@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state
+
+import org.gradle.cache.PersistentIndexedCacheParameters
+import org.gradle.cache.internal.CacheInitializationAction
+import org.gradle.cache.internal.DefaultCacheAccess
+import org.gradle.cache.internal.DefaultFileLockManagerTestHelper
+import org.gradle.internal.Factory
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.IgnoreIf
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+import static org.gradle.cache.internal.FileLockManager.LockMode.None
+import static org.gradle.cache.internal.filelock.LockOptionsBuilder.mode
+
+/**
+ * Reports the throughput of reading loaded entries of an in-memory task artifact cache from many threads, with and without locking the cache. Run with
+ * -Dorg.gradle.microbenchmarks=true. The numbers are only printed, as wall-clock timings are too noisy to assert on.
+ */
+@IgnoreIf({ !Boolean.getBoolean("org.gradle.microbenchmarks") })
+class InMemoryTaskArtifactCacheMicroBenchmarkPerformanceTest extends Specification {
+    static final int THREADS = 16
+    static final int KEYS = 10000
+    static final int READS_PER_THREAD = 100000
+
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+
+    def "reads loaded entries from many threads"() {
+        given:
+        def access = new DefaultCacheAccess("task history cache", tmpDir.file("lock"), tmpDir.file("cache"), DefaultFileLockManagerTestHelper.createDefaultFileLockManager(), Stub(CacheInitializationAction))
+        access.open(mode(None))
+        def cache = access.newCache(new PersistentIndexedCacheParameters<String, String>("fileHashes", String, String).cacheDecorator(new InMemoryTaskArtifactCache()))
+        def keys = (0..<KEYS).collect { "key$it".toString() }
+        access.useCache("populate cache", { keys.each { cache.put(it, it) } } as Runnable)
+
+        def misses = new AtomicInteger()
+
+        when:
+        def locked = measure(keys) { String key -> access.useCache("read", { cache.get(key) } as Factory) }
+        // Loaded entries are only served without the lock while this process holds the lock
+        def lockFree = access.useCache("read without lock", {
+            measure(keys) { String key ->
+                if (cache.getIfLoaded(key) == null) {
+                    misses.incrementAndGet()
+                }
+            }
+        } as Factory)
+        println "$THREADS threads: with cache lock ${locked} reads/s, without cache lock ${lockFree} reads/s (${String.format('%.2f', lockFree / locked)}x)"
+
+        then:
+        misses.get() == 0
+
+        cleanup:
+        access.close()
+    }
+
+    private static long measure(List<String> keys, Closure read) {
+        runThreads(keys, read)
+        long start = System.nanoTime()
+        runThreads(keys, read)
+        long elapsed = System.nanoTime() - start
+        return (long) (THREADS * READS_PER_THREAD * 1000000000L / elapsed)
+    }
+
+    private static void runThreads(List<String> keys, Closure read) {
+        def executor = Executors.newFixedThreadPool(THREADS)
+        def finished = new CountDownLatch(THREADS)
+        try {
+            THREADS.times { thread ->
+                executor.execute {
+                    try {
+                        for (int i = 0; i < READS_PER_THREAD; i++) {
+                            read(keys[(i + thread * 31) % keys.size()])
+                        }
+                    } finally {
+                        finished.countDown()
+                    }
+                }
+            }
+            finished.await()
+        } finally {
+            executor.shutdown()
+        }
+    }
+}
@@ -16,7 +16,9 @@
 
 package org.gradle.api.internal.changedetection.state
 
+import org.gradle.cache.internal.FileLock
 import org.gradle.cache.internal.MultiProcessSafePersistentIndexedCache
+import org.gradle.internal.TimeProvider
 import spock.lang.Specification
 
 class InMemoryTaskArtifactCacheTest extends Specification {
@@ -133,4 +135,166 @@ class InMemoryTaskArtifactCacheTest extends Specification {
         0 * target._
     }
 
+    def "serves loaded entries without lock only while cache is locked by this process"() {
+        given:
+        def cache = cacheFactory.decorate("path/fileSnapshots.bin", "fileSnapshots", target)
+        def state = Stub(FileLock.State)
+        cache.onStartWork("op", state)
+        target.get("key") >> "result"
+        cache.get("key")
+
+        expect:
+        cache.getIfLoaded("key") == "result"
+        cache.getIfLoaded("other") == null
+
+        when:
+        cache.onEndWork(state)
+
+        then:
+        cache.getIfLoaded("key") == null
+    }
+
+    def "does not serve loaded entries without lock when another process has updated the cache"() {
+        given:
+        def cache = cacheFactory.decorate("path/fileSnapshots.bin", "fileSnapshots", target)
+        def state = Stub(FileLock.State)
+        def updated = Stub(FileLock.State) {
+            hasBeenUpdatedSince(state) >> true
+        }
+        cache.onStartWork("op", state)
+        target.get("key") >> "result"
+        cache.get("key")
+        cache.onEndWork(state)
+
+        when:
+        cache.onStartWork("op", updated)
+
+        then:
+        cache.getIfLoaded("key") == null
+    }
+
+    def "does not serve removed entries without lock"() {
+        given:
+        def cache = cacheFactory.decorate("path/fileSnapshots.bin", "fileSnapshots", target)
+        cache.onStartWork("op", Stub(FileLock.State))
+        cache.put("key", "value")
+
+        when:
+        cache.remove("key")
+
+        then:
+        cache.getIfLoaded("key") == null
+    }
+
+    def "records use of entries served from memory at most once an hour"() {
+        given:
+        def cacheFactory = new InMemoryTaskArtifactCache(1000000, 20, true, Stub(TimeProvider) { getCurrentTime() >> 1000000L })
+        def cache = cacheFactory.decorate("path/fileSnapshots.bin", "fileSnapshots", target)
+        def state = Stub(FileLock.State)
+
+        when:
+        cache.onStartWork("op", state)
+        cache.get("key")
+        cache.get("key")
+        cache.close()
+        cache.onEndWork(state)
+
+        then:
+        1 * target.get("key") >> "result"
+        1 * target.entriesAccessed(["key"] as Set)
+        1 * target.close()
+        0 * target._
+
+        when:
+        cache.onStartWork("op", state)
+        cache.get("key")
+        cache.close()
+        cache.onEndWork(state)
+
+        then:
+        1 * target.close()
+        0 * target._
+    }
+
+    def "sizes caches by share of heap"() {
+        given:
+        def cacheFactory = new InMemoryTaskArtifactCache(1000000, 20)
+
+        expect:
+        cacheFactory.getMaximumWeight("fileHashes") == 70000
+        cacheFactory.getMaximumWeight("fileSnapshots") == 80000
+        cacheFactory.getMaximumWeight("taskArtifacts") == 20000
+    }
+
+    def "rejects cache without a share of heap"() {
+        when:
+        new InMemoryTaskArtifactCache(1000000, 20).getMaximumWeight("unknown")
+
+        then:
+        def e = thrown(IllegalArgumentException)
+        e.message == "Cannot cache 'unknown' in memory, as it has no share of the heap."
+    }
+
+    def "does not keep entries that exceed the size of the cache"() {
+        given:
+        def cacheFactory = new InMemoryTaskArtifactCache(1000000, 0)
+        def cache = cacheFactory.decorate("path/fileSnapshots.bin", "fileSnapshots", target)
+
+        when:
+        cache.get("key")
+        cache.get("key")
+
+        then:
+        2 * target.get("key") >> "result"
+
+        and:
+        cacheFactory.statistics["fileSnapshots"].evictionCount() == 2
+    }
+
+    def "keeps an entry that takes a large part of the cache"() {
+        given:
+        def cacheFactory = new InMemoryTaskArtifactCache(1000000, 20)
+        def cache = cacheFactory.decorate("path/fileSnapshots.bin", "fileSnapshots", target)
+        // About half of the 80000 bytes of the cache
+        def largeValue = "x" * 20000
+
+        when:
+        cache.get("key")
+        cache.get("key")
+
+        then:
+        1 * target.get("key") >> largeValue
+
+        and:
+        cacheFactory.statistics["fileSnapshots"].evictionCount() == 0
+    }
+
+    def "reports statistics by cache name"() {
+        given:
+        def cache = cacheFactory.decorate("path/fileSnapshots.bin", "fileSnapshots", target)
+        def childCache = cacheFactory.decorate("buildSrc/fileSnapshots.bin", "fileSnapshots", target)
+        def hashes = cacheFactory.decorate("path/fileHashes.bin", "fileHashes", target)
+        target.get(_) >> "result"
+
+        when:
+        cache.get("key")
+        cache.get("key")
+        childCache.get("key")
+        hashes.get("key")
+
+        then:
+        def statistics = cacheFactory.statistics
+        statistics.keySet() == ["fileHashes", "fileSnapshots"] as Set
+        statistics["fileSnapshots"].hitCount() == 1
+        statistics["fileSnapshots"].missCount() == 2
+        statistics["fileHashes"].missCount() == 1
+    }
+
+    def "estimates size of entries"() {
+        expect:
+        InMemoryTaskArtifactCache.EntryWeigher.estimate("abc") == 46
+        InMemoryTaskArtifactCache.EntryWeigher.estimate(12L) == 16
+        InMemoryTaskArtifactCache.EntryWeigher.estimate(new CachingFileSnapshotter.FileInfo(new byte[16], 1, 2)) == 64
+        InMemoryTaskArtifactCache.EntryWeigher.estimate(new Object()) == InMemoryTaskArtifactCache.EntryWeigher.DEFAULT_VALUE_SIZE
+    }
 }
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state
+
+import org.gradle.api.file.FileCollection
+import org.gradle.api.file.FileTree
+import org.gradle.api.internal.hash.DefaultHasher
+import org.gradle.api.internal.hash.Hasher
+import org.gradle.cache.internal.NonThreadsafeInMemoryStore
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+import org.gradle.internal.operations.BuildOperationProcessor
+import org.gradle.internal.operations.DefaultBuildOperationProcessor
+import org.gradle.test.fixtures.file.TestFile
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.gradle.util.ChangeListener
+import org.junit.Rule
+import spock.lang.Specification
+
+class ParallelFileCollectionSnapshotterTest extends Specification {
+    @Rule
+    final TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+    def hasher = Spy(DefaultHasher)
+    def cacheAccess = Stub(TaskArtifactStateCacheAccess)
+    def store = new NonThreadsafeInMemoryStore()
+    def buildOperationProcessor = new DefaultBuildOperationProcessor(new DefaultExecutorFactory(), 4)
+    def listener = Mock(ChangeListener)
+    ParallelFileCollectionSnapshotter snapshotter
+    DefaultFileCollectionSnapshotter serialSnapshotter
+
+    def setup() {
+        cacheAccess.createCache(_, _, _) >> { String name, Class type, def serializer -> store.createCache(name, type, serializer) }
+        cacheAccess.useCache(_, _) >> { String name, Runnable action -> action.run() }
+        def fileSnapshotter = new CachingFileSnapshotter(hasher, cacheAccess)
+        snapshotter = new ParallelFileCollectionSnapshotter(fileSnapshotter, cacheAccess, buildOperationProcessor)
+        serialSnapshotter = new DefaultFileCollectionSnapshotter(new CachingFileSnapshotter(new DefaultHasher(), cacheAccess), cacheAccess)
+    }
+
+    def cleanup() {
+        buildOperationProcessor.stop()
+    }
+
+    def "produces the same snapshot as the serial snapshotter"() {
+        given:
+        def files = createFiles(1000)
+        files << tmpDir.createDir("dir")
+        files << tmpDir.file("missing")
+
+        when:
+        def snapshot = snapshotter.snapshot(collection(files))
+        def serialSnapshot = serialSnapshotter.snapshot(collection(files))
+        snapshot.iterateChangesSince(serialSnapshot).next(listener)
+
+        then:
+        0 * listener._
+
+        and:
+        snapshot.files.files == files.findAll { it.file } as Set
+    }
+
+    def "hashes only those files whose cached hash is out of date"() {
+        given:
+        def files = createFiles(600)
+        def original = snapshotter.snapshot(collection(files))
+        files[10].text = "changed content"
+        files[500].text = "other changed content"
+
+        when:
+        def changes = snapshotter.snapshot(collection(files)).iterateChangesSince(original)
+        while (changes.next(listener)) {
+        }
+
+        then:
+        1 * hasher.hash(files[10])
+        1 * hasher.hash(files[500])
+        0 * hasher._
+
+        and:
+        1 * listener.changed(files[10].absolutePath)
+        1 * listener.changed(files[500].absolutePath)
+        0 * listener._
+    }
+
+    def "snapshots small collections without using workers"() {
+        given:
+        def buildOperationProcessor = Mock(BuildOperationProcessor)
+        snapshotter = new ParallelFileCollectionSnapshotter(new CachingFileSnapshotter(Stub(Hasher), cacheAccess), cacheAccess, buildOperationProcessor)
+
+        when:
+        snapshotter.snapshot(collection(createFiles(ParallelFileCollectionSnapshotter.BATCH_SIZE)))
+
+        then:
+        0 * buildOperationProcessor._
+    }
+
+    private List<TestFile> createFiles(int count) {
+        def files = []
+        count.times { i ->
+            files << tmpDir.file("files/${i % 10}/file${i}.txt").createFile().write("content $i")
+        }
+        return files
+    }
+
+    private FileCollection collection(Collection<File> files) {
+        FileTree collection = Stub(FileTree)
+        collection.asFileTree >> collection
+        collection.files >> new LinkedHashSet<File>(files)
+        return collection
+    }
+}
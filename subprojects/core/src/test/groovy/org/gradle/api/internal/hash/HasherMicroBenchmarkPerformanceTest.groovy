@@ -0,0 +1,74 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.hash
+
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.IgnoreIf
+import spock.lang.Specification
+import spock.lang.Unroll
+
+/**
+ * Reports the throughput of the file hashers. Run with -Dorg.gradle.microbenchmarks=true. The numbers are only printed, as wall-clock timings are too noisy to assert on.
+ */
+@IgnoreIf({ !Boolean.getBoolean("org.gradle.microbenchmarks") })
+class HasherMicroBenchmarkPerformanceTest extends Specification {
+    static final int WARMUP_ITERATIONS = 5
+    static final int MEASURED_ITERATIONS = 10
+
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+
+    @Unroll
+    def "hashes #fileCount files of #fileSize bytes"() {
+        given:
+        def files = (0..<fileCount).collect {
+            def file = tmpDir.file("file$it")
+            def content = new byte[fileSize]
+            new Random(it).nextBytes(content)
+            file.bytes = content
+            file
+        }
+
+        when:
+        def md5 = measure(new DefaultHasher(), files)
+        def murmur3 = measure(new Murmur3Hasher(), files)
+        println "$fileCount x $fileSize bytes: MD5 ${md5} ops/s, MurmurHash3 ${murmur3} ops/s (${String.format('%.2f', murmur3 / md5)}x)"
+
+        then:
+        noExceptionThrown()
+
+        where:
+        fileCount | fileSize
+        10000     | 100
+        5000      | 4 * 1024
+        100       | 1024 * 1024
+        5         | 20 * 1024 * 1024
+    }
+
+    private static long measure(Hasher hasher, List<File> files) {
+        WARMUP_ITERATIONS.times {
+            files.each { hasher.hash(it) }
+        }
+        long start = System.nanoTime()
+        MEASURED_ITERATIONS.times {
+            files.each { hasher.hash(it) }
+        }
+        long elapsed = System.nanoTime() - start
+        return (long) (files.size() * MEASURED_ITERATIONS * 1000000000L / elapsed)
+    }
+}
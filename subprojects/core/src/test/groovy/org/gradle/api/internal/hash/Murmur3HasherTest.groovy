@@ -0,0 +1,68 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.hash
+
+import com.google.common.hash.Hashing
+import org.gradle.api.UncheckedIOException
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class Murmur3HasherTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+    def hasher = new Murmur3Hasher()
+
+    @Unroll
+    def "calculates same hash as guava for file of #size bytes"() {
+        given:
+        def content = new byte[size]
+        new Random(size).nextBytes(content)
+        def file = tmpDir.file("file")
+        file.bytes = content
+
+        expect:
+        hasher.hash(file) == Hashing.murmur3_128().hashBytes(content).asBytes()
+
+        where:
+        size << [0, 1, 8, 9, 15, 16, 17, 100, 65535, 65536, 65537, 300000]
+    }
+
+    def "hashes differ for different content"() {
+        given:
+        def file1 = tmpDir.file("file1")
+        def file2 = tmpDir.file("file2")
+        file1.text = "some content"
+        file2.text = "some other content"
+
+        expect:
+        hasher.hash(file1) != hasher.hash(file2)
+    }
+
+    def "reports missing file"() {
+        given:
+        def file = tmpDir.file("missing")
+
+        when:
+        hasher.hash(file)
+
+        then:
+        UncheckedIOException e = thrown()
+        e.message == "Failed to create MurmurHash3 hash for file ${file.absolutePath}."
+    }
+}
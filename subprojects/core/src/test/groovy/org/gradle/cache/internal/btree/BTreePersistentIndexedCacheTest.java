@@ -15,6 +15,8 @@
  */
 package org.gradle.cache.internal.btree;
 
+import com.google.common.io.Files;
+import org.gradle.internal.TimeProvider;
 import org.gradle.internal.serialize.DefaultSerializer;
 import org.gradle.internal.serialize.Serializer;
 import org.gradle.test.fixtures.file.TestFile;
@@ -28,6 +30,8 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.util.*;
 
+import static java.util.concurrent.TimeUnit.DAYS;
+import static java.util.concurrent.TimeUnit.HOURS;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
@@ -319,6 +323,206 @@ public class BTreePersistentIndexedCacheTest {
         return added;
     }
 
+    @Test
+    public void compactionReclaimsSpaceOfRemovedAndUpdatedEntries() {
+        createCache();
+        for (int i = 0; i < 100; i++) {
+            cache.put(String.format("key_%d", i), i);
+        }
+        for (int i = 0; i < 100; i += 2) {
+            cache.remove(String.format("key_%d", i));
+        }
+        cache.put("key_1", Integer.MAX_VALUE);
+        long lengthBefore = cacheFile.length();
+
+        long reclaimed = cache.compact(-1);
+
+        assertThat(reclaimed, greaterThan(0L));
+        assertThat(cacheFile.length(), equalTo(lengthBefore - reclaimed));
+        assertThat(cache.get("key_1"), equalTo(Integer.MAX_VALUE));
+        for (int i = 3; i < 100; i += 2) {
+            assertThat(cache.get(String.format("key_%d", i)), equalTo(i));
+        }
+        for (int i = 0; i < 100; i += 2) {
+            assertNull(cache.get(String.format("key_%d", i)));
+        }
+        cache.put("key_0", 0);
+        assertThat(cache.get("key_0"), equalTo(0));
+        verifyAndCloseCache();
+
+        createCache();
+        assertThat(cache.get("key_99"), equalTo(99));
+        verifyAndCloseCache();
+    }
+
+    @Test
+    public void compactionDiscardsEntriesThatHaveNotBeenUsedRecently() {
+        ControlledTimeProvider timeProvider = new ControlledTimeProvider();
+        createCache(timeProvider);
+        cache.enableCompaction(DAYS.toMillis(1), HOURS.toMillis(8));
+        cache.put("used", 1);
+        cache.put("updated", 2);
+        cache.put("unused", 3);
+
+        timeProvider.advance(HOURS.toMillis(10));
+        cache.get("used");
+        cache.put("updated", 4);
+        cache.close();
+
+        createCache(timeProvider);
+        cache.enableCompaction(DAYS.toMillis(1), HOURS.toMillis(8));
+        timeProvider.advance(HOURS.toMillis(5));
+        cache.compact(HOURS.toMillis(8));
+
+        assertThat(cache.get("used"), equalTo(1));
+        assertThat(cache.get("updated"), equalTo(4));
+        assertNull(cache.get("unused"));
+        verifyAndCloseCache();
+    }
+
+    @Test
+    public void compactionKeepsEntriesWhoseUseWasRecorded() {
+        ControlledTimeProvider timeProvider = new ControlledTimeProvider();
+        createCache(timeProvider);
+        cache.enableCompaction(DAYS.toMillis(1), HOURS.toMillis(8));
+        cache.put("served from memory", 1);
+        cache.put("unused", 2);
+        cache.close();
+
+        createCache(timeProvider);
+        cache.enableCompaction(DAYS.toMillis(1), HOURS.toMillis(8));
+        timeProvider.advance(HOURS.toMillis(10));
+        cache.entriesAccessed(Collections.singleton("served from memory"));
+        cache.close();
+
+        createCache(timeProvider);
+        cache.enableCompaction(DAYS.toMillis(1), HOURS.toMillis(8));
+        timeProvider.advance(HOURS.toMillis(5));
+        cache.compact(HOURS.toMillis(8));
+        assertThat(cache.get("served from memory"), equalTo(1));
+        assertNull(cache.get("unused"));
+        verifyAndCloseCache();
+    }
+
+    @Test
+    public void compactionKeepsEntriesWithoutAccessTime() {
+        ControlledTimeProvider timeProvider = new ControlledTimeProvider();
+        createCache(timeProvider);
+        cache.enableCompaction(DAYS.toMillis(1), HOURS.toMillis(8));
+        cache.put("known", 1);
+        cache.close();
+
+        // Added by a version that does not record access times
+        createCache(timeProvider);
+        cache.put("unknown", 2);
+        cache.close();
+
+        createCache(timeProvider);
+        cache.enableCompaction(DAYS.toMillis(1), HOURS.toMillis(8));
+        timeProvider.advance(HOURS.toMillis(10));
+        cache.compact(HOURS.toMillis(8));
+        assertNull(cache.get("known"));
+        assertThat(cache.get("unknown"), equalTo(2));
+        verifyAndCloseCache();
+    }
+
+    @Test
+    public void doesNotChangeFormatOfCacheFileWhenCompactionIsEnabled() throws IOException {
+        ControlledTimeProvider timeProvider = new ControlledTimeProvider();
+        TestFile otherFile = tmpDir.file("other.bin");
+        BTreePersistentIndexedCache<String, Integer> other = new BTreePersistentIndexedCache<String, Integer>(otherFile, new FileBackedBlockStore(otherFile), stringSerializer,
+                integerSerializer, (short) 4, 100, timeProvider);
+        createCache(timeProvider);
+        cache.enableCompaction(DAYS.toMillis(1), HOURS.toMillis(8));
+        for (int i = 0; i < 20; i++) {
+            cache.put(String.format("key_%d", i), i);
+            other.put(String.format("key_%d", i), i);
+            timeProvider.advance(HOURS.toMillis(2));
+            cache.get("key_0");
+            other.get("key_0");
+        }
+        cache.close();
+        other.close();
+
+        assertThat(Files.equal(cacheFile, otherFile), equalTo(true));
+        assertThat(tmpDir.file("cache.bin.access").isFile(), equalTo(true));
+        assertThat(tmpDir.file("other.bin.access").exists(), equalTo(false));
+    }
+
+    @Test
+    public void compactsWhenNotCompactedRecently() {
+        ControlledTimeProvider timeProvider = new ControlledTimeProvider();
+        createCache(timeProvider);
+        cache.enableCompaction(DAYS.toMillis(1), -1);
+        for (int i = 0; i < 20; i++) {
+            cache.put(String.format("key_%d", i), i);
+        }
+        for (int i = 1; i < 20; i++) {
+            cache.remove(String.format("key_%d", i));
+        }
+        cache.maybeCompact();
+        cache.close();
+        long lengthBefore = cacheFile.length();
+
+        createCache(timeProvider);
+        cache.enableCompaction(DAYS.toMillis(1), -1);
+        timeProvider.advance(DAYS.toMillis(2));
+        cache.close();
+        assertThat(cacheFile.length(), equalTo(lengthBefore));
+
+        createCache(timeProvider);
+        cache.enableCompaction(DAYS.toMillis(1), -1);
+        cache.maybeCompact();
+        assertThat(cacheFile.length(), lessThan(lengthBefore));
+        assertThat(cache.get("key_0"), equalTo(0));
+        verifyAndCloseCache();
+    }
+
+    @Test
+    public void doesNotCompactWhenFileHasNotGrownAndNoEntryMayHaveExpired() {
+        ControlledTimeProvider timeProvider = new ControlledTimeProvider();
+        createCache(timeProvider);
+        for (int i = 0; i < 20; i++) {
+            cache.put(String.format("key_%d", i), i);
+        }
+        cache.close();
+
+        createCache(timeProvider);
+        cache.enableCompaction(DAYS.toMillis(1), -1);
+        cache.remove("key_1");
+        cache.close();
+        long lengthBefore = cacheFile.length();
+
+        createCache(timeProvider);
+        cache.enableCompaction(DAYS.toMillis(1), -1);
+        timeProvider.advance(DAYS.toMillis(2));
+        cache.maybeCompact();
+        assertThat(cacheFile.length(), equalTo(lengthBefore));
+        cache.close();
+
+        createCache(timeProvider);
+        cache.enableCompaction(DAYS.toMillis(1), DAYS.toMillis(1));
+        cache.maybeCompact();
+        assertThat(cacheFile.length(), lessThan(lengthBefore));
+        verifyAndCloseCache();
+    }
+
+    private void createCache(TimeProvider timeProvider) {
+        cache = new BTreePersistentIndexedCache<String, Integer>(cacheFile, new FileBackedBlockStore(cacheFile), stringSerializer, integerSerializer, (short) 4, 100, timeProvider);
+    }
+
+    private static class ControlledTimeProvider implements TimeProvider {
+        private long time = 1000000L;
+
+        public long getCurrentTime() {
+            return time;
+        }
+
+        void advance(long millis) {
+            time += millis;
+        }
+    }
+
     private void checkAddsAndRemoves(Integer... values) {
         checkAddsAndRemoves(null, values);
     }
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.cache.internal.btree;
+
+import com.google.common.io.Files;
+import org.gradle.internal.serialize.DefaultSerializer;
+import org.gradle.internal.serialize.Serializer;
+import org.gradle.test.fixtures.file.TestFile;
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class MappedFileBlockStoreTest {
+    // Small enough that blocks span several regions
+    private static final int REGION_SIZE = 64;
+
+    @Rule
+    public TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider();
+    private final Serializer<String> stringSerializer = new DefaultSerializer<String>();
+    private final Serializer<Integer> integerSerializer = new DefaultSerializer<Integer>();
+
+    private BTreePersistentIndexedCache<String, Integer> createCache(TestFile cacheFile, boolean mapped) {
+        BlockStore store = mapped ? new MappedFileBlockStore(cacheFile, REGION_SIZE) : new FileBackedBlockStore(cacheFile);
+        return new BTreePersistentIndexedCache<String, Integer>(cacheFile, store, stringSerializer, integerSerializer, (short) 4, 100);
+    }
+
+    @Test
+    public void persistsEntries() {
+        TestFile cacheFile = tmpDir.file("cache.bin");
+        BTreePersistentIndexedCache<String, Integer> cache = createCache(cacheFile, true);
+        for (int i = 0; i < 100; i++) {
+            cache.put("key" + i, i);
+        }
+        cache.remove("key50");
+        cache.verify();
+        cache.close();
+
+        cache = createCache(cacheFile, true);
+        for (int i = 0; i < 100; i++) {
+            assertThat(cache.get("key" + i), equalTo(i == 50 ? null : i));
+        }
+        cache.verify();
+        cache.close();
+    }
+
+    @Test
+    public void writesSameFileContentAsFileBackedStore() throws IOException {
+        TestFile mappedFile = tmpDir.file("mapped.bin");
+        TestFile file = tmpDir.file("file.bin");
+        BTreePersistentIndexedCache<String, Integer> mappedCache = createCache(mappedFile, true);
+        BTreePersistentIndexedCache<String, Integer> cache = createCache(file, false);
+        for (int i = 0; i < 100; i++) {
+            mappedCache.put("key" + i, i);
+            cache.put("key" + i, i);
+        }
+        for (int i = 0; i < 100; i += 3) {
+            mappedCache.remove("key" + i);
+            cache.remove("key" + i);
+        }
+        mappedCache.close();
+        cache.close();
+
+        assertThat(Files.toByteArray(mappedFile), equalTo(Files.toByteArray(file)));
+    }
+
+    @Test
+    public void canReadFileWrittenByFileBackedStoreAndViceVersa() {
+        TestFile cacheFile = tmpDir.file("cache.bin");
+        BTreePersistentIndexedCache<String, Integer> cache = createCache(cacheFile, false);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.close();
+
+        cache = createCache(cacheFile, true);
+        assertThat(cache.get("a"), equalTo(1));
+        cache.put("b", 3);
+        cache.put("c", 4);
+        cache.close();
+
+        cache = createCache(cacheFile, false);
+        assertThat(cache.get("a"), equalTo(1));
+        assertThat(cache.get("b"), equalTo(3));
+        assertThat(cache.get("c"), equalTo(4));
+        cache.verify();
+        cache.close();
+    }
+
+    @Test
+    public void rebuildsCorruptedCacheFile() throws IOException {
+        TestFile cacheFile = tmpDir.file("cache.bin");
+        BTreePersistentIndexedCache<String, Integer> cache = createCache(cacheFile, true);
+        cache.put("a", 1);
+        cache.close();
+
+        RandomAccessFile file = new RandomAccessFile(cacheFile, "rw");
+        file.setLength(file.length() - 10);
+        file.close();
+
+        cache = createCache(cacheFile, true);
+        assertThat(cache.get("a"), nullValue());
+        cache.put("b", 2);
+        cache.close();
+
+        cache = createCache(cacheFile, true);
+        assertThat(cache.get("b"), equalTo(2));
+        cache.verify();
+        cache.close();
+    }
+
+    @Test
+    public void ignoresPaddingOfStoreThatWasNeverClosed() throws IOException {
+        TestFile mappedFile = tmpDir.file("mapped.bin");
+        TestFile file = tmpDir.file("file.bin");
+        BTreePersistentIndexedCache<String, Integer> neverClosed = createCache(mappedFile, true);
+        BTreePersistentIndexedCache<String, Integer> cache = createCache(file, false);
+        for (int i = 0; i < 20; i++) {
+            neverClosed.put("key" + i, i);
+            cache.put("key" + i, i);
+        }
+        cache.close();
+        assertThat(mappedFile.length() % REGION_SIZE, equalTo(0L));
+
+        BTreePersistentIndexedCache<String, Integer> reopened = createCache(mappedFile, true);
+        cache = createCache(file, false);
+        for (int i = 0; i < 20; i++) {
+            assertThat(reopened.get("key" + i), equalTo(i));
+        }
+        for (int i = 20; i < 40; i++) {
+            reopened.put("key" + i, i);
+            cache.put("key" + i, i);
+        }
+        reopened.verify();
+        reopened.close();
+        cache.close();
+
+        // Up to a long of the padding may be kept after the last block
+        assertThat(mappedFile.length(), lessThanOrEqualTo(file.length() + Block.LONG_SIZE));
+        reopened = createCache(mappedFile, true);
+        for (int i = 0; i < 40; i++) {
+            assertThat(reopened.get("key" + i), equalTo(i));
+        }
+        reopened.close();
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.taskgraph
+
+import org.gradle.api.Task
+import org.gradle.initialization.BuildCancellationToken
+import spock.lang.IgnoreIf
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+import static org.gradle.util.TestUtil.createChildProject
+import static org.gradle.util.TestUtil.createRootProject
+
+/**
+ * Measures the time taken to schedule the tasks of a large graph of tasks that do no work. Run with -Dorg.gradle.microbenchmarks=true.
+ */
+@IgnoreIf({ !Boolean.getBoolean("org.gradle.microbenchmarks") })
+class DefaultTaskExecutionPlanMicroBenchmarkPerformanceTest extends Specification {
+    static final int PROJECTS = 500
+    static final int TASKS_PER_PROJECT = 200
+
+    @Unroll
+    def "schedules #tasks tasks using #workers workers"() {
+        given:
+        def executionPlan = new DefaultTaskExecutionPlan(Stub(BuildCancellationToken))
+        executionPlan.addToTaskGraph(createTasks())
+        executionPlan.determineExecutionPlan()
+        def executed = new AtomicInteger()
+
+        when:
+        long start = System.nanoTime()
+        runWorkers(executionPlan, workers, executed)
+        executionPlan.awaitCompletion()
+        long elapsed = System.nanoTime() - start
+        println "${workers} workers: scheduled ${executed.get()} tasks in ${(long) (elapsed / 1000000)}ms"
+
+        then:
+        executed.get() == tasks
+
+        where:
+        tasks = PROJECTS * TASKS_PER_PROJECT
+        workers << [1, 4, 16]
+    }
+
+    private static List<Task> createTasks() {
+        def root = createRootProject()
+        def random = new Random(1)
+        List<Task> tasks = []
+        PROJECTS.times { p ->
+            def project = createChildProject(root, "p$p")
+            TASKS_PER_PROJECT.times { t ->
+                def task = project.task("t$t")
+                // Depend on a couple of recent tasks from any project, so that the graph is deep as well as wide
+                2.times {
+                    if (!tasks.empty) {
+                        task.dependsOn(tasks[Math.max(0, tasks.size() - 1 - random.nextInt(1000))])
+                    }
+                }
+                tasks << task
+            }
+        }
+        return tasks
+    }
+
+    private static void runWorkers(DefaultTaskExecutionPlan executionPlan, int workers, AtomicInteger executed) {
+        def executor = Executors.newFixedThreadPool(workers)
+        def finished = new CountDownLatch(workers)
+        try {
+            workers.times {
+                executor.execute {
+                    try {
+                        def taskInfo
+                        while ((taskInfo = executionPlan.taskToExecute) != null) {
+                            executed.incrementAndGet()
+                            executionPlan.taskComplete(taskInfo)
+                        }
+                    } finally {
+                        finished.countDown()
+                    }
+                }
+            }
+            finished.await()
+        } finally {
+            executor.shutdown()
+        }
+    }
+}
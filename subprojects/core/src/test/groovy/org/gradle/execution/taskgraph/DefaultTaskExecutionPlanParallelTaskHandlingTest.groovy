@@ -177,6 +177,25 @@ class DefaultTaskExecutionPlanParallelTaskHandlingTest extends Specification {
         requestedTasksBecomeAvailableForExecution()
     }
 
+    def "task that is not parallelizable becomes available for execution when the running task of its project completes"() {
+        given:
+        Task a = root.task("a", type: Parallel)
+        Task b = root.task("b", type: Parallel).doLast {}
+
+        when:
+        addToGraphAndPopulate(a, b)
+        startTasks(1)
+
+        then:
+        noMoreTasksCurrentlyAvailableForExecution()
+
+        when:
+        completeAllStartedTasks()
+
+        then:
+        requestedTasksBecomeAvailableForExecution()
+    }
+
     def "a parallelizable task with custom actions is not run in parallel"() {
         given:
         Task a = root.task("a", type: Parallel)
@@ -240,6 +259,25 @@ class DefaultTaskExecutionPlanParallelTaskHandlingTest extends Specification {
         noMoreTasksCurrentlyAvailableForExecution()
     }
 
+    def "task with overlapping outputs becomes available for execution when the running task completes"() {
+        given:
+        Task a = taskWithOutputFile("a", file("output"))
+        Task b = taskWithOutputFile("b", file("output"))
+
+        when:
+        addToGraphAndPopulate(a, b)
+        startTasks(1)
+
+        then:
+        noMoreTasksCurrentlyAvailableForExecution()
+
+        when:
+        completeAllStartedTasks()
+
+        then:
+        requestedTasksBecomeAvailableForExecution()
+    }
+
     @ParallelizableTask
     static class ParallelWithOutputDirectory extends DefaultTask {
         @OutputDirectory
@@ -834,6 +834,44 @@ public class DefaultTaskExecutionPlanTest extends Specification {
         executes(c)
     }
 
+    def "executes the tasks on the longest path of dependents first when durations are known"() {
+        given:
+        def durationHistory = Stub(TaskDurationHistory) {
+            getDurations(_) >> [':a': 10L, ':b': 100L, ':c': 100L]
+        }
+        executionPlan = new DefaultTaskExecutionPlan(cancellationHandler, false, durationHistory)
+        Task a = task("a")
+        Task b = task("b")
+        Task c = task("c", dependsOn: [b])
+
+        when:
+        addToGraphAndPopulate([a, c])
+
+        then:
+        executedTasks == [b, c, a]
+    }
+
+    def "records the durations of the tasks whose actions were executed"() {
+        given:
+        def durationHistory = Mock(TaskDurationHistory)
+        executionPlan = new DefaultTaskExecutionPlan(cancellationHandler, false, durationHistory)
+        Task a = task("a")
+        Task b = task("b")
+        a.state.getExecuted() >> true
+        b.state.getExecuted() >> true
+        b.state.getSkipped() >> true
+        addToGraphAndPopulate([a, b])
+
+        when:
+        def executed = executedTasks
+        executionPlan.awaitCompletion()
+
+        then:
+        executed == [a, b]
+        1 * durationHistory.getDurations([':a', ':b']) >> [:]
+        1 * durationHistory.recordDurations({ it.keySet() == [':a'] as Set })
+    }
+
     def "one non parallelizable parallel task per project is allowed"() {
         given:
         //2 projects, 2 non parallelizable tasks each
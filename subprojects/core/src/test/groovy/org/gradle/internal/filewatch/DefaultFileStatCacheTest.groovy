@@ -0,0 +1,124 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.filewatch
+
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+import org.gradle.internal.os.OperatingSystem
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.gradle.testfixtures.internal.NativeServicesTestFixture
+import org.gradle.util.Requires
+import org.gradle.util.TestPrecondition
+import org.junit.Rule
+import spock.lang.AutoCleanup
+import spock.lang.Specification
+
+import static org.gradle.internal.filewatch.FileStatCache.FileStat.Type.*
+
+@Requires([TestPrecondition.LINUX, TestPrecondition.JDK7_OR_LATER])
+class DefaultFileStatCacheTest extends Specification {
+    @Rule
+    final TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+    @AutoCleanup
+    def fileWatcherFactory = new DefaultFileWatcherFactory(new DefaultExecutorFactory())
+    @AutoCleanup
+    def cache = new DefaultFileStatCache(fileWatcherFactory)
+
+    def setup() {
+        NativeServicesTestFixture.initialize()
+    }
+
+    def "reuses result for file that has not changed"() {
+        given:
+        def file = tmpDir.file("dir/file").createFile()
+        cache.watch(tmpDir.testDirectory)
+
+        expect:
+        cache.stat(file).is(cache.stat(file))
+    }
+
+    def "provides the type of each file"() {
+        given:
+        def file = tmpDir.file("dir/file").createFile()
+        def dir = tmpDir.file("dir/subdir").createDir()
+        def missing = tmpDir.file("dir/missing")
+        cache.watch(tmpDir.testDirectory)
+
+        expect:
+        cache.stat(file).type == File
+        cache.stat(dir).type == Directory
+        cache.stat(missing).type == Missing
+    }
+
+    def "does not cache files outside the watched directories"() {
+        given:
+        def file = tmpDir.file("dir/file").createFile()
+        cache.watch(tmpDir.file("other").createDir())
+
+        expect:
+        !cache.stat(file).is(cache.stat(file))
+    }
+
+    def "sees changes once changes are expected"() {
+        given:
+        def file = tmpDir.file("dir/file").createFile()
+        def other = tmpDir.file("dir/other").createFile()
+        cache.watch(tmpDir.testDirectory)
+        cache.stat(file)
+        cache.stat(other)
+
+        when:
+        file.text = "changed"
+        tmpDir.file("dir/new").text = "new file"
+        cache.expectChanges()
+
+        then:
+        cache.stat(file).length == "changed".length()
+        cache.stat(tmpDir.file("dir/new")).length == "new file".length()
+    }
+
+    def "sees changes to a directory that was deleted and recreated"() {
+        given:
+        def file = tmpDir.file("dir/file").createFile()
+        cache.watch(tmpDir.testDirectory)
+        cache.stat(file)
+
+        when:
+        tmpDir.file("dir").deleteDir()
+        file.text = "recreated"
+        cache.expectChanges()
+
+        then:
+        cache.stat(file).length == "recreated".length()
+
+        when:
+        file.text = "changed again"
+        cache.expectChanges()
+
+        then:
+        cache.stat(file).length == "changed again".length()
+    }
+
+    def "reads files from the file system when the operating system is not supported"() {
+        given:
+        def cache = new DefaultFileStatCache(fileWatcherFactory, Stub(OperatingSystem) { isLinux() >> false })
+        def file = tmpDir.file("dir/file").createFile()
+        cache.watch(tmpDir.testDirectory)
+
+        expect:
+        !cache.stat(file).is(cache.stat(file))
+    }
+}
@@ -26,6 +26,7 @@ import org.gradle.cache.PersistentCache
 import org.gradle.internal.concurrent.ExecutorFactory
 import org.gradle.internal.environment.GradleBuildEnvironment
 import org.gradle.internal.event.ListenerManager
+import org.gradle.internal.filewatch.FileStatCache
 import org.gradle.internal.operations.BuildOperationProcessor
 import org.gradle.internal.operations.DefaultBuildOperationProcessor
 import org.gradle.internal.reflect.Instantiator
@@ -49,6 +50,8 @@ class TaskExecutionServicesTest extends Specification {
         _ * parent.get(CacheRepository) >> cacheRepository
         _ * parent.get(Instantiator) >> Mock(Instantiator)
         _ * parent.get(InMemoryTaskArtifactCache) >> Mock(InMemoryTaskArtifactCache)
+        _ * parent.get(ExecutorFactory) >> Mock(ExecutorFactory)
+        _ * parent.get(FileStatCache) >> FileStatCache.UNCACHED
         _ * parent.get(StartParameter) >> Mock(StartParameter)
         _ * cacheRepository.cache(gradle, 'taskArtifacts') >> cacheBuilder
         _ * cacheBuilder.withDisplayName(!null) >> cacheBuilder
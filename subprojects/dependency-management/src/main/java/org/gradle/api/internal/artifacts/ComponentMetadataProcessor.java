@@ -19,4 +19,9 @@ import org.gradle.internal.component.external.model.MutableModuleComponentResolv
 
 public interface ComponentMetadataProcessor {
     void processMetadata(MutableModuleComponentResolveMetaData metadata);
+
+    /**
+     * Returns true when there are rules that may modify the meta-data.
+     */
+    boolean hasRules();
 }
@@ -27,6 +27,7 @@ public class DefaultResolvedArtifact implements ResolvedArtifact {
     private final IvyArtifactName artifact;
     private Factory<File> artifactSource;
     private File file;
+    private RuntimeException failure;
 
     public DefaultResolvedArtifact(ResolvedModuleVersion owner, IvyArtifactName artifact, Factory<File> artifactSource) {
         this.owner = owner;
@@ -81,10 +82,28 @@ public class DefaultResolvedArtifact implements ResolvedArtifact {
     public String getClassifier() {
         return artifact.getClassifier();
     }
-    
-    public File getFile() {
+
+    /**
+     * Returns true when the file of this artifact has been resolved, so that {@link #getFile()} returns without accessing the repositories.
+     */
+    public synchronized boolean isFileResolved() {
+        return file != null;
+    }
+
+    /**
+     * Returns the file of this artifact. A failure to resolve the file is kept and rethrown, so a failed download is not attempted again.
+     */
+    public synchronized File getFile() {
+        if (failure != null) {
+            throw failure;
+        }
         if (file == null) {
-            file = artifactSource.create();
+            try {
+                file = artifactSource.create();
+            } catch (RuntimeException e) {
+                failure = e;
+                throw e;
+            }
             artifactSource = null;
         }
         return file;
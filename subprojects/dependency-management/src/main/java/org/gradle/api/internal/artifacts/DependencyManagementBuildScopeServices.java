@@ -23,9 +23,12 @@ import org.gradle.api.internal.artifacts.dsl.dependencies.DependencyFactory;
 import org.gradle.api.internal.artifacts.ivyservice.*;
 import org.gradle.api.internal.artifacts.ivyservice.dynamicversions.ModuleVersionsCache;
 import org.gradle.api.internal.artifacts.ivyservice.dynamicversions.SingleFileBackedModuleVersionsCache;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.ParallelRemoteMetaDataLookup;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.RemoteMetaDataLookup;
 import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.ResolveIvyFactory;
 import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.StartParameterResolutionOverride;
 import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.memcache.InMemoryCachedRepositoryFactory;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.ParsedPomCache;
 import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.*;
 import org.gradle.api.internal.artifacts.ivyservice.modulecache.DefaultModuleArtifactsCache;
 import org.gradle.api.internal.artifacts.ivyservice.modulecache.DefaultModuleMetaDataCache;
@@ -34,8 +37,14 @@ import org.gradle.api.internal.artifacts.ivyservice.modulecache.ModuleMetaDataCa
 import org.gradle.api.internal.artifacts.ivyservice.moduleconverter.ResolveLocalComponentFactory;
 import org.gradle.api.internal.artifacts.ivyservice.moduleconverter.dependencies.DependencyDescriptorFactory;
 import org.gradle.api.internal.artifacts.ivyservice.projectmodule.*;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.ComponentMetaDataPrefetcher;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.DefaultDependencyResolver;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.IdentifierInterner;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.ParallelComponentMetaDataPrefetcher;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphBuilder;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.store.DefaultResolvedGraphCache;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.store.ResolutionResultsStoreFactory;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.store.ResolvedGraphCache;
 import org.gradle.api.internal.artifacts.mvnsettings.*;
 import org.gradle.api.internal.artifacts.repositories.transport.RepositoryTransportFactory;
 import org.gradle.api.internal.file.FileLookup;
@@ -50,6 +59,7 @@ import org.gradle.api.internal.project.ProjectRegistry;
 import org.gradle.cache.CacheRepository;
 import org.gradle.initialization.ProjectAccessListener;
 import org.gradle.internal.component.external.model.ModuleComponentArtifactMetaData;
+import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.reflect.Instantiator;
 import org.gradle.internal.resource.cached.ByUrlCachedExternalResourceIndex;
 import org.gradle.internal.resource.cached.ivy.ArtifactAtRepositoryCachedArtifactIndex;
@@ -69,6 +79,12 @@ class DependencyManagementBuildScopeServices {
         return new InMemoryCachedRepositoryFactory();
     }
 
+    ParsedPomCache createParsedPomCache(StartParameter startParameter) {
+        // The POM files are downloaded again when dependencies are refreshed, so they are parsed again too
+        int maxSize = startParameter.isRefreshDependencies() ? 0 : Integer.getInteger(ParsedPomCache.MAX_SIZE_PROPERTY, ParsedPomCache.DEFAULT_MAX_SIZE);
+        return new ParsedPomCache(maxSize);
+    }
+
     DependencyManagementServices createDependencyManagementServices(ServiceRegistry parent) {
         return new DefaultDependencyManagementServices(parent);
     }
@@ -186,7 +202,7 @@ class DependencyManagementBuildScopeServices {
     ResolveIvyFactory createResolveIvyFactory(StartParameter startParameter, ModuleVersionsCache moduleVersionsCache, ModuleMetaDataCache moduleMetaDataCache, ModuleArtifactsCache moduleArtifactsCache,
                                               ArtifactAtRepositoryCachedArtifactIndex artifactAtRepositoryCachedArtifactIndex, CacheLockingManager cacheLockingManager,
                                               BuildCommencedTimeProvider buildCommencedTimeProvider, InMemoryCachedRepositoryFactory inMemoryCachedRepositoryFactory,
-                                              VersionSelectorScheme versionSelectorScheme, VersionComparator versionComparator) {
+                                              VersionSelectorScheme versionSelectorScheme, VersionComparator versionComparator, RemoteMetaDataLookup remoteMetaDataLookup) {
         StartParameterResolutionOverride startParameterResolutionOverride = new StartParameterResolutionOverride(startParameter);
         return new ResolveIvyFactory(
             moduleVersionsCache,
@@ -198,7 +214,16 @@ class DependencyManagementBuildScopeServices {
             buildCommencedTimeProvider,
             inMemoryCachedRepositoryFactory,
             versionSelectorScheme,
-            versionComparator);
+            versionComparator,
+            remoteMetaDataLookup);
+    }
+
+    RemoteMetaDataLookup createRemoteMetaDataLookup(ExecutorFactory executorFactory, CacheLockingManager cacheLockingManager, IvyContextManager ivyContextManager) {
+        int maxThreads = Integer.getInteger(ParallelRemoteMetaDataLookup.MAX_THREADS_PROPERTY, ParallelRemoteMetaDataLookup.DEFAULT_MAX_THREADS);
+        if (maxThreads <= 0) {
+            return RemoteMetaDataLookup.SEQUENTIAL;
+        }
+        return new ParallelRemoteMetaDataLookup(executorFactory, cacheLockingManager, ivyContextManager, maxThreads);
     }
 
     ArtifactDependencyResolver createArtifactDependencyResolver(ResolveIvyFactory resolveIvyFactory,
@@ -207,6 +232,10 @@ class DependencyManagementBuildScopeServices {
                                                                 IvyContextManager ivyContextManager,
                                                                 ResolutionResultsStoreFactory resolutionResultsStoreFactory,
                                                                 VersionComparator versionComparator,
+                                                                ComponentMetaDataPrefetcher componentMetaDataPrefetcher,
+                                                                ArtifactDownloader artifactDownloader,
+                                                                ResolvedGraphCache resolvedGraphCache,
+                                                                IdentifierInterner identifierInterner,
                                                                 StartParameter startParameter,
                                                                 ComponentIdentifierFactory componentIdentifierFactory,
                                                                 ServiceRegistry serviceRegistry) {
@@ -218,6 +247,11 @@ class DependencyManagementBuildScopeServices {
             ivyContextManager,
             resolutionResultsStoreFactory,
             versionComparator,
+            componentMetaDataPrefetcher,
+            artifactDownloader,
+            resolvedGraphCache,
+            identifierInterner,
+            Boolean.getBoolean(DependencyGraphBuilder.BULK_CONFLICT_RESOLUTION_PROPERTY),
             startParameter.isBuildProjectDependencies()
         );
         return new ErrorHandlingArtifactDependencyResolver(
@@ -229,6 +263,34 @@ class DependencyManagementBuildScopeServices {
                 componentIdentifierFactory));
     }
 
+    IdentifierInterner createIdentifierInterner() {
+        return new IdentifierInterner();
+    }
+
+    ResolvedGraphCache createResolvedGraphCache(CacheLockingManager cacheLockingManager, ModuleMetaDataCache moduleMetaDataCache, ModuleVersionsCache moduleVersionsCache,
+                                                BuildCommencedTimeProvider timeProvider, VersionSelectorScheme versionSelectorScheme) {
+        if (!Boolean.parseBoolean(System.getProperty(DefaultResolvedGraphCache.ENABLED_PROPERTY, "true"))) {
+            return ResolvedGraphCache.NONE;
+        }
+        return new DefaultResolvedGraphCache(cacheLockingManager, moduleMetaDataCache, moduleVersionsCache, timeProvider, versionSelectorScheme);
+    }
+
+    ComponentMetaDataPrefetcher createComponentMetaDataPrefetcher(ExecutorFactory executorFactory, CacheLockingManager cacheLockingManager, IvyContextManager ivyContextManager) {
+        int maxThreads = Integer.getInteger(ParallelComponentMetaDataPrefetcher.MAX_THREADS_PROPERTY, ParallelComponentMetaDataPrefetcher.DEFAULT_MAX_THREADS);
+        if (maxThreads <= 0) {
+            return ComponentMetaDataPrefetcher.NONE;
+        }
+        return new ParallelComponentMetaDataPrefetcher(executorFactory, cacheLockingManager, ivyContextManager, maxThreads);
+    }
+
+    ArtifactDownloader createArtifactDownloader(ExecutorFactory executorFactory, CacheLockingManager cacheLockingManager) {
+        int maxThreads = Integer.getInteger(ParallelArtifactDownloader.MAX_THREADS_PROPERTY, ParallelArtifactDownloader.DEFAULT_MAX_THREADS);
+        if (maxThreads <= 0) {
+            return ArtifactDownloader.NONE;
+        }
+        return new ParallelArtifactDownloader(executorFactory, cacheLockingManager, maxThreads);
+    }
+
     ResolutionResultsStoreFactory createResolutionResultsStoreFactory(TemporaryFileProvider temporaryFileProvider) {
         return new ResolutionResultsStoreFactory(temporaryFileProvider);
     }
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice;
+
+import org.gradle.api.artifacts.ResolvedArtifact;
+
+import java.util.Collection;
+
+/**
+ * Resolves the files of a set of artifacts up front, so that the files of several artifacts can be downloaded from the repositories at the same time.
+ */
+public interface ArtifactDownloader {
+    /**
+     * Does not download anything up front. The file of an artifact is resolved when it is requested.
+     */
+    ArtifactDownloader NONE = new ArtifactDownloader() {
+        public void download(Collection<? extends ResolvedArtifact> artifacts) {
+        }
+    };
+
+    /**
+     * Resolves the files of the given artifacts that have not been resolved yet, and waits for them. Must be called from within a cache action.
+     *
+     * <p>A failure to resolve an artifact is not reported here. It is reported when the file of the artifact is requested.</p>
+     */
+    void download(Collection<? extends ResolvedArtifact> artifacts);
+}
@@ -32,6 +32,7 @@ import java.util.*;
 
 public class DefaultLenientConfiguration implements LenientConfiguration {
     private CacheLockingManager cacheLockingManager;
+    private final ArtifactDownloader artifactDownloader;
     private final Configuration configuration;
     private final ResolvedGraphResults graphResults;
     private final ResolvedArtifactResults artifactResults;
@@ -39,8 +40,14 @@ public class DefaultLenientConfiguration implements LenientConfiguration {
 
     public DefaultLenientConfiguration(Configuration configuration, CacheLockingManager cacheLockingManager, ResolvedGraphResults graphResults, ResolvedArtifactResults artifactResults,
                                        Factory<TransientConfigurationResults> transientConfigurationResultsLoader) {
+        this(configuration, cacheLockingManager, ArtifactDownloader.NONE, graphResults, artifactResults, transientConfigurationResultsLoader);
+    }
+
+    public DefaultLenientConfiguration(Configuration configuration, CacheLockingManager cacheLockingManager, ArtifactDownloader artifactDownloader, ResolvedGraphResults graphResults,
+                                       ResolvedArtifactResults artifactResults, Factory<TransientConfigurationResults> transientConfigurationResultsLoader) {
         this.configuration = configuration;
         this.cacheLockingManager = cacheLockingManager;
+        this.artifactDownloader = artifactDownloader;
         this.graphResults = graphResults;
         this.artifactResults = artifactResults;
         this.transientConfigurationResultsFactory = transientConfigurationResultsLoader;
@@ -101,6 +108,7 @@ public class DefaultLenientConfiguration implements LenientConfiguration {
         final Set<ResolvedArtifact> allArtifacts = getAllArtifacts(dependencySpec);
         return cacheLockingManager.useCache("retrieve artifacts from " + configuration, new Factory<Set<ResolvedArtifact>>() {
             public Set<ResolvedArtifact> create() {
+                artifactDownloader.download(allArtifacts);
                 return CollectionUtils.filter(allArtifacts, new Spec<ResolvedArtifact>() {
                     public boolean isSatisfiedBy(ResolvedArtifact element) {
                         try {
@@ -119,6 +127,7 @@ public class DefaultLenientConfiguration implements LenientConfiguration {
         final Set<File> files = new LinkedHashSet<File>();
         cacheLockingManager.useCache("resolve files from " + configuration, new Runnable() {
             public void run() {
+                artifactDownloader.download(artifacts);
                 for (ResolvedArtifact artifact : artifacts) {
                     File depFile = artifact.getFile();
                     if (depFile != null) {
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice;
+
+import org.gradle.api.Buildable;
+import org.gradle.api.artifacts.ResolvedArtifact;
+import org.gradle.api.internal.artifacts.DefaultResolvedArtifact;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.internal.concurrent.StoppableExecutor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Downloads the files of artifacts using a bounded pool of threads.
+ *
+ * <p>Each artifact is resolved by its own worker, which uses the cache in separate cache actions. The calling thread releases the cache lock while it waits for
+ * the workers, and the repositories release the lock while they download, so the downloads overlap. The downloaded files are recorded in the artifact caches
+ * and reported as progress in the same way as files that are downloaded when requested.</p>
+ *
+ * <p>A failure to download an artifact is kept by the artifact and reported when its file is requested, without downloading it again.</p>
+ */
+public class ParallelArtifactDownloader implements ArtifactDownloader, Stoppable {
+    /**
+     * The maximum number of artifacts that are downloaded at the same time. Use 0 to download artifacts only when their file is requested.
+     */
+    public static final String MAX_THREADS_PROPERTY = "org.gradle.dependency.artifacts.threads";
+    public static final int DEFAULT_MAX_THREADS = 8;
+
+    private final ExecutorFactory executorFactory;
+    private final CacheLockingManager cacheLockingManager;
+    private final int maxThreads;
+    private StoppableExecutor executor;
+
+    public ParallelArtifactDownloader(ExecutorFactory executorFactory, CacheLockingManager cacheLockingManager, int maxThreads) {
+        this.executorFactory = executorFactory;
+        this.cacheLockingManager = cacheLockingManager;
+        this.maxThreads = maxThreads;
+    }
+
+    public void download(Collection<? extends ResolvedArtifact> artifacts) {
+        final List<DefaultResolvedArtifact> queue = new ArrayList<DefaultResolvedArtifact>();
+        for (ResolvedArtifact artifact : artifacts) {
+            // Artifacts built by this build are not downloaded
+            if (artifact instanceof DefaultResolvedArtifact && !(artifact instanceof Buildable) && !((DefaultResolvedArtifact) artifact).isFileResolved()) {
+                queue.add((DefaultResolvedArtifact) artifact);
+            }
+        }
+        if (queue.size() < 2) {
+            return;
+        }
+
+        final List<Future<?>> downloads = new ArrayList<Future<?>>(queue.size());
+        StoppableExecutor executor = getExecutor();
+        for (final DefaultResolvedArtifact artifact : queue) {
+            downloads.add(executor.submit(new Runnable() {
+                public void run() {
+                    artifact.getFile();
+                }
+            }));
+        }
+        cacheLockingManager.longRunningOperation(String.format("Download %s artifacts", queue.size()), new Runnable() {
+            public void run() {
+                for (Future<?> download : downloads) {
+                    waitFor(download);
+                }
+            }
+        });
+    }
+
+    public void stop() {
+        StoppableExecutor executor;
+        synchronized (this) {
+            executor = this.executor;
+            this.executor = null;
+        }
+        if (executor != null) {
+            executor.stop();
+        }
+    }
+
+    private synchronized StoppableExecutor getExecutor() {
+        if (executor == null) {
+            executor = executorFactory.create("Artifact download", maxThreads);
+        }
+        return executor;
+    }
+
+    private static void waitFor(Future<?> download) {
+        try {
+            download.get();
+        } catch (InterruptedException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        } catch (ExecutionException e) {
+            if (!(e.getCause() instanceof RuntimeException)) {
+                throw UncheckedException.throwAsUncheckedException(e.getCause());
+            }
+            // The artifact keeps the failure and rethrows it when its file is requested
+        }
+    }
+}
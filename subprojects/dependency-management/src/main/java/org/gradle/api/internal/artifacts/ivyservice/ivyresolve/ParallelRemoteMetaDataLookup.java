@@ -0,0 +1,145 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.ivyresolve;
+
+import org.apache.ivy.Ivy;
+import org.gradle.api.Transformer;
+import org.gradle.api.internal.artifacts.ivyservice.CacheLockingManager;
+import org.gradle.api.internal.artifacts.ivyservice.IvyContextManager;
+import org.gradle.internal.Factory;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.internal.concurrent.StoppableExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Runs remote meta-data lookups using a bounded pool of threads.
+ *
+ * <p>Each lookup runs in a separate cache action, with its own Ivy context. The thread waiting for a lookup releases the cache lock while it waits. Lookups that
+ * are started by a lookup, such as the lookup of a parent POM, are run by the lookup thread itself, so that the threads of the pool never wait for each other.
+ * A cancelled lookup that has already started runs to completion, so that it does not leave the caches in an unknown state.</p>
+ */
+public class ParallelRemoteMetaDataLookup implements RemoteMetaDataLookup, Stoppable {
+    /**
+     * The maximum number of repositories that are queried at the same time. The default is 0, which queries the repositories one at a time.
+     */
+    public static final String MAX_THREADS_PROPERTY = "org.gradle.dependency.repositories.threads";
+    public static final int DEFAULT_MAX_THREADS = 0;
+
+    private final ExecutorFactory executorFactory;
+    private final CacheLockingManager cacheLockingManager;
+    private final IvyContextManager ivyContextManager;
+    private final int maxThreads;
+    private final ThreadLocal<Boolean> lookupThread = new ThreadLocal<Boolean>();
+    private StoppableExecutor executor;
+
+    public ParallelRemoteMetaDataLookup(ExecutorFactory executorFactory, CacheLockingManager cacheLockingManager, IvyContextManager ivyContextManager, int maxThreads) {
+        this.executorFactory = executorFactory;
+        this.cacheLockingManager = cacheLockingManager;
+        this.ivyContextManager = ivyContextManager;
+        this.maxThreads = maxThreads;
+    }
+
+    public <T> List<Pending<T>> startAll(final String description, List<? extends Factory<? extends T>> lookups) {
+        if (lookupThread.get() != null) {
+            return null;
+        }
+        StoppableExecutor executor = getExecutor();
+        List<Pending<T>> pending = new ArrayList<Pending<T>>(lookups.size());
+        for (final Factory<? extends T> lookup : lookups) {
+            Future<T> result = executor.submit(new Callable<T>() {
+                public T call() {
+                    lookupThread.set(Boolean.TRUE);
+                    try {
+                        return cacheLockingManager.useCache(description, new Factory<T>() {
+                            public T create() {
+                                return ivyContextManager.withIvy(new Transformer<T, Ivy>() {
+                                    public T transform(Ivy ivy) {
+                                        return lookup.create();
+                                    }
+                                });
+                            }
+                        });
+                    } finally {
+                        lookupThread.remove();
+                    }
+                }
+            });
+            pending.add(new PendingLookup<T>(description, result));
+        }
+        return pending;
+    }
+
+    public void stop() {
+        StoppableExecutor executor;
+        synchronized (this) {
+            executor = this.executor;
+            this.executor = null;
+        }
+        if (executor != null) {
+            executor.stop();
+        }
+    }
+
+    private synchronized StoppableExecutor getExecutor() {
+        if (executor == null) {
+            executor = executorFactory.create("Remote meta-data lookup", maxThreads);
+        }
+        return executor;
+    }
+
+    private class PendingLookup<T> implements Pending<T> {
+        private final String description;
+        private final Future<T> result;
+
+        PendingLookup(String description, Future<T> result) {
+            this.description = description;
+            this.result = result;
+        }
+
+        public T get() {
+            if (result.isDone()) {
+                return waitFor();
+            }
+            return cacheLockingManager.longRunningOperation(String.format("Wait for %s", description), new Factory<T>() {
+                public T create() {
+                    return waitFor();
+                }
+            });
+        }
+
+        public void cancel() {
+            result.cancel(false);
+        }
+
+        private T waitFor() {
+            try {
+                return result.get();
+            } catch (InterruptedException e) {
+                throw UncheckedException.throwAsUncheckedException(e);
+            } catch (ExecutionException e) {
+                throw UncheckedException.throwAsUncheckedException(e.getCause());
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.ivyresolve;
+
+import org.gradle.api.Nullable;
+import org.gradle.internal.Factory;
+
+import java.util.List;
+
+/**
+ * Runs the remote meta-data lookups of a repository chain, so that the repositories of the chain can be queried at the same time.
+ */
+public interface RemoteMetaDataLookup {
+    /**
+     * Does not start any lookups. The repositories are queried one at a time.
+     */
+    RemoteMetaDataLookup SEQUENTIAL = new RemoteMetaDataLookup() {
+        public <T> List<Pending<T>> startAll(String description, List<? extends Factory<? extends T>> lookups) {
+            return null;
+        }
+    };
+
+    /**
+     * Starts the given lookups.
+     *
+     * @return The pending lookups, in the same order as the given lookups, or null when the lookups are not started and should be run by the caller.
+     */
+    @Nullable
+    <T> List<Pending<T>> startAll(String description, List<? extends Factory<? extends T>> lookups);
+
+    interface Pending<T> {
+        /**
+         * Waits for the lookup to complete and returns its result. Rethrows the failure of the lookup.
+         */
+        T get();
+
+        /**
+         * Discards the lookup. A lookup that has not started yet is not run.
+         */
+        void cancel();
+    }
+}
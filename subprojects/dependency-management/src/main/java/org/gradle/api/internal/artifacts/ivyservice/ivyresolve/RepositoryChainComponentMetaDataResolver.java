@@ -19,6 +19,7 @@ package org.gradle.api.internal.artifacts.ivyservice.ivyresolve;
 import org.gradle.api.Transformer;
 import org.gradle.api.artifacts.component.ComponentIdentifier;
 import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
+import org.gradle.internal.Factory;
 import org.gradle.internal.component.external.model.ModuleComponentResolveMetaData;
 import org.gradle.internal.component.model.ComponentOverrideMetadata;
 import org.gradle.internal.resolve.ModuleVersionResolveException;
@@ -40,10 +41,17 @@ public class RepositoryChainComponentMetaDataResolver implements ComponentMetaDa
     private final List<String> repositoryNames = new ArrayList<String>();
     private final VersionedComponentChooser versionedComponentChooser;
     private final Transformer<ModuleComponentResolveMetaData, RepositoryChainModuleResolution> metaDataFactory;
+    private final RemoteMetaDataLookup remoteLookup;
 
     public RepositoryChainComponentMetaDataResolver(VersionedComponentChooser componentChooser, Transformer<ModuleComponentResolveMetaData, RepositoryChainModuleResolution> metaDataFactory) {
+        this(componentChooser, metaDataFactory, RemoteMetaDataLookup.SEQUENTIAL);
+    }
+
+    public RepositoryChainComponentMetaDataResolver(VersionedComponentChooser componentChooser, Transformer<ModuleComponentResolveMetaData, RepositoryChainModuleResolution> metaDataFactory,
+                                                    RemoteMetaDataLookup remoteLookup) {
         this.versionedComponentChooser = componentChooser;
         this.metaDataFactory = metaDataFactory;
+        this.remoteLookup = remoteLookup;
     }
 
     public void add(ModuleComponentRepository repository) {
@@ -69,7 +77,7 @@ public class RepositoryChainComponentMetaDataResolver implements ComponentMetaDa
             resolveStates.add(new ComponentMetaDataResolveState(identifier, componentOverrideMetadata, repository, versionedComponentChooser));
         }
 
-        final RepositoryChainModuleResolution latestResolved = findBestMatch(resolveStates, errors);
+        final RepositoryChainModuleResolution latestResolved = findBestMatch(identifier, resolveStates, errors);
         if (latestResolved != null) {
             LOGGER.debug("Using {} from {}", latestResolved.module.getId(), latestResolved.repository);
             for (Throwable error : errors) {
@@ -89,31 +97,51 @@ public class RepositoryChainComponentMetaDataResolver implements ComponentMetaDa
         }
     }
 
-    private RepositoryChainModuleResolution findBestMatch(List<ComponentMetaDataResolveState> resolveStates, Collection<Throwable> failures) {
+    private RepositoryChainModuleResolution findBestMatch(ModuleComponentIdentifier identifier, List<ComponentMetaDataResolveState> resolveStates, Collection<Throwable> failures) {
         LinkedList<ComponentMetaDataResolveState> queue = new LinkedList<ComponentMetaDataResolveState>();
         queue.addAll(resolveStates);
 
         LinkedList<ComponentMetaDataResolveState> missing = new LinkedList<ComponentMetaDataResolveState>();
 
         // A first pass to do local resolves only
-        RepositoryChainModuleResolution best = findBestMatch(queue, failures, missing);
+        RepositoryChainModuleResolution best = findBestMatch(queue, null, failures, missing);
         if (best != null) {
             return best;
         }
 
-        // Nothing found - do a second pass
+        // Nothing found - do a second pass, querying the remaining repositories at the same time when possible
         queue.addAll(missing);
         missing.clear();
-        return findBestMatch(queue, failures, missing);
+        LinkedList<RemoteMetaDataLookup.Pending<BuildableModuleComponentMetaDataResolveResult>> pending = null;
+        if (queue.size() > 1) {
+            List<Factory<BuildableModuleComponentMetaDataResolveResult>> lookups = new ArrayList<Factory<BuildableModuleComponentMetaDataResolveResult>>(queue.size());
+            for (final ComponentMetaDataResolveState request : queue) {
+                lookups.add(new Factory<BuildableModuleComponentMetaDataResolveResult>() {
+                    public BuildableModuleComponentMetaDataResolveResult create() {
+                        return request.resolve();
+                    }
+                });
+            }
+            List<RemoteMetaDataLookup.Pending<BuildableModuleComponentMetaDataResolveResult>> started = remoteLookup.startAll(String.format("Resolve %s", identifier), lookups);
+            if (started != null) {
+                pending = new LinkedList<RemoteMetaDataLookup.Pending<BuildableModuleComponentMetaDataResolveResult>>(started);
+            }
+        }
+        return findBestMatch(queue, pending, failures, missing);
     }
 
-    private RepositoryChainModuleResolution findBestMatch(LinkedList<ComponentMetaDataResolveState> queue, Collection<Throwable> failures, Collection<ComponentMetaDataResolveState> missing) {
+    /**
+     * Takes the result of each repository in order, either by resolving it or from the given lookups of the repositories, and stops at the first repository that
+     * has meta-data that is not generated. The lookups of the remaining repositories are then cancelled.
+     */
+    private RepositoryChainModuleResolution findBestMatch(LinkedList<ComponentMetaDataResolveState> queue, LinkedList<RemoteMetaDataLookup.Pending<BuildableModuleComponentMetaDataResolveResult>> pending,
+                                                          Collection<Throwable> failures, Collection<ComponentMetaDataResolveState> missing) {
         RepositoryChainModuleResolution best = null;
         while (!queue.isEmpty()) {
             ComponentMetaDataResolveState request = queue.removeFirst();
             BuildableModuleComponentMetaDataResolveResult metaDataResolveResult;
             try {
-                metaDataResolveResult = request.resolve();
+                metaDataResolveResult = pending == null ? request.resolve() : pending.removeFirst().get();
             } catch (Throwable t) {
                 failures.add(t);
                 continue;
@@ -131,6 +159,11 @@ public class RepositoryChainComponentMetaDataResolver implements ComponentMetaDa
                 case Resolved:
                     RepositoryChainModuleResolution moduleResolution = new RepositoryChainModuleResolution(request.repository, metaDataResolveResult.getMetaData());
                     if (!metaDataResolveResult.getMetaData().isGenerated()) {
+                        if (pending != null) {
+                            for (RemoteMetaDataLookup.Pending<BuildableModuleComponentMetaDataResolveResult> lookup : pending) {
+                                lookup.cancel();
+                            }
+                        }
                         return moduleResolution;
                     }
                     best = best != null ? best : moduleResolution;
@@ -29,11 +29,13 @@ import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionS
 import org.gradle.api.internal.component.ArtifactType;
 import org.gradle.internal.component.external.model.DefaultMavenModuleResolveMetaData;
 import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier;
+import org.gradle.internal.hash.HashValue;
 import org.gradle.internal.resource.local.LocallyAvailableExternalResource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.SAXException;
 
+import java.io.File;
 import java.io.IOException;
 import java.text.ParseException;
 import java.util.Collection;
@@ -48,10 +50,16 @@ public final class GradlePomModuleDescriptorParser extends AbstractModuleDescrip
     private static final String DEPENDENCY_IMPORT_SCOPE = "import";
     private final VersionSelectorScheme gradleVersionSelectorScheme;
     private final VersionSelectorScheme mavenVersionSelectorScheme;
+    private final ParsedPomCache parsedPomCache;
 
     public GradlePomModuleDescriptorParser(VersionSelectorScheme gradleVersionSelectorScheme) {
+        this(gradleVersionSelectorScheme, new ParsedPomCache(0));
+    }
+
+    public GradlePomModuleDescriptorParser(VersionSelectorScheme gradleVersionSelectorScheme, ParsedPomCache parsedPomCache) {
         this.gradleVersionSelectorScheme = gradleVersionSelectorScheme;
         mavenVersionSelectorScheme = new MavenVersionSelectorScheme(gradleVersionSelectorScheme);
+        this.parsedPomCache = parsedPomCache;
     }
 
     @Override
@@ -199,7 +207,7 @@ public final class GradlePomModuleDescriptorParser extends AbstractModuleDescrip
     }
 
     /**
-     * Parses other POM.
+     * Parses other POM. The content of the POM is reused when the same file has been parsed before, but its parent and imported POMs are always applied again.
      *
      * @param parseContext Parse context
      * @param parentId Parent module revision ID
@@ -209,7 +217,16 @@ public final class GradlePomModuleDescriptorParser extends AbstractModuleDescrip
      */
     private PomReader parseOtherPom(DescriptorParseContext parseContext, ModuleComponentIdentifier parentId) throws IOException, SAXException {
         LocallyAvailableExternalResource localResource = parseContext.getMetaDataArtifact(parentId, ArtifactType.MAVEN_POM);
-        PomReader pomReader = new PomReader(localResource);
+        File pomFile = localResource.getLocalResource().getFile();
+        HashValue sha1 = localResource.getLocalResource().getSha1();
+        PomStaxParser.Project content = parsedPomCache.get(pomFile, sha1);
+        if (content == null) {
+            // Threads that parse the same POM at the same time each parse it, rather than wait for each other while holding the cache lock
+            content = PomReader.parseContent(localResource);
+            parsedPomCache.put(pomFile, sha1, content);
+        }
+
+        PomReader pomReader = new PomReader(content);
         GradlePomModuleDescriptorBuilder mdBuilder = new GradlePomModuleDescriptorBuilder(pomReader, gradleVersionSelectorScheme, mavenVersionSelectorScheme);
         doParsePom(parseContext, mdBuilder, pomReader);
         return pomReader;
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.gradle.internal.hash.HashValue;
+
+import java.io.File;
+
+/**
+ * Keeps the content of the parent and imported POMs that have been read, so that a POM that is referenced by many other POMs is read and parsed once
+ * per build. Only the content of the POM file itself is kept. The state that a POM inherits from its own parent and imported POMs is applied each time
+ * the POM is used, so a changed parent or imported POM is always seen.
+ *
+ * <p>An entry is used only while the POM file still has the same SHA1.</p>
+ */
+public class ParsedPomCache {
+    /**
+     * The maximum number of parsed POMs to keep. Use 0 to disable the cache.
+     */
+    public static final String MAX_SIZE_PROPERTY = "org.gradle.dependency.pom.cacheSize";
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    private final Cache<File, CachedPom> cache;
+
+    public ParsedPomCache(int maxSize) {
+        cache = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+    }
+
+    /**
+     * Returns the content of the given POM file, or null when the file has not been parsed with the given SHA1.
+     */
+    public PomStaxParser.Project get(File pomFile, HashValue sha1) {
+        CachedPom cached = cache.getIfPresent(pomFile);
+        return cached != null && cached.sha1.equals(sha1) ? cached.project : null;
+    }
+
+    public void put(File pomFile, HashValue sha1, PomStaxParser.Project project) {
+        cache.put(pomFile, new CachedPom(sha1, project));
+    }
+
+    private static class CachedPom {
+        private final HashValue sha1;
+        private final PomStaxParser.Project project;
+
+        private CachedPom(HashValue sha1, PomStaxParser.Project project) {
+            this.sha1 = sha1;
+            this.project = project;
+        }
+    }
+}
@@ -19,38 +19,28 @@ import org.apache.ivy.core.IvyPatternHelper;
 import org.apache.ivy.core.module.descriptor.License;
 import org.apache.ivy.core.module.id.ModuleId;
 import org.apache.ivy.core.module.id.ModuleRevisionId;
-import org.apache.ivy.util.XMLHelper;
 import org.gradle.api.Transformer;
 import org.gradle.api.internal.artifacts.ivyservice.IvyUtil;
 import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.data.MavenDependencyKey;
 import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.data.PomDependencyMgt;
 import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.data.PomProfile;
 import org.gradle.internal.resource.local.LocallyAvailableExternalResource;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.EntityResolver;
-import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 
-import javax.xml.parsers.DocumentBuilder;
-import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
 
-import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomDomParser.*;
+import static org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomStaxParser.*;
 
 /**
  * Copied from org.apache.ivy.plugins.parser.m2.PomReader.
+ *
+ * <p>The POM is read with {@link PomStaxParser}, which keeps only the values used here. Properties are substituted when the values are requested.</p>
  */
 public class PomReader implements PomParent {
 
     private static final String PACKAGING = "packaging";
-    private static final String DEPENDENCY = "dependency";
-    private static final String DEPENDENCIES = "dependencies";
-    private static final String DEPENDENCY_MGT = "dependencyManagement";
     private static final String PROJECT = "project";
     private static final String MODEL = "model";
     private static final String GROUP_ID = "groupId";
@@ -58,26 +48,15 @@ public class PomReader implements PomParent {
     private static final String VERSION = "version";
     private static final String DESCRIPTION = "description";
     private static final String HOMEPAGE = "url";
-    private static final String LICENSES = "licenses";
-    private static final String LICENSE = "license";
     private static final String LICENSE_NAME = "name";
     private static final String LICENSE_URL = "url";
-    private static final String PARENT = "parent";
     private static final String SCOPE = "scope";
     private static final String CLASSIFIER = "classifier";
     private static final String OPTIONAL = "optional";
-    private static final String EXCLUSIONS = "exclusions";
-    private static final String EXCLUSION = "exclusion";
-    private static final String DISTRIBUTION_MGT = "distributionManagement";
-    private static final String RELOCATION = "relocation";
-    private static final String PROPERTIES = "properties";
     private static final String TYPE = "type";
-    private static final String PROFILES = "profiles";
-    private static final String PROFILE = "profile";
     private static final String PROFILE_ID = "id";
-    private static final String PROFILE_ACTIVATION = "activation";
     private static final String PROFILE_ACTIVATION_ACTIVE_BY_DEFAULT = "activeByDefault";
-    private static final String PROFILE_ACTIVATION_PROPERTY = "property";
+    private static final String PROFILE_ACTIVATION_PROPERTY_NAME = "name";
 
     private PomParent pomParent = new RootPomParent();
     private final Map<String, String> properties = new HashMap<String, String>();
@@ -87,29 +66,43 @@ public class PomReader implements PomParent {
     private final Map<MavenDependencyKey, PomDependencyMgt> importedDependencyMgts = new LinkedHashMap<MavenDependencyKey, PomDependencyMgt>();
     private Map<MavenDependencyKey, PomDependencyData> resolvedDependencies;
 
-    private final Element projectElement;
-    private final Element parentElement;
+    private final Project projectElement;
+    private final Coordinates parentElement;
 
     public PomReader(final LocallyAvailableExternalResource resource) throws SAXException {
+        this(parseContent(resource));
+    }
+
+    /**
+     * Creates a reader for a POM whose content has already been parsed. The content is not modified.
+     */
+    public PomReader(Project projectElement) throws SAXException {
+        this.projectElement = projectElement;
+        if (!PROJECT.equals(projectElement.getRootElementName()) && !MODEL.equals(projectElement.getRootElementName())) {
+            String systemId = projectElement.getSystemId();
+            throw new SAXParseException("project must be the root tag", systemId, systemId, 0, 0);
+        }
+        parentElement = projectElement.getParent();
+
+        setDefaultParentGavProperties();
+        setPomProperties();
+        setActiveProfileProperties();
+    }
+
+    /**
+     * Parses the content of the given POM, without applying anything inherited from its parent or imported POMs.
+     */
+    public static Project parseContent(final LocallyAvailableExternalResource resource) {
         final String systemId = resource.getLocalResource().getFile().toURI().toASCIIString();
-        Document pomDomDoc = resource.withContent(new Transformer<Document, InputStream>() {
-            public Document transform(InputStream inputStream) {
+        return resource.withContent(new Transformer<Project, InputStream>() {
+            public Project transform(InputStream inputStream) {
                 try {
-                    return parseToDom(inputStream, systemId);
+                    return parse(inputStream, systemId);
                 } catch (Exception e) {
                     throw new MetaDataParseException("POM", resource, e);
                 }
             }
         });
-        projectElement = pomDomDoc.getDocumentElement();
-        if (!PROJECT.equals(projectElement.getNodeName()) && !MODEL.equals(projectElement.getNodeName())) {
-            throw new SAXParseException("project must be the root tag", systemId, systemId, 0, 0);
-        }
-        parentElement = getFirstChildElement(projectElement, PARENT);
-
-        setDefaultParentGavProperties();
-        setPomProperties();
-        setActiveProfileProperties();
     }
 
     private void setDefaultParentGavProperties() {
@@ -185,22 +178,7 @@ public class PomReader implements PomParent {
 
     @Override
     public String toString() {
-        return projectElement.getOwnerDocument().getDocumentURI();
-    }
-
-    public static Document parseToDom(InputStream stream, String systemId) throws IOException, SAXException {
-        EntityResolver entityResolver = new EntityResolver() {
-            public InputSource resolveEntity(String publicId, String systemId)
-                    throws SAXException, IOException {
-                if ((systemId != null) && systemId.endsWith("m2-entities.ent")) {
-                    return new InputSource(org.apache.ivy.plugins.parser.m2.PomReader.class.getResourceAsStream("m2-entities.ent"));
-                }
-                return null;
-            }
-        };
-        InputStream dtdStream = new AddDTDFilterInputStream(stream);
-        DocumentBuilder docBuilder = XMLHelper.getDocBuilder(entityResolver);
-        return docBuilder.parse(dtdStream, systemId);
+        return projectElement.getSystemId();
     }
 
     public boolean hasParent() {
@@ -292,36 +270,32 @@ public class PomReader implements PomParent {
     }
 
     public List<License> getLicenses() {
-        Element licenses = getFirstChildElement(projectElement, LICENSES);
+        List<Coordinates> licenses = projectElement.getLicenses();
         if (licenses == null) {
             return Collections.emptyList();
         }
-        licenses.normalize();
         List<License> lics = new ArrayList<License>();
-        for (Element license : getAllChilds(licenses)) {
-            if (LICENSE.equals(license.getNodeName())) {
-                String name = getFirstChildText(license, LICENSE_NAME);
-                String url = getFirstChildText(license, LICENSE_URL);
-
-                if ((name == null) && (url == null)) {
-                    // move to next license
-                    continue;
-                }
+        for (Coordinates license : licenses) {
+            String name = getFirstChildText(license, LICENSE_NAME);
+            String url = getFirstChildText(license, LICENSE_URL);
 
-                if (name == null) {
-                    // The license name is required in Ivy but not in a POM!
-                    name = "Unknown License";
-                }
+            if ((name == null) && (url == null)) {
+                // move to next license
+                continue;
+            }
 
-                lics.add(new License(name, url));
+            if (name == null) {
+                // The license name is required in Ivy but not in a POM!
+                name = "Unknown License";
             }
+
+            lics.add(new License(name, url));
         }
         return lics;
     }
 
     public ModuleRevisionId getRelocation() {
-        Element distrMgt = getFirstChildElement(projectElement, DISTRIBUTION_MGT);
-        Element relocation = getFirstChildElement(distrMgt , RELOCATION);
+        Coordinates relocation = projectElement.getRelocation();
         if (relocation == null) {
             return null;
         } else {
@@ -368,16 +342,12 @@ public class PomReader implements PomParent {
         return dependencies;
     }
 
-    private List<PomDependencyData> getDependencyData(Element parentElement) {
+    private List<PomDependencyData> getDependencyData(Declarations parentElement) {
         List<PomDependencyData> depElements = new ArrayList<PomDependencyData>();
-        Element dependenciesElement = getFirstChildElement(parentElement, DEPENDENCIES);
-        if (dependenciesElement != null) {
-            NodeList childs = dependenciesElement.getChildNodes();
-            for (int i = 0; i < childs.getLength(); i++) {
-                Node node = childs.item(i);
-                if (node instanceof Element && DEPENDENCY.equals(node.getNodeName())) {
-                    depElements.add(new PomDependencyData((Element) node));
-                }
+        List<Dependency> dependencies = parentElement.getDependencies();
+        if (dependencies != null) {
+            for (Dependency dependency : dependencies) {
+                depElements.add(new PomDependencyData(dependency));
             }
         }
 
@@ -425,18 +395,13 @@ public class PomReader implements PomParent {
         return declaredDependencyMgts;
     }
 
-    private List<PomDependencyMgt> getDependencyMgt(Element parentElement) {
+    private List<PomDependencyMgt> getDependencyMgt(Declarations parentElement) {
         List<PomDependencyMgt> depMgmtElements = new ArrayList<PomDependencyMgt>();
-        Element dependenciesElement = getFirstChildElement(parentElement, DEPENDENCY_MGT);
-        dependenciesElement = getFirstChildElement(dependenciesElement, DEPENDENCIES);
-
-        if (dependenciesElement != null) {
-            NodeList childs = dependenciesElement.getChildNodes();
-            for (int i = 0; i < childs.getLength(); i++) {
-                Node node = childs.item(i);
-                if (node instanceof Element && DEPENDENCY.equals(node.getNodeName())) {
-                    depMgmtElements.add(new PomDependencyMgtElement((Element) node));
-                }
+        List<Dependency> dependencies = parentElement.getDependencyManagement();
+
+        if (dependencies != null) {
+            for (Dependency dependency : dependencies) {
+                depMgmtElements.add(new PomDependencyMgtElement(dependency));
             }
         }
 
@@ -460,9 +425,9 @@ public class PomReader implements PomParent {
     }
 
     public class PomDependencyMgtElement implements PomDependencyMgt {
-        private final Element depElement;
+        private final Dependency depElement;
 
-        PomDependencyMgtElement(Element depElement) {
+        PomDependencyMgtElement(Dependency depElement) {
             this.depElement = depElement;
         }
 
@@ -516,18 +481,14 @@ public class PomReader implements PomParent {
         }
 
         public List<ModuleId> getExcludedModules() {
-            Element exclusionsElement = getFirstChildElement(depElement, EXCLUSIONS);
+            List<Coordinates> exclusionElements = depElement.getExclusions();
             List<ModuleId> exclusions = new LinkedList<ModuleId>();
-            if (exclusionsElement != null) {
-                NodeList childs = exclusionsElement.getChildNodes();
-                for (int i = 0; i < childs.getLength(); i++) {
-                    Node node = childs.item(i);
-                    if (node instanceof Element && EXCLUSION.equals(node.getNodeName())) {
-                        String groupId = getFirstChildText((Element) node, GROUP_ID);
-                        String artifactId = getFirstChildText((Element) node, ARTIFACT_ID);
-                        if ((groupId != null) && (artifactId != null)) {
-                            exclusions.add(IvyUtil.createModuleId(groupId, artifactId));
-                        }
+            if (exclusionElements != null) {
+                for (Coordinates exclusion : exclusionElements) {
+                    String groupId = getFirstChildText(exclusion, GROUP_ID);
+                    String artifactId = getFirstChildText(exclusion, ARTIFACT_ID);
+                    if ((groupId != null) && (artifactId != null)) {
+                        exclusions.add(IvyUtil.createModuleId(groupId, artifactId));
                     }
                 }
             }
@@ -536,24 +497,23 @@ public class PomReader implements PomParent {
     }
 
     public class PomDependencyData extends PomDependencyMgtElement {
-        private final Element depElement;
-        PomDependencyData(Element depElement) {
+        private final Dependency depElement;
+        PomDependencyData(Dependency depElement) {
             super(depElement);
             this.depElement = depElement;
         }
 
         public boolean isOptional() {
-            Element e = getFirstChildElement(depElement, OPTIONAL);
-            return (e != null) && "true".equalsIgnoreCase(getTextContent(e));
+            return "true".equalsIgnoreCase(getFirstChildText(depElement, OPTIONAL));
         }
     }
 
     public class PomProfileElement implements PomProfile {
-        private final Element element;
+        private final Profile element;
         private List<PomDependencyMgt> declaredDependencyMgts;
         private List<PomDependencyData> declaredDependencies;
 
-        PomProfileElement(Element element) {
+        PomProfileElement(Profile element) {
             this.element = element;
         }
 
@@ -591,25 +551,21 @@ public class PomReader implements PomParent {
         if(declaredActivePomProfiles == null) {
             List<PomProfile> activeByDefaultPomProfiles = new ArrayList<PomProfile>();
             List<PomProfile> activeByAbsenceOfPropertyPomProfiles = new ArrayList<PomProfile>();
-            Element profilesElement = getFirstChildElement(projectElement, PROFILES);
+            List<Profile> profileElements = projectElement.getProfiles();
 
-            if(profilesElement != null) {
-                for(Element profileElement : getAllChilds(profilesElement)) {
-                    if(PROFILE.equals(profileElement.getNodeName())) {
-                        Element activationElement = getFirstChildElement(profileElement, PROFILE_ACTIVATION);
+            if(profileElements != null) {
+                for(Profile profileElement : profileElements) {
+                    if(profileElement.hasActivation()) {
+                        String activeByDefault = getFirstChildText(profileElement, PROFILE_ACTIVATION_ACTIVE_BY_DEFAULT);
 
-                        if(activationElement != null) {
-                            String activeByDefault = getFirstChildText(activationElement, PROFILE_ACTIVATION_ACTIVE_BY_DEFAULT);
+                        if(activeByDefault != null && "true".equals(activeByDefault)) {
+                            activeByDefaultPomProfiles.add(new PomProfileElement(profileElement));
+                        } else {
+                            Coordinates propertyElement = profileElement.getActivationProperty();
 
-                            if(activeByDefault != null && "true".equals(activeByDefault)) {
-                                activeByDefaultPomProfiles.add(new PomProfileElement(profileElement));
-                            } else {
-                                Element propertyElement = getFirstChildElement(activationElement, PROFILE_ACTIVATION_PROPERTY);
-
-                                if(propertyElement != null) {
-                                    if(isActivationPropertyActivated(propertyElement)) {
-                                        activeByAbsenceOfPropertyPomProfiles.add(new PomProfileElement(profileElement));
-                                    }
+                            if(propertyElement != null) {
+                                if(isActivationPropertyActivated(propertyElement)) {
+                                    activeByAbsenceOfPropertyPomProfiles.add(new PomProfileElement(profileElement));
                                 }
                             }
                         }
@@ -642,8 +598,8 @@ public class PomReader implements PomParent {
      * @return Activation indicator
      * @see <a href="http://books.sonatype.com/mvnref-book/reference/profiles-sect-activation.html#profiles-sect-activation-config">Maven documentation</a>
      */
-    private boolean isActivationPropertyActivated(Element propertyElement) {
-        String propertyName = getFirstChildText(propertyElement, "name");
+    private boolean isActivationPropertyActivated(Coordinates propertyElement) {
+        String propertyName = getFirstChildText(propertyElement, PROFILE_ACTIVATION_PROPERTY_NAME);
         return propertyName.startsWith("!");
     }
 
@@ -654,21 +610,24 @@ public class PomReader implements PomParent {
         return getPomProperties(projectElement);
     }
 
-    private Map<String, String> getPomProperties(Element parentElement) {
-        Map<String, String> pomProperties = new HashMap<String, String>();
-        Element propsEl = getFirstChildElement(parentElement, PROPERTIES);
-        if (propsEl != null) {
-            propsEl.normalize();
-        }
-        for (Element prop : getAllChilds(propsEl)) {
-            pomProperties.put(prop.getNodeName(), getTextContent(prop));
+    private Map<String, String> getPomProperties(Declarations parentElement) {
+        Map<String, String> pomProperties = parentElement.getProperties();
+        if (pomProperties == null) {
+            return new HashMap<String, String>();
         }
-        return pomProperties;
+        return new HashMap<String, String>(pomProperties);
+    }
+
+    private static String getFirstChildText(Coordinates parentElem, String name) {
+        return parentElem == null ? null : parentElem.get(name);
     }
 
     private String replaceProps(String val) {
         if (val == null) {
             return null;
+        } else if (val.indexOf("${") < 0) {
+            // Most values do not reference properties
+            return val.trim();
         } else {
             return IvyPatternHelper.substituteVariables(val, properties).trim();
         }
@@ -0,0 +1,500 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the elements of a POM that are used to build a module descriptor, in a single pass over the document. The values are kept as they appear in the
+ * POM, and properties are substituted by {@link PomReader} when the values are requested.
+ *
+ * <p>The values follow the DOM conventions that Gradle used before: an element value is the text directly contained by the first child element with the
+ * given name, and elements that are not used are skipped.</p>
+ */
+public final class PomStaxParser {
+    private static final XMLResolver ENTITY_RESOLVER = new XMLResolver() {
+        public Object resolveEntity(String publicId, String systemId, String baseUri, String namespace) {
+            if ((systemId != null) && systemId.endsWith("m2-entities.ent")) {
+                return org.apache.ivy.plugins.parser.m2.PomReader.class.getResourceAsStream("m2-entities.ent");
+            }
+            return null;
+        }
+    };
+
+    // Factories may not be configured and used by several threads at the same time
+    private static final ThreadLocal<XMLInputFactory> INPUT_FACTORY = new ThreadLocal<XMLInputFactory>() {
+        @Override
+        protected XMLInputFactory initialValue() {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, true);
+            factory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, true);
+            factory.setXMLResolver(ENTITY_RESOLVER);
+            return factory;
+        }
+    };
+
+    private PomStaxParser() {
+    }
+
+    public static Project parse(InputStream stream, String systemId) throws IOException, XMLStreamException {
+        XMLStreamReader reader = INPUT_FACTORY.get().createXMLStreamReader(systemId, new AddDTDFilterInputStream(stream));
+        try {
+            // Skip the prolog, including the DTD that has been added
+            while (reader.next() != XMLStreamConstants.START_ELEMENT) {
+            }
+            Project project = new Project(systemId, reader.getLocalName());
+            readProject(reader, project);
+            return project;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void readProject(XMLStreamReader reader, Project project) throws XMLStreamException {
+        while (nextChild(reader)) {
+            String name = reader.getLocalName();
+            if ("groupId".equals(name) || "artifactId".equals(name) || "version".equals(name) || "packaging".equals(name) || "url".equals(name) || "description".equals(name)) {
+                readFirstText(reader, project.values);
+            } else if ("parent".equals(name) && project.parent == null) {
+                project.parent = readCoordinates(reader);
+            } else if ("licenses".equals(name) && project.licenses == null) {
+                project.licenses = readLicenses(reader);
+            } else if ("distributionManagement".equals(name) && !project.hasDistributionManagement) {
+                project.hasDistributionManagement = true;
+                project.relocation = readRelocation(reader);
+            } else if (!readDeclarations(reader, name, project)) {
+                skipElement(reader);
+            }
+        }
+    }
+
+    /**
+     * Reads the elements that can be declared by both the project and its profiles.
+     *
+     * @return true if the current element has been read.
+     */
+    private static boolean readDeclarations(XMLStreamReader reader, String name, Declarations declarations) throws XMLStreamException {
+        if ("dependencies".equals(name) && declarations.dependencies == null) {
+            declarations.dependencies = readDependencies(reader);
+        } else if ("dependencyManagement".equals(name) && declarations.dependencyManagement == null) {
+            declarations.dependencyManagement = readDependencyManagement(reader);
+        } else if ("properties".equals(name) && declarations.properties == null) {
+            declarations.properties = readProperties(reader);
+        } else if ("profiles".equals(name) && declarations instanceof Project && ((Project) declarations).profiles == null) {
+            ((Project) declarations).profiles = readProfiles(reader);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private static Coordinates readCoordinates(XMLStreamReader reader) throws XMLStreamException {
+        Coordinates coordinates = new Coordinates();
+        while (nextChild(reader)) {
+            readFirstText(reader, coordinates.values);
+        }
+        return coordinates;
+    }
+
+    private static Coordinates readRelocation(XMLStreamReader reader) throws XMLStreamException {
+        Coordinates relocation = null;
+        while (nextChild(reader)) {
+            if ("relocation".equals(reader.getLocalName()) && relocation == null) {
+                relocation = readCoordinates(reader);
+            } else {
+                skipElement(reader);
+            }
+        }
+        return relocation;
+    }
+
+    private static List<Coordinates> readLicenses(XMLStreamReader reader) throws XMLStreamException {
+        List<Coordinates> licenses = new ArrayList<Coordinates>();
+        while (nextChild(reader)) {
+            if ("license".equals(reader.getLocalName())) {
+                licenses.add(readCoordinates(reader));
+            } else {
+                skipElement(reader);
+            }
+        }
+        return licenses;
+    }
+
+    private static Map<String, String> readProperties(XMLStreamReader reader) throws XMLStreamException {
+        Map<String, String> properties = new HashMap<String, String>();
+        while (nextChild(reader)) {
+            String name = reader.getLocalName();
+            properties.put(name, readText(reader));
+        }
+        return properties;
+    }
+
+    private static List<Dependency> readDependencyManagement(XMLStreamReader reader) throws XMLStreamException {
+        List<Dependency> dependencies = null;
+        while (nextChild(reader)) {
+            if ("dependencies".equals(reader.getLocalName()) && dependencies == null) {
+                dependencies = readDependencies(reader);
+            } else {
+                skipElement(reader);
+            }
+        }
+        return dependencies == null ? new ArrayList<Dependency>(0) : dependencies;
+    }
+
+    private static List<Dependency> readDependencies(XMLStreamReader reader) throws XMLStreamException {
+        List<Dependency> dependencies = new ArrayList<Dependency>();
+        while (nextChild(reader)) {
+            if ("dependency".equals(reader.getLocalName())) {
+                dependencies.add(readDependency(reader));
+            } else {
+                skipElement(reader);
+            }
+        }
+        return dependencies;
+    }
+
+    private static Dependency readDependency(XMLStreamReader reader) throws XMLStreamException {
+        Dependency dependency = new Dependency();
+        while (nextChild(reader)) {
+            if ("exclusions".equals(reader.getLocalName())) {
+                if (dependency.exclusions == null) {
+                    dependency.exclusions = readExclusions(reader);
+                } else {
+                    skipElement(reader);
+                }
+            } else {
+                readFirstText(reader, dependency.values);
+            }
+        }
+        return dependency;
+    }
+
+    private static List<Coordinates> readExclusions(XMLStreamReader reader) throws XMLStreamException {
+        List<Coordinates> exclusions = new ArrayList<Coordinates>();
+        while (nextChild(reader)) {
+            if ("exclusion".equals(reader.getLocalName())) {
+                exclusions.add(readCoordinates(reader));
+            } else {
+                skipElement(reader);
+            }
+        }
+        return exclusions;
+    }
+
+    private static List<Profile> readProfiles(XMLStreamReader reader) throws XMLStreamException {
+        List<Profile> profiles = new ArrayList<Profile>();
+        while (nextChild(reader)) {
+            if ("profile".equals(reader.getLocalName())) {
+                profiles.add(readProfile(reader));
+            } else {
+                skipElement(reader);
+            }
+        }
+        return profiles;
+    }
+
+    private static Profile readProfile(XMLStreamReader reader) throws XMLStreamException {
+        Profile profile = new Profile();
+        while (nextChild(reader)) {
+            String name = reader.getLocalName();
+            if ("id".equals(name)) {
+                readFirstText(reader, profile.values);
+            } else if ("activation".equals(name) && !profile.hasActivation) {
+                profile.hasActivation = true;
+                readActivation(reader, profile);
+            } else if (!readDeclarations(reader, name, profile)) {
+                skipElement(reader);
+            }
+        }
+        return profile;
+    }
+
+    private static void readActivation(XMLStreamReader reader, Profile profile) throws XMLStreamException {
+        while (nextChild(reader)) {
+            String name = reader.getLocalName();
+            if ("activeByDefault".equals(name)) {
+                readFirstText(reader, profile.values);
+            } else if ("property".equals(name) && profile.activationProperty == null) {
+                profile.activationProperty = readCoordinates(reader);
+            } else {
+                skipElement(reader);
+            }
+        }
+    }
+
+    /**
+     * Moves to the next child element of the current element.
+     *
+     * @return true if positioned on the start of a child element, false if positioned on the end of the current element.
+     */
+    private static boolean nextChild(XMLStreamReader reader) throws XMLStreamException {
+        while (true) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    return true;
+                case XMLStreamConstants.END_ELEMENT:
+                    return false;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private static void readFirstText(XMLStreamReader reader, Map<String, String> values) throws XMLStreamException {
+        String name = reader.getLocalName();
+        if (values.containsKey(name)) {
+            skipElement(reader);
+        } else {
+            values.put(name, readText(reader));
+        }
+    }
+
+    /**
+     * Returns the text directly contained by the current element, and moves to the end of the element.
+     */
+    private static String readText(XMLStreamReader reader) throws XMLStreamException {
+        String text = "";
+        StringBuilder builder = null;
+        int depth = 0;
+        while (true) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    if (depth == 0) {
+                        return builder == null ? text : builder.toString();
+                    }
+                    depth--;
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    if (depth == 0) {
+                        if (builder != null) {
+                            builder.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        } else if (text.length() == 0) {
+                            text = reader.getText();
+                        } else {
+                            builder = new StringBuilder(text);
+                            builder.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        }
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 0;
+        while (true) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    if (depth == 0) {
+                        return;
+                    }
+                    depth--;
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * The text values of the child elements of an element, by element name.
+     */
+    public static class Coordinates {
+        final Map<String, String> values = new HashMap<String, String>(8);
+
+        public String get(String name) {
+            return values.get(name);
+        }
+    }
+
+    public static class Dependency extends Coordinates {
+        List<Coordinates> exclusions;
+
+        public List<Coordinates> getExclusions() {
+            return exclusions;
+        }
+    }
+
+    public static class Declarations extends Coordinates {
+        List<Dependency> dependencies;
+        List<Dependency> dependencyManagement;
+        Map<String, String> properties;
+
+        public List<Dependency> getDependencies() {
+            return dependencies;
+        }
+
+        public List<Dependency> getDependencyManagement() {
+            return dependencyManagement;
+        }
+
+        public Map<String, String> getProperties() {
+            return properties;
+        }
+    }
+
+    public static class Profile extends Declarations {
+        boolean hasActivation;
+        Coordinates activationProperty;
+
+        public boolean hasActivation() {
+            return hasActivation;
+        }
+
+        public Coordinates getActivationProperty() {
+            return activationProperty;
+        }
+    }
+
+    public static class Project extends Declarations {
+        private final String systemId;
+        private final String rootElementName;
+        Coordinates parent;
+        List<Coordinates> licenses;
+        boolean hasDistributionManagement;
+        Coordinates relocation;
+        List<Profile> profiles;
+
+        Project(String systemId, String rootElementName) {
+            this.systemId = systemId;
+            this.rootElementName = rootElementName;
+        }
+
+        public String getSystemId() {
+            return systemId;
+        }
+
+        public String getRootElementName() {
+            return rootElementName;
+        }
+
+        public Coordinates getParent() {
+            return parent;
+        }
+
+        public List<Coordinates> getLicenses() {
+            return licenses;
+        }
+
+        public Coordinates getRelocation() {
+            return relocation;
+        }
+
+        public List<Profile> getProfiles() {
+            return profiles;
+        }
+    }
+
+    public static final class AddDTDFilterInputStream extends FilterInputStream {
+        private static final int MARK = 10000;
+        private static final String DOCTYPE = "<!DOCTYPE project SYSTEM \"m2-entities.ent\">\n";
+
+        private int count;
+        private byte[] prefix = DOCTYPE.getBytes();
+
+        public AddDTDFilterInputStream(InputStream in) throws IOException {
+            super(new BufferedInputStream(in));
+
+            this.in.mark(MARK);
+
+            // TODO: we should really find a better solution for this...
+            // maybe we could use a FilterReader instead of a FilterInputStream?
+            int byte1 = this.in.read();
+            int byte2 = this.in.read();
+            int byte3 = this.in.read();
+
+            if (byte1 == 239 && byte2 == 187 && byte3 == 191) {
+                // skip the UTF-8 BOM
+                this.in.mark(MARK);
+            } else {
+                this.in.reset();
+            }
+
+            int bytesToSkip = 0;
+            LineNumberReader reader = new LineNumberReader(new InputStreamReader(this.in, "UTF-8"), 100);
+            String firstLine = reader.readLine();
+            if (firstLine != null) {
+                String trimmed = firstLine.trim();
+                if (trimmed.startsWith("<?xml ")) {
+                    int endIndex = trimmed.indexOf("?>");
+                    String xmlDecl = trimmed.substring(0, endIndex + 2);
+                    prefix = (xmlDecl + "\n" + DOCTYPE).getBytes();
+                    bytesToSkip = xmlDecl.getBytes().length;
+                }
+            }
+
+            this.in.reset();
+            for (int i = 0; i < bytesToSkip; i++) {
+                this.in.read();
+            }
+        }
+
+        public int read() throws IOException {
+            if (count < prefix.length) {
+                return prefix[count++];
+            }
+
+            return super.read();
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (b == null) {
+                throw new NullPointerException();
+            } else if ((off < 0) || (off > b.length) || (len < 0)
+                    || ((off + len) > b.length) || ((off + len) < 0)) {
+                throw new IndexOutOfBoundsException();
+            } else if (len == 0) {
+                return 0;
+            }
+
+            int nbrBytesCopied = 0;
+
+            if (count < prefix.length) {
+                int nbrBytesFromPrefix = Math.min(prefix.length - count, len);
+                System.arraycopy(prefix, count, b, off, nbrBytesFromPrefix);
+                nbrBytesCopied = nbrBytesFromPrefix;
+            }
+
+            if (nbrBytesCopied < len) {
+                nbrBytesCopied += in.read(b, off + nbrBytesCopied, len - nbrBytesCopied);
+            }
+
+            count += nbrBytesCopied;
+            return nbrBytesCopied;
+        }
+    }
+}
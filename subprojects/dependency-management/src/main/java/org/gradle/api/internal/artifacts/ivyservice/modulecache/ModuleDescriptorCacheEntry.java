@@ -25,7 +25,7 @@ import org.gradle.internal.component.model.ModuleSource;
 
 import java.math.BigInteger;
 
-abstract class ModuleDescriptorCacheEntry {
+abstract class ModuleDescriptorCacheEntry implements ModuleMetaDataCache.CachedEntry {
     static final byte TYPE_MISSING = 0;
     static final byte TYPE_IVY = 1;
     static final byte TYPE_MAVEN = 2;
@@ -61,6 +61,10 @@ abstract class ModuleDescriptorCacheEntry {
         throw new IllegalArgumentException("Not a valid module version type: " + metaData);
     }
 
+    public long getCreateTimestamp() {
+        return createTimestamp;
+    }
+
     public boolean isMissing() {
         return type == TYPE_MISSING;
     }
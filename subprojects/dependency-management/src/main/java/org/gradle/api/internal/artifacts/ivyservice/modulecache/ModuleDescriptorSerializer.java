@@ -0,0 +1,495 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.modulecache;
+
+import org.apache.ivy.core.module.descriptor.*;
+import org.apache.ivy.core.module.id.ArtifactId;
+import org.apache.ivy.core.module.id.ModuleRevisionId;
+import org.apache.ivy.plugins.matcher.PatternMatcher;
+import org.apache.ivy.plugins.parser.xml.XmlModuleDescriptorParser;
+import org.apache.ivy.util.extendable.DefaultExtendableItem;
+import org.gradle.api.internal.artifacts.ivyservice.IvyUtil;
+import org.gradle.api.internal.artifacts.ivyservice.NamespaceId;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.ResolverStrategy;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.serialize.Decoder;
+import org.gradle.internal.serialize.Encoder;
+import org.gradle.internal.serialize.Serializer;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.*;
+
+/**
+ * A binary encoding of the module descriptors that are kept in the meta-data cache, which is much faster to read than the equivalent ivy.xml.
+ *
+ * <p>The descriptor read back is the same as the one that {@link org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.IvyXmlModuleDescriptorParser}
+ * creates from the ivy.xml written by {@link org.gradle.api.internal.artifacts.ivyservice.IvyXmlModuleDescriptorWriter}. Each distinct string is written once per
+ * descriptor and referred to by index afterwards, so the configuration names repeated by every dependency and artifact take a byte or two each.</p>
+ */
+public class ModuleDescriptorSerializer implements Serializer<ModuleDescriptor> {
+    private static final int FORMAT_VERSION = 1;
+    private static final String DEFAULT_STATUS = "integration";
+
+    private final ResolverStrategy resolverStrategy;
+    private final Field dependencyConfigField;
+
+    public ModuleDescriptorSerializer(ResolverStrategy resolverStrategy) {
+        this.resolverStrategy = resolverStrategy;
+        try {
+            dependencyConfigField = DefaultDependencyDescriptor.class.getDeclaredField("confs");
+        } catch (NoSuchFieldException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+        dependencyConfigField.setAccessible(true);
+    }
+
+    public void write(Encoder encoder, ModuleDescriptor md) throws Exception {
+        StringTableEncoder writer = new StringTableEncoder(encoder);
+        encoder.writeSmallInt(FORMAT_VERSION);
+
+        writer.writeMap(md.getExtraAttributesNamespaces());
+
+        ModuleRevisionId resolvedId = md.getResolvedModuleRevisionId();
+        writer.writeString(md.getModuleRevisionId().getOrganisation());
+        writer.writeString(md.getModuleRevisionId().getName());
+        writer.writeString(resolvedId.getBranch());
+        writer.writeString(resolvedId.getRevision());
+        writer.writeMap(md.getQualifiedExtraAttributes());
+        writer.writeString(md.getStatus());
+        Date publicationDate = md.getResolvedPublicationDate();
+        encoder.writeBoolean(publicationDate != null);
+        if (publicationDate != null) {
+            encoder.writeLong(publicationDate.getTime());
+        }
+        encoder.writeBoolean(md.isDefault());
+
+        License[] licenses = md.getLicenses();
+        encoder.writeSmallInt(licenses.length);
+        for (License license : licenses) {
+            writer.writeString(license.getName());
+            writer.writeString(license.getUrl());
+        }
+        boolean hasDescription = md.getHomePage() != null || md.getDescription() != null;
+        encoder.writeBoolean(hasDescription);
+        if (hasDescription) {
+            writer.writeString(md.getHomePage());
+            writer.writeString(md.getDescription() == null ? "" : md.getDescription().trim());
+        }
+        writeExtraInfo(writer, md.getExtraInfo());
+
+        Configuration[] configurations = md.getConfigurations();
+        encoder.writeSmallInt(configurations.length);
+        for (Configuration configuration : configurations) {
+            writer.writeString(configuration.getName());
+            writer.writeString(configuration.getVisibility().toString());
+            writer.writeString(configuration.getDescription());
+            writer.writeStrings(configuration.getExtends());
+            encoder.writeBoolean(configuration.isTransitive());
+            writer.writeString(configuration.getDeprecated());
+            writer.writeMap(configuration.getQualifiedExtraAttributes());
+        }
+
+        Artifact[] artifacts = md.getAllArtifacts();
+        encoder.writeSmallInt(artifacts.length);
+        for (Artifact artifact : artifacts) {
+            writer.writeString(artifact.getName());
+            writer.writeString(artifact.getType());
+            writer.writeString(artifact.getExt());
+            writer.writeStrings(artifact.getConfigurations());
+            writer.writeMap(artifact.getQualifiedExtraAttributes());
+        }
+
+        DependencyDescriptor[] dependencies = md.getDependencies();
+        encoder.writeSmallInt(dependencies.length);
+        for (DependencyDescriptor dependency : dependencies) {
+            writeDependency(writer, dependency);
+        }
+
+        ExcludeRule[] excludeRules = md.getAllExcludeRules();
+        encoder.writeSmallInt(excludeRules.length);
+        for (ExcludeRule excludeRule : excludeRules) {
+            writeExcludeRule(writer, excludeRule);
+        }
+    }
+
+    private void writeExtraInfo(StringTableEncoder writer, Map<?, ?> extraInfo) throws IOException {
+        Map<NamespaceId, String> entries = new LinkedHashMap<NamespaceId, String>();
+        for (Map.Entry<?, ?> entry : extraInfo.entrySet()) {
+            // The ivy.xml format keeps only namespaced elements with a value
+            if (entry.getKey() instanceof NamespaceId && entry.getValue() != null && entry.getValue().toString().length() > 0) {
+                entries.put((NamespaceId) entry.getKey(), entry.getValue().toString());
+            }
+        }
+        writer.encoder.writeSmallInt(entries.size());
+        for (Map.Entry<NamespaceId, String> entry : entries.entrySet()) {
+            writer.writeString(entry.getKey().getNamespace());
+            writer.writeString(entry.getKey().getName());
+            writer.writeString(entry.getValue());
+        }
+    }
+
+    private void writeDependency(StringTableEncoder writer, DependencyDescriptor dependency) throws IOException {
+        Encoder encoder = writer.encoder;
+        ModuleRevisionId revisionId = dependency.getDependencyRevisionId();
+        writer.writeString(revisionId.getOrganisation());
+        writer.writeString(revisionId.getName());
+        writer.writeString(revisionId.getBranch());
+        writer.writeString(revisionId.getRevision());
+        writer.writeMap(dependency.getQualifiedExtraAttributes());
+        ModuleRevisionId constraintId = dependency.getDynamicConstraintDependencyRevisionId();
+        boolean hasConstraint = !constraintId.equals(revisionId);
+        encoder.writeBoolean(hasConstraint);
+        if (hasConstraint) {
+            writer.writeString(constraintId.getBranch());
+            writer.writeString(constraintId.getRevision());
+        }
+        encoder.writeBoolean(dependency.isForce());
+        encoder.writeBoolean(dependency.isChanging());
+        encoder.writeBoolean(dependency.isTransitive());
+
+        String[] moduleConfigurations = dependency.getModuleConfigurations();
+        Map<String, List<String>> configMappings = getConfigMappings(dependency);
+        encoder.writeSmallInt(moduleConfigurations.length);
+        for (String moduleConfiguration : moduleConfigurations) {
+            writer.writeString(moduleConfiguration);
+            List<String> dependencyConfigurations = configMappings.get(moduleConfiguration);
+            writer.writeStrings(dependencyConfigurations.toArray(new String[dependencyConfigurations.size()]));
+        }
+
+        DependencyArtifactDescriptor[] artifacts = dependency.getAllDependencyArtifacts();
+        encoder.writeSmallInt(artifacts.length);
+        for (DependencyArtifactDescriptor artifact : artifacts) {
+            writer.writeString(artifact.getName());
+            writer.writeString(artifact.getType());
+            writer.writeString(artifact.getExt());
+            writer.writeStrings(artifact.getConfigurations());
+            writer.writeMap(artifact.getQualifiedExtraAttributes());
+        }
+
+        IncludeRule[] includeRules = dependency.getAllIncludeRules();
+        encoder.writeSmallInt(includeRules.length);
+        for (IncludeRule includeRule : includeRules) {
+            // The ivy.xml format does not keep the module of an include rule
+            writer.writeString(includeRule.getId().getName());
+            writer.writeString(includeRule.getId().getType());
+            writer.writeString(includeRule.getId().getExt());
+            writer.writeStrings(includeRule.getConfigurations());
+            writer.writeString(includeRule.getMatcher().getName());
+        }
+
+        ExcludeRule[] excludeRules = dependency.getAllExcludeRules();
+        encoder.writeSmallInt(excludeRules.length);
+        for (ExcludeRule excludeRule : excludeRules) {
+            writeExcludeRule(writer, excludeRule);
+        }
+    }
+
+    private void writeExcludeRule(StringTableEncoder writer, ExcludeRule excludeRule) throws IOException {
+        ArtifactId id = excludeRule.getId();
+        writer.writeString(id.getModuleId().getOrganisation());
+        writer.writeString(id.getModuleId().getName());
+        writer.writeString(id.getName());
+        writer.writeString(id.getType());
+        writer.writeString(id.getExt());
+        writer.writeStrings(excludeRule.getConfigurations());
+        writer.writeString(excludeRule.getMatcher().getName());
+    }
+
+    private Map<String, List<String>> getConfigMappings(DependencyDescriptor dependency) {
+        if (dependency instanceof DefaultDependencyDescriptor) {
+            // Use the raw mappings, for the same reason as IvyXmlModuleDescriptorWriter
+            try {
+                return (Map<String, List<String>>) dependencyConfigField.get(dependency);
+            } catch (IllegalAccessException e) {
+                throw UncheckedException.throwAsUncheckedException(e);
+            }
+        }
+        Map<String, List<String>> configMappings = new HashMap<String, List<String>>();
+        String[] moduleConfigurations = dependency.getModuleConfigurations();
+        for (String moduleConfiguration : moduleConfigurations) {
+            configMappings.put(moduleConfiguration, Arrays.asList(dependency.getDependencyConfigurations(moduleConfigurations)));
+        }
+        return configMappings;
+    }
+
+    public ModuleDescriptor read(Decoder decoder) throws Exception {
+        StringTableDecoder reader = new StringTableDecoder(decoder);
+        int formatVersion = decoder.readSmallInt();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IllegalArgumentException(String.format("Unexpected module descriptor format version %s.", formatVersion));
+        }
+
+        DefaultModuleDescriptor md = new DefaultModuleDescriptor(XmlModuleDescriptorParser.getInstance(), null);
+        Map<String, String> namespaces = reader.readMap();
+        for (Map.Entry<String, String> entry : namespaces.entrySet()) {
+            md.addExtraAttributeNamespace(entry.getKey(), entry.getValue());
+        }
+
+        String organisation = reader.readString();
+        String module = reader.readString();
+        String branch = reader.readString();
+        String revision = reader.readString();
+        md.setModuleRevisionId(IvyUtil.createModuleRevisionId(organisation, module, branch, revision, reader.readMap()));
+        String status = reader.readString();
+        md.setStatus(status == null ? DEFAULT_STATUS : status);
+        if (decoder.readBoolean()) {
+            md.setPublicationDate(new Date(decoder.readLong()));
+        }
+        md.setDefault(decoder.readBoolean());
+
+        int licenseCount = decoder.readSmallInt();
+        for (int i = 0; i < licenseCount; i++) {
+            md.addLicense(new License(reader.readString(), reader.readString()));
+        }
+        if (decoder.readBoolean()) {
+            md.setHomePage(reader.readString());
+            md.setDescription(reader.readString());
+        }
+        int extraInfoCount = decoder.readSmallInt();
+        for (int i = 0; i < extraInfoCount; i++) {
+            String namespace = reader.readString();
+            String name = reader.readString();
+            ((Map) md.getExtraInfo()).put(new NamespaceId(namespace, name), reader.readString());
+        }
+
+        int configurationCount = decoder.readSmallInt();
+        for (int i = 0; i < configurationCount; i++) {
+            String name = reader.readString();
+            Configuration.Visibility visibility = Configuration.Visibility.getVisibility(reader.readString());
+            String description = reader.readString();
+            String[] extendsFrom = reader.readStrings();
+            boolean transitive = decoder.readBoolean();
+            String deprecated = reader.readString();
+            Configuration configuration = new Configuration(name, visibility, description, extendsFrom, transitive, deprecated);
+            setExtraAttributes(configuration, reader.readMap());
+            md.addConfiguration(configuration);
+        }
+        for (Configuration configuration : md.getConfigurations()) {
+            configuration.replaceWildcards(md);
+        }
+
+        int artifactCount = decoder.readSmallInt();
+        for (int i = 0; i < artifactCount; i++) {
+            String name = reader.readString();
+            String type = reader.readString();
+            String ext = reader.readString();
+            String[] configurations = reader.readStrings();
+            MDArtifact artifact = new MDArtifact(md, name, type, ext, null, reader.readMap());
+            for (String configuration : configurations) {
+                artifact.addConfiguration(configuration);
+                md.addArtifact(configuration, artifact);
+            }
+        }
+
+        int dependencyCount = decoder.readSmallInt();
+        for (int i = 0; i < dependencyCount; i++) {
+            md.addDependency(readDependency(reader, md));
+        }
+
+        int excludeRuleCount = decoder.readSmallInt();
+        for (int i = 0; i < excludeRuleCount; i++) {
+            md.addExcludeRule(readExcludeRule(reader));
+        }
+        return md;
+    }
+
+    private DependencyDescriptor readDependency(StringTableDecoder reader, DefaultModuleDescriptor md) throws IOException {
+        Decoder decoder = reader.decoder;
+        String organisation = reader.readString();
+        String name = reader.readString();
+        String branch = reader.readString();
+        String revision = reader.readString();
+        Map<String, String> extraAttributes = reader.readMap();
+        ModuleRevisionId revisionId = IvyUtil.createModuleRevisionId(organisation, name, branch, revision, extraAttributes);
+        ModuleRevisionId constraintId;
+        if (decoder.readBoolean()) {
+            String branchConstraint = reader.readString();
+            String revisionConstraint = reader.readString();
+            if (branchConstraint == null) {
+                constraintId = IvyUtil.createModuleRevisionId(organisation, name, null, revisionConstraint, extraAttributes, false);
+            } else {
+                constraintId = IvyUtil.createModuleRevisionId(organisation, name, branchConstraint, revisionConstraint, extraAttributes);
+            }
+        } else {
+            constraintId = IvyUtil.createModuleRevisionId(organisation, name, branch, revision, extraAttributes, false);
+        }
+        boolean force = decoder.readBoolean();
+        boolean changing = decoder.readBoolean();
+        boolean transitive = decoder.readBoolean();
+        DefaultDependencyDescriptor dependency = new DefaultDependencyDescriptor(md, revisionId, constraintId, force, changing, transitive);
+
+        int moduleConfigurationCount = decoder.readSmallInt();
+        for (int i = 0; i < moduleConfigurationCount; i++) {
+            String moduleConfiguration = reader.readString();
+            for (String dependencyConfiguration : reader.readStrings()) {
+                dependency.addDependencyConfiguration(moduleConfiguration, dependencyConfiguration);
+            }
+        }
+        if (moduleConfigurationCount == 0) {
+            // Same as the default mapping applied when parsing an ivy.xml
+            dependency.addDependencyConfiguration("*", "*");
+        }
+
+        int artifactCount = decoder.readSmallInt();
+        for (int i = 0; i < artifactCount; i++) {
+            String artifactName = reader.readString();
+            String type = reader.readString();
+            String ext = reader.readString();
+            String[] configurations = reader.readStrings();
+            DefaultDependencyArtifactDescriptor artifact = new DefaultDependencyArtifactDescriptor(dependency, artifactName, type, ext, null, reader.readMap());
+            for (String configuration : orAllConfigurations(configurations, md)) {
+                artifact.addConfiguration(configuration);
+                dependency.addDependencyArtifact(configuration, artifact);
+            }
+        }
+
+        int includeRuleCount = decoder.readSmallInt();
+        for (int i = 0; i < includeRuleCount; i++) {
+            String artifactName = reader.readString();
+            String type = reader.readString();
+            String ext = reader.readString();
+            String[] configurations = reader.readStrings();
+            PatternMatcher matcher = resolverStrategy.getPatternMatcher(reader.readString());
+            ArtifactId id = new ArtifactId(IvyUtil.createModuleId(PatternMatcher.ANY_EXPRESSION, PatternMatcher.ANY_EXPRESSION), artifactName, type, ext);
+            DefaultIncludeRule includeRule = new DefaultIncludeRule(id, matcher, new HashMap<String, String>());
+            for (String configuration : orAllConfigurations(configurations, md)) {
+                includeRule.addConfiguration(configuration);
+                dependency.addIncludeRule(configuration, includeRule);
+            }
+        }
+
+        int excludeRuleCount = decoder.readSmallInt();
+        for (int i = 0; i < excludeRuleCount; i++) {
+            DefaultExcludeRule excludeRule = readExcludeRule(reader);
+            for (String configuration : excludeRule.getConfigurations()) {
+                dependency.addExcludeRule(configuration, excludeRule);
+            }
+        }
+        return dependency;
+    }
+
+    private DefaultExcludeRule readExcludeRule(StringTableDecoder reader) throws IOException {
+        String organisation = reader.readString();
+        String module = reader.readString();
+        String name = reader.readString();
+        String type = reader.readString();
+        String ext = reader.readString();
+        String[] configurations = reader.readStrings();
+        PatternMatcher matcher = resolverStrategy.getPatternMatcher(reader.readString());
+        DefaultExcludeRule excludeRule = new DefaultExcludeRule(new ArtifactId(IvyUtil.createModuleId(organisation, module), name, type, ext), matcher, new HashMap<String, String>());
+        for (String configuration : configurations) {
+            excludeRule.addConfiguration(configuration);
+        }
+        return excludeRule;
+    }
+
+    private static String[] orAllConfigurations(String[] configurations, ModuleDescriptor md) {
+        return configurations.length == 0 ? md.getConfigurationsNames() : configurations;
+    }
+
+    private static void setExtraAttributes(DefaultExtendableItem item, Map<String, String> extraAttributes) {
+        for (Map.Entry<String, String> entry : extraAttributes.entrySet()) {
+            item.setExtraAttribute(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Writes each distinct string once, and refers to it by index afterwards.
+     */
+    private static class StringTableEncoder {
+        private final Encoder encoder;
+        private final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+        StringTableEncoder(Encoder encoder) {
+            this.encoder = encoder;
+        }
+
+        void writeString(String value) throws IOException {
+            if (value == null) {
+                encoder.writeSmallInt(0);
+                return;
+            }
+            Integer index = strings.get(value);
+            if (index != null) {
+                encoder.writeSmallInt(index + 2);
+            } else {
+                strings.put(value, strings.size());
+                encoder.writeSmallInt(1);
+                encoder.writeString(value);
+            }
+        }
+
+        void writeStrings(String[] values) throws IOException {
+            encoder.writeSmallInt(values.length);
+            for (String value : values) {
+                writeString(value);
+            }
+        }
+
+        void writeMap(Map<?, ?> values) throws IOException {
+            if (values == null) {
+                encoder.writeSmallInt(0);
+                return;
+            }
+            encoder.writeSmallInt(values.size());
+            for (Map.Entry<?, ?> entry : values.entrySet()) {
+                writeString(entry.getKey().toString());
+                writeString(entry.getValue() == null ? null : entry.getValue().toString());
+            }
+        }
+    }
+
+    private static class StringTableDecoder {
+        private final Decoder decoder;
+        private final List<String> strings = new ArrayList<String>();
+
+        StringTableDecoder(Decoder decoder) {
+            this.decoder = decoder;
+        }
+
+        String readString() throws IOException {
+            int index = decoder.readSmallInt();
+            if (index == 0) {
+                return null;
+            }
+            if (index == 1) {
+                String value = decoder.readString();
+                strings.add(value);
+                return value;
+            }
+            return strings.get(index - 2);
+        }
+
+        String[] readStrings() throws IOException {
+            String[] values = new String[decoder.readSmallInt()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = readString();
+            }
+            return values;
+        }
+
+        Map<String, String> readMap() throws IOException {
+            int size = decoder.readSmallInt();
+            Map<String, String> values = new LinkedHashMap<String, String>(size * 2);
+            for (int i = 0; i < size; i++) {
+                values.put(readString(), readString());
+            }
+            return values;
+        }
+    }
+}
@@ -25,34 +25,60 @@ import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.IvyXmlModu
 import org.gradle.internal.UncheckedException;
 import org.gradle.internal.resource.local.LocallyAvailableResource;
 import org.gradle.internal.resource.local.PathKeyFileStore;
+import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
+import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 
+/**
+ * Stores each module descriptor as an ivy.xml file, and also in a binary form that is much faster to read. The ivy.xml file remains the reference copy: its hash
+ * is recorded in the meta-data cache, and the descriptor is parsed from it when the binary file is missing or was not written for the current ivy.xml.
+ */
 public class ModuleDescriptorStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ModuleDescriptorStore.class);
 
     public static final String FILE_PATH_PATTERN = "%s/%s/%s/%s/ivy.xml";
+    public static final String BINARY_FILE_PATH_PATTERN = "%s/%s/%s/%s/descriptor.bin";
     private final IvyXmlModuleDescriptorParser descriptorParser;
     private final PathKeyFileStore metaDataStore;
     private final IvyModuleDescriptorWriter descriptorWriter;
+    private final ModuleDescriptorSerializer descriptorSerializer;
 
-    public ModuleDescriptorStore(PathKeyFileStore metaDataStore, IvyModuleDescriptorWriter descriptorWriter, IvyXmlModuleDescriptorParser ivyXmlModuleDescriptorParser) {
+    public ModuleDescriptorStore(PathKeyFileStore metaDataStore, IvyModuleDescriptorWriter descriptorWriter, IvyXmlModuleDescriptorParser ivyXmlModuleDescriptorParser,
+                                 ModuleDescriptorSerializer descriptorSerializer) {
         this.metaDataStore = metaDataStore;
         this.descriptorWriter = descriptorWriter;
         this.descriptorParser = ivyXmlModuleDescriptorParser;
+        this.descriptorSerializer = descriptorSerializer;
     }
 
     public ModuleDescriptor getModuleDescriptor(ModuleComponentRepository repository, ModuleComponentIdentifier moduleComponentIdentifier) {
-        String filePath = getFilePath(repository, moduleComponentIdentifier);
+        String filePath = getFilePath(FILE_PATH_PATTERN, repository, moduleComponentIdentifier);
         final LocallyAvailableResource resource = metaDataStore.get(filePath);
         if (resource != null) {
-            return parseModuleDescriptorFile(resource.getFile());
+            String binaryFilePath = getFilePath(BINARY_FILE_PATH_PATTERN, repository, moduleComponentIdentifier);
+            LocallyAvailableResource binaryResource = metaDataStore.get(binaryFilePath);
+            if (binaryResource != null) {
+                ModuleDescriptor moduleDescriptor = readBinaryFile(binaryResource.getFile(), resource.getFile());
+                if (moduleDescriptor != null) {
+                    return moduleDescriptor;
+                }
+            }
+            ModuleDescriptor moduleDescriptor = parseModuleDescriptorFile(resource.getFile());
+            writeBinaryFile(binaryFilePath, moduleDescriptor, resource.getFile());
+            return moduleDescriptor;
         }
         return null;
     }
 
     public LocallyAvailableResource putModuleDescriptor(ModuleComponentRepository repository, ModuleComponentIdentifier moduleComponentIdentifier, final ModuleDescriptor moduleDescriptor) {
-        String filePath = getFilePath(repository, moduleComponentIdentifier);
-        return metaDataStore.add(filePath, new Action<File>() {
+        String filePath = getFilePath(FILE_PATH_PATTERN, repository, moduleComponentIdentifier);
+        LocallyAvailableResource resource = metaDataStore.add(filePath, new Action<File>() {
             public void execute(File moduleDescriptorFile) {
                 try {
                     descriptorWriter.write(moduleDescriptor, moduleDescriptorFile);
@@ -61,6 +87,45 @@ public class ModuleDescriptorStore {
                 }
             }
         });
+        writeBinaryFile(getFilePath(BINARY_FILE_PATH_PATTERN, repository, moduleComponentIdentifier), moduleDescriptor, resource.getFile());
+        return resource;
+    }
+
+    private void writeBinaryFile(String binaryFilePath, final ModuleDescriptor moduleDescriptor, final File moduleDescriptorFile) {
+        metaDataStore.add(binaryFilePath, new Action<File>() {
+            public void execute(File binaryFile) {
+                try {
+                    KryoBackedEncoder encoder = new KryoBackedEncoder(new FileOutputStream(binaryFile));
+                    try {
+                        // Identifies the ivy.xml that the binary file was written for
+                        encoder.writeLong(moduleDescriptorFile.length());
+                        encoder.writeLong(moduleDescriptorFile.lastModified());
+                        descriptorSerializer.write(encoder, moduleDescriptor);
+                    } finally {
+                        encoder.close();
+                    }
+                } catch (Exception e) {
+                    throw UncheckedException.throwAsUncheckedException(e);
+                }
+            }
+        });
+    }
+
+    private ModuleDescriptor readBinaryFile(File binaryFile, File moduleDescriptorFile) {
+        try {
+            KryoBackedDecoder decoder = new KryoBackedDecoder(new BufferedInputStream(new FileInputStream(binaryFile)));
+            try {
+                if (decoder.readLong() != moduleDescriptorFile.length() || decoder.readLong() != moduleDescriptorFile.lastModified()) {
+                    return null;
+                }
+                return descriptorSerializer.read(decoder);
+            } finally {
+                decoder.close();
+            }
+        } catch (Exception e) {
+            LOGGER.debug("Could not read cached module descriptor {}, using {} instead.", binaryFile, moduleDescriptorFile, e);
+            return null;
+        }
     }
 
     private ModuleDescriptor parseModuleDescriptorFile(File moduleDescriptorFile) {
@@ -68,7 +133,7 @@ public class ModuleDescriptorStore {
         return descriptorParser.parseMetaData(parserSettings, moduleDescriptorFile, false).getDescriptor();
     }
 
-    private String getFilePath(ModuleComponentRepository repository, ModuleComponentIdentifier moduleComponentIdentifier) {
-        return String.format(FILE_PATH_PATTERN, moduleComponentIdentifier.getGroup(), moduleComponentIdentifier.getModule(), moduleComponentIdentifier.getVersion(), repository.getId());
+    private String getFilePath(String pattern, ModuleComponentRepository repository, ModuleComponentIdentifier moduleComponentIdentifier) {
+        return String.format(pattern, moduleComponentIdentifier.getGroup(), moduleComponentIdentifier.getModule(), moduleComponentIdentifier.getVersion(), repository.getId());
     }
 }
\ No newline at end of file
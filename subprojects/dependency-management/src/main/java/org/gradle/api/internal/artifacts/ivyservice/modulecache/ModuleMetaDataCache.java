@@ -15,6 +15,7 @@
  */
 package org.gradle.api.internal.artifacts.ivyservice.modulecache;
 
+import org.gradle.api.Nullable;
 import org.gradle.api.artifacts.ResolvedModuleVersion;
 import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
 import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.ModuleComponentRepository;
@@ -31,6 +32,20 @@ public interface ModuleMetaDataCache {
 
     CachedMetaData getCachedModuleDescriptor(ModuleComponentRepository repository, ModuleComponentIdentifier id);
 
+    /**
+     * Locates the cache entry for the given module, without loading the cached meta-data.
+     *
+     * @return The entry, or null when nothing is cached for the module.
+     */
+    @Nullable
+    CachedEntry getCachedEntry(ModuleComponentRepository repository, ModuleComponentIdentifier id);
+
+    interface CachedEntry {
+        long getCreateTimestamp();
+
+        boolean isMissing();
+    }
+
     interface CachedMetaData {
         ResolvedModuleVersion getModuleVersion();
 
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine;
+
+import org.gradle.api.Nullable;
+import org.gradle.api.artifacts.component.ComponentIdentifier;
+import org.gradle.internal.Factory;
+import org.gradle.internal.component.model.ComponentOverrideMetadata;
+import org.gradle.internal.resolve.resolver.ComponentMetaDataResolver;
+import org.gradle.internal.resolve.result.BuildableComponentResolveResult;
+
+/**
+ * Resolves the meta-data of components before it is required, so that the meta-data of several components can be fetched from the repositories at the
+ * same time.
+ */
+public interface ComponentMetaDataPrefetcher {
+    /**
+     * Does not fetch anything ahead. The meta-data of a component is resolved when it is required.
+     */
+    ComponentMetaDataPrefetcher NONE = new ComponentMetaDataPrefetcher() {
+        public Factory<BuildableComponentResolveResult> prefetch(ComponentMetaDataResolver resolver, ComponentIdentifier identifier, ComponentOverrideMetadata overrideMetadata) {
+            return null;
+        }
+    };
+
+    /**
+     * Starts resolving the meta-data of the given component, using the given resolver.
+     *
+     * @return A factory that waits for the meta-data to be resolved and returns the result, or null when the meta-data is not fetched ahead.
+     */
+    @Nullable
+    Factory<BuildableComponentResolveResult> prefetch(ComponentMetaDataResolver resolver, ComponentIdentifier identifier, ComponentOverrideMetadata overrideMetadata);
+}
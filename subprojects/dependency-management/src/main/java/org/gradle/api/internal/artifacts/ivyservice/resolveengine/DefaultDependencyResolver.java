@@ -45,6 +45,7 @@ import org.gradle.api.internal.artifacts.ivyservice.resolveengine.projectresult.
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ResolutionResultBuilder;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.StreamingResolutionResultBuilder;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.store.ResolutionResultsStoreFactory;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.store.ResolvedGraphCache;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.store.StoreSet;
 import org.gradle.api.internal.artifacts.repositories.ResolutionAwareRepository;
 import org.gradle.api.internal.cache.BinaryStore;
@@ -78,12 +79,19 @@ public class DefaultDependencyResolver implements ArtifactDependencyResolver {
     private final IvyContextManager ivyContextManager;
     private final ResolutionResultsStoreFactory storeFactory;
     private final VersionComparator versionComparator;
+    private final ComponentMetaDataPrefetcher metaDataPrefetcher;
+    private final ArtifactDownloader artifactDownloader;
+    private final ResolvedGraphCache resolvedGraphCache;
+    private final IdentifierInterner identifierInterner;
+    private final boolean bulkConflictResolution;
     private final boolean buildProjectDependencies;
 
     public DefaultDependencyResolver(ServiceRegistry serviceRegistry, ResolveIvyFactory ivyFactory, DependencyDescriptorFactory dependencyDescriptorFactory,
                                      CacheLockingManager cacheLockingManager, IvyContextManager ivyContextManager,
                                      ResolutionResultsStoreFactory storeFactory, VersionComparator versionComparator,
-                                     boolean buildProjectDependencies) {
+                                     ComponentMetaDataPrefetcher metaDataPrefetcher, ArtifactDownloader artifactDownloader,
+                                     ResolvedGraphCache resolvedGraphCache, IdentifierInterner identifierInterner,
+                                     boolean bulkConflictResolution, boolean buildProjectDependencies) {
         this.serviceRegistry = serviceRegistry;
         this.ivyFactory = ivyFactory;
         this.dependencyDescriptorFactory = dependencyDescriptorFactory;
@@ -91,6 +99,11 @@ public class DefaultDependencyResolver implements ArtifactDependencyResolver {
         this.ivyContextManager = ivyContextManager;
         this.storeFactory = storeFactory;
         this.versionComparator = versionComparator;
+        this.metaDataPrefetcher = metaDataPrefetcher;
+        this.artifactDownloader = artifactDownloader;
+        this.resolvedGraphCache = resolvedGraphCache;
+        this.identifierInterner = identifierInterner;
+        this.bulkConflictResolution = bulkConflictResolution;
         this.buildProjectDependencies = buildProjectDependencies;
     }
 
@@ -114,9 +127,14 @@ public class DefaultDependencyResolver implements ArtifactDependencyResolver {
                 List<LocalComponentFactory> localComponentFactories = allServices(LocalComponentFactory.class);
                 List<ResolverProvider> resolvers = allServices(ResolverProvider.class, ivyFactory.create(resolutionStrategy, repositories, metadataHandler.getComponentMetadataProcessor()));
                 ResolverProviderChain resolverProvider = new ResolverProviderChain(resolvers);
+                ResolvedGraphCache.CachedGraph cachedGraph = resolvedGraphCache.get(resolveContext, repositories, metadataHandler);
+                ComponentMetaDataResolver componentResolver = resolverProvider.getComponentResolver();
+                if (cachedGraph != null) {
+                    componentResolver = cachedGraph.observe(componentResolver);
+                }
                 WrappingResolverProvider wrappingProvider = new WrappingResolverProvider(
                     new DependencySubstitutionResolver(resolverProvider.getComponentIdResolver(), resolutionStrategy.getDependencySubstitutionRule()),
-                    new ClientModuleResolver(resolverProvider.getComponentResolver(), dependencyDescriptorFactory),
+                    new ClientModuleResolver(componentResolver, dependencyDescriptorFactory),
                         createArtifactResolver(resolverProvider.getArtifactResolver())
                 );
                 ModuleConflictResolver conflictResolver;
@@ -128,7 +146,7 @@ public class DefaultDependencyResolver implements ArtifactDependencyResolver {
                 conflictResolver = new VersionSelectionReasonResolver(conflictResolver);
                 ConflictHandler conflictHandler = new DefaultConflictHandler(conflictResolver, metadataHandler.getModuleMetadataProcessor().getModuleReplacements());
                 DefaultResolveContextToComponentResolver moduleResolver = new DefaultResolveContextToComponentResolver(new LocalComponentFactoryChain(localComponentFactories));
-                DependencyGraphBuilder builder = new DependencyGraphBuilder(wrappingProvider, moduleResolver, conflictHandler, new DefaultDependencyToConfigurationResolver());
+                DependencyGraphBuilder builder = new DependencyGraphBuilder(wrappingProvider, moduleResolver, conflictHandler, new DefaultDependencyToConfigurationResolver(), metaDataPrefetcher, bulkConflictResolution, identifierInterner);
 
                 StoreSet stores = storeFactory.createStoreSet();
 
@@ -142,9 +160,15 @@ public class DefaultDependencyResolver implements ArtifactDependencyResolver {
                 DefaultResolvedConfigurationBuilder oldModelBuilder = new DefaultResolvedConfigurationBuilder(oldTransientModelBuilder);
                 ResolvedProjectConfigurationResultBuilder projectModelBuilder = new DefaultResolvedProjectConfigurationResultBuilder(buildProjectDependencies);
 
-                // Resolve the dependency graph
+                // Resolve the dependency graph, unless the cached graph can be reused
                 DefaultResolvedArtifactsBuilder artifactsBuilder = new DefaultResolvedArtifactsBuilder();
-                builder.resolve(resolveContext, newModelBuilder, oldModelBuilder, artifactsBuilder, projectModelBuilder);
+                if (cachedGraph == null) {
+                    builder.resolve(resolveContext, newModelBuilder, oldModelBuilder, artifactsBuilder, projectModelBuilder);
+                } else if (!cachedGraph.replay(wrappingProvider.getArtifactResolver(), newModelBuilder, oldModelBuilder, artifactsBuilder, projectModelBuilder)) {
+                    ResolvedGraphCache.Recorder recorder = cachedGraph.record(newModelBuilder, oldModelBuilder, artifactsBuilder, projectModelBuilder);
+                    builder.resolve(resolveContext, recorder.getNewModelBuilder(), recorder.getOldModelBuilder(), recorder.getArtifactsBuilder(), recorder.getProjectModelBuilder());
+                    recorder.complete();
+                }
                 results.resolved(newModelBuilder.complete(), projectModelBuilder.complete());
 
                 ResolvedGraphResults graphResults = oldModelBuilder.complete();
@@ -165,7 +189,7 @@ public class DefaultDependencyResolver implements ArtifactDependencyResolver {
         Factory<TransientConfigurationResults> transientConfigurationResultsFactory = new TransientConfigurationResultsLoader(results.getTransientConfigurationResultsBuilder(), graphResults, artifactResults);
 
         DefaultLenientConfiguration result = new DefaultLenientConfiguration(
-            (Configuration) resolveContext, cacheLockingManager, graphResults, artifactResults, transientConfigurationResultsFactory);
+            (Configuration) resolveContext, cacheLockingManager, artifactDownloader, graphResults, artifactResults, transientConfigurationResultsFactory);
         results.withResolvedConfiguration(new DefaultResolvedConfiguration(result));
     }
 
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine;
+
+import org.gradle.api.artifacts.ModuleIdentifier;
+import org.gradle.api.artifacts.ModuleVersionIdentifier;
+import org.gradle.api.internal.artifacts.DefaultModuleIdentifier;
+import org.gradle.api.internal.artifacts.DefaultModuleVersionIdentifier;
+import org.gradle.api.internal.artifacts.ResolvedConfigurationIdentifier;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns a dense int id to each module, module version and configuration seen during the build, and holds a single canonical identifier for each of them.
+ *
+ * <p>The ids are stable for the lifetime of the interner, so that the resolve engine can key its state by int instead of by identifier object, and does not
+ * need to create a new identifier for each lookup.</p>
+ */
+public class IdentifierInterner {
+    private final Map<String, Map<String, ModuleEntry>> modulesByGroup = new HashMap<String, Map<String, ModuleEntry>>();
+    private final List<ModuleEntry> modules = new ArrayList<ModuleEntry>();
+    private final List<VersionEntry> versions = new ArrayList<VersionEntry>();
+    private final List<ResolvedConfigurationIdentifier> configurations = new ArrayList<ResolvedConfigurationIdentifier>();
+
+    /**
+     * Returns the id of the given module.
+     */
+    public synchronized int getModule(String group, String name) {
+        return module(group, name).id;
+    }
+
+    public synchronized ModuleIdentifier getModuleIdentifier(int module) {
+        return modules.get(module).identifier;
+    }
+
+    /**
+     * Returns the id of the given module version. The version may be null, for a selector that does not specify one.
+     */
+    public synchronized int getModuleVersion(String group, String name, String version) {
+        return version(module(group, name), version).id;
+    }
+
+    /**
+     * Returns the id of the given module version. The identifier becomes the canonical identifier for the version, when it does not have one yet.
+     */
+    public synchronized int getModuleVersion(ModuleVersionIdentifier identifier) {
+        VersionEntry entry = version(module(identifier.getGroup(), identifier.getName()), identifier.getVersion());
+        if (entry.identifier == null) {
+            entry.identifier = identifier;
+        }
+        return entry.id;
+    }
+
+    public synchronized ModuleVersionIdentifier getModuleVersionIdentifier(int moduleVersion) {
+        VersionEntry entry = versions.get(moduleVersion);
+        if (entry.identifier == null) {
+            entry.identifier = new DefaultModuleVersionIdentifier(entry.module.identifier, entry.version);
+        }
+        return entry.identifier;
+    }
+
+    /**
+     * Returns the id of the given configuration of the given module version.
+     */
+    public synchronized int getConfiguration(int moduleVersion, String name) {
+        VersionEntry entry = versions.get(moduleVersion);
+        Integer configuration = entry.configurations.get(name);
+        if (configuration == null) {
+            configuration = configurations.size();
+            configurations.add(new ResolvedConfigurationIdentifier(getModuleVersionIdentifier(moduleVersion), name));
+            entry.configurations.put(name, configuration);
+        }
+        return configuration;
+    }
+
+    public synchronized ResolvedConfigurationIdentifier getConfigurationIdentifier(int configuration) {
+        return configurations.get(configuration);
+    }
+
+    private ModuleEntry module(String group, String name) {
+        Map<String, ModuleEntry> modulesByName = modulesByGroup.get(group);
+        if (modulesByName == null) {
+            modulesByName = new HashMap<String, ModuleEntry>();
+            modulesByGroup.put(group, modulesByName);
+        }
+        ModuleEntry entry = modulesByName.get(name);
+        if (entry == null) {
+            entry = new ModuleEntry(modules.size(), DefaultModuleIdentifier.newId(group, name));
+            modules.add(entry);
+            modulesByName.put(name, entry);
+        }
+        return entry;
+    }
+
+    private VersionEntry version(ModuleEntry module, String version) {
+        VersionEntry entry = module.versions.get(version);
+        if (entry == null) {
+            entry = new VersionEntry(versions.size(), module, version);
+            versions.add(entry);
+            module.versions.put(version, entry);
+        }
+        return entry;
+    }
+
+    private static class ModuleEntry {
+        final int id;
+        final ModuleIdentifier identifier;
+        final Map<String, VersionEntry> versions = new HashMap<String, VersionEntry>();
+
+        ModuleEntry(int id, ModuleIdentifier identifier) {
+            this.id = id;
+            this.identifier = identifier;
+        }
+    }
+
+    private static class VersionEntry {
+        final int id;
+        final ModuleEntry module;
+        final String version;
+        final Map<String, Integer> configurations = new HashMap<String, Integer>();
+        ModuleVersionIdentifier identifier;
+
+        VersionEntry(int id, ModuleEntry module, String version) {
+            this.id = id;
+            this.module = module;
+            this.version = version;
+        }
+    }
+}
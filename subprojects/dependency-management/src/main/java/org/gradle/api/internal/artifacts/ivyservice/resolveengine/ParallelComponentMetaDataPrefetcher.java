@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine;
+
+import org.apache.ivy.Ivy;
+import org.gradle.api.Action;
+import org.gradle.api.artifacts.component.ComponentIdentifier;
+import org.gradle.api.internal.artifacts.ivyservice.CacheLockingManager;
+import org.gradle.api.internal.artifacts.ivyservice.IvyContextManager;
+import org.gradle.internal.Factory;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.component.model.ComponentOverrideMetadata;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.internal.concurrent.StoppableExecutor;
+import org.gradle.internal.resolve.resolver.ComponentMetaDataResolver;
+import org.gradle.internal.resolve.result.BuildableComponentResolveResult;
+import org.gradle.internal.resolve.result.DefaultBuildableComponentResolveResult;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Resolves the meta-data of components using a bounded pool of threads.
+ *
+ * <p>Each component is resolved in a separate cache action, with its own Ivy context. The thread waiting for a result releases the cache lock while it waits, and
+ * the repositories release the lock while they access the network. This way the downloads overlap, and the caches are still used by one thread at a time.</p>
+ */
+public class ParallelComponentMetaDataPrefetcher implements ComponentMetaDataPrefetcher, Stoppable {
+    /**
+     * The maximum number of components whose meta-data is resolved at the same time. Use 0 to resolve meta-data only when it is required.
+     */
+    public static final String MAX_THREADS_PROPERTY = "org.gradle.dependency.metadata.threads";
+    public static final int DEFAULT_MAX_THREADS = 8;
+
+    private final ExecutorFactory executorFactory;
+    private final CacheLockingManager cacheLockingManager;
+    private final IvyContextManager ivyContextManager;
+    private final int maxThreads;
+    private StoppableExecutor executor;
+
+    public ParallelComponentMetaDataPrefetcher(ExecutorFactory executorFactory, CacheLockingManager cacheLockingManager, IvyContextManager ivyContextManager, int maxThreads) {
+        this.executorFactory = executorFactory;
+        this.cacheLockingManager = cacheLockingManager;
+        this.ivyContextManager = ivyContextManager;
+        this.maxThreads = maxThreads;
+    }
+
+    public Factory<BuildableComponentResolveResult> prefetch(final ComponentMetaDataResolver resolver, final ComponentIdentifier identifier, final ComponentOverrideMetadata overrideMetadata) {
+        final String description = String.format("Resolve %s", identifier);
+        final DefaultBuildableComponentResolveResult result = new DefaultBuildableComponentResolveResult();
+        final Future<?> resolved = getExecutor().submit(new Runnable() {
+            public void run() {
+                cacheLockingManager.useCache(description, new Runnable() {
+                    public void run() {
+                        ivyContextManager.withIvy(new Action<Ivy>() {
+                            public void execute(Ivy ivy) {
+                                resolver.resolve(identifier, overrideMetadata, result);
+                            }
+                        });
+                    }
+                });
+            }
+        });
+        return new Factory<BuildableComponentResolveResult>() {
+            public BuildableComponentResolveResult create() {
+                if (resolved.isDone()) {
+                    waitFor(resolved);
+                } else {
+                    cacheLockingManager.longRunningOperation(String.format("Wait for %s", identifier), new Runnable() {
+                        public void run() {
+                            waitFor(resolved);
+                        }
+                    });
+                }
+                return result;
+            }
+        };
+    }
+
+    public void stop() {
+        StoppableExecutor executor;
+        synchronized (this) {
+            executor = this.executor;
+            this.executor = null;
+        }
+        if (executor != null) {
+            executor.stop();
+        }
+    }
+
+    private synchronized StoppableExecutor getExecutor() {
+        if (executor == null) {
+            executor = executorFactory.create("Component meta-data prefetch", maxThreads);
+        }
+        return executor;
+    }
+
+    private static void waitFor(Future<?> resolved) {
+        try {
+            resolved.get();
+        } catch (InterruptedException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        } catch (ExecutionException e) {
+            throw UncheckedException.throwAsUncheckedException(e.getCause());
+        }
+    }
+}
@@ -58,15 +58,33 @@ public abstract class AbstractArtifactSet implements ArtifactSet {
         return id;
     }
 
-    public Set<ResolvedArtifact> getArtifacts() {
+    public ModuleVersionIdentifier getModuleVersionIdentifier() {
+        return moduleVersionIdentifier;
+    }
+
+    public ModuleSource getModuleSource() {
+        return moduleSource;
+    }
+
+    /**
+     * Returns the artifacts of the component that are accepted by the filter of this set.
+     */
+    public Set<ComponentArtifactMetaData> getSelectedComponentArtifacts() {
         Set<ComponentArtifactMetaData> componentArtifacts = resolveComponentArtifacts();
-        Set<ResolvedArtifact> resolvedArtifacts = new LinkedHashSet<ResolvedArtifact>(componentArtifacts.size());
+        Set<ComponentArtifactMetaData> selectedArtifacts = new LinkedHashSet<ComponentArtifactMetaData>(componentArtifacts.size());
         for (ComponentArtifactMetaData artifact : componentArtifacts) {
-            IvyArtifactName artifactName = artifact.getName();
-            if (!selector.acceptArtifact(moduleVersionIdentifier.getModule(), artifactName)) {
-                continue;
+            if (selector.acceptArtifact(moduleVersionIdentifier.getModule(), artifact.getName())) {
+                selectedArtifacts.add(artifact);
             }
+        }
+        return selectedArtifacts;
+    }
 
+    public Set<ResolvedArtifact> getArtifacts() {
+        Set<ComponentArtifactMetaData> componentArtifacts = getSelectedComponentArtifacts();
+        Set<ResolvedArtifact> resolvedArtifacts = new LinkedHashSet<ResolvedArtifact>(componentArtifacts.size());
+        for (ComponentArtifactMetaData artifact : componentArtifacts) {
+            IvyArtifactName artifactName = artifact.getName();
             ResolvedArtifact resolvedArtifact = allResolvedArtifacts.get(artifact.getId());
             if (resolvedArtifact == null) {
                 Factory<File> artifactSource = new LazyArtifactSource(artifact, moduleSource, artifactResolver);
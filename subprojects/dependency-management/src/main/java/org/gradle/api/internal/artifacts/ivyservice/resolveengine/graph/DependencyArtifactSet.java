@@ -28,9 +28,9 @@ import java.util.Map;
 import java.util.Set;
 
 /**
- * A set of artifacts that is defined by a dependency declaration.
+ * A set of artifacts that is known up front, such as the artifacts defined by a dependency declaration.
  */
-class DependencyArtifactSet extends AbstractArtifactSet {
+public class DependencyArtifactSet extends AbstractArtifactSet {
     private final Set<ComponentArtifactMetaData> artifacts;
 
     public DependencyArtifactSet(ModuleVersionIdentifier ownerId, ModuleSource moduleSource, Set<ComponentArtifactMetaData> artifacts,
@@ -17,11 +17,12 @@ package org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph;
 
 import com.google.common.base.Joiner;
 import org.gradle.api.Action;
+import org.gradle.api.Nullable;
 import org.gradle.api.artifacts.*;
 import org.gradle.api.artifacts.component.ComponentIdentifier;
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
 import org.gradle.api.artifacts.component.ComponentSelector;
 import org.gradle.api.artifacts.result.ComponentSelectionReason;
-import org.gradle.api.internal.artifacts.DefaultModuleIdentifier;
 import org.gradle.api.internal.artifacts.ResolvedConfigurationIdentifier;
 import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.ResolverProvider;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.*;
@@ -36,6 +37,7 @@ import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.Interna
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ModuleVersionSelection;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ResolutionResultBuilder;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.VersionSelectionReasons;
+import org.gradle.internal.Factory;
 import org.gradle.internal.component.local.model.DslOriginDependencyMetaData;
 import org.gradle.internal.component.model.*;
 import org.gradle.internal.resolve.ModuleVersionResolveException;
@@ -50,6 +52,12 @@ import org.slf4j.LoggerFactory;
 import java.util.*;
 
 public class DependencyGraphBuilder {
+    /**
+     * Set to true to keep the part of the graph reachable from the selected version of a module while a conflict for the module is pending, and to resolve all
+     * pending conflicts at once. The graph is only pruned and traversed again when conflict resolution selects a different version.
+     */
+    public static final String BULK_CONFLICT_RESOLUTION_PROPERTY = "org.gradle.dependency.conflicts.bulk";
+
     private static final Logger LOGGER = LoggerFactory.getLogger(DependencyGraphBuilder.class);
     private final DependencyToConfigurationResolver dependencyToConfigurationResolver;
     private final ConflictHandler conflictHandler;
@@ -57,17 +65,50 @@ public class DependencyGraphBuilder {
     private final ArtifactResolver artifactResolver;
     private final DependencyToComponentIdResolver idResolver;
     private final ComponentMetaDataResolver metaDataResolver;
+    private final ComponentMetaDataPrefetcher metaDataPrefetcher;
+    private final boolean bulkConflictResolution;
+    private final IdentifierInterner interner;
 
     public DependencyGraphBuilder(ResolverProvider resolverProvider,
                                   ResolveContextToComponentResolver moduleResolver,
                                   ConflictHandler conflictHandler,
                                   DependencyToConfigurationResolver dependencyToConfigurationResolver) {
+        this(resolverProvider, moduleResolver, conflictHandler, dependencyToConfigurationResolver, ComponentMetaDataPrefetcher.NONE);
+    }
+
+    public DependencyGraphBuilder(ResolverProvider resolverProvider,
+                                  ResolveContextToComponentResolver moduleResolver,
+                                  ConflictHandler conflictHandler,
+                                  DependencyToConfigurationResolver dependencyToConfigurationResolver,
+                                  ComponentMetaDataPrefetcher metaDataPrefetcher) {
+        this(resolverProvider, moduleResolver, conflictHandler, dependencyToConfigurationResolver, metaDataPrefetcher, false);
+    }
+
+    public DependencyGraphBuilder(ResolverProvider resolverProvider,
+                                  ResolveContextToComponentResolver moduleResolver,
+                                  ConflictHandler conflictHandler,
+                                  DependencyToConfigurationResolver dependencyToConfigurationResolver,
+                                  ComponentMetaDataPrefetcher metaDataPrefetcher,
+                                  boolean bulkConflictResolution) {
+        this(resolverProvider, moduleResolver, conflictHandler, dependencyToConfigurationResolver, metaDataPrefetcher, bulkConflictResolution, new IdentifierInterner());
+    }
+
+    public DependencyGraphBuilder(ResolverProvider resolverProvider,
+                                  ResolveContextToComponentResolver moduleResolver,
+                                  ConflictHandler conflictHandler,
+                                  DependencyToConfigurationResolver dependencyToConfigurationResolver,
+                                  ComponentMetaDataPrefetcher metaDataPrefetcher,
+                                  boolean bulkConflictResolution,
+                                  IdentifierInterner interner) {
         this.idResolver = resolverProvider.getComponentIdResolver();
         this.metaDataResolver = resolverProvider.getComponentResolver();
         this.artifactResolver = resolverProvider.getArtifactResolver();
         this.moduleResolver = moduleResolver;
         this.conflictHandler = conflictHandler;
         this.dependencyToConfigurationResolver = dependencyToConfigurationResolver;
+        this.metaDataPrefetcher = metaDataPrefetcher;
+        this.bulkConflictResolution = bulkConflictResolution;
+        this.interner = interner;
     }
 
     public void resolve(ResolveContext resolveContext,
@@ -87,7 +128,7 @@ public class DependencyGraphBuilder {
         DefaultBuildableComponentResolveResult rootModule = new DefaultBuildableComponentResolveResult();
         moduleResolver.resolve(resolveContext, rootModule);
 
-        ResolveState resolveState = new ResolveState(rootModule, resolveContext.getName(), idResolver, metaDataResolver, dependencyToConfigurationResolver);
+        ResolveState resolveState = new ResolveState(rootModule, resolveContext.getName(), idResolver, metaDataResolver, metaDataPrefetcher, dependencyToConfigurationResolver, interner);
         conflictHandler.registerResolver(new DirectDependencyForcingResolver(resolveState.root.moduleRevision));
 
         traverseGraph(resolveState, conflictHandler);
@@ -104,6 +145,7 @@ public class DependencyGraphBuilder {
         List<DependencyEdge> dependencies = new ArrayList<DependencyEdge>();
         while (resolveState.peek() != null || conflictHandler.hasConflicts()) {
             if (resolveState.peek() != null) {
+                resolveState.prefetchMetaData();
                 ConfigurationNode node = resolveState.pop();
                 LOGGER.debug("Visiting configuration {}.", node);
 
@@ -136,28 +178,37 @@ public class DependencyGraphBuilder {
                             // We have a conflict
                             LOGGER.debug("Found new conflicting module version {}", moduleRevision);
 
-                            // Deselect the currently selected version, and remove all outgoing edges from the version
-                            // This will propagate through the graph and prune configurations that are no longer required
-                            // For each module participating in the conflict (many times there is only one participating module that has multiple versions)
+                            final List<ModuleIdentifier> participatingModules = new ArrayList<ModuleIdentifier>();
                             c.withParticipatingModules(new Action<ModuleIdentifier>() {
                                 public void execute(ModuleIdentifier module) {
-                                    ModuleVersionResolveState previouslySelected = resolveState.getModule(module).clearSelection();
+                                    participatingModules.add(module);
+                                }
+                            });
+                            if (bulkConflictResolution && participatingModules.size() == 1) {
+                                // Suspend the currently selected version, keeping its outgoing edges. Usually this version is selected again, and
+                                // the part of the graph reachable from it does not need to be traversed again
+                                module.suspendSelection();
+                            } else {
+                                // Deselect the currently selected version, and remove all outgoing edges from the version
+                                // This will propagate through the graph and prune configurations that are no longer required
+                                // For each module participating in the conflict (many times there is only one participating module that has multiple versions)
+                                for (ModuleIdentifier participatingModule : participatingModules) {
+                                    ModuleVersionResolveState previouslySelected = resolveState.getModule(participatingModule).clearSelection();
                                     if (previouslySelected != null) {
-                                        for (ConfigurationNode configuration : previouslySelected.configurations) {
-                                            configuration.deselect();
-                                        }
+                                        previouslySelected.deselect();
                                     }
                                 }
-                            });
+                            }
                         }
                     }
 
                     dependency.attachToTargetConfigurations();
                 }
             } else {
-                // We have some batched up conflicts. Resolve the first, and continue traversing the graph
-                conflictHandler.resolveNextConflict(new Action<ConflictResolutionResult>() {
+                // We have some batched up conflicts. Resolve the first, or all of them in bulk mode, and continue traversing the graph
+                Action<ConflictResolutionResult> restartAction = new Action<ConflictResolutionResult>() {
                     public void execute(final ConflictResolutionResult result) {
+                        resolveState.conflictsResolved++;
                         result.getConflict().withParticipatingModules(new Action<ModuleIdentifier>() {
                             public void execute(ModuleIdentifier moduleIdentifier) {
                                 ModuleVersionResolveState selected = result.getSelected();
@@ -167,9 +218,15 @@ public class DependencyGraphBuilder {
                             }
                         });
                     }
-                });
+                };
+                conflictHandler.resolveNextConflict(restartAction);
+                while (bulkConflictResolution && conflictHandler.hasConflicts()) {
+                    conflictHandler.resolveNextConflict(restartAction);
+                }
+                resolveState.resumeWaitingConfigurations();
             }
         }
+        LOGGER.debug("Resolved {} conflicts for {}, restarting {} modules.", resolveState.conflictsResolved, resolveState.root, resolveState.modulesRestarted);
     }
 
     /**
@@ -322,39 +379,69 @@ public class DependencyGraphBuilder {
      * Global resolution state.
      */
     private static class ResolveState {
-        private final Map<ModuleIdentifier, ModuleResolveState> modules = new LinkedHashMap<ModuleIdentifier, ModuleResolveState>();
-        private final Map<ResolvedConfigurationIdentifier, ConfigurationNode> nodes = new LinkedHashMap<ResolvedConfigurationIdentifier, ConfigurationNode>();
-        private final Map<ModuleVersionSelector, ModuleVersionSelectorResolveState> selectors = new LinkedHashMap<ModuleVersionSelector, ModuleVersionSelectorResolveState>();
+        // Keyed by the ids assigned by the interner
+        private final IdKeyedMap<ModuleResolveState> modules = new IdKeyedMap<ModuleResolveState>(64);
+        private final IdKeyedMap<ConfigurationNode> nodes = new IdKeyedMap<ConfigurationNode>(64);
+        private final IdKeyedMap<ModuleVersionSelectorResolveState> selectors = new IdKeyedMap<ModuleVersionSelectorResolveState>(64);
+        private final IdentifierInterner interner;
         private final RootConfigurationNode root;
         private final DependencyToComponentIdResolver idResolver;
         private final ComponentMetaDataResolver metaDataResolver;
+        private final ComponentMetaDataPrefetcher metaDataPrefetcher;
         private final DependencyToConfigurationResolver dependencyToConfigurationResolver;
         private final Set<ConfigurationNode> queued = new HashSet<ConfigurationNode>();
         private final LinkedList<ConfigurationNode> queue = new LinkedList<ConfigurationNode>();
+        private final BitSet prefetchedSelectors = new BitSet();
+        private final List<ConfigurationNode> notPrefetched = new ArrayList<ConfigurationNode>();
+        private final Map<Integer, BuildableComponentIdResolveResult> prefetchedIds = new HashMap<Integer, BuildableComponentIdResolveResult>();
+        private final Map<ComponentIdentifier, PrefetchedMetaData> prefetched = new HashMap<ComponentIdentifier, PrefetchedMetaData>();
+        private final Set<ConfigurationNode> waiting = new LinkedHashSet<ConfigurationNode>();
+        private int conflictsResolved;
+        private int modulesRestarted;
 
         public ResolveState(ComponentResolveResult rootResult, String rootConfigurationName, DependencyToComponentIdResolver idResolver,
-                            ComponentMetaDataResolver metaDataResolver, DependencyToConfigurationResolver dependencyToConfigurationResolver) {
+                            ComponentMetaDataResolver metaDataResolver, ComponentMetaDataPrefetcher metaDataPrefetcher,
+                            DependencyToConfigurationResolver dependencyToConfigurationResolver, IdentifierInterner interner) {
             this.idResolver = idResolver;
+            this.interner = interner;
             this.metaDataResolver = metaDataResolver;
+            this.metaDataPrefetcher = metaDataPrefetcher;
             this.dependencyToConfigurationResolver = dependencyToConfigurationResolver;
             ModuleVersionResolveState rootVersion = getRevision(rootResult.getId());
             rootVersion.setMetaData(rootResult.getMetaData());
-            root = new RootConfigurationNode(rootVersion, new ResolvedConfigurationIdentifier(rootVersion.id, rootConfigurationName), this);
-            nodes.put(root.id, root);
+            int rootId = interner.getConfiguration(rootVersion.versionId, rootConfigurationName);
+            root = new RootConfigurationNode(rootVersion, interner.getConfigurationIdentifier(rootId), this);
+            nodes.put(rootId, root);
             root.moduleRevision.module.select(root.moduleRevision);
         }
 
         public ModuleResolveState getModule(ModuleIdentifier id) {
+            return getModule(interner.getModule(id.getGroup(), id.getName()));
+        }
+
+        public ModuleResolveState getModule(ModuleVersionSelector selector) {
+            return getModule(interner.getModule(selector.getGroup(), selector.getName()));
+        }
+
+        private ModuleResolveState getModule(int id) {
             ModuleResolveState module = modules.get(id);
             if (module == null) {
-                module = new ModuleResolveState(id, this, metaDataResolver);
+                module = new ModuleResolveState(interner.getModuleIdentifier(id), this, metaDataResolver);
                 modules.put(id, module);
             }
             return module;
         }
 
         public ModuleVersionResolveState getRevision(ModuleVersionIdentifier id) {
-            return getModule(id.getModule()).getVersion(id);
+            return getModule(interner.getModule(id.getGroup(), id.getName())).getVersion(interner.getModuleVersion(id), id);
+        }
+
+        public ModuleIdentifier getModuleIdentifier(ModuleVersionSelector selector) {
+            return interner.getModuleIdentifier(interner.getModule(selector.getGroup(), selector.getName()));
+        }
+
+        private int getSelectorId(ModuleVersionSelector selector) {
+            return interner.getModuleVersion(selector.getGroup(), selector.getName(), selector.getVersion());
         }
 
         public Collection<ConfigurationNode> getConfigurationNodes() {
@@ -362,21 +449,21 @@ public class DependencyGraphBuilder {
         }
 
         public ConfigurationNode getConfigurationNode(ModuleVersionResolveState module, String configurationName) {
-            ResolvedConfigurationIdentifier id = new ResolvedConfigurationIdentifier(module.id, configurationName);
+            int id = interner.getConfiguration(module.versionId, configurationName);
             ConfigurationNode configuration = nodes.get(id);
             if (configuration == null) {
-                configuration = new ConfigurationNode(id, module, this);
+                configuration = new ConfigurationNode(interner.getConfigurationIdentifier(id), module, this);
                 nodes.put(id, configuration);
             }
             return configuration;
         }
 
         public ModuleVersionSelectorResolveState getSelector(DependencyMetaData dependencyMetaData) {
-            ModuleVersionSelector requested = dependencyMetaData.getRequested();
-            ModuleVersionSelectorResolveState resolveState = selectors.get(requested);
+            int id = getSelectorId(dependencyMetaData.getRequested());
+            ModuleVersionSelectorResolveState resolveState = selectors.get(id);
             if (resolveState == null) {
                 resolveState = new ModuleVersionSelectorResolveState(dependencyMetaData, idResolver, this);
-                selectors.put(requested, resolveState);
+                selectors.put(id, resolveState);
             }
             return resolveState;
         }
@@ -399,6 +486,7 @@ public class DependencyGraphBuilder {
             // possible before attempting to resolve them
             if (queued.add(configuration)) {
                 queue.addLast(configuration);
+                onQueued(configuration);
             }
         }
 
@@ -409,7 +497,115 @@ public class DependencyGraphBuilder {
             // Add to the front of the queue, to flush out configurations that are no longer required.
             if (queued.add(configuration)) {
                 queue.addFirst(configuration);
+                onQueued(configuration);
+            }
+        }
+
+        private void onQueued(ConfigurationNode configuration) {
+            if (metaDataPrefetcher != ComponentMetaDataPrefetcher.NONE && !configuration.prefetched) {
+                notPrefetched.add(configuration);
+            }
+        }
+
+        /**
+         * Called when a configuration node is reachable only from versions whose selection is suspended by a pending conflict. The node is visited again once
+         * the conflict is resolved.
+         */
+        public void onWaitingForConflict(ConfigurationNode configuration) {
+            waiting.add(configuration);
+        }
+
+        public void resumeWaitingConfigurations() {
+            for (ConfigurationNode configuration : waiting) {
+                onMoreSelected(configuration);
+            }
+            waiting.clear();
+        }
+
+        /**
+         * Starts fetching the meta-data for the dependencies of the queued configurations, so that the meta-data for a level of the graph is fetched concurrently
+         * rather than one module at a time. The graph is still traversed and changed by this thread only, in the same order as without fetching ahead, so the
+         * result does not depend on the order in which the meta-data arrives. Only the configurations queued since the last call are looked at.
+         */
+        public void prefetchMetaData() {
+            for (ConfigurationNode configuration : notPrefetched) {
+                if (configuration.prefetched || !queued.contains(configuration) || !configuration.isSelected()) {
+                    continue;
+                }
+                configuration.prefetched = true;
+                for (DependencyMetaData dependency : configuration.metaData.getDependencies()) {
+                    prefetchMetaData(dependency);
+                }
+            }
+            notPrefetched.clear();
+        }
+
+        private void prefetchMetaData(DependencyMetaData dependency) {
+            // A selector that has already been visited is resolved by the traversal
+            int selectorId = getSelectorId(dependency.getRequested());
+            if (selectors.containsKey(selectorId) || prefetchedSelectors.get(selectorId)) {
+                return;
+            }
+            prefetchedSelectors.set(selectorId);
+            ComponentOverrideMetadata overrideMetadata = DefaultComponentOverrideMetadata.forDependency(dependency);
+            if (overrideMetadata.getClientModule() != null) {
+                return;
+            }
+
+            // Use a separate result, so that the traversal state is only changed when the dependency is visited
+            DefaultBuildableComponentIdResolveResult idResolveResult = new DefaultBuildableComponentIdResolveResult();
+            idResolver.resolve(dependency, idResolveResult);
+            prefetchedIds.put(selectorId, idResolveResult);
+            if (idResolveResult.getFailure() != null || idResolveResult.getMetaData() != null || !(idResolveResult.getId() instanceof ModuleComponentIdentifier)) {
+                return;
+            }
+            ComponentIdentifier componentId = idResolveResult.getId();
+            ModuleVersionIdentifier moduleVersionId = idResolveResult.getModuleVersionId();
+            ModuleResolveState module = modules.get(interner.getModule(moduleVersionId.getGroup(), moduleVersionId.getName()));
+            if (prefetched.containsKey(componentId)
+                    || (module != null && module.versions.containsKey(interner.getModuleVersion(moduleVersionId.getGroup(), moduleVersionId.getName(), moduleVersionId.getVersion())))) {
+                return;
+            }
+            Factory<BuildableComponentResolveResult> result = metaDataPrefetcher.prefetch(metaDataResolver, componentId, overrideMetadata);
+            if (result != null) {
+                prefetched.put(componentId, new PrefetchedMetaData(overrideMetadata, result));
+            }
+        }
+
+        /**
+         * Returns the result of resolving the given selector while fetching ahead, so that the selector is not resolved again when it is visited.
+         */
+        @Nullable
+        public BuildableComponentIdResolveResult takePrefetchedId(ModuleVersionSelector selector) {
+            return prefetchedIds.remove(getSelectorId(selector));
+        }
+
+        /**
+         * Returns the meta-data fetched ahead for the given component, when it was fetched with the given overrides.
+         */
+        @Nullable
+        public BuildableComponentResolveResult takePrefetched(ComponentIdentifier componentId, ComponentOverrideMetadata overrideMetadata) {
+            PrefetchedMetaData prefetchedMetaData = prefetched.remove(componentId);
+            if (prefetchedMetaData == null || !prefetchedMetaData.isFetchedWith(overrideMetadata)) {
+                return null;
             }
+            return prefetchedMetaData.result.create();
+        }
+    }
+
+    private static class PrefetchedMetaData {
+        final ComponentOverrideMetadata overrideMetadata;
+        final Factory<BuildableComponentResolveResult> result;
+
+        private PrefetchedMetaData(ComponentOverrideMetadata overrideMetadata, Factory<BuildableComponentResolveResult> result) {
+            this.overrideMetadata = overrideMetadata;
+            this.result = result;
+        }
+
+        boolean isFetchedWith(ComponentOverrideMetadata overrideMetadata) {
+            return overrideMetadata.getClientModule() == null
+                    && overrideMetadata.isChanging() == this.overrideMetadata.isChanging()
+                    && overrideMetadata.getArtifacts().equals(this.overrideMetadata.getArtifacts());
         }
     }
 
@@ -427,10 +623,12 @@ public class DependencyGraphBuilder {
         final ComponentMetaDataResolver metaDataResolver;
         final ModuleIdentifier id;
         final Set<DependencyEdge> unattachedDependencies = new LinkedHashSet<DependencyEdge>();
-        final Map<ModuleVersionIdentifier, ModuleVersionResolveState> versions = new LinkedHashMap<ModuleVersionIdentifier, ModuleVersionResolveState>();
+        final IdKeyedMap<ModuleVersionResolveState> versions = new IdKeyedMap<ModuleVersionResolveState>(2);
         final Set<ModuleVersionSelectorResolveState> selectors = new HashSet<ModuleVersionSelectorResolveState>();
         final ResolveState resolveState;
         ModuleVersionResolveState selected;
+        // The version that was selected when a pending conflict was found. Its outgoing edges are kept until the conflict is resolved.
+        ModuleVersionResolveState suspended;
 
         private ModuleResolveState(ModuleIdentifier id, ResolveState resolveState, ComponentMetaDataResolver metaDataResolver) {
             this.id = id;
@@ -461,15 +659,36 @@ public class DependencyGraphBuilder {
         }
 
         public ModuleVersionResolveState clearSelection() {
-            ModuleVersionResolveState previousSelection = selected;
+            ModuleVersionResolveState previousSelection = selected != null ? selected : suspended;
             selected = null;
+            suspended = null;
             for (ModuleVersionResolveState version : versions.values()) {
                 version.state = ModuleState.Conflict;
             }
             return previousSelection;
         }
 
+        /**
+         * Clears the selection like {@link #clearSelection()}, but keeps the outgoing edges of the selected version until the conflict is resolved.
+         */
+        public void suspendSelection() {
+            if (selected != null) {
+                suspended = selected;
+                selected = null;
+            }
+            for (ModuleVersionResolveState version : versions.values()) {
+                version.state = ModuleState.Conflict;
+            }
+        }
+
         public void restart(ModuleVersionResolveState selected) {
+            if (suspended != selected) {
+                if (suspended != null) {
+                    suspended.deselect();
+                }
+                resolveState.modulesRestarted++;
+            }
+            suspended = null;
             select(selected);
             for (ModuleVersionResolveState version : versions.values()) {
                 version.restart(selected);
@@ -491,11 +710,11 @@ public class DependencyGraphBuilder {
             unattachedDependencies.remove(edge);
         }
 
-        public ModuleVersionResolveState getVersion(ModuleVersionIdentifier id) {
-            ModuleVersionResolveState moduleRevision = versions.get(id);
+        public ModuleVersionResolveState getVersion(int versionId, ModuleVersionIdentifier id) {
+            ModuleVersionResolveState moduleRevision = versions.get(versionId);
             if (moduleRevision == null) {
-                moduleRevision = new ModuleVersionResolveState(this, id, metaDataResolver);
-                versions.put(id, moduleRevision);
+                moduleRevision = new ModuleVersionResolveState(this, versionId, id, metaDataResolver);
+                versions.put(versionId, moduleRevision);
             }
 
             return moduleRevision;
@@ -511,6 +730,7 @@ public class DependencyGraphBuilder {
      */
     static class ModuleVersionResolveState implements ComponentResolutionState, ModuleVersionSelection {
         public final ModuleVersionIdentifier id;
+        final int versionId;
         private final ComponentMetaDataResolver resolver;
         private final Set<ConfigurationNode> configurations = new LinkedHashSet<ConfigurationNode>();
         private final ModuleResolveState module;
@@ -520,8 +740,9 @@ public class DependencyGraphBuilder {
         private ModuleVersionResolveException failure;
         private ModuleVersionSelectorResolveState firstReference;
 
-        private ModuleVersionResolveState(ModuleResolveState module, ModuleVersionIdentifier id, ComponentMetaDataResolver resolver) {
+        private ModuleVersionResolveState(ModuleResolveState module, int versionId, ModuleVersionIdentifier id, ComponentMetaDataResolver resolver) {
             this.module = module;
+            this.versionId = versionId;
             this.id = id;
             this.resolver = resolver;
         }
@@ -549,6 +770,12 @@ public class DependencyGraphBuilder {
             }
         }
 
+        public void deselect() {
+            for (ConfigurationNode configuration : configurations) {
+                configuration.deselect();
+            }
+        }
+
         public void addResolver(ModuleVersionSelectorResolveState resolver) {
             if (firstReference == null) {
                 firstReference = resolver;
@@ -570,8 +797,12 @@ public class DependencyGraphBuilder {
                 return;
             }
 
-            DefaultBuildableComponentResolveResult result = new DefaultBuildableComponentResolveResult();
-            resolver.resolve(idResolveResult.getId(), DefaultComponentOverrideMetadata.forDependency(firstReference.dependencyMetaData), result);
+            ComponentOverrideMetadata overrideMetadata = DefaultComponentOverrideMetadata.forDependency(firstReference.dependencyMetaData);
+            BuildableComponentResolveResult result = module.resolveState.takePrefetched(idResolveResult.getId(), overrideMetadata);
+            if (result == null) {
+                result = new DefaultBuildableComponentResolveResult();
+                resolver.resolve(idResolveResult.getId(), overrideMetadata, result);
+            }
             if (result.getFailure() != null) {
                 failure = result.getFailure();
                 return;
@@ -630,6 +861,7 @@ public class DependencyGraphBuilder {
         private final ConfigurationMetaData metaData;
         private final ResolveState resolveState;
         private ModuleResolutionFilter previousTraversal;
+        private boolean prefetched;
 
         private ConfigurationNode(ResolvedConfigurationIdentifier id, ModuleVersionResolveState moduleRevision, ResolveState resolveState) {
             this.id = id;
@@ -674,6 +906,12 @@ public class DependencyGraphBuilder {
                 return;
             }
 
+            if (isReachableOnlyFromSuspendedVersions()) {
+                LOGGER.debug("{} is reachable only from versions with a pending conflict. waiting.", this);
+                resolveState.onWaitingForConflict(this);
+                return;
+            }
+
             List<DependencyEdge> transitiveIncoming = new ArrayList<DependencyEdge>();
             for (DependencyEdge edge : incomingEdges) {
                 if (edge.isTransitive()) {
@@ -705,7 +943,7 @@ public class DependencyGraphBuilder {
             }
 
             for (DependencyMetaData dependency : metaData.getDependencies()) {
-                ModuleIdentifier targetModuleId = DefaultModuleIdentifier.newId(dependency.getRequested().getGroup(), dependency.getRequested().getName());
+                ModuleIdentifier targetModuleId = resolveState.getModuleIdentifier(dependency.getRequested());
                 if (isExcluded(resolutionFilter, targetModuleId)) {
                     continue;
                 }
@@ -716,6 +954,18 @@ public class DependencyGraphBuilder {
             previousTraversal = resolutionFilter;
         }
 
+        private boolean isReachableOnlyFromSuspendedVersions() {
+            if (incomingEdges.isEmpty()) {
+                return false;
+            }
+            for (DependencyEdge edge : incomingEdges) {
+                if (edge.from.isSelected()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
         private boolean isExcluded(ModuleResolutionFilter selector, ModuleIdentifier targetModuleId) {
             if(!selector.acceptModule(targetModuleId)) {
                 LOGGER.debug("{} is excluded from {}.", targetModuleId, this);
@@ -821,7 +1071,7 @@ public class DependencyGraphBuilder {
             this.dependencyMetaData = dependencyMetaData;
             this.resolver = resolver;
             this.resolveState = resolveState;
-            targetModule = resolveState.getModule(new DefaultModuleIdentifier(dependencyMetaData.getRequested().getGroup(), dependencyMetaData.getRequested().getName()));
+            targetModule = resolveState.getModule(dependencyMetaData.getRequested());
         }
 
         @Override
@@ -856,8 +1106,11 @@ public class DependencyGraphBuilder {
                 return null;
             }
 
-            idResolveResult = new DefaultBuildableComponentIdResolveResult();
-            resolver.resolve(dependencyMetaData, idResolveResult);
+            idResolveResult = resolveState.takePrefetchedId(dependencyMetaData.getRequested());
+            if (idResolveResult == null) {
+                idResolveResult = new DefaultBuildableComponentIdResolveResult();
+                resolver.resolve(dependencyMetaData, idResolveResult);
+            }
             if (idResolveResult.getFailure() != null) {
                 failure = idResolveResult.getFailure();
                 return null;
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A map keyed by the int ids assigned by an {@link org.gradle.api.internal.artifacts.ivyservice.resolveengine.IdentifierInterner}, which iterates its values
+ * in insertion order. Uses open addressing, so a lookup does not allocate.
+ */
+class IdKeyedMap<T> {
+    private final List<T> values = new ArrayList<T>();
+    // Holds id + 1, so that 0 marks an empty slot
+    private int[] keys;
+    private int[] indexes;
+
+    IdKeyedMap() {
+        this(8);
+    }
+
+    IdKeyedMap(int expectedSize) {
+        int capacity = 4;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        keys = new int[capacity];
+        indexes = new int[capacity];
+    }
+
+    public T get(int id) {
+        int slot = find(keys, id);
+        return keys[slot] == 0 ? null : values.get(indexes[slot]);
+    }
+
+    public boolean containsKey(int id) {
+        return keys[find(keys, id)] != 0;
+    }
+
+    /**
+     * Adds a value for an id that is not in this map yet.
+     */
+    public void put(int id, T value) {
+        if ((values.size() + 1) * 2 > keys.length) {
+            grow();
+        }
+        int slot = find(keys, id);
+        assert keys[slot] == 0 : "id already present";
+        keys[slot] = id + 1;
+        indexes[slot] = values.size();
+        values.add(value);
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    /**
+     * Returns a live view of the values, in insertion order.
+     */
+    public Collection<T> values() {
+        return Collections.unmodifiableList(values);
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldIndexes = indexes;
+        keys = new int[oldKeys.length * 2];
+        indexes = new int[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = find(keys, oldKeys[i] - 1);
+                keys[slot] = oldKeys[i];
+                indexes[slot] = oldIndexes[i];
+            }
+        }
+    }
+
+    private static int find(int[] keys, int id) {
+        int mask = keys.length - 1;
+        // Ids are dense, so spread them over the table before probing
+        int hash = id * 0x9E3779B9;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (keys[slot] != 0 && keys[slot] != id + 1) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+}
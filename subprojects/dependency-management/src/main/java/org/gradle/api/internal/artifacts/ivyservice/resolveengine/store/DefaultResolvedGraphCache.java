@@ -0,0 +1,424 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.store;
+
+import org.gradle.api.artifacts.*;
+import org.gradle.api.artifacts.component.ComponentIdentifier;
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
+import org.gradle.api.internal.artifacts.DefaultModuleIdentifier;
+import org.gradle.api.internal.artifacts.DefaultModuleVersionIdentifier;
+import org.gradle.api.internal.artifacts.GlobalDependencyResolutionRules;
+import org.gradle.api.internal.artifacts.ModuleVersionIdentifierSerializer;
+import org.gradle.api.internal.artifacts.configurations.ConfigurationInternal;
+import org.gradle.api.internal.artifacts.configurations.dynamicversion.CachePolicy;
+import org.gradle.api.internal.artifacts.dsl.ModuleReplacementsData;
+import org.gradle.api.internal.artifacts.ivyservice.CacheLockingManager;
+import org.gradle.api.internal.artifacts.ivyservice.dynamicversions.DefaultResolvedModuleVersion;
+import org.gradle.api.internal.artifacts.ivyservice.dynamicversions.ModuleVersionsCache;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.ConfiguredModuleComponentRepository;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionSelectorScheme;
+import org.gradle.api.internal.artifacts.ivyservice.modulecache.ModuleMetaDataCache;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.oldresult.ResolvedArtifactsBuilder;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.oldresult.ResolvedConfigurationBuilder;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.projectresult.ResolvedProjectConfigurationResultBuilder;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ComponentIdentifierSerializer;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ResolutionResultBuilder;
+import org.gradle.api.internal.artifacts.repositories.ResolutionAwareRepository;
+import org.gradle.cache.PersistentIndexedCache;
+import org.gradle.internal.component.model.ComponentOverrideMetadata;
+import org.gradle.internal.hash.HashValue;
+import org.gradle.internal.resolve.resolver.ArtifactResolver;
+import org.gradle.internal.resolve.resolver.ComponentMetaDataResolver;
+import org.gradle.internal.resolve.result.BuildableComponentResolveResult;
+import org.gradle.internal.serialize.Decoder;
+import org.gradle.internal.serialize.Encoder;
+import org.gradle.internal.serialize.Serializer;
+import org.gradle.util.BuildCommencedTimeProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link ResolvedGraphCache} backed by a persistent cache, keyed by a hash of the inputs of the graph.
+ *
+ * <p>The graph is stored along with the timestamps of the cached meta-data of every module in the graph, and of the cached version list of every dynamic
+ * version, in each repository. A cached graph is reused only while these cache entries are unchanged, and the cache policy of the configuration would still
+ * use each of them, so that reusing the graph gives the same result as resolving it.</p>
+ */
+public class DefaultResolvedGraphCache implements ResolvedGraphCache {
+    /**
+     * Set to false to resolve the graph of every configuration, even when its inputs have not changed.
+     */
+    public static final String ENABLED_PROPERTY = "org.gradle.dependency.graph.cache";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DefaultResolvedGraphCache.class);
+
+    private final CacheLockingManager cacheLockingManager;
+    private final ModuleMetaDataCache moduleMetaDataCache;
+    private final ModuleVersionsCache moduleVersionsCache;
+    private final BuildCommencedTimeProvider timeProvider;
+    private final VersionSelectorScheme versionSelectorScheme;
+    private final ResolveInputsHasher hasher = new ResolveInputsHasher();
+    private PersistentIndexedCache<HashValue, ResolvedGraphEntry> cache;
+
+    public DefaultResolvedGraphCache(CacheLockingManager cacheLockingManager, ModuleMetaDataCache moduleMetaDataCache, ModuleVersionsCache moduleVersionsCache,
+                                     BuildCommencedTimeProvider timeProvider, VersionSelectorScheme versionSelectorScheme) {
+        this.cacheLockingManager = cacheLockingManager;
+        this.moduleMetaDataCache = moduleMetaDataCache;
+        this.moduleVersionsCache = moduleVersionsCache;
+        this.timeProvider = timeProvider;
+        this.versionSelectorScheme = versionSelectorScheme;
+    }
+
+    private PersistentIndexedCache<HashValue, ResolvedGraphEntry> getCache() {
+        if (cache == null) {
+            cache = initCache();
+        }
+        return cache;
+    }
+
+    private PersistentIndexedCache<HashValue, ResolvedGraphEntry> initCache() {
+        return cacheLockingManager.createCache("resolved-graphs", new HashValueSerializer(), new ResolvedGraphEntrySerializer());
+    }
+
+    public CachedGraph get(ResolveContext resolveContext, List<? extends ResolutionAwareRepository> repositories, GlobalDependencyResolutionRules metadataHandler) {
+        if (!(resolveContext instanceof ConfigurationInternal)) {
+            return null;
+        }
+        ConfigurationInternal configuration = (ConfigurationInternal) resolveContext;
+        List<ConfiguredModuleComponentRepository> resolvers = new ArrayList<ConfiguredModuleComponentRepository>(repositories.size());
+        for (ResolutionAwareRepository repository : repositories) {
+            resolvers.add(repository.createResolver());
+        }
+        HashValue key = hasher.hash(configuration, resolvers, metadataHandler);
+        if (key == null) {
+            return null;
+        }
+        return new DefaultCachedGraph(key, configuration, resolvers, metadataHandler.getModuleMetadataProcessor().getModuleReplacements());
+    }
+
+    private class DefaultCachedGraph implements CachedGraph {
+        private final HashValue key;
+        private final List<ConfiguredModuleComponentRepository> repositories;
+        private final CachePolicy cachePolicy;
+        private final ModuleReplacementsData moduleReplacements;
+        private final List<ModuleDependency> firstLevelDependencies = new ArrayList<ModuleDependency>();
+        private final Set<ComponentIdentifier> changingComponents = Collections.newSetFromMap(new ConcurrentHashMap<ComponentIdentifier, Boolean>());
+
+        DefaultCachedGraph(HashValue key, ConfigurationInternal configuration, List<ConfiguredModuleComponentRepository> repositories, ModuleReplacementsData moduleReplacements) {
+            this.key = key;
+            this.repositories = repositories;
+            this.cachePolicy = configuration.getResolutionStrategy().getCachePolicy();
+            this.moduleReplacements = moduleReplacements;
+            for (Configuration superConfiguration : configuration.getHierarchy()) {
+                firstLevelDependencies.addAll(superConfiguration.getDependencies().withType(ModuleDependency.class));
+            }
+        }
+
+        public ComponentMetaDataResolver observe(final ComponentMetaDataResolver resolver) {
+            return new ComponentMetaDataResolver() {
+                public void resolve(ComponentIdentifier identifier, ComponentOverrideMetadata componentOverrideMetadata, BuildableComponentResolveResult result) {
+                    resolver.resolve(identifier, componentOverrideMetadata, result);
+                    if (result.hasResult() && result.getFailure() == null && result.getMetaData().isChanging()) {
+                        changingComponents.add(identifier);
+                    }
+                }
+            };
+        }
+
+        public boolean replay(ArtifactResolver artifactResolver, ResolutionResultBuilder newModelBuilder, ResolvedConfigurationBuilder oldModelBuilder,
+                              ResolvedArtifactsBuilder artifactsBuilder, ResolvedProjectConfigurationResultBuilder projectModelBuilder) {
+            ResolvedGraphEntry entry = getCache().get(key);
+            if (entry == null || !isUpToDate(entry)) {
+                return false;
+            }
+            ResolvedGraphReplayer.Replay replay;
+            try {
+                replay = new ResolvedGraphReplayer(firstLevelDependencies).decode(entry.events);
+            } catch (Exception e) {
+                LOGGER.debug("Could not read cached resolved graph.", e);
+                return false;
+            }
+            replay.replay(artifactResolver, newModelBuilder, oldModelBuilder, artifactsBuilder, projectModelBuilder);
+            return true;
+        }
+
+        private boolean isUpToDate(ResolvedGraphEntry entry) {
+            long now = timeProvider.getCurrentTime();
+            for (Map.Entry<ModuleComponentIdentifier, List<CacheState>> module : entry.modules.entrySet()) {
+                ModuleComponentIdentifier id = module.getKey();
+                if (!module.getValue().equals(getMetaDataStates(id))) {
+                    // The meta-data has been cached again since the graph was stored
+                    return false;
+                }
+                DefaultResolvedModuleVersion resolvedModuleVersion = new DefaultResolvedModuleVersion(DefaultModuleVersionIdentifier.newId(id));
+                boolean changing = entry.changingModules.contains(id);
+                for (CacheState state : module.getValue()) {
+                    if (state != null && mustRefresh(id, resolvedModuleVersion, changing, state, now - state.timestamp)) {
+                        return false;
+                    }
+                }
+            }
+            for (Map.Entry<ModuleIdentifier, ModuleVersionIdentifier> selection : entry.dynamicSelections.entrySet()) {
+                List<CacheState> states = entry.versionLists.get(selection.getKey());
+                if (!states.equals(getVersionListStates(selection.getKey()))) {
+                    return false;
+                }
+                for (CacheState state : states) {
+                    if (state != null && cachePolicy.mustRefreshVersionList(selection.getKey(), Collections.singleton(selection.getValue()), now - state.timestamp)) {
+                        return false;
+                    }
+                }
+            }
+            for (Map.Entry<ModuleIdentifier, ModuleIdentifier> replacement : entry.replacements.entrySet()) {
+                ModuleIdentifier current = moduleReplacements.getReplacementFor(replacement.getKey());
+                if (current == null ? replacement.getValue() != null : !current.equals(replacement.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean mustRefresh(ModuleComponentIdentifier id, ResolvedModuleVersion resolvedModuleVersion, boolean changing, CacheState state, long age) {
+            if (state.missing) {
+                return cachePolicy.mustRefreshMissingModule(id, age);
+            }
+            if (changing) {
+                return cachePolicy.mustRefreshChangingModule(id, resolvedModuleVersion, age);
+            }
+            return cachePolicy.mustRefreshModule(id, resolvedModuleVersion, age);
+        }
+
+        /**
+         * Returns the state of the cached meta-data of the given module in each repository, null where nothing is cached.
+         */
+        private List<CacheState> getMetaDataStates(ModuleComponentIdentifier id) {
+            List<CacheState> states = new ArrayList<CacheState>(repositories.size());
+            for (ConfiguredModuleComponentRepository repository : repositories) {
+                ModuleMetaDataCache.CachedEntry cached = moduleMetaDataCache.getCachedEntry(repository, id);
+                states.add(cached == null ? null : new CacheState(cached.getCreateTimestamp(), cached.isMissing()));
+            }
+            return states;
+        }
+
+        /**
+         * Returns the state of the cached version list of the given module in each repository, null where nothing is cached.
+         */
+        private List<CacheState> getVersionListStates(ModuleIdentifier id) {
+            List<CacheState> states = new ArrayList<CacheState>(repositories.size());
+            for (ConfiguredModuleComponentRepository repository : repositories) {
+                ModuleVersionsCache.CachedModuleVersionList cached = moduleVersionsCache.getCachedModuleResolution(repository, id);
+                states.add(cached == null ? null : new CacheState(timeProvider.getCurrentTime() - cached.getAgeMillis(), false));
+            }
+            return states;
+        }
+
+        public Recorder record(ResolutionResultBuilder newModelBuilder, ResolvedConfigurationBuilder oldModelBuilder,
+                               ResolvedArtifactsBuilder artifactsBuilder, ResolvedProjectConfigurationResultBuilder projectModelBuilder) {
+            final ResolvedGraphRecorder recorder = new ResolvedGraphRecorder(firstLevelDependencies, versionSelectorScheme, newModelBuilder, oldModelBuilder, artifactsBuilder, projectModelBuilder);
+            return new Recorder() {
+                public ResolutionResultBuilder getNewModelBuilder() {
+                    return recorder.getNewModelBuilder();
+                }
+
+                public ResolvedConfigurationBuilder getOldModelBuilder() {
+                    return recorder.getOldModelBuilder();
+                }
+
+                public ResolvedArtifactsBuilder getArtifactsBuilder() {
+                    return recorder.getArtifactsBuilder();
+                }
+
+                public ResolvedProjectConfigurationResultBuilder getProjectModelBuilder() {
+                    return recorder.getProjectModelBuilder();
+                }
+
+                public void complete() {
+                    if (!recorder.complete()) {
+                        return;
+                    }
+                    Map<ModuleComponentIdentifier, List<CacheState>> modules = new LinkedHashMap<ModuleComponentIdentifier, List<CacheState>>();
+                    Set<ModuleComponentIdentifier> changingModules = new HashSet<ModuleComponentIdentifier>();
+                    for (ModuleComponentIdentifier module : recorder.getModules()) {
+                        modules.put(module, getMetaDataStates(module));
+                        if (changingComponents.contains(module)) {
+                            changingModules.add(module);
+                        }
+                    }
+                    Map<ModuleIdentifier, List<CacheState>> versionLists = new HashMap<ModuleIdentifier, List<CacheState>>();
+                    for (ModuleIdentifier module : recorder.getDynamicSelections().keySet()) {
+                        versionLists.put(module, getVersionListStates(module));
+                    }
+                    Map<ModuleIdentifier, ModuleIdentifier> replacements = new LinkedHashMap<ModuleIdentifier, ModuleIdentifier>();
+                    for (ModuleIdentifier module : recorder.getRequestedModules()) {
+                        replacements.put(module, moduleReplacements.getReplacementFor(module));
+                    }
+                    getCache().put(key, new ResolvedGraphEntry(modules, changingModules, recorder.getDynamicSelections(), versionLists, replacements, recorder.getEvents()));
+                }
+            };
+        }
+    }
+
+    private static class ResolvedGraphEntry {
+        private final Map<ModuleComponentIdentifier, List<CacheState>> modules;
+        private final Set<ModuleComponentIdentifier> changingModules;
+        private final Map<ModuleIdentifier, ModuleVersionIdentifier> dynamicSelections;
+        private final Map<ModuleIdentifier, List<CacheState>> versionLists;
+        private final Map<ModuleIdentifier, ModuleIdentifier> replacements;
+        private final byte[] events;
+
+        ResolvedGraphEntry(Map<ModuleComponentIdentifier, List<CacheState>> modules, Set<ModuleComponentIdentifier> changingModules,
+                           Map<ModuleIdentifier, ModuleVersionIdentifier> dynamicSelections, Map<ModuleIdentifier, List<CacheState>> versionLists,
+                           Map<ModuleIdentifier, ModuleIdentifier> replacements, byte[] events) {
+            this.modules = modules;
+            this.changingModules = changingModules;
+            this.dynamicSelections = dynamicSelections;
+            this.versionLists = versionLists;
+            this.replacements = replacements;
+            this.events = events;
+        }
+    }
+
+    /**
+     * The state of a meta-data or version list cache entry in a repository.
+     */
+    private static class CacheState {
+        private final long timestamp;
+        private final boolean missing;
+
+        CacheState(long timestamp, boolean missing) {
+            this.timestamp = timestamp;
+            this.missing = missing;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (obj == null || obj.getClass() != getClass()) {
+                return false;
+            }
+            CacheState other = (CacheState) obj;
+            return timestamp == other.timestamp && missing == other.missing;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (timestamp ^ (timestamp >>> 32)) ^ (missing ? 1 : 0);
+        }
+    }
+
+    private static class HashValueSerializer implements Serializer<HashValue> {
+        public void write(Encoder encoder, HashValue value) throws Exception {
+            encoder.writeBinary(value.asByteArray());
+        }
+
+        public HashValue read(Decoder decoder) throws Exception {
+            return new HashValue(decoder.readBinary());
+        }
+    }
+
+    private static class ResolvedGraphEntrySerializer implements Serializer<ResolvedGraphEntry> {
+        private final ComponentIdentifierSerializer componentIdentifierSerializer = new ComponentIdentifierSerializer();
+        private final ModuleVersionIdentifierSerializer moduleVersionIdentifierSerializer = new ModuleVersionIdentifierSerializer();
+
+        public void write(Encoder encoder, ResolvedGraphEntry value) throws Exception {
+            encoder.writeSmallInt(value.modules.size());
+            for (Map.Entry<ModuleComponentIdentifier, List<CacheState>> module : value.modules.entrySet()) {
+                componentIdentifierSerializer.write(encoder, module.getKey());
+                encoder.writeBoolean(value.changingModules.contains(module.getKey()));
+                writeCacheStates(encoder, module.getValue());
+            }
+            encoder.writeSmallInt(value.dynamicSelections.size());
+            for (Map.Entry<ModuleIdentifier, ModuleVersionIdentifier> selection : value.dynamicSelections.entrySet()) {
+                writeModuleIdentifier(encoder, selection.getKey());
+                moduleVersionIdentifierSerializer.write(encoder, selection.getValue());
+                writeCacheStates(encoder, value.versionLists.get(selection.getKey()));
+            }
+            encoder.writeSmallInt(value.replacements.size());
+            for (Map.Entry<ModuleIdentifier, ModuleIdentifier> replacement : value.replacements.entrySet()) {
+                writeModuleIdentifier(encoder, replacement.getKey());
+                encoder.writeBoolean(replacement.getValue() != null);
+                if (replacement.getValue() != null) {
+                    writeModuleIdentifier(encoder, replacement.getValue());
+                }
+            }
+            encoder.writeBinary(value.events);
+        }
+
+        public ResolvedGraphEntry read(Decoder decoder) throws Exception {
+            int moduleCount = decoder.readSmallInt();
+            Map<ModuleComponentIdentifier, List<CacheState>> modules = new LinkedHashMap<ModuleComponentIdentifier, List<CacheState>>(moduleCount);
+            Set<ModuleComponentIdentifier> changingModules = new HashSet<ModuleComponentIdentifier>();
+            for (int i = 0; i < moduleCount; i++) {
+                ModuleComponentIdentifier module = (ModuleComponentIdentifier) componentIdentifierSerializer.read(decoder);
+                if (decoder.readBoolean()) {
+                    changingModules.add(module);
+                }
+                modules.put(module, readCacheStates(decoder));
+            }
+            int dynamicCount = decoder.readSmallInt();
+            Map<ModuleIdentifier, ModuleVersionIdentifier> dynamicSelections = new LinkedHashMap<ModuleIdentifier, ModuleVersionIdentifier>(dynamicCount);
+            Map<ModuleIdentifier, List<CacheState>> versionLists = new HashMap<ModuleIdentifier, List<CacheState>>(dynamicCount);
+            for (int i = 0; i < dynamicCount; i++) {
+                ModuleIdentifier module = readModuleIdentifier(decoder);
+                dynamicSelections.put(module, moduleVersionIdentifierSerializer.read(decoder));
+                versionLists.put(module, readCacheStates(decoder));
+            }
+            int replacementCount = decoder.readSmallInt();
+            Map<ModuleIdentifier, ModuleIdentifier> replacements = new LinkedHashMap<ModuleIdentifier, ModuleIdentifier>(replacementCount);
+            for (int i = 0; i < replacementCount; i++) {
+                ModuleIdentifier module = readModuleIdentifier(decoder);
+                replacements.put(module, decoder.readBoolean() ? readModuleIdentifier(decoder) : null);
+            }
+            byte[] events = decoder.readBinary();
+            return new ResolvedGraphEntry(modules, changingModules, dynamicSelections, versionLists, replacements, events);
+        }
+
+        private void writeCacheStates(Encoder encoder, List<CacheState> states) throws Exception {
+            encoder.writeSmallInt(states.size());
+            for (CacheState state : states) {
+                encoder.writeBoolean(state != null);
+                if (state != null) {
+                    encoder.writeLong(state.timestamp);
+                    encoder.writeBoolean(state.missing);
+                }
+            }
+        }
+
+        private List<CacheState> readCacheStates(Decoder decoder) throws Exception {
+            int count = decoder.readSmallInt();
+            List<CacheState> states = new ArrayList<CacheState>(count);
+            for (int i = 0; i < count; i++) {
+                states.add(decoder.readBoolean() ? new CacheState(decoder.readLong(), decoder.readBoolean()) : null);
+            }
+            return states;
+        }
+
+        private void writeModuleIdentifier(Encoder encoder, ModuleIdentifier module) throws Exception {
+            encoder.writeString(module.getGroup());
+            encoder.writeString(module.getName());
+        }
+
+        private ModuleIdentifier readModuleIdentifier(Decoder decoder) throws Exception {
+            return DefaultModuleIdentifier.newId(decoder.readString(), decoder.readString());
+        }
+    }
+}
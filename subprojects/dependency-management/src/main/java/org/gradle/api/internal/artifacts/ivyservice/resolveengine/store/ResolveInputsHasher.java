@@ -0,0 +1,151 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.store;
+
+import org.gradle.api.Nullable;
+import org.gradle.api.artifacts.*;
+import org.gradle.api.internal.artifacts.GlobalDependencyResolutionRules;
+import org.gradle.api.internal.artifacts.ModuleInternal;
+import org.gradle.api.internal.artifacts.configurations.ConfigurationInternal;
+import org.gradle.api.internal.artifacts.configurations.ResolutionStrategyInternal;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.ConfiguredModuleComponentRepository;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.hash.HashUtil;
+import org.gradle.internal.hash.HashValue;
+import org.gradle.internal.serialize.Encoder;
+import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Calculates a hash of the inputs that determine the dependency graph of a configuration: the declared dependencies and excludes of the configuration
+ * hierarchy, the resolution strategy and the repositories.
+ *
+ * <p>Inputs that are implemented by build logic, such as dependency substitution, component selection and component meta-data rules, cannot be hashed. Neither
+ * can project dependencies, whose meta-data changes as the build runs, nor local repositories, which are not cached. No hash is calculated when any of these
+ * is present.</p>
+ */
+class ResolveInputsHasher {
+    private static final int FORMAT_VERSION = 1;
+
+    @Nullable
+    public HashValue hash(ConfigurationInternal configuration, List<? extends ConfiguredModuleComponentRepository> repositories, GlobalDependencyResolutionRules metadataHandler) {
+        if (metadataHandler.getComponentMetadataProcessor().hasRules()) {
+            return null;
+        }
+        ResolutionStrategyInternal resolutionStrategy = configuration.getResolutionStrategy();
+        if (resolutionStrategy.getDependencySubstitution().hasDependencySubstitutionRules() || !resolutionStrategy.getComponentSelection().getRules().isEmpty()) {
+            return null;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        KryoBackedEncoder encoder = new KryoBackedEncoder(bytes);
+        try {
+            encoder.writeSmallInt(FORMAT_VERSION);
+            if (!writeConfiguration(encoder, configuration)) {
+                return null;
+            }
+            writeResolutionStrategy(encoder, resolutionStrategy);
+            if (!writeRepositories(encoder, repositories)) {
+                return null;
+            }
+            encoder.flush();
+        } catch (IOException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+        return HashUtil.sha1(bytes.toByteArray());
+    }
+
+    private boolean writeConfiguration(Encoder encoder, ConfigurationInternal configuration) throws IOException {
+        ModuleInternal module = configuration.getModule();
+        encoder.writeNullableString(module.getProjectPath());
+        encoder.writeString(module.getGroup());
+        encoder.writeString(module.getName());
+        encoder.writeString(module.getVersion());
+        encoder.writeString(module.getStatus());
+        encoder.writeString(configuration.getPath());
+
+        for (Configuration superConfiguration : configuration.getHierarchy()) {
+            encoder.writeBoolean(true);
+            encoder.writeString(superConfiguration.getName());
+            encoder.writeBoolean(superConfiguration.isTransitive());
+            writeExcludeRules(encoder, superConfiguration.getExcludeRules());
+            for (ModuleDependency dependency : superConfiguration.getDependencies().withType(ModuleDependency.class)) {
+                if (!(dependency instanceof ExternalModuleDependency) || dependency instanceof ClientModule) {
+                    return false;
+                }
+                writeDependency(encoder, (ExternalModuleDependency) dependency);
+            }
+            encoder.writeBoolean(false);
+        }
+        encoder.writeBoolean(false);
+        return true;
+    }
+
+    private void writeDependency(Encoder encoder, ExternalModuleDependency dependency) throws IOException {
+        encoder.writeBoolean(true);
+        encoder.writeNullableString(dependency.getGroup());
+        encoder.writeString(dependency.getName());
+        encoder.writeNullableString(dependency.getVersion());
+        encoder.writeNullableString(dependency.getConfiguration());
+        encoder.writeBoolean(dependency.isTransitive());
+        encoder.writeBoolean(dependency.isForce());
+        encoder.writeBoolean(dependency.isChanging());
+        writeExcludeRules(encoder, dependency.getExcludeRules());
+        encoder.writeSmallInt(dependency.getArtifacts().size());
+        for (DependencyArtifact artifact : dependency.getArtifacts()) {
+            encoder.writeString(artifact.getName());
+            encoder.writeNullableString(artifact.getType());
+            encoder.writeNullableString(artifact.getExtension());
+            encoder.writeNullableString(artifact.getClassifier());
+            encoder.writeNullableString(artifact.getUrl());
+        }
+    }
+
+    private void writeExcludeRules(Encoder encoder, Iterable<ExcludeRule> excludeRules) throws IOException {
+        for (ExcludeRule excludeRule : excludeRules) {
+            encoder.writeBoolean(true);
+            encoder.writeNullableString(excludeRule.getGroup());
+            encoder.writeNullableString(excludeRule.getModule());
+        }
+        encoder.writeBoolean(false);
+    }
+
+    private void writeResolutionStrategy(Encoder encoder, ResolutionStrategyInternal resolutionStrategy) throws IOException {
+        encoder.writeString(resolutionStrategy.getConflictResolution().getClass().getName());
+        encoder.writeSmallInt(resolutionStrategy.getForcedModules().size());
+        for (ModuleVersionSelector forcedModule : resolutionStrategy.getForcedModules()) {
+            encoder.writeNullableString(forcedModule.getGroup());
+            encoder.writeString(forcedModule.getName());
+            encoder.writeNullableString(forcedModule.getVersion());
+        }
+    }
+
+    private boolean writeRepositories(Encoder encoder, List<? extends ConfiguredModuleComponentRepository> repositories) throws IOException {
+        encoder.writeSmallInt(repositories.size());
+        for (ConfiguredModuleComponentRepository resolver : repositories) {
+            if (resolver.isLocal()) {
+                return false;
+            }
+            encoder.writeString(resolver.getId());
+            encoder.writeBoolean(resolver.isDynamicResolveMode());
+        }
+        return true;
+    }
+}
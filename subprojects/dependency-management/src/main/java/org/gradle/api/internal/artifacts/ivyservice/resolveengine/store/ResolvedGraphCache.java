@@ -0,0 +1,89 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.store;
+
+import org.gradle.api.Nullable;
+import org.gradle.api.artifacts.ResolveContext;
+import org.gradle.api.internal.artifacts.GlobalDependencyResolutionRules;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.oldresult.ResolvedArtifactsBuilder;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.oldresult.ResolvedConfigurationBuilder;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.projectresult.ResolvedProjectConfigurationResultBuilder;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ResolutionResultBuilder;
+import org.gradle.api.internal.artifacts.repositories.ResolutionAwareRepository;
+import org.gradle.internal.resolve.resolver.ArtifactResolver;
+import org.gradle.internal.resolve.resolver.ComponentMetaDataResolver;
+
+import java.util.List;
+
+/**
+ * Keeps the resolved dependency graphs of configurations across builds, so that the graph of a configuration whose inputs have not changed can be reused
+ * instead of being resolved again.
+ */
+public interface ResolvedGraphCache {
+    /**
+     * Does not cache anything. Every graph is resolved.
+     */
+    ResolvedGraphCache NONE = new ResolvedGraphCache() {
+        public CachedGraph get(ResolveContext resolveContext, List<? extends ResolutionAwareRepository> repositories, GlobalDependencyResolutionRules metadataHandler) {
+            return null;
+        }
+    };
+
+    /**
+     * Locates the cached graph for the given context.
+     *
+     * @return The cached graph, or null when the graph of the context cannot be cached.
+     */
+    @Nullable
+    CachedGraph get(ResolveContext resolveContext, List<? extends ResolutionAwareRepository> repositories, GlobalDependencyResolutionRules metadataHandler);
+
+    interface CachedGraph {
+        /**
+         * Wraps the resolver used to resolve the graph, to find out which components are changing.
+         */
+        ComponentMetaDataResolver observe(ComponentMetaDataResolver resolver);
+
+        /**
+         * Sends the results of the cached graph to the given builders, when the cached graph is present and still valid.
+         *
+         * @return true when the results were sent, false when the graph needs to be resolved.
+         */
+        boolean replay(ArtifactResolver artifactResolver, ResolutionResultBuilder newModelBuilder, ResolvedConfigurationBuilder oldModelBuilder,
+                       ResolvedArtifactsBuilder artifactsBuilder, ResolvedProjectConfigurationResultBuilder projectModelBuilder);
+
+        /**
+         * Starts recording the results of resolving the graph. The graph is stored when the recorder completes.
+         */
+        Recorder record(ResolutionResultBuilder newModelBuilder, ResolvedConfigurationBuilder oldModelBuilder,
+                        ResolvedArtifactsBuilder artifactsBuilder, ResolvedProjectConfigurationResultBuilder projectModelBuilder);
+    }
+
+    interface Recorder {
+        ResolutionResultBuilder getNewModelBuilder();
+
+        ResolvedConfigurationBuilder getOldModelBuilder();
+
+        ResolvedArtifactsBuilder getArtifactsBuilder();
+
+        ResolvedProjectConfigurationResultBuilder getProjectModelBuilder();
+
+        /**
+         * Stores the recorded graph, if it can be cached.
+         */
+        void complete();
+    }
+}
@@ -0,0 +1,438 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.store;
+
+import org.gradle.api.artifacts.ModuleDependency;
+import org.gradle.api.artifacts.ModuleIdentifier;
+import org.gradle.api.artifacts.ModuleVersionIdentifier;
+import org.gradle.api.artifacts.UnresolvedDependency;
+import org.gradle.api.artifacts.component.ComponentIdentifier;
+import org.gradle.api.artifacts.component.ComponentSelector;
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
+import org.gradle.api.artifacts.component.ModuleComponentSelector;
+import org.gradle.api.artifacts.component.ProjectComponentIdentifier;
+import org.gradle.api.artifacts.result.ResolutionResult;
+import org.gradle.api.internal.artifacts.DefaultModuleIdentifier;
+import org.gradle.api.internal.artifacts.ModuleVersionIdentifierSerializer;
+import org.gradle.api.internal.artifacts.ResolvedConfigurationIdentifier;
+import org.gradle.api.internal.artifacts.ResolvedConfigurationIdentifierSerializer;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionSelectorScheme;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.AbstractArtifactSet;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.ArtifactSet;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.oldresult.ResolvedArtifactResults;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.oldresult.ResolvedArtifactsBuilder;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.oldresult.ResolvedConfigurationBuilder;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.oldresult.ResolvedGraphResults;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.projectresult.ResolvedProjectConfigurationResultBuilder;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.projectresult.ResolvedProjectConfigurationResults;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ComponentIdentifierSerializer;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.InternalDependencyResult;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.InternalDependencyResultSerializer;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ModuleVersionSelection;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ModuleVersionSelectionSerializer;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ResolutionResultBuilder;
+import org.gradle.api.internal.artifacts.metadata.ModuleVersionArtifactIdentifierSerializer;
+import org.gradle.internal.component.external.model.ModuleComponentArtifactIdentifier;
+import org.gradle.internal.component.model.ComponentArtifactMetaData;
+import org.gradle.internal.component.model.ModuleSource;
+import org.gradle.internal.serialize.DefaultSerializer;
+import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.util.*;
+
+/**
+ * Records the events sent to the result builders while a dependency graph is resolved, so that the same events can be replayed by {@link ResolvedGraphReplayer}
+ * instead of resolving the graph again. Also collects the facts about the graph that decide whether the recording is still valid later.
+ *
+ * <p>Graphs with failures, or with components other than external modules, are not recorded.</p>
+ */
+class ResolvedGraphRecorder {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResolvedGraphRecorder.class);
+
+    static final byte END = 0;
+    static final byte ROOT = 1;
+    static final byte MODULE = 2;
+    static final byte DEPENDENCIES = 3;
+    static final byte NODE = 4;
+    static final byte CHILD = 5;
+    static final byte ARTIFACTS = 6;
+    static final byte FIRST_LEVEL_DEPENDENCY = 7;
+    static final byte DONE = 8;
+    static final byte ARTIFACT_SET = 9;
+    static final byte ARTIFACT_SET_REFERENCE = 10;
+    static final byte PROJECT_ROOT = 11;
+    static final byte PROJECT_COMPONENT = 12;
+
+    private final ModuleVersionIdentifierSerializer moduleVersionIdentifierSerializer = new ModuleVersionIdentifierSerializer();
+    private final ComponentIdentifierSerializer componentIdentifierSerializer = new ComponentIdentifierSerializer();
+    private final ModuleVersionSelectionSerializer moduleVersionSelectionSerializer = new ModuleVersionSelectionSerializer();
+    private final InternalDependencyResultSerializer dependencyResultSerializer = new InternalDependencyResultSerializer();
+    private final ResolvedConfigurationIdentifierSerializer configurationIdentifierSerializer = new ResolvedConfigurationIdentifierSerializer();
+    private final ModuleVersionArtifactIdentifierSerializer artifactIdentifierSerializer = new ModuleVersionArtifactIdentifierSerializer();
+    private final DefaultSerializer<ModuleSource> moduleSourceSerializer = new DefaultSerializer<ModuleSource>(ModuleSource.class.getClassLoader());
+
+    private final List<ModuleDependency> firstLevelDependencies;
+    private final VersionSelectorScheme versionSelectorScheme;
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final KryoBackedEncoder encoder = new KryoBackedEncoder(bytes);
+    private final Set<Long> recordedArtifactSets = new HashSet<Long>();
+    private final Set<ModuleComponentIdentifier> modules = new LinkedHashSet<ModuleComponentIdentifier>();
+    private final Set<ModuleIdentifier> requestedModules = new LinkedHashSet<ModuleIdentifier>();
+    private final Map<ModuleIdentifier, ModuleVersionIdentifier> dynamicSelections = new LinkedHashMap<ModuleIdentifier, ModuleVersionIdentifier>();
+    private ComponentIdentifier root;
+    private ComponentIdentifier projectRoot;
+    private boolean recording = true;
+
+    private final ResolutionResultBuilder newModelBuilder;
+    private final ResolvedConfigurationBuilder oldModelBuilder;
+    private final ResolvedArtifactsBuilder artifactsBuilder;
+    private final ResolvedProjectConfigurationResultBuilder projectModelBuilder;
+
+    ResolvedGraphRecorder(List<ModuleDependency> firstLevelDependencies, VersionSelectorScheme versionSelectorScheme,
+                          ResolutionResultBuilder newModelBuilder, ResolvedConfigurationBuilder oldModelBuilder,
+                          ResolvedArtifactsBuilder artifactsBuilder, ResolvedProjectConfigurationResultBuilder projectModelBuilder) {
+        this.firstLevelDependencies = firstLevelDependencies;
+        this.versionSelectorScheme = versionSelectorScheme;
+        this.newModelBuilder = new RecordingResolutionResultBuilder(newModelBuilder);
+        this.oldModelBuilder = new RecordingResolvedConfigurationBuilder(oldModelBuilder);
+        this.artifactsBuilder = new RecordingResolvedArtifactsBuilder(artifactsBuilder);
+        this.projectModelBuilder = new RecordingResolvedProjectConfigurationResultBuilder(projectModelBuilder);
+    }
+
+    public ResolutionResultBuilder getNewModelBuilder() {
+        return newModelBuilder;
+    }
+
+    public ResolvedConfigurationBuilder getOldModelBuilder() {
+        return oldModelBuilder;
+    }
+
+    public ResolvedArtifactsBuilder getArtifactsBuilder() {
+        return artifactsBuilder;
+    }
+
+    public ResolvedProjectConfigurationResultBuilder getProjectModelBuilder() {
+        return projectModelBuilder;
+    }
+
+    /**
+     * Finishes the recording.
+     *
+     * @return true when the graph was recorded, false when it cannot be cached.
+     */
+    public boolean complete() {
+        if (recording) {
+            write(new EventWriter() {
+                public void write() {
+                    encoder.writeByte(END);
+                }
+            });
+            encoder.flush();
+        }
+        return recording;
+    }
+
+    /**
+     * The recorded events. Valid only when {@link #complete()} returns true.
+     */
+    public byte[] getEvents() {
+        return bytes.toByteArray();
+    }
+
+    /**
+     * The external modules in the graph.
+     */
+    public Set<ModuleComponentIdentifier> getModules() {
+        return modules;
+    }
+
+    /**
+     * The modules requested by the dependencies in the graph, whose replacements affect conflict resolution.
+     */
+    public Set<ModuleIdentifier> getRequestedModules() {
+        return requestedModules;
+    }
+
+    /**
+     * The version selected for each module that is requested with a dynamic version.
+     */
+    public Map<ModuleIdentifier, ModuleVersionIdentifier> getDynamicSelections() {
+        return dynamicSelections;
+    }
+
+    private void stopRecording(String reason) {
+        if (recording) {
+            LOGGER.debug("Not caching resolved graph: {}", reason);
+            recording = false;
+        }
+    }
+
+    private void write(EventWriter writer) {
+        if (!recording) {
+            return;
+        }
+        try {
+            writer.write();
+        } catch (Exception e) {
+            stopRecording(e.toString());
+        }
+    }
+
+    private interface EventWriter {
+        void write() throws Exception;
+    }
+
+    private class RecordingResolutionResultBuilder implements ResolutionResultBuilder {
+        private final ResolutionResultBuilder delegate;
+
+        private RecordingResolutionResultBuilder(ResolutionResultBuilder delegate) {
+            this.delegate = delegate;
+        }
+
+        public ResolutionResultBuilder start(final ModuleVersionIdentifier rootId, final ComponentIdentifier componentIdentifier) {
+            delegate.start(rootId, componentIdentifier);
+            root = componentIdentifier;
+            write(new EventWriter() {
+                public void write() throws Exception {
+                    encoder.writeByte(ROOT);
+                    moduleVersionIdentifierSerializer.write(encoder, rootId);
+                    componentIdentifierSerializer.write(encoder, componentIdentifier);
+                }
+            });
+            return this;
+        }
+
+        public void resolvedModuleVersion(final ModuleVersionSelection moduleVersion) {
+            delegate.resolvedModuleVersion(moduleVersion);
+            ComponentIdentifier componentId = moduleVersion.getComponentId();
+            if (componentId instanceof ModuleComponentIdentifier) {
+                modules.add((ModuleComponentIdentifier) componentId);
+            } else if (!componentId.equals(root)) {
+                stopRecording(String.format("%s is not an external module", componentId.getDisplayName()));
+            }
+            write(new EventWriter() {
+                public void write() throws Exception {
+                    encoder.writeByte(MODULE);
+                    moduleVersionSelectionSerializer.write(encoder, moduleVersion);
+                }
+            });
+        }
+
+        public void resolvedConfiguration(final ModuleVersionIdentifier id, final Collection<? extends InternalDependencyResult> dependencies) {
+            delegate.resolvedConfiguration(id, dependencies);
+            for (InternalDependencyResult dependency : dependencies) {
+                if (dependency.getFailure() != null) {
+                    stopRecording(String.format("could not resolve %s", dependency.getRequested().getDisplayName()));
+                    continue;
+                }
+                ComponentSelector requested = dependency.getRequested();
+                if (requested instanceof ModuleComponentSelector) {
+                    ModuleComponentSelector selector = (ModuleComponentSelector) requested;
+                    ModuleIdentifier moduleId = DefaultModuleIdentifier.newId(selector.getGroup(), selector.getModule());
+                    requestedModules.add(moduleId);
+                    if (versionSelectorScheme.parseSelector(selector.getVersion()).isDynamic()) {
+                        dynamicSelections.put(moduleId, dependency.getSelected());
+                    }
+                }
+            }
+            write(new EventWriter() {
+                public void write() throws Exception {
+                    encoder.writeByte(DEPENDENCIES);
+                    moduleVersionIdentifierSerializer.write(encoder, id);
+                    encoder.writeSmallInt(dependencies.size());
+                    for (InternalDependencyResult dependency : dependencies) {
+                        dependencyResultSerializer.write(encoder, dependency);
+                    }
+                }
+            });
+        }
+
+        public ResolutionResult complete() {
+            return delegate.complete();
+        }
+    }
+
+    private class RecordingResolvedConfigurationBuilder implements ResolvedConfigurationBuilder {
+        private final ResolvedConfigurationBuilder delegate;
+
+        private RecordingResolvedConfigurationBuilder(ResolvedConfigurationBuilder delegate) {
+            this.delegate = delegate;
+        }
+
+        public void addFirstLevelDependency(ModuleDependency moduleDependency, final ResolvedConfigurationIdentifier dependency) {
+            delegate.addFirstLevelDependency(moduleDependency, dependency);
+            final int index = indexOf(moduleDependency);
+            if (index < 0) {
+                stopRecording(String.format("%s is not declared by the configuration", moduleDependency));
+            }
+            write(new EventWriter() {
+                public void write() throws Exception {
+                    encoder.writeByte(FIRST_LEVEL_DEPENDENCY);
+                    encoder.writeSmallInt(index);
+                    configurationIdentifierSerializer.write(encoder, dependency);
+                }
+            });
+        }
+
+        private int indexOf(ModuleDependency moduleDependency) {
+            for (int i = 0; i < firstLevelDependencies.size(); i++) {
+                if (firstLevelDependencies.get(i) == moduleDependency) {
+                    return i;
+                }
+            }
+            return firstLevelDependencies.indexOf(moduleDependency);
+        }
+
+        public void addUnresolvedDependency(UnresolvedDependency unresolvedDependency) {
+            delegate.addUnresolvedDependency(unresolvedDependency);
+            stopRecording(String.format("could not resolve %s", unresolvedDependency.getSelector()));
+        }
+
+        public void addChild(final ResolvedConfigurationIdentifier parent, final ResolvedConfigurationIdentifier child) {
+            delegate.addChild(parent, child);
+            write(new EventWriter() {
+                public void write() throws Exception {
+                    encoder.writeByte(CHILD);
+                    configurationIdentifierSerializer.write(encoder, parent);
+                    configurationIdentifierSerializer.write(encoder, child);
+                }
+            });
+        }
+
+        public void addArtifacts(final ResolvedConfigurationIdentifier child, final ResolvedConfigurationIdentifier parent, final long artifactsId) {
+            delegate.addArtifacts(child, parent, artifactsId);
+            write(new EventWriter() {
+                public void write() throws Exception {
+                    encoder.writeByte(ARTIFACTS);
+                    configurationIdentifierSerializer.write(encoder, child);
+                    configurationIdentifierSerializer.write(encoder, parent);
+                    encoder.writeLong(artifactsId);
+                }
+            });
+        }
+
+        public void newResolvedDependency(final ResolvedConfigurationIdentifier id) {
+            delegate.newResolvedDependency(id);
+            write(new EventWriter() {
+                public void write() throws Exception {
+                    encoder.writeByte(NODE);
+                    configurationIdentifierSerializer.write(encoder, id);
+                }
+            });
+        }
+
+        public void done(final ResolvedConfigurationIdentifier root) {
+            delegate.done(root);
+            write(new EventWriter() {
+                public void write() throws Exception {
+                    encoder.writeByte(DONE);
+                    configurationIdentifierSerializer.write(encoder, root);
+                }
+            });
+        }
+
+        public ResolvedGraphResults complete() {
+            return delegate.complete();
+        }
+    }
+
+    private class RecordingResolvedArtifactsBuilder implements ResolvedArtifactsBuilder {
+        private final ResolvedArtifactsBuilder delegate;
+
+        private RecordingResolvedArtifactsBuilder(ResolvedArtifactsBuilder delegate) {
+            this.delegate = delegate;
+        }
+
+        public void addArtifacts(final long id, final ArtifactSet artifacts) {
+            delegate.addArtifacts(id, artifacts);
+            if (!recordedArtifactSets.add(id)) {
+                write(new EventWriter() {
+                    public void write() throws Exception {
+                        encoder.writeByte(ARTIFACT_SET_REFERENCE);
+                        encoder.writeLong(id);
+                    }
+                });
+                return;
+            }
+            if (!(artifacts instanceof AbstractArtifactSet)) {
+                stopRecording(String.format("unknown artifact set %s", artifacts));
+                return;
+            }
+            write(new EventWriter() {
+                public void write() throws Exception {
+                    AbstractArtifactSet artifactSet = (AbstractArtifactSet) artifacts;
+                    Set<ComponentArtifactMetaData> componentArtifacts = artifactSet.getSelectedComponentArtifacts();
+                    encoder.writeByte(ARTIFACT_SET);
+                    encoder.writeLong(id);
+                    moduleVersionIdentifierSerializer.write(encoder, artifactSet.getModuleVersionIdentifier());
+                    moduleSourceSerializer.write(encoder, artifactSet.getModuleSource());
+                    encoder.writeSmallInt(componentArtifacts.size());
+                    for (ComponentArtifactMetaData artifact : componentArtifacts) {
+                        if (!(artifact.getId() instanceof ModuleComponentArtifactIdentifier)) {
+                            throw new IllegalArgumentException(String.format("%s is not an artifact of an external module", artifact));
+                        }
+                        artifactIdentifierSerializer.write(encoder, (ModuleComponentArtifactIdentifier) artifact.getId());
+                    }
+                }
+            });
+        }
+
+        public ResolvedArtifactResults resolve() {
+            return delegate.resolve();
+        }
+    }
+
+    private class RecordingResolvedProjectConfigurationResultBuilder implements ResolvedProjectConfigurationResultBuilder {
+        private final ResolvedProjectConfigurationResultBuilder delegate;
+
+        private RecordingResolvedProjectConfigurationResultBuilder(ResolvedProjectConfigurationResultBuilder delegate) {
+            this.delegate = delegate;
+        }
+
+        public void registerRoot(final ComponentIdentifier componentId) {
+            delegate.registerRoot(componentId);
+            projectRoot = componentId;
+            write(new EventWriter() {
+                public void write() throws Exception {
+                    encoder.writeByte(PROJECT_ROOT);
+                    componentIdentifierSerializer.write(encoder, componentId);
+                }
+            });
+        }
+
+        public void addProjectComponentResult(final ProjectComponentIdentifier componentId, final String configurationName) {
+            delegate.addProjectComponentResult(componentId, configurationName);
+            if (!componentId.equals(projectRoot)) {
+                stopRecording(String.format("%s is not an external module", componentId.getDisplayName()));
+            }
+            write(new EventWriter() {
+                public void write() throws Exception {
+                    encoder.writeByte(PROJECT_COMPONENT);
+                    componentIdentifierSerializer.write(encoder, componentId);
+                    encoder.writeString(configurationName);
+                }
+            });
+        }
+
+        public ResolvedProjectConfigurationResults complete() {
+            return delegate.complete();
+        }
+    }
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.store;
+
+import org.gradle.api.artifacts.ModuleDependency;
+import org.gradle.api.artifacts.ModuleVersionIdentifier;
+import org.gradle.api.artifacts.ResolvedArtifact;
+import org.gradle.api.artifacts.component.ComponentIdentifier;
+import org.gradle.api.artifacts.component.ComponentSelector;
+import org.gradle.api.artifacts.component.ProjectComponentIdentifier;
+import org.gradle.api.internal.artifacts.ModuleVersionIdentifierSerializer;
+import org.gradle.api.internal.artifacts.ResolvedConfigurationIdentifier;
+import org.gradle.api.internal.artifacts.ResolvedConfigurationIdentifierSerializer;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.ArtifactSet;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyArtifactSet;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.oldresult.ResolvedArtifactsBuilder;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.oldresult.ResolvedConfigurationBuilder;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.projectresult.ResolvedProjectConfigurationResultBuilder;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ComponentIdentifierSerializer;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.InternalDependencyResult;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.InternalDependencyResultSerializer;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ModuleVersionSelection;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ModuleVersionSelectionSerializer;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ResolutionResultBuilder;
+import org.gradle.api.internal.artifacts.metadata.ModuleVersionArtifactIdentifierSerializer;
+import org.gradle.internal.component.external.model.DefaultModuleComponentArtifactMetaData;
+import org.gradle.internal.component.model.ComponentArtifactIdentifier;
+import org.gradle.internal.component.model.ComponentArtifactMetaData;
+import org.gradle.internal.component.model.ModuleSource;
+import org.gradle.internal.resolve.ModuleVersionResolveException;
+import org.gradle.internal.resolve.resolver.ArtifactResolver;
+import org.gradle.internal.serialize.DefaultSerializer;
+import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
+
+import java.io.ByteArrayInputStream;
+import java.util.*;
+
+/**
+ * Replays the events recorded by {@link ResolvedGraphRecorder} to a set of result builders.
+ *
+ * <p>All events are decoded before any of them is sent to the builders, so that a recording that cannot be read leaves the builders untouched.</p>
+ */
+class ResolvedGraphReplayer {
+    private final ModuleVersionIdentifierSerializer moduleVersionIdentifierSerializer = new ModuleVersionIdentifierSerializer();
+    private final ComponentIdentifierSerializer componentIdentifierSerializer = new ComponentIdentifierSerializer();
+    private final ModuleVersionSelectionSerializer moduleVersionSelectionSerializer = new ModuleVersionSelectionSerializer();
+    private final InternalDependencyResultSerializer dependencyResultSerializer = new InternalDependencyResultSerializer();
+    private final ResolvedConfigurationIdentifierSerializer configurationIdentifierSerializer = new ResolvedConfigurationIdentifierSerializer();
+    private final ModuleVersionArtifactIdentifierSerializer artifactIdentifierSerializer = new ModuleVersionArtifactIdentifierSerializer();
+    private final DefaultSerializer<ModuleSource> moduleSourceSerializer = new DefaultSerializer<ModuleSource>(ModuleSource.class.getClassLoader());
+
+    private final List<ModuleDependency> firstLevelDependencies;
+
+    ResolvedGraphReplayer(List<ModuleDependency> firstLevelDependencies) {
+        this.firstLevelDependencies = firstLevelDependencies;
+    }
+
+    /**
+     * Decodes the given events.
+     *
+     * @throws Exception when the events cannot be decoded.
+     */
+    public Replay decode(byte[] events) throws Exception {
+        KryoBackedDecoder decoder = new KryoBackedDecoder(new ByteArrayInputStream(events));
+        Map<ComponentSelector, ModuleVersionResolveException> noFailures = Collections.emptyMap();
+        List<Event> decoded = new ArrayList<Event>();
+        while (true) {
+            byte type = decoder.readByte();
+            switch (type) {
+                case ResolvedGraphRecorder.END:
+                    return new Replay(decoded);
+                case ResolvedGraphRecorder.ROOT:
+                    decoded.add(new Root(moduleVersionIdentifierSerializer.read(decoder), componentIdentifierSerializer.read(decoder)));
+                    break;
+                case ResolvedGraphRecorder.MODULE:
+                    decoded.add(new Module(moduleVersionSelectionSerializer.read(decoder)));
+                    break;
+                case ResolvedGraphRecorder.DEPENDENCIES:
+                    ModuleVersionIdentifier from = moduleVersionIdentifierSerializer.read(decoder);
+                    int count = decoder.readSmallInt();
+                    List<InternalDependencyResult> dependencies = new ArrayList<InternalDependencyResult>(count);
+                    for (int i = 0; i < count; i++) {
+                        dependencies.add(dependencyResultSerializer.read(decoder, noFailures));
+                    }
+                    decoded.add(new Dependencies(from, dependencies));
+                    break;
+                case ResolvedGraphRecorder.NODE:
+                    decoded.add(new Node(configurationIdentifierSerializer.read(decoder)));
+                    break;
+                case ResolvedGraphRecorder.CHILD:
+                    decoded.add(new Child(configurationIdentifierSerializer.read(decoder), configurationIdentifierSerializer.read(decoder)));
+                    break;
+                case ResolvedGraphRecorder.ARTIFACTS:
+                    decoded.add(new Artifacts(configurationIdentifierSerializer.read(decoder), configurationIdentifierSerializer.read(decoder), decoder.readLong()));
+                    break;
+                case ResolvedGraphRecorder.FIRST_LEVEL_DEPENDENCY:
+                    ModuleDependency moduleDependency = firstLevelDependencies.get(decoder.readSmallInt());
+                    decoded.add(new FirstLevelDependency(moduleDependency, configurationIdentifierSerializer.read(decoder)));
+                    break;
+                case ResolvedGraphRecorder.DONE:
+                    decoded.add(new Done(configurationIdentifierSerializer.read(decoder)));
+                    break;
+                case ResolvedGraphRecorder.ARTIFACT_SET:
+                    long id = decoder.readLong();
+                    ModuleVersionIdentifier owner = moduleVersionIdentifierSerializer.read(decoder);
+                    ModuleSource moduleSource = moduleSourceSerializer.read(decoder);
+                    int artifactCount = decoder.readSmallInt();
+                    Set<ComponentArtifactMetaData> artifacts = new LinkedHashSet<ComponentArtifactMetaData>(artifactCount);
+                    for (int i = 0; i < artifactCount; i++) {
+                        artifacts.add(new DefaultModuleComponentArtifactMetaData(artifactIdentifierSerializer.read(decoder)));
+                    }
+                    decoded.add(new NewArtifactSet(id, owner, moduleSource, artifacts));
+                    break;
+                case ResolvedGraphRecorder.ARTIFACT_SET_REFERENCE:
+                    decoded.add(new ArtifactSetReference(decoder.readLong()));
+                    break;
+                case ResolvedGraphRecorder.PROJECT_ROOT:
+                    decoded.add(new ProjectRoot(componentIdentifierSerializer.read(decoder)));
+                    break;
+                case ResolvedGraphRecorder.PROJECT_COMPONENT:
+                    decoded.add(new ProjectComponent((ProjectComponentIdentifier) componentIdentifierSerializer.read(decoder), decoder.readString()));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown event type: " + type);
+            }
+        }
+    }
+
+    /**
+     * A decoded recording.
+     */
+    public static class Replay {
+        private final List<Event> events;
+
+        private Replay(List<Event> events) {
+            this.events = events;
+        }
+
+        public void replay(ArtifactResolver artifactResolver, ResolutionResultBuilder newModelBuilder, ResolvedConfigurationBuilder oldModelBuilder,
+                           ResolvedArtifactsBuilder artifactsBuilder, ResolvedProjectConfigurationResultBuilder projectModelBuilder) {
+            Target target = new Target(artifactResolver, newModelBuilder, oldModelBuilder, artifactsBuilder, projectModelBuilder);
+            for (Event event : events) {
+                event.replay(target);
+            }
+        }
+    }
+
+    private static class Target {
+        final ArtifactResolver artifactResolver;
+        final ResolutionResultBuilder newModelBuilder;
+        final ResolvedConfigurationBuilder oldModelBuilder;
+        final ResolvedArtifactsBuilder artifactsBuilder;
+        final ResolvedProjectConfigurationResultBuilder projectModelBuilder;
+        final Map<ComponentArtifactIdentifier, ResolvedArtifact> allResolvedArtifacts = new HashMap<ComponentArtifactIdentifier, ResolvedArtifact>();
+        final Map<Long, ArtifactSet> artifactSets = new HashMap<Long, ArtifactSet>();
+
+        Target(ArtifactResolver artifactResolver, ResolutionResultBuilder newModelBuilder, ResolvedConfigurationBuilder oldModelBuilder,
+               ResolvedArtifactsBuilder artifactsBuilder, ResolvedProjectConfigurationResultBuilder projectModelBuilder) {
+            this.artifactResolver = artifactResolver;
+            this.newModelBuilder = newModelBuilder;
+            this.oldModelBuilder = oldModelBuilder;
+            this.artifactsBuilder = artifactsBuilder;
+            this.projectModelBuilder = projectModelBuilder;
+        }
+    }
+
+    private interface Event {
+        void replay(Target target);
+    }
+
+    private static class Root implements Event {
+        private final ModuleVersionIdentifier id;
+        private final ComponentIdentifier componentId;
+
+        Root(ModuleVersionIdentifier id, ComponentIdentifier componentId) {
+            this.id = id;
+            this.componentId = componentId;
+        }
+
+        public void replay(Target target) {
+            target.newModelBuilder.start(id, componentId);
+        }
+    }
+
+    private static class Module implements Event {
+        private final ModuleVersionSelection selection;
+
+        Module(ModuleVersionSelection selection) {
+            this.selection = selection;
+        }
+
+        public void replay(Target target) {
+            target.newModelBuilder.resolvedModuleVersion(selection);
+        }
+    }
+
+    private static class Dependencies implements Event {
+        private final ModuleVersionIdentifier from;
+        private final List<InternalDependencyResult> dependencies;
+
+        Dependencies(ModuleVersionIdentifier from, List<InternalDependencyResult> dependencies) {
+            this.from = from;
+            this.dependencies = dependencies;
+        }
+
+        public void replay(Target target) {
+            target.newModelBuilder.resolvedConfiguration(from, dependencies);
+        }
+    }
+
+    private static class Node implements Event {
+        private final ResolvedConfigurationIdentifier id;
+
+        Node(ResolvedConfigurationIdentifier id) {
+            this.id = id;
+        }
+
+        public void replay(Target target) {
+            target.oldModelBuilder.newResolvedDependency(id);
+        }
+    }
+
+    private static class Child implements Event {
+        private final ResolvedConfigurationIdentifier parent;
+        private final ResolvedConfigurationIdentifier child;
+
+        Child(ResolvedConfigurationIdentifier parent, ResolvedConfigurationIdentifier child) {
+            this.parent = parent;
+            this.child = child;
+        }
+
+        public void replay(Target target) {
+            target.oldModelBuilder.addChild(parent, child);
+        }
+    }
+
+    private static class Artifacts implements Event {
+        private final ResolvedConfigurationIdentifier child;
+        private final ResolvedConfigurationIdentifier parent;
+        private final long artifactsId;
+
+        Artifacts(ResolvedConfigurationIdentifier child, ResolvedConfigurationIdentifier parent, long artifactsId) {
+            this.child = child;
+            this.parent = parent;
+            this.artifactsId = artifactsId;
+        }
+
+        public void replay(Target target) {
+            target.oldModelBuilder.addArtifacts(child, parent, artifactsId);
+        }
+    }
+
+    private static class FirstLevelDependency implements Event {
+        private final ModuleDependency moduleDependency;
+        private final ResolvedConfigurationIdentifier id;
+
+        FirstLevelDependency(ModuleDependency moduleDependency, ResolvedConfigurationIdentifier id) {
+            this.moduleDependency = moduleDependency;
+            this.id = id;
+        }
+
+        public void replay(Target target) {
+            target.oldModelBuilder.addFirstLevelDependency(moduleDependency, id);
+        }
+    }
+
+    private static class Done implements Event {
+        private final ResolvedConfigurationIdentifier root;
+
+        Done(ResolvedConfigurationIdentifier root) {
+            this.root = root;
+        }
+
+        public void replay(Target target) {
+            target.oldModelBuilder.done(root);
+        }
+    }
+
+    private static class NewArtifactSet implements Event {
+        private final long id;
+        private final ModuleVersionIdentifier owner;
+        private final ModuleSource moduleSource;
+        private final Set<ComponentArtifactMetaData> artifacts;
+
+        NewArtifactSet(long id, ModuleVersionIdentifier owner, ModuleSource moduleSource, Set<ComponentArtifactMetaData> artifacts) {
+            this.id = id;
+            this.owner = owner;
+            this.moduleSource = moduleSource;
+            this.artifacts = artifacts;
+        }
+
+        public void replay(Target target) {
+            ArtifactSet artifactSet = new DependencyArtifactSet(owner, moduleSource, artifacts, target.artifactResolver, target.allResolvedArtifacts, id);
+            target.artifactSets.put(id, artifactSet);
+            target.artifactsBuilder.addArtifacts(id, artifactSet);
+        }
+    }
+
+    private static class ArtifactSetReference implements Event {
+        private final long id;
+
+        ArtifactSetReference(long id) {
+            this.id = id;
+        }
+
+        public void replay(Target target) {
+            target.artifactsBuilder.addArtifacts(id, target.artifactSets.get(id));
+        }
+    }
+
+    private static class ProjectRoot implements Event {
+        private final ComponentIdentifier componentId;
+
+        ProjectRoot(ComponentIdentifier componentId) {
+            this.componentId = componentId;
+        }
+
+        public void replay(Target target) {
+            target.projectModelBuilder.registerRoot(componentId);
+        }
+    }
+
+    private static class ProjectComponent implements Event {
+        private final ProjectComponentIdentifier componentId;
+        private final String configurationName;
+
+        ProjectComponent(ProjectComponentIdentifier componentId, String configurationName) {
+            this.componentId = componentId;
+            this.configurationName = configurationName;
+        }
+
+        public void replay(Target target) {
+            target.projectModelBuilder.addProjectComponentResult(componentId, configurationName);
+        }
+    }
+}
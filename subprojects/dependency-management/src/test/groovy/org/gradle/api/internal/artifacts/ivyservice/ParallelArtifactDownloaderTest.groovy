@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice
+
+import org.gradle.api.Buildable
+import org.gradle.api.artifacts.ResolvedModuleVersion
+import org.gradle.api.internal.artifacts.DefaultBuildableArtifact
+import org.gradle.api.internal.artifacts.DefaultResolvedArtifact
+import org.gradle.internal.Factory
+import org.gradle.internal.component.model.IvyArtifactName
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+import spock.lang.Specification
+
+class ParallelArtifactDownloaderTest extends Specification {
+    def cacheLockingManager = Mock(CacheLockingManager)
+    def downloader = new ParallelArtifactDownloader(new DefaultExecutorFactory(), cacheLockingManager, 2)
+
+    def cleanup() {
+        downloader.stop()
+    }
+
+    def "downloads the files of the artifacts while the cache lock is released"() {
+        def source1 = Mock(Factory)
+        def source2 = Mock(Factory)
+        def file1 = new File("a.jar")
+        def file2 = new File("b.jar")
+        def artifact1 = artifact(source1)
+        def artifact2 = artifact(source2)
+
+        when:
+        downloader.download([artifact1, artifact2])
+
+        then:
+        1 * cacheLockingManager.longRunningOperation("Download 2 artifacts", _ as Runnable) >> { String operation, Runnable action -> action.run() }
+        1 * source1.create() >> file1
+        1 * source2.create() >> file2
+
+        and:
+        artifact1.fileResolved
+        artifact2.fileResolved
+
+        when:
+        def files = [artifact1.file, artifact2.file]
+
+        then:
+        files == [file1, file2]
+        0 * _
+    }
+
+    def "does not download the artifacts that are resolved or built by the build"() {
+        def source = Mock(Factory)
+        def resolved = artifact(Stub(Factory) { create() >> new File("a.jar") })
+        resolved.file
+        def buildableSource = Mock(Factory)
+        def buildable = new DefaultBuildableArtifact(Stub(ResolvedModuleVersion), Stub(IvyArtifactName), buildableSource, Stub(Buildable))
+
+        when:
+        downloader.download([resolved, buildable, artifact(source), artifact(source)])
+
+        then:
+        1 * cacheLockingManager.longRunningOperation("Download 2 artifacts", _ as Runnable) >> { String operation, Runnable action -> action.run() }
+        2 * source.create()
+        0 * buildableSource._
+    }
+
+    def "does not use another thread to download a single artifact"() {
+        def source = Mock(Factory)
+
+        when:
+        downloader.download([artifact(source)])
+
+        then:
+        0 * source._
+        0 * cacheLockingManager._
+    }
+
+    def "reports the failure to download an artifact when its file is requested without downloading it again"() {
+        def failure = new RuntimeException()
+        def source = Mock(Factory)
+        def failing = artifact(source)
+
+        given:
+        _ * cacheLockingManager.longRunningOperation(_, _ as Runnable) >> { String operation, Runnable action -> action.run() }
+
+        when:
+        downloader.download([failing, artifact(Stub(Factory))])
+
+        then:
+        1 * source.create() >> { throw failure }
+        !failing.fileResolved
+
+        when:
+        failing.file
+
+        then:
+        0 * source._
+        RuntimeException e = thrown()
+        e.is(failure)
+    }
+
+    def artifact(Factory<File> source) {
+        return new DefaultResolvedArtifact(Stub(ResolvedModuleVersion), Stub(IvyArtifactName), source)
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.ivyresolve
+
+import org.gradle.api.Transformer
+import org.gradle.api.internal.artifacts.ivyservice.CacheLockingManager
+import org.gradle.api.internal.artifacts.ivyservice.IvyContextManager
+import org.gradle.internal.Factory
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+import spock.lang.Specification
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+
+class ParallelRemoteMetaDataLookupTest extends Specification {
+    def cacheLockingManager = Mock(CacheLockingManager)
+    def ivyContextManager = Mock(IvyContextManager)
+    def lookup = new ParallelRemoteMetaDataLookup(new DefaultExecutorFactory(), cacheLockingManager, ivyContextManager, 2)
+
+    def setup() {
+        _ * cacheLockingManager.useCache(_, _ as Factory) >> { String operation, Factory action -> action.create() }
+        _ * cacheLockingManager.longRunningOperation(_, _ as Factory) >> { String operation, Factory action -> action.create() }
+        _ * ivyContextManager.withIvy(_ as Transformer) >> { Transformer action -> action.transform(null) }
+    }
+
+    def cleanup() {
+        lookup.stop()
+    }
+
+    def "runs each lookup in a cache action with an Ivy context"() {
+        when:
+        def pending = lookup.startAll("Resolve module", [{ "a" } as Factory, { "b" } as Factory])
+
+        then:
+        pending*.get() == ["a", "b"]
+        2 * cacheLockingManager.useCache("Resolve module", _ as Factory) >> { String operation, Factory action -> action.create() }
+        2 * ivyContextManager.withIvy(_ as Transformer) >> { Transformer action -> action.transform(null) }
+    }
+
+    def "releases the cache lock while waiting for a lookup"() {
+        def waiting = new CountDownLatch(1)
+
+        when:
+        def pending = lookup.startAll("Resolve module", [{ waiting.await(); "a" } as Factory])
+
+        then:
+        pending[0].get() == "a"
+        1 * cacheLockingManager.longRunningOperation("Wait for Resolve module", _ as Factory) >> { String operation, Factory action ->
+            waiting.countDown()
+            action.create()
+        }
+    }
+
+    def "lookups started by a lookup are run by the caller"() {
+        when:
+        def pending = lookup.startAll("Resolve module", [{ lookup.startAll("Resolve parent", [{ "parent" } as Factory]) } as Factory])
+
+        then:
+        pending[0].get() == null
+    }
+
+    def "rethrows the failure of a lookup"() {
+        def failure = new RuntimeException()
+
+        when:
+        lookup.startAll("Resolve module", [{ throw failure } as Factory])[0].get()
+
+        then:
+        RuntimeException e = thrown()
+        e.is(failure)
+    }
+
+    def "does not run a lookup that is cancelled before it starts"() {
+        def running = new CountDownLatch(1)
+        def release = new CountDownLatch(1)
+        def started = new CopyOnWriteArrayList()
+
+        when:
+        def pending = lookup.startAll("Resolve module", [
+            { running.countDown(); release.await(); started << "a"; "a" } as Factory,
+            { running.countDown(); release.await(); started << "b"; "b" } as Factory,
+            { started << "c"; "c" } as Factory])
+        running.await()
+        pending[2].cancel()
+        release.countDown()
+
+        then:
+        pending[0].get() == "a"
+        pending[1].get() == "b"
+        started.sort() == ["a", "b"]
+    }
+}
@@ -47,7 +47,8 @@ class ResolverProviderComponentMetaDataResolverTest extends Specification {
     def remoteAccess2 = Mock(ModuleComponentRepositoryAccess)
 
     final VersionedComponentChooser componentSelectionStrategy = Mock(VersionedComponentChooser)
-    final RepositoryChainComponentMetaDataResolver resolver = new RepositoryChainComponentMetaDataResolver(componentSelectionStrategy, transformer)
+    final RemoteMetaDataLookup remoteLookup = Mock(RemoteMetaDataLookup)
+    final RepositoryChainComponentMetaDataResolver resolver = new RepositoryChainComponentMetaDataResolver(componentSelectionStrategy, transformer, remoteLookup)
 
     ModuleVersionIdentifier moduleVersionIdentifier(ModuleDescriptor moduleDescriptor) {
         def moduleRevId = moduleDescriptor.moduleRevisionId
@@ -371,6 +372,89 @@ class ResolverProviderComponentMetaDataResolverTest extends Specification {
         0 * result._
     }
 
+    def "uses remote dependency from first repository in order when remote repositories are queried at the same time"() {
+        given:
+        def repo1 = addRepo1()
+        def repo2 = addRepo2()
+
+        when:
+        resolver.resolve(moduleComponentId, componentRequestMetaData, result)
+
+        then:
+        1 * localAccess.resolveComponentMetaData(moduleComponentId, componentRequestMetaData, _) >> { id, meta, result ->
+            result.missing()
+            result.authoritative = false
+        }
+        1 * localAccess2.resolveComponentMetaData(moduleComponentId, componentRequestMetaData, _) >> { id, meta, result ->
+            result.missing()
+            result.authoritative = false
+        }
+        1 * remoteLookup.startAll("Resolve ${moduleComponentId}", _) >> { String description, List lookups ->
+            lookups.reverse().collect { lookup -> completed(lookup.create()) }.reverse()
+        }
+        1 * remoteAccess2.resolveComponentMetaData(moduleComponentId, componentRequestMetaData, _) >> { id, meta, result ->
+            result.resolved(metaData("1.3"))
+        }
+        1 * remoteAccess.resolveComponentMetaData(moduleComponentId, componentRequestMetaData, _) >> { id, meta, result ->
+            result.resolved(metaData)
+        }
+        1 * transformer.transform(_) >> { RepositoryChainModuleResolution it ->
+            assert it.module == metaData
+            assert it.repository == repo1
+            metaData
+        }
+        1 * result.resolved(_) >> { ModuleComponentResolveMetaData metaData ->
+            assert metaData == this.metaData
+        }
+        and:
+        0 * localAccess._
+        0 * remoteAccess._
+        0 * localAccess2._
+        0 * remoteAccess2._
+        0 * result._
+    }
+
+    def "cancels remote lookups of later repositories when remote dependency is found"() {
+        def lookup1 = Mock(RemoteMetaDataLookup.Pending)
+        def lookup2 = Mock(RemoteMetaDataLookup.Pending)
+        def lookups
+
+        given:
+        def repo1 = addRepo1()
+        addRepo2()
+
+        when:
+        resolver.resolve(moduleComponentId, componentRequestMetaData, result)
+
+        then:
+        1 * localAccess.resolveComponentMetaData(moduleComponentId, componentRequestMetaData, _) >> { id, meta, result ->
+            result.missing()
+            result.authoritative = false
+        }
+        1 * localAccess2.resolveComponentMetaData(moduleComponentId, componentRequestMetaData, _) >> { id, meta, result ->
+            result.missing()
+            result.authoritative = false
+        }
+        1 * remoteLookup.startAll("Resolve ${moduleComponentId}", _) >> { String description, List started ->
+            lookups = started
+            [lookup1, lookup2]
+        }
+        1 * lookup1.get() >> { lookups[0].create() }
+        1 * remoteAccess.resolveComponentMetaData(moduleComponentId, componentRequestMetaData, _) >> { id, meta, result ->
+            result.resolved(metaData)
+        }
+        1 * lookup2.cancel()
+        1 * transformer.transform(_) >> { RepositoryChainModuleResolution it ->
+            assert it.repository == repo1
+            metaData
+        }
+        1 * result.resolved(_)
+        and:
+        0 * lookup2._
+        0 * remoteAccess2._
+        0 * result._
+    }
+
     def "does not attempt to resolve remote dependency when local dependency is missing"() {
         given:
         def repo1 = addRepo1()
@@ -564,6 +648,12 @@ class ResolverProviderComponentMetaDataResolverTest extends Specification {
         0 * result._
     }
 
+    def completed(def value) {
+        return Stub(RemoteMetaDataLookup.Pending) {
+            get() >> value
+        }
+    }
+
     def descriptor(String version) {
         def descriptor = Stub(ModuleDescriptor)
         descriptor.resolvedModuleRevisionId >> IvyUtil.createModuleRevisionId("org", "module", version)
@@ -15,7 +15,9 @@
  */
 package org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser
 
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionSelectorScheme
 import org.gradle.internal.component.external.model.MavenModuleResolveMetaData
+import org.gradle.internal.hash.HashUtil
 import org.gradle.internal.resource.local.DefaultLocallyAvailableExternalResource
 import org.gradle.internal.resource.local.DefaultLocallyAvailableResource
 import spock.lang.Issue
@@ -2297,4 +2299,156 @@ class GradlePomModuleDescriptorParserTest extends AbstractGradlePomModuleDescrip
         depGroupOne.moduleConfigurations as List == ['compile', 'runtime']
         hasDefaultDependencyArtifact(depGroupOne)
     }
+
+    def "reuses parent pom that has been parsed before with the same content"() {
+        given:
+        def parent = tmpDir.file("parent.xml") << """
+<project>
+    <modelVersion>4.0.0</modelVersion>
+    <groupId>group-one</groupId>
+    <artifactId>parent</artifactId>
+    <version>version-one</version>
+
+    <dependencies>
+        <dependency>
+            <groupId>group-two</groupId>
+            <artifactId>artifact-two</artifactId>
+            <version>1.2</version>
+        </dependency>
+    </dependencies>
+</project>
+"""
+        def sha1 = HashUtil.sha1(parent)
+
+        pomFile << """
+<project>
+    <modelVersion>4.0.0</modelVersion>
+    <artifactId>artifact-one</artifactId>
+
+    <parent>
+        <groupId>group-one</groupId>
+        <artifactId>parent</artifactId>
+        <version>version-one</version>
+    </parent>
+</project>
+"""
+        def cachingParser = new GradlePomModuleDescriptorParser(new DefaultVersionSelectorScheme(), new ParsedPomCache(10))
+
+        and:
+        parseContext.getMetaDataArtifact(_, MAVEN_POM) >> { new DefaultLocallyAvailableExternalResource(parent.toURI(), new DefaultLocallyAvailableResource(parent, sha1)) }
+
+        when:
+        def first = cachingParser.parseMetaData(parseContext, pomFile, true).descriptor
+        parent.text = "not a pom"
+        def second = cachingParser.parseMetaData(parseContext, pomFile, true).descriptor
+
+        then:
+        first.dependencies.length == 1
+        second.dependencies.length == 1
+        second.dependencies[0].dependencyRevisionId == moduleId('group-two', 'artifact-two', '1.2')
+        second.moduleRevisionId == moduleId('group-one', 'artifact-one', 'version-one')
+    }
+
+    def "applies the current content of the grandparent pom to a reused parent pom"() {
+        given:
+        def grandParent = tmpDir.file("grandparent.xml") << """
+<project>
+    <modelVersion>4.0.0</modelVersion>
+    <groupId>group-one</groupId>
+    <artifactId>grandparent</artifactId>
+    <version>1.0-SNAPSHOT</version>
+
+    <dependencies>
+        <dependency>
+            <groupId>group-two</groupId>
+            <artifactId>artifact-two</artifactId>
+            <version>1.2</version>
+        </dependency>
+    </dependencies>
+</project>
+"""
+        def parent = tmpDir.file("parent.xml") << """
+<project>
+    <modelVersion>4.0.0</modelVersion>
+    <artifactId>parent</artifactId>
+    <version>version-one</version>
+
+    <parent>
+        <groupId>group-one</groupId>
+        <artifactId>grandparent</artifactId>
+        <version>1.0-SNAPSHOT</version>
+    </parent>
+</project>
+"""
+        pomFile << """
+<project>
+    <modelVersion>4.0.0</modelVersion>
+    <artifactId>artifact-one</artifactId>
+
+    <parent>
+        <groupId>group-one</groupId>
+        <artifactId>parent</artifactId>
+        <version>version-one</version>
+    </parent>
+</project>
+"""
+        def cachingParser = new GradlePomModuleDescriptorParser(new DefaultVersionSelectorScheme(), new ParsedPomCache(10))
+
+        and:
+        parseContext.getMetaDataArtifact({ it.module == 'parent' }, MAVEN_POM) >> { new DefaultLocallyAvailableExternalResource(parent.toURI(), new DefaultLocallyAvailableResource(parent)) }
+        parseContext.getMetaDataArtifact({ it.module == 'grandparent' }, MAVEN_POM) >> { new DefaultLocallyAvailableExternalResource(grandParent.toURI(), new DefaultLocallyAvailableResource(grandParent)) }
+
+        when:
+        def first = cachingParser.parseMetaData(parseContext, pomFile, true).descriptor
+        grandParent.text = grandParent.text.replace("1.2", "1.3")
+        def second = cachingParser.parseMetaData(parseContext, pomFile, true).descriptor
+
+        then:
+        first.dependencies[0].dependencyRevisionId == moduleId('group-two', 'artifact-two', '1.2')
+        second.dependencies[0].dependencyRevisionId == moduleId('group-two', 'artifact-two', '1.3')
+    }
+
+    def "parses a parent pom again when its content has changed"() {
+        given:
+        def parent = tmpDir.file("parent.xml") << """
+<project>
+    <modelVersion>4.0.0</modelVersion>
+    <groupId>group-one</groupId>
+    <artifactId>parent</artifactId>
+    <version>version-one</version>
+
+    <dependencies>
+        <dependency>
+            <groupId>group-two</groupId>
+            <artifactId>artifact-two</artifactId>
+            <version>1.2</version>
+        </dependency>
+    </dependencies>
+</project>
+"""
+        pomFile << """
+<project>
+    <modelVersion>4.0.0</modelVersion>
+    <artifactId>artifact-one</artifactId>
+
+    <parent>
+        <groupId>group-one</groupId>
+        <artifactId>parent</artifactId>
+        <version>version-one</version>
+    </parent>
+</project>
+"""
+        def cachingParser = new GradlePomModuleDescriptorParser(new DefaultVersionSelectorScheme(), new ParsedPomCache(10))
+
+        and:
+        parseContext.getMetaDataArtifact(_, MAVEN_POM) >> { new DefaultLocallyAvailableExternalResource(parent.toURI(), new DefaultLocallyAvailableResource(parent)) }
+
+        when:
+        cachingParser.parseMetaData(parseContext, pomFile, true)
+        parent.text = parent.text.replace("1.2", "1.3")
+        def descriptor = cachingParser.parseMetaData(parseContext, pomFile, true).descriptor
+
+        then:
+        descriptor.dependencies[0].dependencyRevisionId == moduleId('group-two', 'artifact-two', '1.3')
+    }
 }
@@ -880,4 +880,43 @@ class PomReaderTest extends AbstractPomReaderTest {
         pomReader.artifactId == pomReader.parentArtifactId
         pomReader.version == pomReader.parentVersion
     }
+
+    def "reads text of elements that contain CDATA sections, entities and comments"() {
+        when:
+        pomFile << """
+<project>
+    <modelVersion>4.0.0</modelVersion>
+    <groupId>group-<!-- comment -->one</groupId>
+    <artifactId><![CDATA[artifact-one]]></artifactId>
+    <version>version-one</version>
+    <description>T&eacute;st &amp; <b>ignored</b>artifact</description>
+    <url>http://www.myproject.com</url>
+    <url>http://www.other.com</url>
+    <build>
+        <dependencies>
+            <dependency>
+                <groupId>group-ignored</groupId>
+                <artifactId>artifact-ignored</artifactId>
+            </dependency>
+        </dependencies>
+    </build>
+    <dependencies>
+        <dependency>
+            <groupId>group-two</groupId>
+            <artifactId>artifact-two</artifactId>
+            <version>version-two</version>
+        </dependency>
+    </dependencies>
+</project>
+"""
+        pomReader = new PomReader(locallyAvailableExternalResource)
+
+        then:
+        pomReader.groupId == 'group-one'
+        pomReader.artifactId == 'artifact-one'
+        pomReader.description == 'T\u00e9st & artifact'
+        pomReader.homePage == 'http://www.myproject.com'
+        pomReader.dependencies.size() == 1
+        pomReader.dependencies.keySet() == [new MavenDependencyKey('group-two', 'artifact-two', 'jar', null)] as Set
+    }
 }
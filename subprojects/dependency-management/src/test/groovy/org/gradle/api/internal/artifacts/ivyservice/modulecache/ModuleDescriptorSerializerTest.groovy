@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.modulecache
+
+import org.apache.ivy.core.module.descriptor.*
+import org.apache.ivy.core.module.id.ArtifactId
+import org.apache.ivy.plugins.matcher.ExactPatternMatcher
+import org.apache.ivy.plugins.matcher.PatternMatcher
+import org.gradle.api.internal.artifacts.ivyservice.IvyXmlModuleDescriptorWriter
+import org.gradle.api.internal.artifacts.ivyservice.NamespaceId
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.ResolverStrategy
+import org.gradle.internal.serialize.SerializerSpec
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+
+import static org.gradle.api.internal.artifacts.ivyservice.IvyUtil.createModuleId
+import static org.gradle.api.internal.artifacts.ivyservice.IvyUtil.createModuleRevisionId
+
+class ModuleDescriptorSerializerTest extends SerializerSpec {
+    @Rule TestNameTestDirectoryProvider temporaryFolder
+    def serializer = new ModuleDescriptorSerializer(new ResolverStrategy())
+    def writer = new IvyXmlModuleDescriptorWriter()
+
+    def "serializes descriptor with the same content as its ivy.xml"() {
+        def md = new DefaultModuleDescriptor(createModuleRevisionId("org.test", "projectA", "1.0"), "release", new Date(1345204800000))
+        md.addExtraAttributeNamespace("ns", "http://my.extra.info")
+        md.addLicense(new License("Apache", "http://www.apache.org/licenses"))
+        md.homePage = "http://projectA.test"
+        md.description = "A description"
+        md.extraInfo.put(new NamespaceId("http://my.extra.info", "extra"), "value")
+        md.addConfiguration(new Configuration("compile"))
+        md.addConfiguration(new Configuration("runtime", Configuration.Visibility.PUBLIC, "runtime classpath", ["compile"] as String[], true, null))
+        md.addConfiguration(new Configuration("test", Configuration.Visibility.PRIVATE, null, ["runtime"] as String[], false, "do not use"))
+
+        def artifact = new MDArtifact(md, "projectA", "jar", "jar", null, [classifier: "sources"])
+        artifact.addConfiguration("compile")
+        md.addArtifact("compile", artifact)
+
+        def dependency = new DefaultDependencyDescriptor(md, createModuleRevisionId("org.test", "projectB", "1.2"), createModuleRevisionId("org.test", "projectB", "1.+"), true, false, true)
+        dependency.addDependencyConfiguration("compile", "default")
+        dependency.addDependencyConfiguration("runtime", "runtime")
+        dependency.addDependencyConfiguration("runtime", "extra")
+        def dependencyArtifact = new DefaultDependencyArtifactDescriptor(dependency, "projectB", "jar", "jar", null, [:])
+        dependencyArtifact.addConfiguration("compile")
+        dependency.addDependencyArtifact("compile", dependencyArtifact)
+        def excludeRule = new DefaultExcludeRule(new ArtifactId(createModuleId("org.other", "*"), "*", "*", "*"), ExactPatternMatcher.INSTANCE, [:])
+        excludeRule.addConfiguration("runtime")
+        dependency.addExcludeRule("runtime", excludeRule)
+        md.addDependency(dependency)
+        def otherDependency = new DefaultDependencyDescriptor(md, createModuleRevisionId("org.test", "projectC", "2.0"), false, true, false)
+        otherDependency.addDependencyConfiguration("test", "*")
+        md.addDependency(otherDependency)
+
+        def moduleExclude = new DefaultExcludeRule(new ArtifactId(createModuleId("org.excluded", "module"), PatternMatcher.ANY_EXPRESSION, PatternMatcher.ANY_EXPRESSION, PatternMatcher.ANY_EXPRESSION), ExactPatternMatcher.INSTANCE, [:])
+        moduleExclude.addConfiguration("compile")
+        md.addExcludeRule(moduleExclude)
+
+        when:
+        def result = serialize(md, serializer)
+
+        then:
+        result.moduleRevisionId == md.moduleRevisionId
+        result.status == "release"
+        result.publicationDate == md.publicationDate
+        result.description == "A description"
+        result.configurationsNames as Set == ["compile", "runtime", "test"] as Set
+        result.getConfiguration("test").visibility == Configuration.Visibility.PRIVATE
+        result.dependencies*.dependencyRevisionId == md.dependencies*.dependencyRevisionId
+        result.dependencies[0].dynamicConstraintDependencyRevisionId.revision == "1.+"
+        result.dependencies[0].getDependencyConfigurations("runtime") as List == ["runtime", "extra"]
+        ivyXml(result) == ivyXml(md)
+    }
+
+    def "serializes descriptor with no status or description"() {
+        def md = new DefaultModuleDescriptor(createModuleRevisionId("org.test", "projectA", "1.0"), null, null)
+        md.addConfiguration(new Configuration("default"))
+
+        when:
+        def result = serialize(md, serializer)
+
+        then:
+        result.moduleRevisionId == md.moduleRevisionId
+        result.status == "integration"
+        result.publicationDate == null
+        result.description == null
+        result.dependencies.length == 0
+    }
+
+    def "applies the same defaults as parsing the ivy.xml"() {
+        def md = new DefaultModuleDescriptor(createModuleRevisionId("org.test", "projectA", "1.0"), "release", null)
+        md.addConfiguration(new Configuration("default"))
+        md.description = "  A description  "
+        md.addDependency(new DefaultDependencyDescriptor(md, createModuleRevisionId("org.test", "projectB", "1.0"), false, false, true))
+
+        when:
+        def result = serialize(md, serializer)
+
+        then:
+        result.description == "A description"
+        result.dependencies[0].moduleConfigurations as List == ["*"]
+        result.dependencies[0].getDependencyConfigurations("default") as List == ["*"]
+    }
+
+    def "writes each distinct string once"() {
+        def md = new DefaultModuleDescriptor(createModuleRevisionId("org.test", "projectA", "1.0"), "release", null)
+        md.addConfiguration(new Configuration("some-long-configuration-name"))
+        100.times {
+            def dependency = new DefaultDependencyDescriptor(md, createModuleRevisionId("org.test", "project-with-a-long-name", "1.0"), false, false, true)
+            dependency.addDependencyConfiguration("some-long-configuration-name", "some-long-configuration-name")
+            md.addDependency(dependency)
+        }
+
+        expect:
+        toBytes(md, serializer).length < 1000
+    }
+
+    private String ivyXml(ModuleDescriptor md) {
+        def file = temporaryFolder.file("ivy-${System.identityHashCode(md)}.xml")
+        writer.write(md, file)
+        return file.text
+    }
+}
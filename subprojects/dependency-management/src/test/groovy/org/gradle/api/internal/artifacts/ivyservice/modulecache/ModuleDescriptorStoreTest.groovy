@@ -21,7 +21,7 @@ import org.gradle.api.artifacts.component.ModuleComponentIdentifier
 import org.gradle.api.internal.artifacts.ivyservice.IvyModuleDescriptorWriter
 import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.ModuleComponentRepository
 import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.IvyXmlModuleDescriptorParser
-
+import org.gradle.internal.component.external.model.DefaultIvyModuleResolveMetaData
 import org.gradle.internal.resource.local.LocallyAvailableResource
 import org.gradle.internal.resource.local.PathKeyFileStore
 import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
@@ -38,10 +38,11 @@ class ModuleDescriptorStoreTest extends Specification {
     ModuleDescriptor moduleDescriptor = Mock()
     IvyModuleDescriptorWriter ivyModuleDescriptorWriter = Mock()
     IvyXmlModuleDescriptorParser ivyXmlModuleDescriptorParser = Mock()
+    ModuleDescriptorSerializer moduleDescriptorSerializer = Mock()
     ModuleComponentIdentifier moduleComponentIdentifier = Mock()
 
     def setup() {
-        store = new ModuleDescriptorStore(pathKeyFileStore, ivyModuleDescriptorWriter, ivyXmlModuleDescriptorParser);
+        store = new ModuleDescriptorStore(pathKeyFileStore, ivyModuleDescriptorWriter, ivyXmlModuleDescriptorParser, moduleDescriptorSerializer);
         _ * repository.getId() >> "repositoryId"
         _ * moduleComponentIdentifier.group >> "org.test"
         _ * moduleComponentIdentifier.module >> "testArtifact"
@@ -62,9 +63,51 @@ class ModuleDescriptorStoreTest extends Specification {
         1 * pathKeyFileStore.get("org.test/testArtifact/1.0/repositoryId/ivy.xml") >> null
     }
 
+    def "getModuleDescriptorFile reads binary file written for the ivy.xml file"() {
+        setup:
+        File descriptorFile = temporaryFolder.createFile("fileStoreEntry")
+        File binaryFile = temporaryFolder.file("binaryFileStoreEntry")
+        LocallyAvailableResource binaryFileStoreEntry = Mock()
+        _ * fileStoreEntry.file >> descriptorFile
+        _ * binaryFileStoreEntry.file >> binaryFile
+        _ * pathKeyFileStore.get("org.test/testArtifact/1.0/repositoryId/ivy.xml") >> fileStoreEntry
+        _ * pathKeyFileStore.get("org.test/testArtifact/1.0/repositoryId/descriptor.bin") >> binaryFileStoreEntry
+
+        when:
+        store.putModuleDescriptor(repository, moduleComponentIdentifier, moduleDescriptor)
+
+        then:
+        1 * pathKeyFileStore.add("org.test/testArtifact/1.0/repositoryId/ivy.xml", _) >> fileStoreEntry
+        1 * pathKeyFileStore.add("org.test/testArtifact/1.0/repositoryId/descriptor.bin", _) >> { path, action ->
+            action.execute(binaryFile); binaryFileStoreEntry
+        }
+        1 * moduleDescriptorSerializer.write(_, moduleDescriptor)
+
+        when:
+        def result = store.getModuleDescriptor(repository, moduleComponentIdentifier)
+
+        then:
+        result == moduleDescriptor
+        1 * moduleDescriptorSerializer.read(_) >> moduleDescriptor
+        0 * ivyXmlModuleDescriptorParser._
+
+        when:
+        descriptorFile.text = "changed"
+        store.getModuleDescriptor(repository, moduleComponentIdentifier)
+
+        then:
+        0 * moduleDescriptorSerializer.read(_)
+        1 * ivyXmlModuleDescriptorParser.parseMetaData(_, descriptorFile, false) >> Stub(DefaultIvyModuleResolveMetaData) {
+            getDescriptor() >> moduleDescriptor
+        }
+        1 * pathKeyFileStore.add("org.test/testArtifact/1.0/repositoryId/descriptor.bin", _)
+    }
+
     def "putModuleDescriptor uses PathKeyFileStore to write file"() {
         setup:
         File descriptorFile = temporaryFolder.createFile("fileStoreEntry")
+        File binaryFile = temporaryFolder.file("binaryFileStoreEntry")
+        _ * fileStoreEntry.file >> descriptorFile
         when:
         store.putModuleDescriptor(repository, moduleComponentIdentifier, moduleDescriptor);
         then:
@@ -72,5 +115,9 @@ class ModuleDescriptorStoreTest extends Specification {
             action.execute(descriptorFile); fileStoreEntry
         };
         1 * ivyModuleDescriptorWriter.write(moduleDescriptor, descriptorFile)
+        1 * pathKeyFileStore.add("org.test/testArtifact/1.0/repositoryId/descriptor.bin", _) >> { path, action ->
+            action.execute(binaryFile); null
+        };
+        1 * moduleDescriptorSerializer.write(_, moduleDescriptor)
     }
 }
\ No newline at end of file
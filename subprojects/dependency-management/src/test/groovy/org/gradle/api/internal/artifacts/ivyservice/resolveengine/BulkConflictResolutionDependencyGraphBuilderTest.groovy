@@ -0,0 +1,29 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine
+
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphBuilder
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.conflicts.DefaultConflictHandler
+
+/**
+ * Runs the graph builder tests with bulk conflict resolution.
+ */
+class BulkConflictResolutionDependencyGraphBuilderTest extends DependencyGraphBuilderTest {
+    def setup() {
+        builder = new DependencyGraphBuilder(resolverProvider, moduleResolver, new DefaultConflictHandler(conflictResolver, moduleReplacements), dependencyToConfigurationResolver, ComponentMetaDataPrefetcher.NONE, true)
+    }
+}
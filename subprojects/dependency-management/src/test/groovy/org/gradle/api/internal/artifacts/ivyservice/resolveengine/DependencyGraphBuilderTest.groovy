@@ -39,6 +39,7 @@ import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.DummyBi
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.DummyStore
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ResolutionResultBuilder
 import org.gradle.api.specs.Spec
+import org.gradle.internal.Factory
 import org.gradle.internal.component.external.model.BuildableIvyModuleResolveMetaData
 import org.gradle.internal.component.external.model.ModuleComponentResolveMetaData
 import org.gradle.internal.component.local.model.DefaultProjectComponentIdentifier
@@ -53,6 +54,7 @@ import org.gradle.internal.resolve.resolver.ResolveContextToComponentResolver
 import org.gradle.internal.resolve.result.BuildableArtifactSetResolveResult
 import org.gradle.internal.resolve.result.BuildableComponentIdResolveResult
 import org.gradle.internal.resolve.result.BuildableComponentResolveResult
+import org.gradle.internal.resolve.result.DefaultBuildableComponentResolveResult
 import spock.lang.Specification
 
 import static org.gradle.api.internal.artifacts.DefaultModuleVersionIdentifier.newId
@@ -72,6 +74,7 @@ class DependencyGraphBuilderTest extends Specification {
     def dependencyToConfigurationResolver = new DefaultDependencyToConfigurationResolver()
     def moduleReplacements = Mock(ModuleReplacementsData)
     def resolverProvider = Mock(ResolverProvider)
+    def prefetcher = Mock(ComponentMetaDataPrefetcher)
     DependencyGraphBuilder builder
 
     def setup() {
@@ -930,6 +933,24 @@ class DependencyGraphBuilderTest extends Specification {
         modules(result) == ids(forced, b)
     }
 
+    def "uses the meta-data fetched ahead for the dependencies of queued configurations"() {
+        given:
+        builder = new DependencyGraphBuilder(resolverProvider, moduleResolver, new DefaultConflictHandler(conflictResolver, moduleReplacements), dependencyToConfigurationResolver, prefetcher)
+        def a = revision("a")
+        def b = revision("b")
+        def c = revision("c")
+        prefetches root, a
+        prefetches root, b
+        prefetches a, c
+
+        when:
+        def result = resolve()
+        result.rethrowFailure()
+
+        then:
+        modules(result) == ids(a, b, c)
+    }
+
     def revision(String name, String revision = '1.0') {
         def descriptor = new DefaultModuleDescriptor(createModuleRevisionId("group", name, revision), "release", new Date())
         def metaData = new TestModuleMetaData(descriptor)
@@ -962,6 +983,22 @@ class DependencyGraphBuilderTest extends Specification {
         }
     }
 
+    def prefetches(TestMetaData from, ComponentResolveMetaData to) {
+        def dependencyMetaData = dependsOn(from, to.descriptor.moduleRevisionId)
+        // Only when fetching ahead, the traversal uses the same result
+        1 * idResolver.resolve(dependencyMetaData, _) >> { DependencyMetaData dep, BuildableComponentIdResolveResult result ->
+            result.resolved(to.componentId, to.id)
+        }
+        1 * prefetcher.prefetch(metaDataResolver, to.componentId, _) >> {
+            return { ->
+                def result = new DefaultBuildableComponentResolveResult()
+                result.resolved(to)
+                return result
+            } as Factory
+        }
+        0 * metaDataResolver.resolve(to.componentId, _, _)
+    }
+
     def doesNotTraverse(Map<String, ?> args = [:], TestMetaData from, ComponentResolveMetaData to) {
         def dependencyMetaData = dependsOn(args, from, to.descriptor.moduleRevisionId)
         selectorResolvesTo(dependencyMetaData, to.componentId, to.id)
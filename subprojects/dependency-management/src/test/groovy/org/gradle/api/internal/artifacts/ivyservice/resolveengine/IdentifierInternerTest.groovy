@@ -0,0 +1,86 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine
+
+import org.gradle.api.internal.artifacts.DefaultModuleVersionIdentifier
+import spock.lang.Specification
+
+class IdentifierInternerTest extends Specification {
+    def interner = new IdentifierInterner()
+
+    def "assigns dense ids to modules"() {
+        expect:
+        interner.getModule("org", "a") == 0
+        interner.getModule("org", "b") == 1
+        interner.getModule("other", "a") == 2
+        interner.getModule("org", "a") == 0
+    }
+
+    def "returns the same module identifier for the same module"() {
+        def id = interner.getModule("org", "a")
+
+        expect:
+        interner.getModuleIdentifier(id).group == "org"
+        interner.getModuleIdentifier(id).name == "a"
+        interner.getModuleIdentifier(interner.getModule("org", "a")).is(interner.getModuleIdentifier(id))
+    }
+
+    def "uses the first module version identifier as the canonical identifier"() {
+        def first = new DefaultModuleVersionIdentifier("org", "a", "1.0")
+        def second = new DefaultModuleVersionIdentifier("org", "a", "1.0")
+
+        when:
+        def id = interner.getModuleVersion(first)
+
+        then:
+        interner.getModuleVersion(second) == id
+        interner.getModuleVersion("org", "a", "1.0") == id
+        interner.getModuleVersionIdentifier(id).is(first)
+    }
+
+    def "creates a module version identifier when none has been given"() {
+        def id = interner.getModuleVersion("org", "a", "1.0")
+
+        expect:
+        interner.getModuleVersionIdentifier(id) == new DefaultModuleVersionIdentifier("org", "a", "1.0")
+        interner.getModuleVersionIdentifier(id).is(interner.getModuleVersionIdentifier(id))
+    }
+
+    def "assigns different ids to different versions of a module"() {
+        expect:
+        interner.getModuleVersion("org", "a", "1.0") == 0
+        interner.getModuleVersion("org", "a", "2.0") == 1
+        interner.getModuleVersion("org", "a", null) == 2
+        interner.getModuleVersion("org", "a", "1.0") == 0
+    }
+
+    def "interns configurations of a module version"() {
+        def version = interner.getModuleVersion("org", "a", "1.0")
+
+        when:
+        def compile = interner.getConfiguration(version, "compile")
+        def runtime = interner.getConfiguration(version, "runtime")
+
+        then:
+        compile != runtime
+        interner.getConfiguration(version, "compile") == compile
+        interner.getConfigurationIdentifier(compile).id.is(interner.getModuleVersionIdentifier(version))
+        interner.getConfigurationIdentifier(compile).configuration == "compile"
+        interner.getConfigurationIdentifier(runtime).configuration == "runtime"
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine
+
+import org.gradle.api.Action
+import org.gradle.api.artifacts.component.ComponentIdentifier
+import org.gradle.api.internal.artifacts.ivyservice.CacheLockingManager
+import org.gradle.api.internal.artifacts.ivyservice.IvyContextManager
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier
+import org.gradle.internal.component.model.ComponentOverrideMetadata
+import org.gradle.internal.component.model.ComponentResolveMetaData
+import org.gradle.internal.component.model.DefaultComponentOverrideMetadata
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+import org.gradle.internal.resolve.resolver.ComponentMetaDataResolver
+import org.gradle.internal.resolve.result.BuildableComponentResolveResult
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+
+class ParallelComponentMetaDataPrefetcherTest extends Specification {
+    def cacheLockingManager = Mock(CacheLockingManager)
+    def ivyContextManager = Mock(IvyContextManager)
+    def resolver = Mock(ComponentMetaDataResolver)
+    def id = new DefaultModuleComponentIdentifier("group", "module", "1.0")
+    def overrideMetadata = new DefaultComponentOverrideMetadata()
+    def metaData = Stub(ComponentResolveMetaData)
+    def prefetcher = new ParallelComponentMetaDataPrefetcher(new DefaultExecutorFactory(), cacheLockingManager, ivyContextManager, 2)
+
+    def setup() {
+        _ * cacheLockingManager.useCache(_, _ as Runnable) >> { String operation, Runnable action -> action.run() }
+        _ * cacheLockingManager.longRunningOperation(_, _ as Runnable) >> { String operation, Runnable action -> action.run() }
+        _ * ivyContextManager.withIvy(_ as Action) >> { Action action -> action.execute(null) }
+    }
+
+    def cleanup() {
+        prefetcher.stop()
+    }
+
+    def "resolves the meta-data in a cache action with an Ivy context"() {
+        when:
+        def result = prefetcher.prefetch(resolver, id, overrideMetadata).create()
+
+        then:
+        result.metaData == metaData
+        1 * cacheLockingManager.useCache("Resolve ${id}", _ as Runnable) >> { String operation, Runnable action -> action.run() }
+        1 * ivyContextManager.withIvy(_ as Action) >> { Action action -> action.execute(null) }
+        1 * resolver.resolve(id, overrideMetadata, _) >> { ComponentIdentifier identifier, ComponentOverrideMetadata override, BuildableComponentResolveResult result ->
+            result.resolved(metaData)
+        }
+    }
+
+    def "releases the cache lock while waiting for the meta-data"() {
+        def waiting = new CountDownLatch(1)
+
+        given:
+        _ * resolver.resolve(id, overrideMetadata, _) >> { ComponentIdentifier identifier, ComponentOverrideMetadata override, BuildableComponentResolveResult result ->
+            waiting.await()
+            result.resolved(metaData)
+        }
+
+        when:
+        def result = prefetcher.prefetch(resolver, id, overrideMetadata).create()
+
+        then:
+        result.metaData == metaData
+        1 * cacheLockingManager.longRunningOperation("Wait for ${id}", _ as Runnable) >> { String operation, Runnable action ->
+            waiting.countDown()
+            action.run()
+        }
+    }
+
+    def "rethrows the failure to resolve the meta-data"() {
+        def failure = new RuntimeException()
+
+        given:
+        _ * resolver.resolve(id, overrideMetadata, _) >> { throw failure }
+
+        when:
+        prefetcher.prefetch(resolver, id, overrideMetadata).create()
+
+        then:
+        RuntimeException e = thrown()
+        e.is(failure)
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.store
+
+import org.gradle.StartParameter
+import org.gradle.api.artifacts.DependencySet
+import org.gradle.api.artifacts.ModuleDependency
+import org.gradle.api.internal.DefaultDomainObjectSet
+import org.gradle.api.internal.artifacts.ComponentModuleMetadataProcessor
+import org.gradle.api.internal.artifacts.DefaultModuleIdentifier
+import org.gradle.api.internal.artifacts.GlobalDependencyResolutionRules
+import org.gradle.api.internal.artifacts.ModuleInternal
+import org.gradle.api.internal.artifacts.ResolvedConfigurationIdentifier
+import org.gradle.api.internal.artifacts.configurations.ConfigurationInternal
+import org.gradle.api.internal.artifacts.configurations.ResolutionStrategyInternal
+import org.gradle.api.internal.artifacts.dependencies.DefaultExternalModuleDependency
+import org.gradle.api.internal.artifacts.dsl.ModuleReplacementsData
+import org.gradle.api.internal.artifacts.ivyservice.CacheLockingManager
+import org.gradle.api.internal.artifacts.ivyservice.dynamicversions.ModuleVersionsCache
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.ConfiguredModuleComponentRepository
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.StartParameterResolutionOverride
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionComparator
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionSelectorScheme
+import org.gradle.api.internal.artifacts.ivyservice.modulecache.ModuleMetaDataCache
+import org.gradle.api.internal.artifacts.ivyservice.resolutionstrategy.DefaultCachePolicy
+import org.gradle.api.internal.artifacts.ivyservice.resolutionstrategy.LatestConflictResolution
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.oldresult.ResolvedArtifactsBuilder
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.oldresult.ResolvedConfigurationBuilder
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.projectresult.ResolvedProjectConfigurationResultBuilder
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.DefaultInternalDependencyResult
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.DefaultModuleVersionSelection
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ResolutionResultBuilder
+import org.gradle.api.internal.artifacts.repositories.ResolutionAwareRepository
+import org.gradle.cache.PersistentIndexedCache
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier
+import org.gradle.internal.component.external.model.DefaultModuleComponentSelector
+import org.gradle.internal.component.local.model.DefaultProjectComponentIdentifier
+import org.gradle.internal.component.model.ComponentResolveMetaData
+import org.gradle.internal.hash.HashValue
+import org.gradle.internal.resolve.resolver.ArtifactResolver
+import org.gradle.internal.resolve.resolver.ComponentMetaDataResolver
+import org.gradle.internal.resolve.result.BuildableComponentResolveResult
+import org.gradle.internal.serialize.Serializer
+import org.gradle.internal.serialize.kryo.KryoBackedDecoder
+import org.gradle.internal.serialize.kryo.KryoBackedEncoder
+import org.gradle.util.BuildCommencedTimeProvider
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+import static org.gradle.api.internal.artifacts.DefaultModuleVersionIdentifier.newId
+import static org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.VersionSelectionReasons.REQUESTED
+
+class DefaultResolvedGraphCacheTest extends Specification {
+    static final long MINUTE = TimeUnit.MINUTES.toMillis(1)
+
+    long now = 1000 * MINUTE
+    Map<Object, ModuleMetaDataCache.CachedEntry> metaDataEntries = [:]
+    Map<Object, ModuleVersionsCache.CachedModuleVersionList> versionLists = [:]
+
+    def dependency = new DefaultExternalModuleDependency("org", "dep", "1.+")
+    def cachePolicy = new DefaultCachePolicy()
+    def timeProvider = Stub(BuildCommencedTimeProvider) {
+        getCurrentTime() >> { now }
+    }
+    def cacheLockingManager = Stub(CacheLockingManager) {
+        createCache(_, _, _) >> { String name, Serializer keySerializer, Serializer valueSerializer -> new InMemoryCache(valueSerializer) }
+    }
+    def moduleMetaDataCache = Stub(ModuleMetaDataCache) {
+        getCachedEntry(_, _) >> { repository, id -> metaDataEntries[id] }
+    }
+    def moduleVersionsCache = Stub(ModuleVersionsCache) {
+        getCachedModuleResolution(_, _) >> { repository, id -> versionLists[id] }
+    }
+    def graphCache = new DefaultResolvedGraphCache(cacheLockingManager, moduleMetaDataCache, moduleVersionsCache, timeProvider, new DefaultVersionSelectorScheme(new DefaultVersionComparator()))
+
+    def configuration = Stub(ConfigurationInternal)
+    def repository = Stub(ResolutionAwareRepository) {
+        createResolver() >> Stub(ConfiguredModuleComponentRepository) {
+            getId() >> "repo"
+        }
+    }
+    def metadataHandler = Stub(GlobalDependencyResolutionRules) {
+        getModuleMetadataProcessor() >> Stub(ComponentModuleMetadataProcessor) {
+            getModuleReplacements() >> Stub(ModuleReplacementsData) {
+                getReplacementFor(_) >> null
+            }
+        }
+    }
+
+    def rootId = newId("org", "root", "1.0")
+    def rootComponent = new DefaultProjectComponentIdentifier(":")
+    def moduleId = newId("org", "dep", "1.2")
+    def moduleComponent = DefaultModuleComponentIdentifier.newId("org", "dep", "1.2")
+    def moduleIdentifier = DefaultModuleIdentifier.newId("org", "dep")
+
+    def setup() {
+        cachePolicy.cacheChangingModulesFor(10, TimeUnit.MINUTES)
+        cachePolicy.cacheDynamicVersionsFor(10, TimeUnit.MINUTES)
+
+        configuration.getModule() >> Stub(ModuleInternal)
+        configuration.getHierarchy() >> ([configuration] as Set)
+        configuration.getDependencies() >> Stub(DependencySet) {
+            withType(ModuleDependency) >> new DefaultDomainObjectSet<ModuleDependency>(ModuleDependency, [dependency])
+        }
+        configuration.getResolutionStrategy() >> Stub(ResolutionStrategyInternal) {
+            getConflictResolution() >> new LatestConflictResolution()
+            getCachePolicy() >> cachePolicy
+        }
+    }
+
+    def "reuses graph while the cached meta-data and version list are unchanged"() {
+        metaDataCachedAt(now - 5 * MINUTE)
+        versionListCachedAt(now - 5 * MINUTE)
+        recordGraph()
+
+        when:
+        now += 4 * MINUTE
+
+        then:
+        replay()
+    }
+
+    def "does not reuse graph once the cached meta-data of a changing module expires"() {
+        metaDataCachedAt(now - 5 * MINUTE)
+        versionListCachedAt(now)
+        recordGraph(true)
+
+        when:
+        now += 4 * MINUTE
+
+        then:
+        replay()
+
+        when:
+        now += 2 * MINUTE
+
+        then:
+        !replay()
+    }
+
+    def "does not reuse graph once the cached version list of a dynamic version expires"() {
+        metaDataCachedAt(now)
+        versionListCachedAt(now - 5 * MINUTE)
+        recordGraph()
+
+        when:
+        now += 6 * MINUTE
+
+        then:
+        !replay()
+    }
+
+    def "does not reuse graph when the meta-data has been cached again since the graph was stored"() {
+        metaDataCachedAt(now - 5 * MINUTE)
+        versionListCachedAt(now)
+        recordGraph(true)
+
+        when:
+        now += MINUTE
+        metaDataCachedAt(now)
+
+        then:
+        !replay()
+    }
+
+    def "does not reuse graph when the version list has been cached again since the graph was stored"() {
+        metaDataCachedAt(now)
+        versionListCachedAt(now - 5 * MINUTE)
+        recordGraph()
+
+        when:
+        now += MINUTE
+        versionListCachedAt(now)
+
+        then:
+        !replay()
+    }
+
+    def "does not reuse graph when refreshing dependencies"() {
+        metaDataCachedAt(now)
+        versionListCachedAt(now)
+        recordGraph()
+
+        when:
+        now += MINUTE
+        new StartParameterResolutionOverride(new StartParameter(refreshDependencies: true)).addResolutionRules(cachePolicy)
+
+        then:
+        !replay()
+    }
+
+    def "does not reuse graph that has not been stored"() {
+        expect:
+        !replay()
+    }
+
+    private void metaDataCachedAt(long timestamp) {
+        metaDataEntries[moduleComponent] = Stub(ModuleMetaDataCache.CachedEntry) {
+            getCreateTimestamp() >> timestamp
+        }
+    }
+
+    private void versionListCachedAt(long timestamp) {
+        versionLists[moduleIdentifier] = Stub(ModuleVersionsCache.CachedModuleVersionList) {
+            getAgeMillis() >> { now - timestamp }
+        }
+    }
+
+    private void recordGraph(boolean changing = false) {
+        def cachedGraph = graphCache.get(configuration, [repository], metadataHandler)
+        def resolver = Stub(ComponentMetaDataResolver)
+        def result = Stub(BuildableComponentResolveResult) {
+            hasResult() >> true
+            getFailure() >> null
+            getMetaData() >> Stub(ComponentResolveMetaData) {
+                isChanging() >> changing
+            }
+        }
+        cachedGraph.observe(resolver).resolve(moduleComponent, null, result)
+
+        def recorder = cachedGraph.record(Stub(ResolutionResultBuilder), Stub(ResolvedConfigurationBuilder), Stub(ResolvedArtifactsBuilder), Stub(ResolvedProjectConfigurationResultBuilder))
+        def rootConfiguration = new ResolvedConfigurationIdentifier(rootId, "compile")
+        def moduleConfiguration = new ResolvedConfigurationIdentifier(moduleId, "default")
+        recorder.newModelBuilder.start(rootId, rootComponent)
+        recorder.projectModelBuilder.registerRoot(rootComponent)
+        recorder.oldModelBuilder.newResolvedDependency(rootConfiguration)
+        recorder.projectModelBuilder.addProjectComponentResult(rootComponent, "compile")
+        recorder.newModelBuilder.resolvedModuleVersion(new DefaultModuleVersionSelection(moduleId, REQUESTED, moduleComponent))
+        recorder.newModelBuilder.resolvedConfiguration(rootId, [new DefaultInternalDependencyResult(DefaultModuleComponentSelector.newSelector("org", "dep", "1.+"), moduleId, null, null)])
+        recorder.oldModelBuilder.newResolvedDependency(moduleConfiguration)
+        recorder.oldModelBuilder.addChild(rootConfiguration, moduleConfiguration)
+        recorder.oldModelBuilder.addFirstLevelDependency(dependency, moduleConfiguration)
+        recorder.oldModelBuilder.done(rootConfiguration)
+        recorder.complete()
+    }
+
+    private boolean replay() {
+        def cachedGraph = graphCache.get(configuration, [repository], metadataHandler)
+        return cachedGraph.replay(Stub(ArtifactResolver), Stub(ResolutionResultBuilder), Stub(ResolvedConfigurationBuilder), Stub(ResolvedArtifactsBuilder), Stub(ResolvedProjectConfigurationResultBuilder))
+    }
+
+    private static class InMemoryCache implements PersistentIndexedCache<HashValue, Object> {
+        private final Map<HashValue, byte[]> entries = [:]
+        private final Serializer<Object> serializer
+
+        InMemoryCache(Serializer<Object> serializer) {
+            this.serializer = serializer
+        }
+
+        Object get(HashValue key) {
+            def bytes = entries[key]
+            return bytes == null ? null : serializer.read(new KryoBackedDecoder(new ByteArrayInputStream(bytes)))
+        }
+
+        void put(HashValue key, Object value) {
+            def outstr = new ByteArrayOutputStream()
+            def encoder = new KryoBackedEncoder(outstr)
+            serializer.write(encoder, value)
+            encoder.flush()
+            entries[key] = outstr.toByteArray()
+        }
+
+        void remove(HashValue key) {
+            entries.remove(key)
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.store
+
+import org.gradle.api.artifacts.ConflictResolution
+import org.gradle.api.artifacts.DependencySet
+import org.gradle.api.artifacts.ModuleDependency
+import org.gradle.api.artifacts.ProjectDependency
+import org.gradle.api.internal.DefaultDomainObjectSet
+import org.gradle.api.internal.artifacts.ComponentMetadataProcessor
+import org.gradle.api.internal.artifacts.DefaultExcludeRule
+import org.gradle.api.internal.artifacts.GlobalDependencyResolutionRules
+import org.gradle.api.internal.artifacts.ModuleInternal
+import org.gradle.api.internal.artifacts.configurations.ConfigurationInternal
+import org.gradle.api.internal.artifacts.configurations.ResolutionStrategyInternal
+import org.gradle.api.internal.artifacts.dependencies.DefaultExternalModuleDependency
+import org.gradle.api.internal.artifacts.dependencies.DefaultDependencyArtifact
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.ConfiguredModuleComponentRepository
+import org.gradle.api.internal.artifacts.ivyservice.resolutionstrategy.LatestConflictResolution
+import org.gradle.api.internal.artifacts.ivyservice.resolutionstrategy.StrictConflictResolution
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import static org.gradle.api.internal.artifacts.DefaultModuleVersionSelector.newSelector
+
+class ResolveInputsHasherTest extends Specification {
+    def hasher = new ResolveInputsHasher()
+
+    def moduleVersion = "1.0"
+    def path = ":compile"
+    def transitive = true
+    def excludeRules = [] as Set
+    def dependency = new DefaultExternalModuleDependency("org", "dep", "1.2")
+    List<ModuleDependency> dependencies = [dependency]
+    ConflictResolution conflictResolution = new LatestConflictResolution()
+    def forcedModules = [] as Set
+    def repositoryId = "repo"
+    def dynamicResolveMode = false
+    def local = false
+    def hasMetadataRules = false
+    def projectDependency = Stub(ProjectDependency)
+
+    def module = Stub(ModuleInternal) {
+        getProjectPath() >> ":"
+        getGroup() >> "org"
+        getName() >> "root"
+        getVersion() >> { moduleVersion }
+        getStatus() >> "integration"
+    }
+    def dependencySet = Stub(DependencySet) {
+        withType(ModuleDependency) >> { new DefaultDomainObjectSet<ModuleDependency>(ModuleDependency, dependencies) }
+    }
+    def resolutionStrategy = Stub(ResolutionStrategyInternal) {
+        getConflictResolution() >> { conflictResolution }
+        getForcedModules() >> { forcedModules }
+    }
+    def configuration = Stub(ConfigurationInternal) {
+        getModule() >> module
+        getPath() >> { path }
+        getName() >> "compile"
+        isTransitive() >> { transitive }
+        getExcludeRules() >> { excludeRules }
+        getDependencies() >> dependencySet
+        getResolutionStrategy() >> resolutionStrategy
+    }
+    def repository = Stub(ConfiguredModuleComponentRepository) {
+        getId() >> { repositoryId }
+        isDynamicResolveMode() >> { dynamicResolveMode }
+        isLocal() >> { local }
+    }
+    def metadataHandler = Stub(GlobalDependencyResolutionRules) {
+        getComponentMetadataProcessor() >> Stub(ComponentMetadataProcessor) {
+            hasRules() >> { hasMetadataRules }
+        }
+    }
+
+    def setup() {
+        configuration.getHierarchy() >> { [configuration] as Set }
+    }
+
+    def "calculates the same hash for the same inputs"() {
+        expect:
+        hash() != null
+        hash() == hash()
+    }
+
+    @Unroll
+    def "hash changes when #input changes"() {
+        def original = hash()
+
+        when:
+        change.call(this)
+
+        then:
+        hash() != original
+
+        where:
+        input                              | change
+        "module version"                   | { it.moduleVersion = "1.1" }
+        "configuration path"               | { it.path = ":runtime" }
+        "configuration transitivity"       | { it.transitive = false }
+        "configuration excludes"           | { it.excludeRules = [new DefaultExcludeRule("org", "other")] as Set }
+        "dependency version"               | { it.dependencies = [new DefaultExternalModuleDependency("org", "dep", "1.3")] }
+        "dependency added"                 | { it.dependencies = [it.dependency, new DefaultExternalModuleDependency("org", "other", "1.0")] }
+        "dependency configuration"         | { it.dependencies = [new DefaultExternalModuleDependency("org", "dep", "1.2", "runtime")] }
+        "dependency transitivity"          | { it.dependency.transitive = false }
+        "dependency forced"                | { it.dependency.force = true }
+        "dependency changing"              | { it.dependency.changing = true }
+        "dependency excludes"              | { it.dependency.exclude(group: "org", module: "other") }
+        "dependency artifacts"             | { it.dependency.addArtifact(new DefaultDependencyArtifact("dep", "zip", "zip", null, null)) }
+        "conflict resolution"              | { it.conflictResolution = new StrictConflictResolution() }
+        "forced modules"                   | { it.forcedModules = [newSelector("org", "dep", "1.1")] as Set }
+        "repository"                       | { it.repositoryId = "other" }
+        "repository dynamic resolve mode"  | { it.dynamicResolveMode = true }
+    }
+
+    @Unroll
+    def "does not hash inputs that cannot be cached: #input"() {
+        when:
+        change.call(this)
+
+        then:
+        hash() == null
+
+        where:
+        input                              | change
+        "local repository"                 | { it.local = true }
+        "project dependency"               | { it.dependencies = [it.projectDependency] }
+        "component meta-data rules"        | { it.hasMetadataRules = true }
+    }
+
+    private hash() {
+        hasher.hash(configuration, [repository], metadataHandler)
+    }
+}
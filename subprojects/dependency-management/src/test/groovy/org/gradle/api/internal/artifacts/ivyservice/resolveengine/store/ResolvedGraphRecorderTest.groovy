@@ -0,0 +1,165 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.store
+
+import org.gradle.api.artifacts.ModuleDependency
+import org.gradle.api.artifacts.UnresolvedDependency
+import org.gradle.api.internal.artifacts.DefaultModuleIdentifier
+import org.gradle.api.internal.artifacts.ResolvedConfigurationIdentifier
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionComparator
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionSelectorScheme
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.AbstractArtifactSet
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyArtifactSet
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.oldresult.ResolvedArtifactsBuilder
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.oldresult.ResolvedConfigurationBuilder
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.projectresult.ResolvedProjectConfigurationResultBuilder
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.DefaultInternalDependencyResult
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.DefaultModuleVersionSelection
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ResolutionResultBuilder
+import org.gradle.internal.component.external.model.DefaultModuleComponentArtifactIdentifier
+import org.gradle.internal.component.external.model.DefaultModuleComponentArtifactMetaData
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier
+import org.gradle.internal.component.external.model.DefaultModuleComponentSelector
+import org.gradle.internal.component.local.model.DefaultProjectComponentIdentifier
+import org.gradle.internal.resolve.ModuleVersionResolveException
+import org.gradle.internal.resolve.resolver.ArtifactResolver
+import spock.lang.Specification
+
+import static org.gradle.api.internal.artifacts.DefaultModuleVersionIdentifier.newId
+import static org.gradle.api.internal.artifacts.DefaultModuleVersionSelector.newSelector
+import static org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.VersionSelectionReasons.REQUESTED
+
+class ResolvedGraphRecorderTest extends Specification {
+    def dependency = Stub(ModuleDependency)
+    def versionSelectorScheme = new DefaultVersionSelectorScheme(new DefaultVersionComparator())
+    def newModelBuilder = Mock(ResolutionResultBuilder)
+    def oldModelBuilder = Mock(ResolvedConfigurationBuilder)
+    def artifactsBuilder = Mock(ResolvedArtifactsBuilder)
+    def projectModelBuilder = Mock(ResolvedProjectConfigurationResultBuilder)
+    def recorder = new ResolvedGraphRecorder([dependency], versionSelectorScheme, newModelBuilder, oldModelBuilder, artifactsBuilder, projectModelBuilder)
+
+    def rootId = newId("org", "root", "1.0")
+    def rootComponent = new DefaultProjectComponentIdentifier(":")
+    def moduleId = newId("org", "dep", "1.2")
+    def moduleComponent = DefaultModuleComponentIdentifier.newId("org", "dep", "1.2")
+    def rootConfiguration = new ResolvedConfigurationIdentifier(rootId, "compile")
+    def moduleConfiguration = new ResolvedConfigurationIdentifier(moduleId, "default")
+
+    def "forwards events to the builders and replays them later"() {
+        def artifact = new DefaultModuleComponentArtifactMetaData(new DefaultModuleComponentArtifactIdentifier(moduleComponent, "dep", "jar", "jar"))
+        def artifactSet = new DependencyArtifactSet(moduleId, null, [artifact] as Set, Stub(ArtifactResolver), [:], 12)
+        def dependencyResult = new DefaultInternalDependencyResult(DefaultModuleComponentSelector.newSelector("org", "dep", "1.+"), moduleId, null, null)
+
+        when:
+        recordGraph(artifactSet, dependencyResult)
+
+        then:
+        1 * newModelBuilder.start(rootId, rootComponent)
+        1 * newModelBuilder.resolvedConfiguration(rootId, [dependencyResult])
+        1 * oldModelBuilder.addFirstLevelDependency(dependency, moduleConfiguration)
+        2 * artifactsBuilder.addArtifacts(12, artifactSet)
+        1 * projectModelBuilder.addProjectComponentResult(rootComponent, "compile")
+
+        and:
+        recorder.complete()
+        recorder.modules == [moduleComponent] as Set
+        recorder.requestedModules == [DefaultModuleIdentifier.newId("org", "dep")] as Set
+        recorder.dynamicSelections == [(DefaultModuleIdentifier.newId("org", "dep")): moduleId]
+
+        when:
+        def replayNewModelBuilder = Mock(ResolutionResultBuilder)
+        def replayOldModelBuilder = Mock(ResolvedConfigurationBuilder)
+        def replayArtifactsBuilder = Mock(ResolvedArtifactsBuilder)
+        def replayProjectModelBuilder = Mock(ResolvedProjectConfigurationResultBuilder)
+        def replay = new ResolvedGraphReplayer([dependency]).decode(recorder.events)
+        replay.replay(Stub(ArtifactResolver), replayNewModelBuilder, replayOldModelBuilder, replayArtifactsBuilder, replayProjectModelBuilder)
+
+        then:
+        1 * replayNewModelBuilder.start(rootId, rootComponent)
+        1 * replayNewModelBuilder.resolvedModuleVersion({ it.id == moduleId && it.componentId == moduleComponent })
+        1 * replayNewModelBuilder.resolvedConfiguration(rootId, { it.size() == 1 && it[0].selected == moduleId })
+
+        then:
+        1 * replayOldModelBuilder.newResolvedDependency(rootConfiguration)
+        1 * replayOldModelBuilder.addChild(rootConfiguration, moduleConfiguration)
+        1 * replayOldModelBuilder.addArtifacts(moduleConfiguration, rootConfiguration, 12)
+        2 * replayArtifactsBuilder.addArtifacts(12, { AbstractArtifactSet set -> set.selectedComponentArtifacts*.id == [artifact.id] })
+        1 * replayOldModelBuilder.addFirstLevelDependency(dependency, moduleConfiguration)
+        1 * replayOldModelBuilder.done(rootConfiguration)
+        1 * replayProjectModelBuilder.registerRoot(rootComponent)
+        1 * replayProjectModelBuilder.addProjectComponentResult(rootComponent, "compile")
+        0 * _
+    }
+
+    def "does not record a graph with unresolved dependencies"() {
+        when:
+        recorder.newModelBuilder.start(rootId, rootComponent)
+        recorder.oldModelBuilder.addUnresolvedDependency(Stub(UnresolvedDependency))
+
+        then:
+        !recorder.complete()
+    }
+
+    def "does not record a graph with failed dependencies"() {
+        def selector = DefaultModuleComponentSelector.newSelector("org", "dep", "1.2")
+        def failure = new ModuleVersionResolveException(newSelector("org", "dep", "1.2"), new RuntimeException())
+
+        when:
+        recorder.newModelBuilder.start(rootId, rootComponent)
+        recorder.newModelBuilder.resolvedConfiguration(rootId, [new DefaultInternalDependencyResult(selector, null, REQUESTED, failure)])
+
+        then:
+        !recorder.complete()
+    }
+
+    def "does not record a graph with project components other than the root"() {
+        when:
+        recorder.projectModelBuilder.registerRoot(rootComponent)
+        recorder.projectModelBuilder.addProjectComponentResult(new DefaultProjectComponentIdentifier(":other"), "default")
+
+        then:
+        !recorder.complete()
+    }
+
+    def "does not decode an incomplete recording"() {
+        recorder.newModelBuilder.start(rootId, rootComponent)
+        recorder.complete()
+        def events = recorder.events
+
+        when:
+        new ResolvedGraphReplayer([dependency]).decode(Arrays.copyOf(events, events.length - 1))
+
+        then:
+        thrown(Exception)
+    }
+
+    private void recordGraph(artifactSet, dependencyResult) {
+        recorder.newModelBuilder.start(rootId, rootComponent)
+        recorder.projectModelBuilder.registerRoot(rootComponent)
+        recorder.oldModelBuilder.newResolvedDependency(rootConfiguration)
+        recorder.projectModelBuilder.addProjectComponentResult(rootComponent, "compile")
+        recorder.newModelBuilder.resolvedModuleVersion(new DefaultModuleVersionSelection(moduleId, REQUESTED, moduleComponent))
+        recorder.newModelBuilder.resolvedConfiguration(rootId, [dependencyResult])
+        recorder.oldModelBuilder.newResolvedDependency(moduleConfiguration)
+        recorder.oldModelBuilder.addChild(rootConfiguration, moduleConfiguration)
+        recorder.oldModelBuilder.addArtifacts(moduleConfiguration, rootConfiguration, 12)
+        recorder.artifactsBuilder.addArtifacts(12, artifactSet)
+        recorder.artifactsBuilder.addArtifacts(12, artifactSet)
+        recorder.oldModelBuilder.addFirstLevelDependency(dependency, moduleConfiguration)
+        recorder.oldModelBuilder.done(rootConfiguration)
+    }
+}
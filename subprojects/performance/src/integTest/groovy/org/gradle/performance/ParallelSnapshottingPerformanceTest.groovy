@@ -0,0 +1,47 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.performance
+
+import spock.lang.Unroll
+
+class ParallelSnapshottingPerformanceTest extends AbstractCrossBuildPerformanceTest {
+    @Unroll
+    def "#testProject parallel file snapshotting #scenario build"() {
+        when:
+        runner.testId = "$testProject parallel file snapshotting $scenario build"
+        runner.testGroup = "parallel file snapshotting"
+        runner.buildSpec {
+            projectName(testProject).displayName("parallel snapshotting").invocation {
+                tasksToRun(*tasks).useDaemon().enableParallelSnapshotting()
+            }
+        }
+        runner.baseline {
+            projectName(testProject).displayName("serial snapshotting").invocation {
+                tasksToRun(*tasks).useDaemon()
+            }
+        }
+
+        then:
+        runner.run()
+
+        where:
+        scenario     | testProject | tasks
+        "up-to-date" | "largeSrc"  | ["build"]
+        "up-to-date" | "mixedSize" | ["build"]
+        "full"       | "largeSrc"  | ["clean", "build"]
+    }
+}
@@ -19,6 +19,7 @@ package org.gradle.performance.fixture
 import com.google.common.collect.ImmutableList
 import groovy.transform.CompileStatic
 import groovy.transform.EqualsAndHashCode
+import org.gradle.api.internal.changedetection.state.ParallelFileCollectionSnapshotter
 import org.gradle.integtests.fixtures.executer.GradleDistribution
 import org.gradle.launcher.daemon.configuration.GradleProperties
 import org.gradle.model.internal.persist.ReusingModelRegistryStore
@@ -121,6 +122,10 @@ class GradleInvocationSpec {
             gradleOpts("-Dorg.gradle.model.dsl=true")
         }
 
+        Builder enableParallelSnapshotting() {
+            gradleOpts("-D$ParallelFileCollectionSnapshotter.TOGGLE=true")
+        }
+
         Builder disableParallelWorkers() {
             gradleOpts("-D${GradleProperties.WORKERS_PROPERTY}=1")
         }
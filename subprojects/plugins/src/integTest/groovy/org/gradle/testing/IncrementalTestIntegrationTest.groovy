@@ -120,4 +120,39 @@ public class BarTest {
         then:
         result.assertTaskSkipped(":test")
     }
+
+    def "runs the test classes left out by test.single once they are no longer left out when only affected test classes run"() {
+        file("src/test/java/FooTest.java") << """
+import org.junit.*;
+public class FooTest {
+    @Test public void test() {}
+}
+"""
+        file("src/test/java/BarTest.java") << """
+import org.junit.*;
+public class BarTest {
+    @Test public void test() {}
+}
+"""
+
+        file("build.gradle") << """
+            apply plugin: 'java'
+            repositories { mavenCentral() }
+            dependencies { testCompile 'junit:junit:4.12' }
+            test.beforeTest { println "executed " + it }
+        """
+
+        when:
+        def result = executer.withTasks("test", "-Dtest.single=Foo", "-Dorg.gradle.test.incremental=true").run()
+
+        then:
+        result.output.contains("executed Test test(FooTest)")
+        !result.output.contains("executed Test test(BarTest)")
+
+        when:
+        result = executer.withTasks("test", "-Dorg.gradle.test.incremental=true").run()
+
+        then:
+        result.output.contains("executed Test test(BarTest)")
+    }
 }
@@ -16,87 +16,81 @@
 
 package org.gradle.api.internal.tasks.testing.detection;
 
-import org.apache.commons.io.IOUtils;
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
 import org.apache.commons.lang.StringUtils;
 import org.gradle.api.GradleException;
+import org.gradle.api.Nullable;
 import org.gradle.api.file.FileCollection;
 import org.gradle.api.internal.tasks.testing.DefaultTestClassRunInfo;
 import org.gradle.api.internal.tasks.testing.TestClassProcessor;
+import org.gradle.internal.Factory;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.Type;
 
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public abstract class AbstractTestFrameworkDetector<T extends TestClassVisitor> implements TestFrameworkDetector {
     protected static final String TEST_CASE = "junit/framework/TestCase";
     protected static final String GROOVY_TEST_CASE = "groovy/util/GroovyTestCase";
+    private static final TestClassInfo NOT_ON_CLASSPATH = new TestClassInfo("", null, false, false);
 
-    private List<File> testClassDirectories;
-    private final ClassFileExtractionManager classFileExtractionManager;
-    private final Map<File, Boolean> superClasses;
+    private final Map<File, TestClassInfo> classInfos;
+    private final Map<String, TestClassInfo> superClassInfos;
+    private final Map<String, Boolean> superClasses;
     private TestClassProcessor testClassProcessor;
     private final List<String> knownTestCaseClassNames;
 
     private File testClassesDirectory;
     private FileCollection testClasspath;
-
-    protected AbstractTestFrameworkDetector(ClassFileExtractionManager classFileExtractionManager) {
-        assert classFileExtractionManager != null;
-        this.classFileExtractionManager = classFileExtractionManager;
-        this.superClasses = new HashMap<File, Boolean>();
+    private TestClassInfoCache classInfoCache;
+    private ClasspathJarIndex jarIndex;
+    private ClasspathClassFileReader classpathReader;
+
+    protected AbstractTestFrameworkDetector() {
+        this.classInfos = new ConcurrentHashMap<File, TestClassInfo>();
+        this.superClassInfos = new ConcurrentHashMap<String, TestClassInfo>();
+        this.superClasses = new HashMap<String, Boolean>();
         this.knownTestCaseClassNames = new ArrayList<String>();
         addKnownTestCaseClassNames(TEST_CASE, GROOVY_TEST_CASE);
     }
 
     protected abstract T createClassVisitor();
 
-    protected File getSuperTestClassFile(String superClassName) {
-        prepareClasspath();
+    /**
+     * Returns the class info of the given super class, or null when the super class is not on the test classpath.
+     */
+    @Nullable
+    protected TestClassInfo getSuperClassInfo(String superClassName) {
         if (StringUtils.isEmpty(superClassName)) {
             throw new IllegalArgumentException("superClassName is empty!");
         }
 
-        final Iterator<File> testClassDirectoriesIt = testClassDirectories.iterator();
-
-        File superTestClassFile = null;
-        while (superTestClassFile == null && testClassDirectoriesIt.hasNext()) {
-            final File testClassDirectory = testClassDirectoriesIt.next();
-            final File superTestClassFileCandidate = new File(testClassDirectory, superClassName + ".class");
-            if (superTestClassFileCandidate.exists()) {
-                superTestClassFile = superTestClassFileCandidate;
-            }
-        }
-
-        if (superTestClassFile != null) {
-            return superTestClassFile;
-        } else { // super test class file not in test class directories
-            return classFileExtractionManager.getLibraryClassFile(superClassName);
+        TestClassInfo superClassInfo = superClassInfos.get(superClassName);
+        if (superClassInfo == null) {
+            byte[] classFile = getClasspathReader().read(superClassName);
+            superClassInfo = classFile == null ? NOT_ON_CLASSPATH : readClassInfo(classFile, superClassName);
+            superClassInfos.put(superClassName, superClassInfo);
         }
+        return superClassInfo == NOT_ON_CLASSPATH ? null : superClassInfo;
     }
 
-    private void prepareClasspath() {
-        if (testClassDirectories != null) {
-            return;
-        }
-
-        testClassDirectories = new ArrayList<File>();
-
-        if (testClassesDirectory != null) {
-            testClassDirectories.add(testClassesDirectory);
-        }
-        if (testClasspath != null) {
-            for (File file : testClasspath) {
-                if (file.isDirectory()) {
-                    testClassDirectories.add(file);
-                } else if (file.isFile() && file.getName().endsWith(".jar")) {
-                    classFileExtractionManager.addLibraryJar(file);
-                }
+    private synchronized ClasspathClassFileReader getClasspathReader() {
+        if (classpathReader == null) {
+            List<File> classpath = new ArrayList<File>();
+            if (testClassesDirectory != null) {
+                classpath.add(testClassesDirectory);
+            }
+            if (testClasspath != null) {
+                classpath.addAll(testClasspath.getFiles());
             }
+            classpathReader = new ClasspathClassFileReader(classpath, jarIndex);
         }
+        return classpathReader;
     }
 
     public void setTestClassesDirectory(File testClassesDirectory) {
@@ -107,38 +101,82 @@ public abstract class AbstractTestFrameworkDetector<T extends TestClassVisitor>
         this.testClasspath = testClasspath;
     }
 
-    protected TestClassVisitor classVisitor(final File testClassFile) {
-        final TestClassVisitor classVisitor = createClassVisitor();
+    public void setClassInfoCache(@Nullable TestClassInfoCache classInfoCache) {
+        this.classInfoCache = classInfoCache;
+    }
 
-        InputStream classStream = null;
-        try {
-            classStream = new BufferedInputStream(new FileInputStream(testClassFile));
-            final ClassReader classReader = new ClassReader(classStream);
-            classReader.accept(classVisitor, ClassReader.SKIP_DEBUG | ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES);
-        } catch (Throwable e) {
-            throw new GradleException("failed to read class file " + testClassFile.getAbsolutePath(), e);
-        } finally {
-            IOUtils.closeQuietly(classStream);
+    public void setClasspathJarIndex(@Nullable ClasspathJarIndex jarIndex) {
+        this.jarIndex = jarIndex;
+    }
+
+    protected TestClassInfo getClassInfo(File testClassFile) {
+        TestClassInfo classInfo = classInfos.get(testClassFile);
+        if (classInfo == null) {
+            byte[] classFile;
+            try {
+                classFile = Files.toByteArray(testClassFile);
+            } catch (Throwable e) {
+                throw new GradleException("failed to read class file " + testClassFile.getAbsolutePath(), e);
+            }
+            classInfo = readClassInfo(classFile, testClassFile.getAbsolutePath());
+            classInfos.put(testClassFile, classInfo);
         }
+        return classInfo;
+    }
 
-        return classVisitor;
+    /**
+     * Parses the class file, unless a class file with the same contents was parsed by this kind of detector before.
+     */
+    private TestClassInfo readClassInfo(final byte[] classFile, final String displayName) {
+        Factory<TestClassInfo> parser = new Factory<TestClassInfo>() {
+            public TestClassInfo create() {
+                final TestClassVisitor classVisitor = createClassVisitor();
+                try {
+                    final ClassReader classReader = new ClassReader(classFile);
+                    classReader.accept(classVisitor, ClassReader.SKIP_DEBUG | ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES);
+                } catch (Throwable e) {
+                    throw new GradleException("failed to read class file " + displayName, e);
+                }
+                return TestClassInfo.of(classVisitor);
+            }
+        };
+        if (classInfoCache == null) {
+            return parser.create();
+        }
+        HashCode key = Hashing.md5().newHasher().putString(getClass().getName(), Charsets.UTF_8).putBytes(classFile).hash();
+        return classInfoCache.get(key, parser);
+    }
+
+    /**
+     * Reads the class file and the super classes it may inherit tests from, so that {@link #processTestClass(File)} finds them in memory. Failures are
+     * left for {@link #processTestClass(File)} to report.
+     */
+    public void prefetchTestClass(File testClassFile) {
+        try {
+            TestClassInfo classInfo = getClassInfo(testClassFile);
+            while (classInfo != null && !classInfo.isTest() && classInfo.getSuperClassName() != null && !isKnownTestCaseClassName(classInfo.getSuperClassName())) {
+                classInfo = getSuperClassInfo(classInfo.getSuperClassName());
+            }
+        } catch (Exception e) {
+            // Ignore
+        }
     }
 
     public boolean processTestClass(File testClassFile) {
-        return processTestClass(testClassFile, false);
+        return processTestClass(getClassInfo(testClassFile), false);
     }
 
-    protected abstract boolean processTestClass(File testClassFile, boolean superClass);
+    protected abstract boolean processTestClass(TestClassInfo classInfo, boolean superClass);
 
-    protected boolean processSuperClass(File testClassFile) {
+    protected boolean processSuperClass(TestClassInfo superClassInfo) {
         boolean isTest = false;
 
-        Boolean isSuperTest = superClasses.get(testClassFile);
+        Boolean isSuperTest = superClasses.get(superClassInfo.getClassName());
 
         if (isSuperTest == null) {
-            isTest = processTestClass(testClassFile, true);
+            isTest = processTestClass(superClassInfo, true);
 
-            superClasses.put(testClassFile, isTest);
+            superClasses.put(superClassInfo.getClassName(), isTest);
         } else {
             isTest = isSuperTest;
         }
@@ -150,9 +188,9 @@ public abstract class AbstractTestFrameworkDetector<T extends TestClassVisitor>
      * In none super class mode a test class is published when the class is a test and it is not abstract. In super class mode it must not publish the class otherwise it will get published multiple
      * times (for each extending class).
      */
-    protected void publishTestClass(boolean isTest, TestClassVisitor classVisitor, boolean superClass) {
-        if (isTest && !classVisitor.isAbstract() && !superClass) {
-            String className = Type.getObjectType(classVisitor.getClassName()).getClassName();
+    protected void publishTestClass(boolean isTest, TestClassInfo classInfo, boolean superClass) {
+        if (isTest && !classInfo.isAbstract() && !superClass) {
+            String className = Type.getObjectType(classInfo.getClassName()).getClassName();
             testClassProcessor.processTestClass(new DefaultTestClassRunInfo(className));
         }
     }
@@ -161,6 +199,16 @@ public abstract class AbstractTestFrameworkDetector<T extends TestClassVisitor>
         this.testClassProcessor = testClassProcessor;
     }
 
+    public synchronized void stopDetection() {
+        if (classpathReader != null) {
+            classpathReader.close();
+            classpathReader = null;
+        }
+        classInfos.clear();
+        superClassInfos.clear();
+        superClasses.clear();
+    }
+
     public void addKnownTestCaseClassNames(String... knownTestCaseClassNames) {
         if (knownTestCaseClassNames != null && knownTestCaseClassNames.length != 0) {
             for (String knownTestCaseClassName : knownTestCaseClassNames) {
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.tasks.testing.detection;
+
+import org.gradle.api.Nullable;
+import org.gradle.api.file.FileTree;
+import org.gradle.api.file.FileTreeElement;
+import org.gradle.api.internal.tasks.compile.incremental.deps.ClassSetAnalysis;
+import org.gradle.api.internal.tasks.compile.incremental.deps.DependentsSet;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.specs.Spec;
+import org.gradle.api.tasks.util.PatternSet;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The test classes that are affected by the changes since a previous test run, and so need to run again.
+ *
+ * <p>A test class is affected when it changed, when a class it depends on, directly or transitively, changed, or when it failed in the previous run.
+ * All test classes are affected when there is no previous run, or when the configuration of the test task, a resource or a jar changed, or a changed
+ * class may be inlined by other classes. Dependencies are found in the byte code, so a class that is only used through reflection does not affect
+ * the test classes that use it.</p>
+ */
+public class AffectedTestClasses {
+    public static final String ENABLED_PROPERTY = "org.gradle.test.incremental";
+
+    public static final AffectedTestClasses ALL = new AffectedTestClasses(null);
+
+    private static final Logger LOGGER = Logging.getLogger(AffectedTestClasses.class);
+
+    private final Set<String> classNames;
+
+    private AffectedTestClasses(@Nullable Set<String> classNames) {
+        this.classNames = classNames;
+    }
+
+    /**
+     * Returns the test classes affected by the changes between the given snapshots.
+     */
+    public static AffectedTestClasses between(@Nullable TestInputsSnapshot previous, TestInputsSnapshot current) {
+        if (previous == null) {
+            return all("there is no previous test run");
+        }
+        if (!current.hasSameConfiguration(previous)) {
+            return all("the configuration of the test task changed");
+        }
+        if (!current.hasSameOtherFiles(previous)) {
+            return all("a resource or a jar on the test runtime classpath changed");
+        }
+
+        Set<String> changed = new HashSet<String>();
+        for (Map.Entry<String, byte[]> entry : current.classHashes.entrySet()) {
+            byte[] previousHash = previous.classHashes.get(entry.getKey());
+            if (previousHash == null || !Arrays.equals(previousHash, entry.getValue())) {
+                changed.add(entry.getKey());
+            }
+        }
+        for (String className : previous.classHashes.keySet()) {
+            if (!current.classHashes.containsKey(className)) {
+                changed.add(className);
+            }
+        }
+
+        Set<String> affected = new HashSet<String>(changed);
+        // A class added since the previous run only has dependents in the current analysis, a removed class only in the previous one
+        for (ClassSetAnalysis analysis : Arrays.asList(new ClassSetAnalysis(previous.analysis), new ClassSetAnalysis(current.analysis))) {
+            DependentsSet dependents = analysis.getRelevantDependents(changed);
+            if (dependents.isDependencyToAll()) {
+                return all("a changed class may be inlined by other classes");
+            }
+            affected.addAll(dependents.getDependentClasses());
+        }
+        affected.addAll(previous.failedTestClasses);
+
+        LOGGER.info("{} class(es) changed since the previous test run, {} class(es) affected.", changed.size(), affected.size());
+        return new AffectedTestClasses(affected);
+    }
+
+    private static AffectedTestClasses all(String reason) {
+        LOGGER.info("All test classes are affected, as {}.", reason);
+        return ALL;
+    }
+
+    public boolean isAffected(String className) {
+        if (classNames == null || classNames.contains(className)) {
+            return true;
+        }
+        // Dependents are tracked for the top level classes only
+        int nestedSeparator = className.indexOf('$');
+        return nestedSeparator > 0 && classNames.contains(className.substring(0, nestedSeparator));
+    }
+
+    /**
+     * Returns the class files of the given tree that belong to an affected class.
+     */
+    public FileTree filter(FileTree classFiles) {
+        if (classNames == null) {
+            return classFiles;
+        }
+        PatternSet affectedClassFiles = new PatternSet();
+        affectedClassFiles.include(new Spec<FileTreeElement>() {
+            public boolean isSatisfiedBy(FileTreeElement element) {
+                return element.isDirectory() || !element.getName().endsWith(".class")
+                        || isAffected(element.getPath().replace('/', '.').replaceAll("\\.class$", ""));
+            }
+        });
+        return classFiles.matching(affectedClassFiles);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.tasks.testing.detection;
+
+import com.google.common.io.Files;
+import org.gradle.api.GradleException;
+import org.gradle.api.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads class files by class name from the class directories and jars of a test classpath. The jars come from a {@link ClasspathJarIndex}, and a class is
+ * only looked up in the jars that contain its package, in the order of the classpath. Can be used by several threads.
+ */
+public class ClasspathClassFileReader implements Closeable {
+    private final List<File> classDirectories = new ArrayList<File>();
+    private final Map<String, List<ClasspathJarIndex.IndexedJar>> jarsByPackage = new HashMap<String, List<ClasspathJarIndex.IndexedJar>>();
+    private final ClasspathJarIndex ownJarIndex;
+
+    /**
+     * Creates a reader that opens the jars itself, and closes them when it is closed.
+     */
+    public ClasspathClassFileReader(Iterable<File> classpath) {
+        this(classpath, null);
+    }
+
+    public ClasspathClassFileReader(Iterable<File> classpath, @Nullable ClasspathJarIndex jarIndex) {
+        ownJarIndex = jarIndex == null ? new ClasspathJarIndex() : null;
+        ClasspathJarIndex jars = jarIndex == null ? ownJarIndex : jarIndex;
+        for (File file : classpath) {
+            if (file.isDirectory()) {
+                classDirectories.add(file);
+            } else if (file.isFile() && file.getName().endsWith(".jar")) {
+                addJar(jars.get(file));
+            }
+        }
+    }
+
+    private void addJar(ClasspathJarIndex.IndexedJar jar) {
+        for (String packageName : jar.getPackages()) {
+            List<ClasspathJarIndex.IndexedJar> jars = jarsByPackage.get(packageName);
+            if (jars == null) {
+                jars = new ArrayList<ClasspathJarIndex.IndexedJar>(1);
+                jarsByPackage.put(packageName, jars);
+            }
+            jars.add(jar);
+        }
+    }
+
+    /**
+     * Returns the contents of the class file of the given class, or null when the classpath does not contain the class. The class directories are
+     * searched before the jars.
+     *
+     * @param className The class name, in the internal form.
+     */
+    @Nullable
+    public byte[] read(String className) {
+        String classFileName = className + ".class";
+        for (File classDirectory : classDirectories) {
+            File classFile = new File(classDirectory, classFileName);
+            if (classFile.isFile()) {
+                try {
+                    return Files.toByteArray(classFile);
+                } catch (IOException e) {
+                    throw new GradleException("failed to read class file " + classFile.getAbsolutePath(), e);
+                }
+            }
+        }
+        List<ClasspathJarIndex.IndexedJar> jars = jarsByPackage.get(classFileName.substring(0, classFileName.lastIndexOf('/') + 1));
+        if (jars != null) {
+            for (ClasspathJarIndex.IndexedJar jar : jars) {
+                byte[] classFile = jar.read(classFileName);
+                if (classFile != null) {
+                    return classFile;
+                }
+            }
+        }
+        return null;
+    }
+
+    public void close() {
+        if (ownJarIndex != null) {
+            ownJarIndex.stop();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.tasks.testing.detection;
+
+import com.google.common.io.ByteStreams;
+import org.gradle.api.GradleException;
+import org.gradle.api.Nullable;
+import org.gradle.internal.concurrent.CompositeStoppable;
+import org.gradle.internal.concurrent.Stoppable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * The jars of test classpaths, kept open with the packages each of them contains. Shared by the test tasks of a build, so a jar that is on the classpath of
+ * several test tasks is opened and indexed once. A jar is indexed again when its length or modification time changes. Can be used by several threads.
+ */
+public class ClasspathJarIndex implements Stoppable {
+    private final Map<File, IndexedJar> jars = new HashMap<File, IndexedJar>();
+    private final List<IndexedJar> replaced = new ArrayList<IndexedJar>();
+
+    public synchronized IndexedJar get(File jarFile) {
+        IndexedJar jar = jars.get(jarFile);
+        if (jar != null && !jar.isUpToDate()) {
+            // A reader of another test task may still use the jar, so it is closed with the others
+            replaced.add(jar);
+            jar = null;
+        }
+        if (jar == null) {
+            jar = new IndexedJar(jarFile);
+            jars.put(jarFile, jar);
+        }
+        return jar;
+    }
+
+    public synchronized void stop() {
+        CompositeStoppable.stoppable(jars.values()).add(replaced).stop();
+        jars.clear();
+        replaced.clear();
+    }
+
+    /**
+     * An open jar with the packages it contains. Packages are named by the path of their directory in the jar, e.g. {@code org/gradle/}.
+     */
+    public static class IndexedJar implements Closeable {
+        private final File jarFile;
+        private final long length;
+        private final long lastModified;
+        private final ZipFile zipFile;
+        private final Set<String> packages = new HashSet<String>();
+
+        IndexedJar(File jarFile) {
+            this.jarFile = jarFile;
+            this.length = jarFile.length();
+            this.lastModified = jarFile.lastModified();
+            try {
+                zipFile = new ZipFile(jarFile);
+            } catch (IOException e) {
+                throw new GradleException("failed to open jar file (" + jarFile + ")", e);
+            }
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                String name = entries.nextElement().getName();
+                packages.add(name.substring(0, name.lastIndexOf('/') + 1));
+            }
+        }
+
+        public File getFile() {
+            return jarFile;
+        }
+
+        public Set<String> getPackages() {
+            return Collections.unmodifiableSet(packages);
+        }
+
+        boolean isUpToDate() {
+            return jarFile.length() == length && jarFile.lastModified() == lastModified;
+        }
+
+        @Nullable
+        public byte[] read(String entryName) {
+            try {
+                ZipEntry entry = zipFile.getEntry(entryName);
+                if (entry == null) {
+                    return null;
+                }
+                InputStream inputStream = zipFile.getInputStream(entry);
+                try {
+                    return ByteStreams.toByteArray(inputStream);
+                } finally {
+                    inputStream.close();
+                }
+            } catch (IOException e) {
+                throw new GradleException("failed to read class file from jar (" + jarFile + ")", e);
+            }
+        }
+
+        public void close() {
+            try {
+                zipFile.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.tasks.testing.detection;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import org.gradle.internal.Factory;
+
+/**
+ * In-memory cache of test class detection results that lives as long as the build process, so a class file that was scanned by an earlier build or by
+ * another project is not parsed again. Lookups do not lock anything shared by all threads, so the class files of a test task can be scanned in parallel.
+ * The least recently used results are discarded once the cache is full.
+ */
+public class DefaultTestClassInfoCache implements TestClassInfoCache {
+    public static final int DEFAULT_MAX_ENTRIES = 50000;
+
+    private final Cache<HashCode, TestClassInfo> cache;
+
+    public DefaultTestClassInfoCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public DefaultTestClassInfoCache(int maxEntries) {
+        cache = CacheBuilder.newBuilder().maximumSize(maxEntries).build();
+    }
+
+    public TestClassInfo get(HashCode key, Factory<TestClassInfo> factory) {
+        TestClassInfo cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        // Do not hold a lock while parsing, another thread may parse the same class file at the same time
+        TestClassInfo value = factory.create();
+        cache.put(key, value);
+        return value;
+    }
+}
@@ -16,29 +16,46 @@
 
 package org.gradle.api.internal.tasks.testing.detection;
 
+import org.gradle.api.Nullable;
 import org.gradle.api.file.EmptyFileVisitor;
 import org.gradle.api.file.FileTree;
 import org.gradle.api.file.FileVisitDetails;
 import org.gradle.api.internal.tasks.testing.DefaultTestClassRunInfo;
 import org.gradle.api.internal.tasks.testing.TestClassProcessor;
 import org.gradle.api.internal.tasks.testing.TestClassRunInfo;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.StoppableExecutor;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * The default test class scanner. Depending on the availability of a test framework detector,
  * a detection or filename scan is performed to find test classes.
+ *
+ * <p>When there is an executor factory, the detector reads the class files on several threads ahead of processing them. The class files are still processed
+ * one at a time in the order of the candidate class files, so the test classes are found in the same order.</p>
  */
 public class DefaultTestClassScanner implements Runnable {
     private final FileTree candidateClassFiles;
     private final TestFrameworkDetector testFrameworkDetector;
     private final TestClassProcessor testClassProcessor;
+    private final ExecutorFactory executorFactory;
+    private final int maxThreads;
 
     public DefaultTestClassScanner(FileTree candidateClassFiles, TestFrameworkDetector testFrameworkDetector,
                                    TestClassProcessor testClassProcessor) {
+        this(candidateClassFiles, testFrameworkDetector, testClassProcessor, null, 1);
+    }
+
+    public DefaultTestClassScanner(FileTree candidateClassFiles, TestFrameworkDetector testFrameworkDetector,
+                                   TestClassProcessor testClassProcessor, @Nullable ExecutorFactory executorFactory, int maxThreads) {
         this.candidateClassFiles = candidateClassFiles;
         this.testFrameworkDetector = testFrameworkDetector;
         this.testClassProcessor = testClassProcessor;
+        this.executorFactory = executorFactory;
+        this.maxThreads = maxThreads;
     }
 
     public void run() {
@@ -51,11 +68,44 @@ public class DefaultTestClassScanner implements Runnable {
 
     private void detectionScan() {
         testFrameworkDetector.startDetection(testClassProcessor);
+        try {
+            if (executorFactory == null || maxThreads <= 1) {
+                candidateClassFiles.visit(new ClassFileVisitor() {
+                    public void visitClassFile(FileVisitDetails fileDetails) {
+                        testFrameworkDetector.processTestClass(fileDetails.getFile());
+                    }
+                });
+            } else {
+                parallelDetectionScan();
+            }
+        } finally {
+            testFrameworkDetector.stopDetection();
+        }
+    }
+
+    private void parallelDetectionScan() {
+        final List<File> classFiles = new ArrayList<File>();
         candidateClassFiles.visit(new ClassFileVisitor() {
             public void visitClassFile(FileVisitDetails fileDetails) {
-                testFrameworkDetector.processTestClass(fileDetails.getFile());
+                classFiles.add(fileDetails.getFile());
             }
         });
+
+        StoppableExecutor executor = executorFactory.create("Test class detection", maxThreads);
+        try {
+            for (final File classFile : classFiles) {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        testFrameworkDetector.prefetchTestClass(classFile);
+                    }
+                });
+            }
+            for (File classFile : classFiles) {
+                testFrameworkDetector.processTestClass(classFile);
+            }
+        } finally {
+            executor.stop();
+        }
     }
 
     private void filenameScan() {
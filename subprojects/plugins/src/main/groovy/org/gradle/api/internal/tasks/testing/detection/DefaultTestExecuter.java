@@ -16,18 +16,20 @@
 
 package org.gradle.api.internal.tasks.testing.detection;
 
+import org.gradle.api.Nullable;
 import org.gradle.api.file.FileTree;
 import org.gradle.api.internal.tasks.testing.TestClassProcessor;
 import org.gradle.api.internal.tasks.testing.TestFramework;
 import org.gradle.api.internal.tasks.testing.TestResultProcessor;
 import org.gradle.api.internal.tasks.testing.WorkerTestClassProcessorFactory;
-import org.gradle.api.internal.tasks.testing.processors.MaxNParallelTestClassProcessor;
-import org.gradle.api.internal.tasks.testing.processors.RestartEveryNTestClassProcessor;
-import org.gradle.api.internal.tasks.testing.processors.TestMainAction;
+import org.gradle.api.internal.tasks.testing.junit.JUnitTestFramework;
+import org.gradle.api.internal.tasks.testing.processors.*;
 import org.gradle.api.internal.tasks.testing.worker.ForkingTestClassProcessor;
+import org.gradle.api.internal.tasks.testing.worker.TestWorkerPool;
 import org.gradle.api.tasks.testing.Test;
 import org.gradle.internal.Factory;
 import org.gradle.internal.TrueTimeProvider;
+import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.progress.OperationIdGenerator;
 import org.gradle.messaging.actor.ActorFactory;
 import org.gradle.process.internal.WorkerProcessBuilder;
@@ -38,19 +40,39 @@ import org.gradle.process.internal.WorkerProcessBuilder;
 public class DefaultTestExecuter implements TestExecuter {
     private final Factory<WorkerProcessBuilder> workerFactory;
     private final ActorFactory actorFactor;
+    private final TestWorkerPool workerPool;
+    private final TestClassDurations previousDurations;
+    private final AffectedTestClasses affectedTestClasses;
+    private final ExecutorFactory executorFactory;
+    private final TestClassInfoCache classInfoCache;
+    private final ClasspathJarIndex jarIndex;
 
     public DefaultTestExecuter(Factory<WorkerProcessBuilder> workerFactory, ActorFactory actorFactor) {
+        this(workerFactory, actorFactor, null, TestClassDurations.NONE, AffectedTestClasses.ALL, null, null, null);
+    }
+
+    public DefaultTestExecuter(Factory<WorkerProcessBuilder> workerFactory, ActorFactory actorFactor, @Nullable TestWorkerPool workerPool, TestClassDurations previousDurations,
+                               AffectedTestClasses affectedTestClasses, @Nullable ExecutorFactory executorFactory, @Nullable TestClassInfoCache classInfoCache,
+                               @Nullable ClasspathJarIndex jarIndex) {
         this.workerFactory = workerFactory;
         this.actorFactor = actorFactor;
+        this.workerPool = workerPool;
+        this.previousDurations = previousDurations;
+        this.affectedTestClasses = affectedTestClasses;
+        this.executorFactory = executorFactory;
+        this.classInfoCache = classInfoCache;
+        this.jarIndex = jarIndex;
     }
 
     public void execute(final Test testTask, TestResultProcessor testResultProcessor) {
         final TestFramework testFramework = testTask.getTestFramework();
         final WorkerTestClassProcessorFactory testInstanceFactory = testFramework.getProcessorFactory();
+        // A reused worker may already have run test classes, so it cannot be used when the workers are restarted after some number of test classes
+        final TestWorkerPool workerPool = Boolean.getBoolean(TestWorkerPool.ENABLED_PROPERTY) && testTask.getForkEvery() == 0 ? this.workerPool : null;
         final Factory<TestClassProcessor> forkingProcessorFactory = new Factory<TestClassProcessor>() {
             public TestClassProcessor create() {
                 return new ForkingTestClassProcessor(workerFactory, testInstanceFactory, testTask,
-                    testTask.getClasspath(), testFramework.getWorkerConfigurationAction());
+                    testTask.getClasspath(), testFramework.getWorkerConfigurationAction(), workerPool);
             }
         };
         Factory<TestClassProcessor> reforkingProcessorFactory = new Factory<TestClassProcessor>() {
@@ -59,17 +81,24 @@ public class DefaultTestExecuter implements TestExecuter {
             }
         };
 
-        TestClassProcessor processor = new MaxNParallelTestClassProcessor(testTask.getMaxParallelForks(),
-            reforkingProcessorFactory, actorFactor);
+        TestClassProcessor processor;
+        // TestNG runs the test classes of a worker when the worker is stopped, so they cannot be handed out one at a time
+        if (Boolean.getBoolean(BalancedParallelTestClassProcessor.ENABLED_PROPERTY) && testFramework instanceof JUnitTestFramework) {
+            processor = new BalancedParallelTestClassProcessor(testTask.getMaxParallelForks(), reforkingProcessorFactory, actorFactor, previousDurations);
+        } else {
+            processor = new MaxNParallelTestClassProcessor(testTask.getMaxParallelForks(), reforkingProcessorFactory, actorFactor);
+        }
 
-        final FileTree testClassFiles = testTask.getCandidateClassFiles();
+        final FileTree testClassFiles = affectedTestClasses.filter(testTask.getCandidateClassFiles());
 
         Runnable detector;
         if (testTask.isScanForTestClasses()) {
             TestFrameworkDetector testFrameworkDetector = testTask.getTestFramework().getDetector();
             testFrameworkDetector.setTestClassesDirectory(testTask.getTestClassesDir());
             testFrameworkDetector.setTestClasspath(testTask.getClasspath());
-            detector = new DefaultTestClassScanner(testClassFiles, testFrameworkDetector, processor);
+            testFrameworkDetector.setClassInfoCache(classInfoCache);
+            testFrameworkDetector.setClasspathJarIndex(jarIndex);
+            detector = new DefaultTestClassScanner(testClassFiles, testFrameworkDetector, processor, executorFactory, Runtime.getRuntime().availableProcessors());
         } else {
             detector = new DefaultTestClassScanner(testClassFiles, null, processor);
         }
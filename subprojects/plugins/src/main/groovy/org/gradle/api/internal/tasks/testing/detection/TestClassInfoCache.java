@@ -1,5 +1,5 @@
 /*
- * Copyright 2009 the original author or authors.
+ * Copyright 2015 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -14,8 +14,14 @@
  * limitations under the License.
  */
 
+
 package org.gradle.api.internal.tasks.testing.detection;
 
-public interface JarFilePackageListener {
-    void receivePackage(String packageName);
+import com.google.common.hash.HashCode;
+import org.gradle.api.internal.cache.Cache;
+
+/**
+ * Test class detection results, keyed by a hash of the detector and the class file contents.
+ */
+public interface TestClassInfoCache extends Cache<HashCode, TestClassInfo> {
 }
@@ -15,6 +15,7 @@
  */
 package org.gradle.api.internal.tasks.testing.detection;
 
+import org.gradle.api.Nullable;
 import org.gradle.api.file.FileCollection;
 import org.gradle.api.internal.tasks.testing.TestClassProcessor;
 
@@ -23,9 +24,26 @@ import java.io.File;
 public interface TestFrameworkDetector {
     void startDetection(TestClassProcessor testClassProcessor);
 
+    /**
+     * Reads the given class file ahead of {@link #processTestClass(File)}. May be called by several threads at once.
+     */
+    void prefetchTestClass(File testClassFile);
+
     boolean processTestClass(File testClassFile);
 
+    /**
+     * Releases the resources used by the detection. Called after the last class file was processed.
+     */
+    void stopDetection();
+
     void setTestClassesDirectory(File testClassesDir);
 
     void setTestClasspath(FileCollection classpath);
+
+    void setClassInfoCache(@Nullable TestClassInfoCache classInfoCache);
+
+    /**
+     * Sets the jars shared with other test tasks, or null to open the jars of the test classpath for this detection only.
+     */
+    void setClasspathJarIndex(@Nullable ClasspathJarIndex jarIndex);
 }
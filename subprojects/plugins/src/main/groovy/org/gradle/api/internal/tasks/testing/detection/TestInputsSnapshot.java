@@ -0,0 +1,87 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.tasks.testing.detection;
+
+import org.gradle.api.internal.tasks.compile.incremental.deps.ClassSetAnalysisData;
+import org.gradle.internal.serialize.Decoder;
+import org.gradle.internal.serialize.Encoder;
+import org.gradle.internal.serialize.MapSerializer;
+import org.gradle.internal.serialize.SetSerializer;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
+import static org.gradle.internal.serialize.BaseSerializerFactory.BYTE_ARRAY_SERIALIZER;
+import static org.gradle.internal.serialize.BaseSerializerFactory.STRING_SERIALIZER;
+
+/**
+ * The inputs of a test run that decide which test classes a change affects: the configuration of the test task, the class files in the test classes
+ * directory and in the class directories of the test runtime classpath, with the dependencies between them, and all other files of the test runtime
+ * classpath. Also keeps the test classes that failed in the run.
+ */
+public class TestInputsSnapshot {
+    final byte[] configurationHash;
+    final byte[] otherFilesHash;
+    final Map<String, byte[]> classHashes;
+    final ClassSetAnalysisData analysis;
+    final Set<String> failedTestClasses;
+
+    public TestInputsSnapshot(byte[] configurationHash, byte[] otherFilesHash, Map<String, byte[]> classHashes, ClassSetAnalysisData analysis, Set<String> failedTestClasses) {
+        this.configurationHash = configurationHash;
+        this.otherFilesHash = otherFilesHash;
+        this.classHashes = classHashes;
+        this.analysis = analysis;
+        this.failedTestClasses = failedTestClasses;
+    }
+
+    public TestInputsSnapshot withFailedTestClasses(Set<String> failedTestClasses) {
+        return new TestInputsSnapshot(configurationHash, otherFilesHash, classHashes, analysis, failedTestClasses);
+    }
+
+    boolean hasSameConfiguration(TestInputsSnapshot other) {
+        return Arrays.equals(configurationHash, other.configurationHash);
+    }
+
+    boolean hasSameOtherFiles(TestInputsSnapshot other) {
+        return Arrays.equals(otherFilesHash, other.otherFilesHash);
+    }
+
+    public static class Serializer implements org.gradle.internal.serialize.Serializer<TestInputsSnapshot> {
+        private final MapSerializer<String, byte[]> hashesSerializer = new MapSerializer<String, byte[]>(STRING_SERIALIZER, BYTE_ARRAY_SERIALIZER);
+        private final ClassSetAnalysisData.Serializer analysisSerializer = new ClassSetAnalysisData.Serializer();
+        private final SetSerializer<String> classesSerializer = new SetSerializer<String>(STRING_SERIALIZER, false);
+
+        public TestInputsSnapshot read(Decoder decoder) throws Exception {
+            byte[] configurationHash = decoder.readBinary();
+            byte[] otherFilesHash = decoder.readBinary();
+            Map<String, byte[]> classHashes = hashesSerializer.read(decoder);
+            ClassSetAnalysisData analysis = analysisSerializer.read(decoder);
+            Set<String> failedTestClasses = classesSerializer.read(decoder);
+            return new TestInputsSnapshot(configurationHash, otherFilesHash, classHashes, analysis, failedTestClasses);
+        }
+
+        public void write(Encoder encoder, TestInputsSnapshot value) throws Exception {
+            encoder.writeBinary(value.configurationHash);
+            encoder.writeBinary(value.otherFilesHash);
+            hashesSerializer.write(encoder, value.classHashes);
+            analysisSerializer.write(encoder, value.analysis);
+            classesSerializer.write(encoder, value.failedTestClasses);
+        }
+    }
+}
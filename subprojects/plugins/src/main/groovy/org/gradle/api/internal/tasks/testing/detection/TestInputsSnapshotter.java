@@ -0,0 +1,175 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.tasks.testing.detection;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.gradle.api.file.EmptyFileVisitor;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.FileTree;
+import org.gradle.api.file.FileVisitDetails;
+import org.gradle.api.internal.changedetection.state.FileSnapshot;
+import org.gradle.api.internal.changedetection.state.FileSnapshotter;
+import org.gradle.api.internal.file.collections.DirectoryFileTree;
+import org.gradle.api.internal.tasks.compile.incremental.analyzer.ClassAnalysis;
+import org.gradle.api.internal.tasks.compile.incremental.analyzer.ClassAnalysisCache;
+import org.gradle.api.internal.tasks.compile.incremental.analyzer.ClassDependenciesAnalyzer;
+import org.gradle.api.internal.tasks.compile.incremental.analyzer.DefaultClassDependenciesAnalyzer;
+import org.gradle.api.internal.tasks.compile.incremental.deps.ClassDependentsAccumulator;
+import org.gradle.api.internal.tasks.compile.incremental.deps.ClassSetAnalysisData;
+import org.gradle.api.tasks.testing.Test;
+import org.gradle.cache.CacheAccess;
+import org.gradle.internal.Factory;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Takes a {@link TestInputsSnapshot} of a test task. The files are hashed with the file snapshotter of the task up-to-date checks, so a file is only read
+ * again when its length or modification time changed. The class files are analyzed with the class analysis cache of the incremental Java compiler, so only
+ * the classes that changed since they were last compiled or tested are read.
+ */
+public class TestInputsSnapshotter {
+    private final ClassDependenciesAnalyzer analyzer = new DefaultClassDependenciesAnalyzer();
+    private final ClassAnalysisCache analysisCache;
+    private final FileSnapshotter fileSnapshotter;
+    private final CacheAccess fileSnapshotCacheAccess;
+
+    public TestInputsSnapshotter(ClassAnalysisCache analysisCache, FileSnapshotter fileSnapshotter, CacheAccess fileSnapshotCacheAccess) {
+        this.analysisCache = analysisCache;
+        this.fileSnapshotter = fileSnapshotter;
+        this.fileSnapshotCacheAccess = fileSnapshotCacheAccess;
+    }
+
+    public TestInputsSnapshot createSnapshot(Test testTask) {
+        Set<File> roots = new LinkedHashSet<File>();
+        roots.add(testTask.getTestClassesDir());
+        roots.addAll(testTask.getClasspath().getFiles());
+
+        // The first class file of each name, the others are shadowed by an earlier classpath entry
+        final Map<String, File> classFiles = new LinkedHashMap<String, File>();
+        final List<File> otherFiles = new ArrayList<File>();
+        for (File root : roots) {
+            if (root.isDirectory()) {
+                new DirectoryFileTree(root).visit(new EmptyFileVisitor() {
+                    public void visitFile(FileVisitDetails fileDetails) {
+                        File file = fileDetails.getFile();
+                        if (!file.getName().endsWith(".class")) {
+                            otherFiles.add(file);
+                            return;
+                        }
+                        String className = fileDetails.getPath().replaceAll("/", ".").replaceAll("\\.class$", "");
+                        if (!classFiles.containsKey(className)) {
+                            classFiles.put(className, file);
+                        }
+                    }
+                });
+            } else if (root.isFile()) {
+                otherFiles.add(root);
+            }
+        }
+
+        List<File> files = new ArrayList<File>(classFiles.values());
+        files.addAll(otherFiles);
+        Map<File, byte[]> fileHashes = hashFiles(files);
+
+        Map<String, byte[]> classHashes = new HashMap<String, byte[]>();
+        ClassDependentsAccumulator accumulator = new ClassDependentsAccumulator("");
+        for (Map.Entry<String, File> entry : classFiles.entrySet()) {
+            String className = entry.getKey();
+            byte[] hash = fileHashes.get(entry.getValue());
+            classHashes.put(className, hash);
+            ClassAnalysis analysis = getClassAnalysis(className, entry.getValue(), hash);
+            accumulator.addClass(className, analysis.isDependencyToAll(), analysis.getClassDependencies());
+        }
+        SortedMap<String, byte[]> otherFileHashes = new TreeMap<String, byte[]>();
+        for (File file : otherFiles) {
+            otherFileHashes.put(file.getAbsolutePath(), fileHashes.get(file));
+        }
+
+        return new TestInputsSnapshot(hashConfiguration(testTask), hashFiles(otherFileHashes), classHashes,
+                new ClassSetAnalysisData(accumulator.getDependentsMap()), Collections.<String>emptySet());
+    }
+
+    /**
+     * Uses the snapshots already held in memory where possible, and takes the file snapshot cache lock once for the remaining files.
+     */
+    private Map<File, byte[]> hashFiles(Collection<File> files) {
+        final Map<File, byte[]> hashes = new HashMap<File, byte[]>();
+        final List<File> notLoaded = new ArrayList<File>();
+        for (File file : files) {
+            FileSnapshot snapshot = fileSnapshotter.findLoadedSnapshot(file, fileSnapshotter.stat(file));
+            if (snapshot != null) {
+                hashes.put(file, snapshot.getHash());
+            } else {
+                notLoaded.add(file);
+            }
+        }
+        if (!notLoaded.isEmpty()) {
+            fileSnapshotCacheAccess.useCache("Snapshot test inputs", new Runnable() {
+                public void run() {
+                    for (File file : notLoaded) {
+                        hashes.put(file, fileSnapshotter.snapshot(file).getHash());
+                    }
+                }
+            });
+        }
+        return hashes;
+    }
+
+    private ClassAnalysis getClassAnalysis(final String className, final File classFile, byte[] hash) {
+        return analysisCache.get(hash, new Factory<ClassAnalysis>() {
+            public ClassAnalysis create() {
+                return analyzer.getClassAnalysis(className, classFile);
+            }
+        });
+    }
+
+    private static byte[] hashConfiguration(Test testTask) {
+        Hasher hasher = Hashing.md5().newHasher();
+        Map<String, Object> properties = new TreeMap<String, Object>(testTask.getInputs().getProperties());
+        for (Map.Entry<String, Object> entry : properties.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof FileTree) {
+                // The candidate class files, which are part of the snapshot. The patterns that select them are hashed below
+                continue;
+            }
+            if (value instanceof FileCollection) {
+                value = ((FileCollection) value).getFiles();
+            }
+            hasher.putString(entry.getKey(), Charsets.UTF_8);
+            hasher.putString(String.valueOf(value), Charsets.UTF_8);
+        }
+        // A class left out by the patterns did not run, so it must run once the patterns change, for example after -Dtest.single
+        hasher.putString("includes", Charsets.UTF_8);
+        hasher.putString(String.valueOf(new TreeSet<String>(testTask.getIncludes())), Charsets.UTF_8);
+        hasher.putString("excludes", Charsets.UTF_8);
+        hasher.putString(String.valueOf(new TreeSet<String>(testTask.getExcludes())), Charsets.UTF_8);
+        return hasher.hash().asBytes();
+    }
+
+    private static byte[] hashFiles(SortedMap<String, byte[]> fileHashes) {
+        Hasher hasher = Hashing.md5().newHasher();
+        for (Map.Entry<String, byte[]> entry : fileHashes.entrySet()) {
+            hasher.putString(entry.getKey(), Charsets.UTF_8);
+            hasher.putBytes(entry.getValue());
+        }
+        return hasher.hash().asBytes();
+    }
+}
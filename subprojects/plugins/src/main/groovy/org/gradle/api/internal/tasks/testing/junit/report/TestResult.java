@@ -28,6 +28,7 @@ public class TestResult extends TestResultModel implements Comparable<TestResult
     final List<TestFailure> failures = new ArrayList<TestFailure>();
     final String name;
     boolean ignored;
+    boolean failed;
 
     public TestResult(String name, long duration, ClassTestResults classResults) {
         this.name = name;
@@ -53,7 +54,7 @@ public class TestResult extends TestResultModel implements Comparable<TestResult
         if (ignored) {
             return ResultType.SKIPPED;
         }
-        return failures.isEmpty() ? ResultType.SUCCESS : ResultType.FAILURE;
+        return failed ? ResultType.FAILURE : ResultType.SUCCESS;
     }
 
     @Override
@@ -81,6 +82,14 @@ public class TestResult extends TestResultModel implements Comparable<TestResult
     public void addFailure(TestFailure failure) {
         classResults.failed(this);
         failures.add(failure);
+        failed = true;
+    }
+
+    /**
+     * Discards the messages and stack traces of the failures of this test, once they are no longer required. The test is still reported as failed.
+     */
+    public void discardFailureDetails() {
+        failures.clear();
     }
 
     public void setIgnored() {
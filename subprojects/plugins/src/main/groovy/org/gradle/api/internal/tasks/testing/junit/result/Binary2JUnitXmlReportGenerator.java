@@ -19,10 +19,12 @@ package org.gradle.api.internal.tasks.testing.junit.result;
 import org.apache.commons.io.IOUtils;
 import org.gradle.api.Action;
 import org.gradle.api.GradleException;
+import org.gradle.api.Nullable;
 import org.gradle.api.logging.Logger;
 import org.gradle.api.logging.Logging;
 import org.gradle.util.Clock;
 import org.gradle.internal.FileUtils;
+import org.gradle.internal.concurrent.ExecutorFactory;
 
 import java.io.BufferedOutputStream;
 import java.io.File;
@@ -35,18 +37,27 @@ public class Binary2JUnitXmlReportGenerator {
 
     private final File testResultsDir;
     private final TestResultsProvider testResultsProvider;
+    private final ParallelTestClassVisitor classVisitor;
     JUnitXmlResultWriter saxWriter;
     private final static Logger LOG = Logging.getLogger(Binary2JUnitXmlReportGenerator.class);
 
     public Binary2JUnitXmlReportGenerator(File testResultsDir, TestResultsProvider testResultsProvider, TestOutputAssociation outputAssociation) {
+        this(testResultsDir, testResultsProvider, outputAssociation, null);
+    }
+
+    /**
+     * Creates a generator that writes the files of several classes at the same time, using the given executor factory.
+     */
+    public Binary2JUnitXmlReportGenerator(File testResultsDir, TestResultsProvider testResultsProvider, TestOutputAssociation outputAssociation, @Nullable ExecutorFactory executorFactory) {
         this.testResultsDir = testResultsDir;
         this.testResultsProvider = testResultsProvider;
+        this.classVisitor = new ParallelTestClassVisitor(executorFactory, "Generate JUnit XML test results");
         this.saxWriter = new JUnitXmlResultWriter(getHostname(), testResultsProvider, outputAssociation);
     }
 
     public void generate() {
         Clock clock = new Clock();
-        testResultsProvider.visitClasses(new Action<TestClassResult>() {
+        classVisitor.visitClasses(testResultsProvider, new Action<TestClassResult>() {
             public void execute(TestClassResult result) {
                 File file = new File(testResultsDir, getReportFileName(result));
                 OutputStream output = null;
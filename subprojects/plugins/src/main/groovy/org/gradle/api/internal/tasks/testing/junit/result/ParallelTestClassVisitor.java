@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.tasks.testing.junit.result;
+
+import org.gradle.api.Action;
+import org.gradle.api.Nullable;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.StoppableExecutor;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Visits the results of each test class of a {@link TestResultsProvider} using a bounded number of threads.
+ *
+ * <p>The classes are handed to the threads as the provider visits them, and only a few classes per thread are waiting at any time, so the results are
+ * streamed rather than all held in memory. The first failure of an action is rethrown once all classes are visited. The classes are visited on the
+ * calling thread when there is no executor factory.</p>
+ */
+public class ParallelTestClassVisitor {
+    private static final int PENDING_CLASSES_PER_THREAD = 4;
+
+    private final ExecutorFactory executorFactory;
+    private final String displayName;
+    private final int maxThreads;
+
+    public ParallelTestClassVisitor(@Nullable ExecutorFactory executorFactory, String displayName) {
+        this(executorFactory, displayName, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ParallelTestClassVisitor(@Nullable ExecutorFactory executorFactory, String displayName, int maxThreads) {
+        this.executorFactory = executorFactory;
+        this.displayName = displayName;
+        this.maxThreads = maxThreads;
+    }
+
+    public void visitClasses(TestResultsProvider resultsProvider, final Action<? super TestClassResult> action) {
+        if (executorFactory == null || maxThreads <= 1) {
+            resultsProvider.visitClasses(action);
+            return;
+        }
+
+        final StoppableExecutor executor = executorFactory.create(displayName, maxThreads);
+        final Semaphore pending = new Semaphore(maxThreads * PENDING_CLASSES_PER_THREAD);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        try {
+            resultsProvider.visitClasses(new Action<TestClassResult>() {
+                public void execute(final TestClassResult result) {
+                    pending.acquireUninterruptibly();
+                    executor.execute(new Runnable() {
+                        public void run() {
+                            try {
+                                if (failure.get() == null) {
+                                    action.execute(result);
+                                }
+                            } catch (Throwable t) {
+                                failure.compareAndSet(null, t);
+                            } finally {
+                                pending.release();
+                            }
+                        }
+                    });
+                }
+            });
+        } finally {
+            executor.stop();
+        }
+        if (failure.get() != null) {
+            throw UncheckedException.throwAsUncheckedException(failure.get());
+        }
+    }
+}
@@ -21,13 +21,18 @@ import com.esotericsoftware.kryo.io.Output;
 import com.google.common.collect.ImmutableMap;
 import org.gradle.api.UncheckedIOException;
 import org.gradle.api.tasks.testing.TestOutputEvent;
-import org.gradle.internal.io.RandomAccessFileInputStream;
 import org.gradle.internal.UncheckedException;
 import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
 import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -216,6 +221,9 @@ public class TestOutputStore {
         }
     }
 
+    /**
+     * Reads the output of the tests. The output of several tests can be read at the same time, from different threads.
+     */
     public class Reader implements Closeable {
         private final Index index;
         private final RandomAccessFile dataFile;
@@ -333,9 +341,9 @@ public class TestOutputStore {
             boolean ignoreTestLevel = !allClassOutput && testId == 0;
 
             try {
-                dataFile.seek(region.start);
                 long maxPos = region.stop - region.start;
-                KryoBackedDecoder decoder = new KryoBackedDecoder(new RandomAccessFileInputStream(dataFile));
+                KryoBackedDecoder decoder = new KryoBackedDecoder(new RegionInputStream(dataFile.getChannel(), region.start));
+                MessageCopier copier = null;
                 while (decoder.getReadPosition() <= maxPos) {
                     boolean readStdout = decoder.readBoolean();
                     long readClassId = decoder.readSmallLong();
@@ -360,17 +368,10 @@ public class TestOutputStore {
                     }
 
                     if (testId == 0 || testId == readTestId) {
-                        byte[] stringBytes = new byte[readLength];
-                        decoder.readBytes(stringBytes);
-                        String message;
-                        try {
-                            message = new String(stringBytes, messageStorageCharset.name());
-                        } catch (UnsupportedEncodingException e) {
-                            // shouldn't happen
-                            throw UncheckedException.throwAsUncheckedException(e);
+                        if (copier == null) {
+                            copier = new MessageCopier(writer);
                         }
-
-                        writer.write(message);
+                        copier.copy(decoder, readLength);
                     } else {
                         decoder.skipBytes(readLength);
                     }
@@ -381,6 +382,74 @@ public class TestOutputStore {
         }
     }
 
+    /**
+     * Reads the bytes of a file from a given position, without moving the position of the file. This way, several threads can read the same file.
+     */
+    private static class RegionInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+
+        RegionInputStream(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] buffer = new byte[1];
+            int count = read(buffer, 0, 1);
+            return count < 0 ? -1 : buffer[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int count = channel.read(ByteBuffer.wrap(bytes, offset, length), position);
+            if (count > 0) {
+                position += count;
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Decodes messages straight into a writer, reusing its buffers for all messages.
+     */
+    private class MessageCopier {
+        private final java.io.Writer writer;
+        private final CharsetDecoder charsetDecoder = messageStorageCharset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final CharBuffer chars = CharBuffer.allocate(4096);
+        private byte[] bytes = new byte[4096];
+
+        MessageCopier(java.io.Writer writer) {
+            this.writer = writer;
+        }
+
+        void copy(KryoBackedDecoder decoder, int length) throws IOException {
+            if (bytes.length < length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+            decoder.readBytes(bytes, 0, length);
+
+            ByteBuffer input = ByteBuffer.wrap(bytes, 0, length);
+            charsetDecoder.reset();
+            CoderResult result;
+            do {
+                result = charsetDecoder.decode(input, chars, true);
+                flushChars();
+            } while (result.isOverflow());
+            while (charsetDecoder.flush(chars).isOverflow()) {
+                flushChars();
+            }
+            flushChars();
+        }
+
+        private void flushChars() throws IOException {
+            chars.flip();
+            writer.write(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining());
+            chars.clear();
+        }
+    }
+
     // IMPORTANT: return must be closed when done with.
     public Reader reader() {
         return new Reader();
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.tasks.testing.processors;
+
+import org.gradle.api.internal.tasks.testing.*;
+import org.gradle.api.internal.tasks.testing.worker.TestWorkerFailureListener;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.tasks.testing.TestOutputEvent;
+import org.gradle.internal.Factory;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.concurrent.CompositeStoppable;
+import org.gradle.messaging.actor.Actor;
+import org.gradle.messaging.actor.ActorFactory;
+import org.gradle.messaging.dispatch.DispatchException;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Manages a set of parallel TestClassProcessors, which pull test classes from a shared queue. The queue is filled once all test classes have been received,
+ * longest first according to the durations of a previous run, so that the processors finish at about the same time.
+ *
+ * <p>A processor is given its next test class when it reports that its current test class has completed. This only works with test frameworks that execute
+ * each test class as it is received, and report it as a test with the class name of the test class.</p>
+ */
+public class BalancedParallelTestClassProcessor implements TestClassProcessor {
+    /**
+     * Set to true to balance the test classes across the forks of a JUnit test task.
+     */
+    public static final String ENABLED_PROPERTY = "org.gradle.test.forks.balanced";
+
+    private static final Logger LOGGER = Logging.getLogger(BalancedParallelTestClassProcessor.class);
+    private final int maxProcessors;
+    private final Factory<TestClassProcessor> factory;
+    private final ActorFactory actorFactory;
+    private final TestClassDurations durations;
+    private final List<TestClassRunInfo> testClasses = new ArrayList<TestClassRunInfo>();
+    private final List<TestClassProcessor> processors = new ArrayList<TestClassProcessor>();
+    private final List<Actor> actors = new ArrayList<Actor>();
+    private final Lock lock = new ReentrantLock();
+    private final Condition condition = lock.newCondition();
+    private final LinkedList<TestClassRunInfo> queue = new LinkedList<TestClassRunInfo>();
+    private int runningForks;
+    private TestResultProcessor resultProcessor;
+    private Actor resultProcessorActor;
+
+    public BalancedParallelTestClassProcessor(int maxProcessors, Factory<TestClassProcessor> factory, ActorFactory actorFactory, TestClassDurations durations) {
+        this.maxProcessors = maxProcessors;
+        this.factory = factory;
+        this.actorFactory = actorFactory;
+        this.durations = durations;
+    }
+
+    public void startProcessing(TestResultProcessor resultProcessor) {
+        resultProcessorActor = actorFactory.createActor(resultProcessor);
+        this.resultProcessor = resultProcessorActor.getProxy(TestResultProcessor.class);
+    }
+
+    public void processTestClass(TestClassRunInfo testClass) {
+        testClasses.add(testClass);
+    }
+
+    public void stop() {
+        try {
+            try {
+                runTestClasses();
+            } finally {
+                CompositeStoppable.stoppable(processors).add(actors).add(resultProcessorActor).stop();
+            }
+        } catch (DispatchException e) {
+            throw UncheckedException.throwAsUncheckedException(e.getCause());
+        }
+    }
+
+    private void runTestClasses() {
+        durations.sortLongestFirst(testClasses);
+        int forkCount = Math.min(maxProcessors, testClasses.size());
+        LOGGER.debug("Running {} test classes in {} balanced forks.", testClasses.size(), forkCount);
+
+        List<Fork> forks = new ArrayList<Fork>(forkCount);
+        lock.lock();
+        try {
+            queue.addAll(testClasses);
+            testClasses.clear();
+            for (int i = 0; i < forkCount; i++) {
+                forks.add(new Fork());
+            }
+            runningForks = forkCount;
+        } finally {
+            lock.unlock();
+        }
+
+        for (Fork fork : forks) {
+            Actor actor = actorFactory.createActor(new FailureTrackingTestClassProcessor(factory.create(), fork));
+            fork.processor = actor.getProxy(TestClassProcessor.class);
+            actors.add(actor);
+            processors.add(fork.processor);
+            fork.processor.startProcessing(fork);
+        }
+        for (Fork fork : forks) {
+            dispatchNext(fork);
+        }
+
+        // Wait until every class has been handed to a fork. The classes still running complete when the forks are stopped.
+        lock.lock();
+        try {
+            while (!queue.isEmpty() && runningForks > 0) {
+                condition.await();
+            }
+        } catch (InterruptedException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void dispatchNext(Fork fork) {
+        TestClassRunInfo testClass;
+        lock.lock();
+        try {
+            if (fork.failed) {
+                return;
+            }
+            testClass = queue.poll();
+            fork.currentClass = testClass == null ? null : testClass.getTestClassName();
+            fork.currentId = null;
+            if (queue.isEmpty()) {
+                condition.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (testClass != null) {
+            fork.processor.processTestClass(testClass);
+        }
+    }
+
+    private void forkFailed(Fork fork) {
+        lock.lock();
+        try {
+            if (!fork.failed) {
+                fork.failed = true;
+                runningForks--;
+                condition.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forwards the results of a fork, and hands the fork its next test class when its current test class completes.
+     */
+    private class Fork implements TestResultProcessor, TestWorkerFailureListener {
+        // Guarded by the lock
+        private String currentClass;
+        private Object currentId;
+        private boolean failed;
+        private TestClassProcessor processor;
+
+        public void started(TestDescriptorInternal test, TestStartEvent event) {
+            resultProcessor.started(test, event);
+            if (test.isComposite() && test.getClassName() != null) {
+                lock.lock();
+                try {
+                    if (currentId == null && test.getClassName().equals(currentClass)) {
+                        currentId = test.getId();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        public void completed(Object testId, TestCompleteEvent event) {
+            resultProcessor.completed(testId, event);
+            boolean classCompleted;
+            lock.lock();
+            try {
+                classCompleted = testId.equals(currentId);
+            } finally {
+                lock.unlock();
+            }
+            if (classCompleted) {
+                dispatchNext(this);
+            }
+        }
+
+        public void output(Object testId, TestOutputEvent event) {
+            resultProcessor.output(testId, event);
+        }
+
+        public void failure(Object testId, Throwable result) {
+            resultProcessor.failure(testId, result);
+        }
+
+        public void workerFailed(Throwable failure) {
+            forkFailed(this);
+        }
+    }
+
+    /**
+     * Stops handing test classes to a fork that cannot process them. The failure itself is reported when the fork is stopped.
+     */
+    private class FailureTrackingTestClassProcessor implements TestClassProcessor {
+        private final TestClassProcessor delegate;
+        private final Fork fork;
+
+        private FailureTrackingTestClassProcessor(TestClassProcessor delegate, Fork fork) {
+            this.delegate = delegate;
+            this.fork = fork;
+        }
+
+        public void startProcessing(TestResultProcessor resultProcessor) {
+            delegate.startProcessing(resultProcessor);
+        }
+
+        public void processTestClass(TestClassRunInfo testClass) {
+            try {
+                delegate.processTestClass(testClass);
+            } catch (RuntimeException e) {
+                forkFailed(fork);
+                throw e;
+            } catch (Error e) {
+                forkFailed(fork);
+                throw e;
+            }
+        }
+
+        public void stop() {
+            delegate.stop();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.tasks.testing.processors;
+
+import org.gradle.api.Action;
+import org.gradle.api.internal.tasks.testing.TestClassRunInfo;
+import org.gradle.api.internal.tasks.testing.junit.result.TestClassResult;
+import org.gradle.api.internal.tasks.testing.junit.result.TestResultSerializer;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The durations of the test classes of a previous test run, as recorded in its binary results.
+ */
+public class TestClassDurations {
+    public static final TestClassDurations NONE = new TestClassDurations(Collections.<String, Long>emptyMap());
+
+    private static final Logger LOGGER = Logging.getLogger(TestClassDurations.class);
+
+    private final Map<String, Long> durations;
+
+    TestClassDurations(Map<String, Long> durations) {
+        this.durations = durations;
+    }
+
+    /**
+     * Reads the durations from the binary results in the given directory. Returns {@link #NONE} when there are no usable results.
+     */
+    public static TestClassDurations read(File binaryResultsDir) {
+        final Map<String, Long> durations = new HashMap<String, Long>();
+        try {
+            new TestResultSerializer(binaryResultsDir).read(new Action<TestClassResult>() {
+                public void execute(TestClassResult result) {
+                    durations.put(result.getClassName(), result.getDuration());
+                }
+            });
+        } catch (Exception e) {
+            LOGGER.debug("Could not read the test class durations from {}.", binaryResultsDir, e);
+            return NONE;
+        }
+        return durations.isEmpty() ? NONE : new TestClassDurations(durations);
+    }
+
+    /**
+     * Returns the recorded duration of the given test class in milliseconds, or -1 if it has no recorded duration.
+     */
+    public long getDuration(String className) {
+        Long duration = durations.get(className);
+        return duration == null ? -1 : duration;
+    }
+
+    /**
+     * Sorts the given test classes longest first. Classes without a recorded duration are sorted first, as they are most likely new and may be long.
+     * Otherwise the order of the given classes is kept.
+     */
+    public void sortLongestFirst(List<TestClassRunInfo> testClasses) {
+        Collections.sort(testClasses, new Comparator<TestClassRunInfo>() {
+            public int compare(TestClassRunInfo left, TestClassRunInfo right) {
+                long leftDuration = getDuration(left.getTestClassName());
+                long rightDuration = getDuration(right.getTestClassName());
+                if (leftDuration < 0 || rightDuration < 0) {
+                    return leftDuration < 0 ? (rightDuration < 0 ? 0 : -1) : 1;
+                }
+                return leftDuration > rightDuration ? -1 : (leftDuration < rightDuration ? 1 : 0);
+            }
+        });
+    }
+}
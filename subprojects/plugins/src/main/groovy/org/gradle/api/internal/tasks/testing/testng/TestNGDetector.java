@@ -16,48 +16,39 @@
 package org.gradle.api.internal.tasks.testing.testng;
 
 import org.gradle.api.internal.tasks.testing.detection.AbstractTestFrameworkDetector;
-import org.gradle.api.internal.tasks.testing.detection.ClassFileExtractionManager;
-import org.gradle.api.internal.tasks.testing.detection.TestClassVisitor;
+import org.gradle.api.internal.tasks.testing.detection.TestClassInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
-
 class TestNGDetector extends AbstractTestFrameworkDetector<TestNGTestClassDetecter> {
     private static final Logger LOGGER = LoggerFactory.getLogger(TestNGDetector.class);
 
-    TestNGDetector(ClassFileExtractionManager classFileExtractionManager) {
-        super(classFileExtractionManager);
-    }
-
     protected TestNGTestClassDetecter createClassVisitor() {
         return new TestNGTestClassDetecter(this);
     }
 
     /**
-     * Uses a TestClassVisitor to detect whether the class in the testClassFile is a test class. <p/> If the class is not a test, this function will go up the inheritance tree to check if a parent
+     * Uses the class info of a test class file to detect whether the class is a test class. <p/> If the class is not a test, this function will go up the inheritance tree to check if a parent
      * class is a test class. First the package of the parent class is checked, if it is a java.lang or groovy.lang the class can't be a test class, otherwise the parent class is scanned. <p/> When a
      * parent class is a test class all the extending classes are marked as test classes.
      */
-    protected boolean processTestClass(final File testClassFile, boolean superClass) {
-        final TestClassVisitor classVisitor = classVisitor(testClassFile);
-
-        boolean isTest = classVisitor.isTest();
+    protected boolean processTestClass(final TestClassInfo classInfo, boolean superClass) {
+        boolean isTest = classInfo.isTest();
 
         if (!isTest) {
-            final String superClassName = classVisitor.getSuperClassName();
+            final String superClassName = classInfo.getSuperClassName();
 
-            final File superClassFile = getSuperTestClassFile(superClassName);
+            final TestClassInfo superClassInfo = getSuperClassInfo(superClassName);
 
-            if (superClassFile != null) {
-                isTest = processSuperClass(superClassFile);
+            if (superClassInfo != null) {
+                isTest = processSuperClass(superClassInfo);
             } else {
                 LOGGER.debug("test-class-scan : failed to scan parent class {}, could not find the class file",
                         superClassName);
             }
         }
 
-        publishTestClass(isTest, classVisitor, superClass);
+        publishTestClass(isTest, classInfo, superClass);
 
         return isTest;
     }
@@ -17,13 +17,17 @@
 package org.gradle.api.internal.tasks.testing.worker;
 
 import org.gradle.api.Action;
+import org.gradle.api.Nullable;
 import org.gradle.api.internal.tasks.testing.TestClassProcessor;
 import org.gradle.api.internal.tasks.testing.TestClassRunInfo;
 import org.gradle.api.internal.tasks.testing.TestResultProcessor;
 import org.gradle.api.internal.tasks.testing.WorkerTestClassProcessorFactory;
 import org.gradle.internal.Factory;
 import org.gradle.messaging.remote.ObjectConnection;
+import org.gradle.process.ExecResult;
 import org.gradle.process.JavaForkOptions;
+import org.gradle.process.internal.ExecHandle;
+import org.gradle.process.internal.ExecHandleListener;
 import org.gradle.process.internal.WorkerProcess;
 import org.gradle.process.internal.WorkerProcessBuilder;
 
@@ -35,16 +39,27 @@ public class ForkingTestClassProcessor implements TestClassProcessor {
     private final JavaForkOptions options;
     private final Iterable<File> classPath;
     private final Action<WorkerProcessBuilder> buildConfigAction;
+    private final TestWorkerPool workerPool;
     private RemoteTestClassProcessor remoteProcessor;
     private WorkerProcess workerProcess;
+    private PooledTestWorker pooledWorker;
     private TestResultProcessor resultProcessor;
 
     public ForkingTestClassProcessor(Factory<WorkerProcessBuilder> workerFactory, WorkerTestClassProcessorFactory processorFactory, JavaForkOptions options, Iterable<File> classPath, Action<WorkerProcessBuilder> buildConfigAction) {
+        this(workerFactory, processorFactory, options, classPath, buildConfigAction, null);
+    }
+
+    /**
+     * @param workerPool the pool to take the worker from and to return it to, or null to use a new worker that exits when this processor is stopped.
+     */
+    public ForkingTestClassProcessor(Factory<WorkerProcessBuilder> workerFactory, WorkerTestClassProcessorFactory processorFactory, JavaForkOptions options, Iterable<File> classPath, Action<WorkerProcessBuilder> buildConfigAction,
+                                     @Nullable TestWorkerPool workerPool) {
         this.workerFactory = workerFactory;
         this.processorFactory = processorFactory;
         this.options = options;
         this.classPath = classPath;
         this.buildConfigAction = buildConfigAction;
+        this.workerPool = workerPool;
     }
 
     public void startProcessing(TestResultProcessor resultProcessor) {
@@ -53,20 +68,17 @@ public class ForkingTestClassProcessor implements TestClassProcessor {
 
     public void processTestClass(TestClassRunInfo testClass) {
         if (remoteProcessor == null) {
-            remoteProcessor = forkProcess();
+            remoteProcessor = workerPool == null ? forkProcess() : leaseWorker();
         }
 
         remoteProcessor.processTestClass(testClass);
     }
 
     RemoteTestClassProcessor forkProcess() {
-        WorkerProcessBuilder builder = workerFactory.create();
-        builder.setBaseName("Gradle Test Executor");
-        builder.applicationClasspath(classPath);
-        builder.setLoadApplicationInSystemClassLoader(true);
-        builder.worker(new TestWorker(processorFactory));
-        options.copyTo(builder.getJavaCommand());
-        buildConfigAction.execute(builder);
+        WorkerProcessBuilder builder = createWorkerBuilder(new TestWorker(processorFactory));
+        if (resultProcessor instanceof TestWorkerFailureListener) {
+            builder.getJavaCommand().listener(new WorkerFailureNotifier((TestWorkerFailureListener) resultProcessor));
+        }
 
         workerProcess = builder.build();
         workerProcess.start();
@@ -80,10 +92,71 @@ public class ForkingTestClassProcessor implements TestClassProcessor {
         return remoteProcessor;
     }
 
+    private RemoteTestClassProcessor leaseWorker() {
+        WorkerProcessBuilder builder = createWorkerBuilder(new TestWorker(processorFactory, true));
+        TestWorkerSpec spec = TestWorkerSpec.of(builder);
+        pooledWorker = workerPool.reserveIdleWorker(spec);
+        if (pooledWorker == null) {
+            pooledWorker = new PooledTestWorker(spec, workerPool);
+            builder.getJavaCommand().listener(pooledWorker);
+
+            WorkerProcess workerProcess = builder.build();
+            workerProcess.start();
+
+            ObjectConnection connection = workerProcess.getConnection();
+            connection.useParameterSerializer(new TestEventSerializer());
+            connection.addIncoming(TestResultProcessor.class, pooledWorker);
+            RemoteTestClassProcessor remoteProcessor = connection.addOutgoing(RemoteTestClassProcessor.class);
+            connection.connect();
+            pooledWorker.attach(workerProcess, remoteProcessor);
+            workerPool.add(pooledWorker);
+        }
+        return pooledWorker.startSession(resultProcessor);
+    }
+
+    private WorkerProcessBuilder createWorkerBuilder(TestWorker worker) {
+        WorkerProcessBuilder builder = workerFactory.create();
+        builder.setBaseName("Gradle Test Executor");
+        builder.applicationClasspath(classPath);
+        builder.setLoadApplicationInSystemClassLoader(true);
+        builder.worker(worker);
+        options.copyTo(builder.getJavaCommand());
+        buildConfigAction.execute(builder);
+        return builder;
+    }
+
     public void stop() {
-        if (remoteProcessor != null) {
+        if (pooledWorker != null) {
+            PooledTestWorker worker = pooledWorker;
+            pooledWorker = null;
+            remoteProcessor = null;
+            if (worker.stopSession()) {
+                workerPool.release(worker);
+            } else {
+                workerPool.discard(worker);
+            }
+        } else if (remoteProcessor != null) {
             remoteProcessor.stop();
             workerProcess.waitForStop();
         }
     }
+
+    private static class WorkerFailureNotifier implements ExecHandleListener {
+        private final TestWorkerFailureListener listener;
+
+        private WorkerFailureNotifier(TestWorkerFailureListener listener) {
+            this.listener = listener;
+        }
+
+        public void executionStarted(ExecHandle execHandle) {
+        }
+
+        public void executionFinished(ExecHandle execHandle, ExecResult execResult) {
+            try {
+                execResult.rethrowFailure().assertNormalExitValue();
+            } catch (Throwable e) {
+                listener.workerFailed(e);
+            }
+        }
+    }
 }
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.tasks.testing.worker;
+
+import org.gradle.api.internal.tasks.testing.TestCompleteEvent;
+import org.gradle.api.internal.tasks.testing.TestDescriptorInternal;
+import org.gradle.api.internal.tasks.testing.TestResultProcessor;
+import org.gradle.api.internal.tasks.testing.TestStartEvent;
+import org.gradle.api.tasks.testing.TestOutputEvent;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.process.ExecResult;
+import org.gradle.process.internal.ExecHandle;
+import org.gradle.process.internal.ExecHandleListener;
+import org.gradle.process.internal.WorkerProcess;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A reusable test worker process, which runs the test classes of one test task at a time. Each lease of the worker is a session, which ends when the worker
+ * has reported the results of all its test classes. A worker process that exits without being asked to is removed from its pool.
+ */
+class PooledTestWorker implements TestResultProcessor, TestWorkerFailureListener, ExecHandleListener, Stoppable {
+    private final TestWorkerSpec spec;
+    private final TestWorkerPool pool;
+    private final Lock lock = new ReentrantLock();
+    private final Condition condition = lock.newCondition();
+    private WorkerProcess workerProcess;
+    private RemoteTestClassProcessor remoteProcessor;
+    private TestResultProcessor sessionProcessor;
+    private Object sessionSuiteId;
+    private boolean sessionRunning;
+    private boolean failed;
+    private boolean exiting;
+
+    PooledTestWorker(TestWorkerSpec spec, TestWorkerPool pool) {
+        this.spec = spec;
+        this.pool = pool;
+    }
+
+    void attach(WorkerProcess workerProcess, RemoteTestClassProcessor remoteProcessor) {
+        this.workerProcess = workerProcess;
+        this.remoteProcessor = remoteProcessor;
+    }
+
+    public boolean isCompatibleWith(TestWorkerSpec spec) {
+        lock.lock();
+        try {
+            return !failed && this.spec.equals(spec);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean hasFailed() {
+        lock.lock();
+        try {
+            return failed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Starts a session, which reports its results to the given processor.
+     */
+    public RemoteTestClassProcessor startSession(TestResultProcessor resultProcessor) {
+        lock.lock();
+        try {
+            sessionProcessor = resultProcessor;
+            sessionSuiteId = null;
+            sessionRunning = true;
+        } finally {
+            lock.unlock();
+        }
+        remoteProcessor.startProcessing();
+        return remoteProcessor;
+    }
+
+    /**
+     * Stops the current session and waits for its results.
+     *
+     * @return false when the worker process has failed, and cannot be used again.
+     */
+    public boolean stopSession() {
+        remoteProcessor.stop();
+        lock.lock();
+        try {
+            while (sessionRunning && !failed) {
+                condition.await();
+            }
+            sessionProcessor = null;
+            return !failed;
+        } catch (InterruptedException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Makes the worker process exit, and rethrows its failure, if any.
+     */
+    public void stop() {
+        boolean exit;
+        lock.lock();
+        try {
+            exiting = true;
+            exit = !failed;
+        } finally {
+            lock.unlock();
+        }
+        if (exit) {
+            remoteProcessor.exit();
+        }
+        workerProcess.waitForStop();
+    }
+
+    public void started(TestDescriptorInternal test, TestStartEvent event) {
+        TestResultProcessor target;
+        lock.lock();
+        try {
+            if (sessionSuiteId == null && test instanceof WorkerTestClassProcessor.WorkerTestSuiteDescriptor) {
+                sessionSuiteId = test.getId();
+            }
+            target = sessionProcessor;
+        } finally {
+            lock.unlock();
+        }
+        if (target != null) {
+            target.started(test, event);
+        }
+    }
+
+    public void completed(Object testId, TestCompleteEvent event) {
+        TestResultProcessor target;
+        lock.lock();
+        try {
+            target = sessionProcessor;
+        } finally {
+            lock.unlock();
+        }
+        if (target != null) {
+            target.completed(testId, event);
+        }
+
+        lock.lock();
+        try {
+            // The worker suite is the last to complete in a session
+            if (testId.equals(sessionSuiteId)) {
+                sessionRunning = false;
+                condition.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void output(Object testId, TestOutputEvent event) {
+        TestResultProcessor target = getSessionProcessor();
+        if (target != null) {
+            target.output(testId, event);
+        }
+    }
+
+    public void failure(Object testId, Throwable result) {
+        TestResultProcessor target = getSessionProcessor();
+        if (target != null) {
+            target.failure(testId, result);
+        }
+    }
+
+    public void workerFailed(Throwable failure) {
+        TestResultProcessor target = markFailed();
+        if (target instanceof TestWorkerFailureListener) {
+            ((TestWorkerFailureListener) target).workerFailed(failure);
+        }
+    }
+
+    public void executionStarted(ExecHandle execHandle) {
+    }
+
+    public void executionFinished(ExecHandle execHandle, ExecResult execResult) {
+        try {
+            execResult.rethrowFailure().assertNormalExitValue();
+        } catch (Throwable e) {
+            workerFailed(e);
+            return;
+        }
+        // A worker that cannot reset its state exits normally once its session is complete
+        markFailed();
+    }
+
+    private TestResultProcessor markFailed() {
+        TestResultProcessor target;
+        boolean remove;
+        lock.lock();
+        try {
+            failed = true;
+            remove = !exiting;
+            target = sessionProcessor;
+            condition.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (remove) {
+            pool.remove(this);
+        }
+        return target;
+    }
+
+    private TestResultProcessor getSessionProcessor() {
+        lock.lock();
+        try {
+            return sessionProcessor;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return spec.toString();
+    }
+}
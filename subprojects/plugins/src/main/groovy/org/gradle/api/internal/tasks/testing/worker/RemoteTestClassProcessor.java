@@ -33,7 +33,12 @@ public interface RemoteTestClassProcessor {
     void processTestClass(TestClassRunInfo testClass);
 
     /**
-     * Does not block.
+     * Does not block. A reusable worker waits to be started again, other workers exit.
      */
     void stop();
+
+    /**
+     * Does not block. Makes a reusable worker exit.
+     */
+    void exit();
 }
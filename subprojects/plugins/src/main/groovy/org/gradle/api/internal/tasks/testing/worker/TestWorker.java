@@ -40,18 +40,40 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.TimeZone;
 import java.util.concurrent.CountDownLatch;
 
+/**
+ * Runs test classes in a worker process.
+ *
+ * <p>A reusable worker does not exit when it is stopped. Instead it resets the JVM-wide state that tests commonly change, that is the system properties, the
+ * security manager, the default locale and the default time zone, and then waits to be started again. Any other static state of the test classes and the
+ * libraries they use is kept, as it is when several test classes run in the same worker.</p>
+ */
 public class TestWorker implements Action<WorkerProcessContext>, RemoteTestClassProcessor, Serializable {
     private static final Logger LOGGER = LoggerFactory.getLogger(TestWorker.class);
     public static final String WORKER_ID_SYS_PROPERTY = "org.gradle.test.worker";
     private final WorkerTestClassProcessorFactory factory;
+    private final boolean reusable;
     private CountDownLatch completed;
     private TestClassProcessor processor;
     private TestResultProcessor resultProcessor;
+    private WorkerProcessContext workerProcessContext;
+    private ServiceRegistry testServices;
+    private Properties systemProperties;
+    private Locale defaultLocale;
+    private TimeZone defaultTimeZone;
+    private boolean securityManagerRetained;
 
     public TestWorker(WorkerTestClassProcessorFactory factory) {
+        this(factory, false);
+    }
+
+    public TestWorker(WorkerTestClassProcessorFactory factory, boolean reusable) {
         this.factory = factory;
+        this.reusable = reusable;
     }
 
     public void execute(final WorkerProcessContext workerProcessContext) {
@@ -60,6 +82,12 @@ public class TestWorker implements Action<WorkerProcessContext>, RemoteTestClass
         completed = new CountDownLatch(1);
 
         System.setProperty(WORKER_ID_SYS_PROPERTY, workerProcessContext.getWorkerId().toString());
+        if (reusable) {
+            systemProperties = new Properties();
+            systemProperties.putAll(System.getProperties());
+            defaultLocale = Locale.getDefault();
+            defaultTimeZone = TimeZone.getDefault();
+        }
 
         DefaultServiceRegistry testServices = new TestFrameworkServiceRegistry(workerProcessContext);
         startReceivingTests(workerProcessContext, testServices);
@@ -73,12 +101,26 @@ public class TestWorker implements Action<WorkerProcessContext>, RemoteTestClass
         } finally {
             LOGGER.info("{} finished executing tests.", workerProcessContext.getDisplayName());
             // Clean out any security manager the tests might have installed
-            System.setSecurityManager(null);
+            if (!securityManagerRetained) {
+                System.setSecurityManager(null);
+            }
             testServices.close();
         }
     }
 
     private void startReceivingTests(WorkerProcessContext workerProcessContext, ServiceRegistry testServices) {
+        this.workerProcessContext = workerProcessContext;
+        this.testServices = testServices;
+        processor = createProcessor();
+
+        ObjectConnection serverConnection = workerProcessContext.getServerConnection();
+        serverConnection.useParameterSerializer(new TestEventSerializer());
+        this.resultProcessor = serverConnection.addOutgoing(TestResultProcessor.class);
+        serverConnection.addIncoming(RemoteTestClassProcessor.class, this);
+        serverConnection.connect();
+    }
+
+    private TestClassProcessor createProcessor() {
         TestClassProcessor targetProcessor = factory.create(testServices);
         IdGenerator<Object> idGenerator = testServices.get(IdGenerator.class);
 
@@ -86,13 +128,7 @@ public class TestWorker implements Action<WorkerProcessContext>, RemoteTestClass
                 workerProcessContext.getDisplayName(), testServices.get(TimeProvider.class));
         ContextClassLoaderProxy<TestClassProcessor> proxy = new ContextClassLoaderProxy<TestClassProcessor>(
                 TestClassProcessor.class, targetProcessor, workerProcessContext.getApplicationClassLoader());
-        processor = proxy.getSource();
-
-        ObjectConnection serverConnection = workerProcessContext.getServerConnection();
-        serverConnection.useParameterSerializer(new TestEventSerializer());
-        this.resultProcessor = serverConnection.addOutgoing(TestResultProcessor.class);
-        serverConnection.addIncoming(RemoteTestClassProcessor.class, this);
-        serverConnection.connect();
+        return proxy.getSource();
     }
 
     public void startProcessing() {
@@ -115,8 +151,38 @@ public class TestWorker implements Action<WorkerProcessContext>, RemoteTestClass
         try {
             processor.stop();
         } finally {
-            completed.countDown();
+            if (reusable && resetState()) {
+                processor = createProcessor();
+            } else {
+                completed.countDown();
+            }
+        }
+    }
+
+    public void exit() {
+        completed.countDown();
+    }
+
+    /**
+     * Resets the state of the JVM for the next session.
+     *
+     * @return false when the state cannot be reset, in which case this worker exits rather than being used again.
+     */
+    private boolean resetState() {
+        try {
+            System.setSecurityManager(null);
+        } catch (SecurityException e) {
+            LOGGER.info(String.format("%s cannot remove the security manager installed by the tests, so it will not be used again.", workerProcessContext.getDisplayName()), e);
+            securityManagerRetained = true;
+            return false;
         }
+        Properties properties = System.getProperties();
+        properties.clear();
+        properties.putAll(systemProperties);
+        Locale.setDefault(defaultLocale);
+        TimeZone.setDefault(defaultTimeZone);
+        Thread.interrupted();
+        return true;
     }
 
     private static class TestFrameworkServiceRegistry extends DefaultServiceRegistry {
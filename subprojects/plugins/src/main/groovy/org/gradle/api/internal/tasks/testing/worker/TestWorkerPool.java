@@ -0,0 +1,146 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.tasks.testing.worker;
+
+import net.jcip.annotations.ThreadSafe;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.internal.concurrent.Stoppable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Keeps idle test worker processes, so that they can be used by later test tasks, in this build or in later builds run by the same daemon.
+ *
+ * <p>A worker is only used again by a test task that would start an identical worker, with the same JVM, JVM arguments, environment and classpath,
+ * where the classpath entries have not changed since the worker was started. Between two uses the worker resets its system properties, security manager,
+ * default locale and default time zone. Other static state is kept, so the pool should only be used for tests that do not depend on running in a fresh
+ * JVM. Test tasks that use {@code forkEvery} never use the pool.</p>
+ */
+@ThreadSafe
+public class TestWorkerPool implements Stoppable {
+    /**
+     * Set to true to keep the test workers after the test task has finished.
+     */
+    public static final String ENABLED_PROPERTY = "org.gradle.test.workers.reuse";
+    /**
+     * The maximum number of idle test workers that are kept.
+     */
+    public static final String MAX_IDLE_WORKERS_PROPERTY = "org.gradle.test.workers.maxIdle";
+
+    private static final Logger LOGGER = Logging.getLogger(TestWorkerPool.class);
+    private final Object lock = new Object();
+    private final List<PooledTestWorker> allWorkers = new ArrayList<PooledTestWorker>();
+    // Least recently used first
+    private final LinkedList<PooledTestWorker> idleWorkers = new LinkedList<PooledTestWorker>();
+    private final int maxIdleWorkers;
+
+    public TestWorkerPool(int maxIdleWorkers) {
+        this.maxIdleWorkers = maxIdleWorkers;
+    }
+
+    PooledTestWorker reserveIdleWorker(TestWorkerSpec spec) {
+        synchronized (lock) {
+            Iterator<PooledTestWorker> it = idleWorkers.descendingIterator();
+            while (it.hasNext()) {
+                PooledTestWorker candidate = it.next();
+                if (candidate.isCompatibleWith(spec)) {
+                    it.remove();
+                    LOGGER.debug("Reusing {}.", candidate);
+                    return candidate;
+                }
+            }
+            return null;
+        }
+    }
+
+    void add(PooledTestWorker worker) {
+        synchronized (lock) {
+            allWorkers.add(worker);
+        }
+    }
+
+    void release(PooledTestWorker worker) {
+        List<PooledTestWorker> evicted = new ArrayList<PooledTestWorker>();
+        synchronized (lock) {
+            // The worker may have exited after reporting its results
+            if (worker.hasFailed()) {
+                allWorkers.remove(worker);
+                evicted.add(worker);
+            } else {
+                idleWorkers.addLast(worker);
+            }
+            while (idleWorkers.size() > maxIdleWorkers) {
+                PooledTestWorker oldest = idleWorkers.removeFirst();
+                allWorkers.remove(oldest);
+                evicted.add(oldest);
+            }
+        }
+        stopQuietly(evicted);
+    }
+
+    /**
+     * Removes a worker whose process has exited. The worker is not stopped, as there is nothing left to stop.
+     */
+    void remove(PooledTestWorker worker) {
+        synchronized (lock) {
+            if (idleWorkers.remove(worker)) {
+                LOGGER.debug("Removing {}, as it exited while idle.", worker);
+            }
+            allWorkers.remove(worker);
+        }
+    }
+
+    /**
+     * Stops a worker that cannot be used again, and rethrows its failure, if any.
+     */
+    void discard(PooledTestWorker worker) {
+        synchronized (lock) {
+            allWorkers.remove(worker);
+        }
+        worker.stop();
+    }
+
+    public void stop() {
+        List<PooledTestWorker> workers;
+        synchronized (lock) {
+            workers = new ArrayList<PooledTestWorker>(allWorkers);
+            allWorkers.clear();
+            idleWorkers.clear();
+        }
+        LOGGER.debug("Stopping {} test worker(s).", workers.size());
+        stopQuietly(workers);
+    }
+
+    /**
+     * Stops workers that no test task is using, so a failure to stop one of them is not the failure of a test task.
+     */
+    private static void stopQuietly(Collection<PooledTestWorker> workers) {
+        for (PooledTestWorker worker : workers) {
+            try {
+                worker.stop();
+            } catch (Throwable e) {
+                LOGGER.info(String.format("Could not stop %s.", worker), e);
+            }
+        }
+    }
+}
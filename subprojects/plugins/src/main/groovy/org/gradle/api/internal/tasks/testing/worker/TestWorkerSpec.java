@@ -0,0 +1,146 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.tasks.testing.worker;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import org.gradle.internal.UncheckedException;
+import org.gradle.process.internal.JavaExecHandleBuilder;
+import org.gradle.process.internal.WorkerProcessBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.*;
+
+/**
+ * Describes a test worker process: how it is started and what it runs. Two test workers with equal specs can be used interchangeably.
+ */
+class TestWorkerSpec {
+    private final String executable;
+    private final List<String> jvmArgs;
+    private final Map<String, String> environment;
+    private final File workingDir;
+    private final List<File> classpath;
+    private final String classpathFingerprint;
+    private final Set<String> sharedPackages;
+    private final String logLevel;
+    private final String workerFingerprint;
+
+    private TestWorkerSpec(String executable, List<String> jvmArgs, Map<String, String> environment, File workingDir, List<File> classpath,
+                           String classpathFingerprint, Set<String> sharedPackages, String logLevel, String workerFingerprint) {
+        this.executable = executable;
+        this.jvmArgs = jvmArgs;
+        this.environment = environment;
+        this.workingDir = workingDir;
+        this.classpath = classpath;
+        this.classpathFingerprint = classpathFingerprint;
+        this.sharedPackages = sharedPackages;
+        this.logLevel = logLevel;
+        this.workerFingerprint = workerFingerprint;
+    }
+
+    /**
+     * Creates the spec of the worker process that the given builder would start. The classes on the classpath are part of the spec, so a worker with
+     * classes that have since changed is not used again.
+     */
+    public static TestWorkerSpec of(WorkerProcessBuilder builder) {
+        JavaExecHandleBuilder javaCommand = builder.getJavaCommand();
+        Map<String, String> environment = new TreeMap<String, String>();
+        for (Map.Entry<String, Object> entry : javaCommand.getEnvironment().entrySet()) {
+            environment.put(entry.getKey(), String.valueOf(entry.getValue()));
+        }
+        List<File> classpath = new ArrayList<File>(builder.getApplicationClasspath());
+        return new TestWorkerSpec(javaCommand.getExecutable(), new ArrayList<String>(javaCommand.getAllJvmArgs()), environment, javaCommand.getWorkingDir(),
+                classpath, fingerprint(classpath), new TreeSet<String>(builder.getSharedPackages()), String.valueOf(builder.getLogLevel()), fingerprint(builder.getWorker()));
+    }
+
+    private static String fingerprint(List<File> classpath) {
+        Hasher hasher = Hashing.md5().newHasher();
+        for (File file : classpath) {
+            fingerprint(file, hasher);
+        }
+        return hasher.hash().toString();
+    }
+
+    private static void fingerprint(File file, Hasher hasher) {
+        hasher.putString(file.getPath(), Charsets.UTF_8);
+        if (file.isFile()) {
+            // Hash the content, as a file can change without changing its length or its timestamp
+            try {
+                hasher.putBytes(Files.hash(file, Hashing.md5()).asBytes());
+            } catch (IOException e) {
+                throw UncheckedException.throwAsUncheckedException(e);
+            }
+        } else if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                Arrays.sort(children);
+                for (File child : children) {
+                    fingerprint(child, hasher);
+                }
+            }
+        }
+    }
+
+    private static String fingerprint(Object worker) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            ObjectOutputStream outputStream = new ObjectOutputStream(bytes);
+            outputStream.writeObject(worker);
+            outputStream.close();
+        } catch (IOException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+        return Hashing.md5().hashBytes(bytes.toByteArray()).toString();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (obj == null || obj.getClass() != getClass()) {
+            return false;
+        }
+        TestWorkerSpec other = (TestWorkerSpec) obj;
+        return Objects.equal(executable, other.executable)
+                && jvmArgs.equals(other.jvmArgs)
+                && environment.equals(other.environment)
+                && Objects.equal(workingDir, other.workingDir)
+                && classpath.equals(other.classpath)
+                && classpathFingerprint.equals(other.classpathFingerprint)
+                && sharedPackages.equals(other.sharedPackages)
+                && logLevel.equals(other.logLevel)
+                && workerFingerprint.equals(other.workerFingerprint);
+    }
+
+    @Override
+    public int hashCode() {
+        return classpathFingerprint.hashCode() ^ workerFingerprint.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("test worker %s %s with classpath %s", executable, jvmArgs, classpath);
+    }
+}
@@ -24,25 +24,37 @@ import org.gradle.api.file.FileCollection;
 import org.gradle.api.file.FileTree;
 import org.gradle.api.file.FileTreeElement;
 import org.gradle.api.internal.ConventionTask;
+import org.gradle.api.internal.changedetection.state.FileSnapshotter;
+import org.gradle.api.internal.changedetection.state.TaskArtifactStateCacheAccess;
 import org.gradle.api.internal.file.FileResolver;
 import org.gradle.api.internal.initialization.loadercache.ClassLoaderCache;
+import org.gradle.api.internal.tasks.compile.incremental.cache.GeneralCompileCaches;
 import org.gradle.api.internal.tasks.options.Option;
 import org.gradle.api.internal.tasks.testing.DefaultTestTaskReports;
 import org.gradle.api.internal.tasks.testing.NoMatchingTestsReporter;
 import org.gradle.api.internal.tasks.testing.TestFramework;
 import org.gradle.api.internal.tasks.testing.TestResultProcessor;
+import org.gradle.api.internal.tasks.testing.detection.AffectedTestClasses;
+import org.gradle.api.internal.tasks.testing.detection.ClasspathJarIndex;
 import org.gradle.api.internal.tasks.testing.detection.DefaultTestExecuter;
+import org.gradle.api.internal.tasks.testing.detection.LocalTestInputsSnapshotStore;
+import org.gradle.api.internal.tasks.testing.detection.TestClassInfoCache;
 import org.gradle.api.internal.tasks.testing.detection.TestExecuter;
+import org.gradle.api.internal.tasks.testing.detection.TestInputsSnapshot;
+import org.gradle.api.internal.tasks.testing.detection.TestInputsSnapshotter;
 import org.gradle.api.internal.tasks.testing.filter.DefaultTestFilter;
 import org.gradle.api.internal.tasks.testing.junit.JUnitTestFramework;
 import org.gradle.api.internal.tasks.testing.junit.report.DefaultTestReport;
 import org.gradle.api.internal.tasks.testing.junit.report.TestReporter;
 import org.gradle.api.internal.tasks.testing.junit.result.*;
 import org.gradle.api.internal.tasks.testing.logging.*;
+import org.gradle.api.internal.tasks.testing.processors.BalancedParallelTestClassProcessor;
+import org.gradle.api.internal.tasks.testing.processors.TestClassDurations;
 import org.gradle.api.internal.tasks.testing.results.StateTrackingTestResultProcessor;
 import org.gradle.api.internal.tasks.testing.results.TestListenerAdapter;
 import org.gradle.api.internal.tasks.testing.results.TestListenerInternal;
 import org.gradle.api.internal.tasks.testing.testng.TestNGTestFramework;
+import org.gradle.api.internal.tasks.testing.worker.TestWorkerPool;
 import org.gradle.api.logging.LogLevel;
 import org.gradle.api.reporting.DirectoryReport;
 import org.gradle.api.reporting.Reporting;
@@ -52,8 +64,10 @@ import org.gradle.api.tasks.testing.logging.TestLogging;
 import org.gradle.api.tasks.testing.logging.TestLoggingContainer;
 import org.gradle.api.tasks.util.PatternFilterable;
 import org.gradle.api.tasks.util.PatternSet;
+import org.gradle.cache.CacheRepository;
 import org.gradle.internal.Factory;
 import org.gradle.internal.concurrent.CompositeStoppable;
+import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.event.ListenerBroadcast;
 import org.gradle.internal.event.ListenerManager;
 import org.gradle.internal.reflect.Instantiator;
@@ -186,6 +200,46 @@ public class Test extends ConventionTask implements JavaForkOptions, PatternFilt
         throw new UnsupportedOperationException();
     }
 
+    @Inject
+    protected TestWorkerPool getTestWorkerPool() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Inject
+    protected GeneralCompileCaches getGeneralCompileCaches() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Inject
+    protected CacheRepository getCacheRepository() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Inject
+    protected FileSnapshotter getFileSnapshotter() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Inject
+    protected TaskArtifactStateCacheAccess getTaskArtifactStateCacheAccess() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Inject
+    protected ExecutorFactory getExecutorFactory() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Inject
+    protected TestClassInfoCache getTestClassInfoCache() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Inject
+    protected ClasspathJarIndex getClasspathJarIndex() {
+        throw new UnsupportedOperationException();
+    }
+
     @Inject
     protected FileResolver getFileResolver() {
         throw new UnsupportedOperationException();
@@ -500,6 +554,20 @@ public class Test extends ConventionTask implements JavaForkOptions, PatternFilt
         }
 
         File binaryResultsDir = getBinResultsDir();
+        TestClassDurations previousDurations = TestClassDurations.NONE;
+        if (Boolean.getBoolean(BalancedParallelTestClassProcessor.ENABLED_PROPERTY)) {
+            previousDurations = TestClassDurations.read(binaryResultsDir);
+        }
+        // Tests selected with --tests always run, so that they are reported as missing when they no longer exist
+        LocalTestInputsSnapshotStore inputsSnapshotStore = null;
+        TestInputsSnapshot inputsSnapshot = null;
+        AffectedTestClasses affectedTestClasses = AffectedTestClasses.ALL;
+        if (Boolean.getBoolean(AffectedTestClasses.ENABLED_PROPERTY) && getFilter().getIncludePatterns().isEmpty()) {
+            inputsSnapshotStore = new LocalTestInputsSnapshotStore(getCacheRepository(), this);
+            inputsSnapshot = new TestInputsSnapshotter(getGeneralCompileCaches().getClassAnalysisCache(), getFileSnapshotter(), getTaskArtifactStateCacheAccess())
+                    .createSnapshot(this);
+            affectedTestClasses = AffectedTestClasses.between(inputsSnapshotStore.get(), inputsSnapshot);
+        }
         getProject().delete(binaryResultsDir);
         getProject().mkdir(binaryResultsDir);
 
@@ -520,7 +588,8 @@ public class Test extends ConventionTask implements JavaForkOptions, PatternFilt
         TestResultProcessor resultProcessor = new StateTrackingTestResultProcessor(testListenerInternalBroadcaster.getSource());
 
         if (testExecuter == null) {
-            testExecuter = new DefaultTestExecuter(getProcessBuilderFactory(), getActorFactory());
+            testExecuter = new DefaultTestExecuter(getProcessBuilderFactory(), getActorFactory(), getTestWorkerPool(), previousDurations, affectedTestClasses,
+                getExecutorFactory(), getTestClassInfoCache(), getClasspathJarIndex());
         }
 
         try {
@@ -535,11 +604,21 @@ public class Test extends ConventionTask implements JavaForkOptions, PatternFilt
 
         new TestResultSerializer(binaryResultsDir).write(results.values());
 
+        if (inputsSnapshotStore != null) {
+            Set<String> failedTestClasses = new HashSet<String>();
+            for (TestClassResult result : results.values()) {
+                if (result.getFailuresCount() > 0) {
+                    failedTestClasses.add(result.getClassName());
+                }
+            }
+            inputsSnapshotStore.put(inputsSnapshot.withFailedTestClasses(failedTestClasses));
+        }
+
         TestResultsProvider testResultsProvider = new InMemoryTestResultsProvider(results.values(), testOutputStore.reader());
 
         try {
             if (testReporter == null) {
-                testReporter = new DefaultTestReport();
+                testReporter = new DefaultTestReport(getExecutorFactory());
             }
 
             JUnitXmlReport junitXml = reports.getJunitXml();
@@ -547,7 +626,7 @@ public class Test extends ConventionTask implements JavaForkOptions, PatternFilt
                 TestOutputAssociation outputAssociation = junitXml.isOutputPerTestCase()
                         ? TestOutputAssociation.WITH_TESTCASE
                         : TestOutputAssociation.WITH_SUITE;
-                Binary2JUnitXmlReportGenerator binary2JUnitXmlReportGenerator = new Binary2JUnitXmlReportGenerator(junitXml.getDestination(), testResultsProvider, outputAssociation);
+                Binary2JUnitXmlReportGenerator binary2JUnitXmlReportGenerator = new Binary2JUnitXmlReportGenerator(junitXml.getDestination(), testResultsProvider, outputAssociation, getExecutorFactory());
                 binary2JUnitXmlReportGenerator.generate();
             }
 
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.tasks.testing.detection
+
+import org.gradle.api.internal.tasks.compile.incremental.deps.ClassSetAnalysisData
+import org.gradle.api.internal.tasks.compile.incremental.deps.DefaultDependentsSet
+import spock.lang.Specification
+
+import static org.gradle.api.internal.tasks.compile.incremental.deps.DefaultDependentsSet.dependents
+
+class AffectedTestClassesTest extends Specification {
+    def configuration = [1] as byte[]
+    def otherFiles = [2] as byte[]
+    def analysis = new ClassSetAnalysisData([
+            "Production": dependents("Helper"),
+            "Helper": dependents("HelperTest"),
+            "HelperTest": dependents(),
+            "OtherTest": dependents(),
+            "Constants": new DefaultDependentsSet(true, [])
+    ])
+    def previous = snapshot(["Production": 1, "Helper": 1, "HelperTest": 1, "OtherTest": 1, "Constants": 1])
+
+    def "all test classes are affected when there is no previous run"() {
+        expect:
+        AffectedTestClasses.between(null, previous) == AffectedTestClasses.ALL
+    }
+
+    def "all test classes are affected when the configuration or other files change"() {
+        expect:
+        AffectedTestClasses.between(previous, snapshot(previous.classHashes, [3] as byte[], otherFiles)) == AffectedTestClasses.ALL
+        AffectedTestClasses.between(previous, snapshot(previous.classHashes, configuration, [3] as byte[])) == AffectedTestClasses.ALL
+    }
+
+    def "no test class is affected when nothing changed"() {
+        when:
+        def affected = AffectedTestClasses.between(previous, snapshot(["Production": 1, "Helper": 1, "HelperTest": 1, "OtherTest": 1, "Constants": 1]))
+
+        then:
+        !affected.isAffected("HelperTest")
+        !affected.isAffected("OtherTest")
+    }
+
+    def "test classes that depend on a changed class are affected"() {
+        when:
+        def affected = AffectedTestClasses.between(previous, snapshot(["Production": 2, "Helper": 1, "HelperTest": 1, "OtherTest": 1, "Constants": 1]))
+
+        then:
+        affected.isAffected("HelperTest")
+        affected.isAffected("HelperTest\$Nested")
+        !affected.isAffected("OtherTest")
+    }
+
+    def "changed, added and removed classes are affected"() {
+        when:
+        def affected = AffectedTestClasses.between(previous, snapshot(["Production": 1, "Helper": 1, "OtherTest": 2, "NewTest": 1, "Constants": 1]))
+
+        then:
+        affected.isAffected("OtherTest")
+        affected.isAffected("NewTest")
+        affected.isAffected("HelperTest")
+    }
+
+    def "test classes that failed in the previous run are affected"() {
+        when:
+        def affected = AffectedTestClasses.between(previous.withFailedTestClasses(["OtherTest"] as Set), snapshot(previous.classHashes, configuration))
+
+        then:
+        affected.isAffected("OtherTest")
+        !affected.isAffected("HelperTest")
+    }
+
+    def "all test classes are affected when a class that may be inlined changes"() {
+        expect:
+        AffectedTestClasses.between(previous, snapshot(["Production": 1, "Helper": 1, "HelperTest": 1, "OtherTest": 1, "Constants": 2])) == AffectedTestClasses.ALL
+    }
+
+    private TestInputsSnapshot snapshot(Map<String, Integer> classes) {
+        def hashes = classes.collectEntries { [it.key, [it.value] as byte[]] }
+        return snapshot(hashes, configuration, otherFiles)
+    }
+
+    private TestInputsSnapshot snapshot(Map<String, byte[]> hashes, byte[] configuration, byte[] otherFiles = this.otherFiles) {
+        return new TestInputsSnapshot(configuration, otherFiles, hashes, analysis, [] as Set)
+    }
+}
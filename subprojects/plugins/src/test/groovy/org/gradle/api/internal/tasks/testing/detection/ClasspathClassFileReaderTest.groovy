@@ -0,0 +1,97 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.tasks.testing.detection
+
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+class ClasspathClassFileReaderTest extends Specification {
+    @Rule TestNameTestDirectoryProvider tmp = new TestNameTestDirectoryProvider()
+
+    def "reads class files from class directories and jars"() {
+        def classes = tmp.createDir("classes")
+        classes.createFile("org/InDir.class").bytes = [1] as byte[]
+        def jarContents = tmp.createDir("jarContents")
+        jarContents.createFile("org/InJar.class").bytes = [2] as byte[]
+        def jar = tmp.file("lib.jar")
+        jarContents.zipTo(jar)
+        def reader = new ClasspathClassFileReader([jar, classes, tmp.createFile("other.txt")])
+
+        expect:
+        reader.read("org/InDir") == [1] as byte[]
+        reader.read("org/InJar") == [2] as byte[]
+        reader.read("org/InJar") == [2] as byte[]
+        reader.read("org/Missing") == null
+
+        cleanup:
+        reader?.close()
+    }
+
+    def "searches class directories before jars"() {
+        def classes = tmp.createDir("classes")
+        classes.createFile("org/SomeClass.class").bytes = [1] as byte[]
+        def jarContents = tmp.createDir("jarContents")
+        jarContents.createFile("org/SomeClass.class").bytes = [2] as byte[]
+        def jar = tmp.file("lib.jar")
+        jarContents.zipTo(jar)
+        def reader = new ClasspathClassFileReader([jar, classes])
+
+        expect:
+        reader.read("org/SomeClass") == [1] as byte[]
+
+        cleanup:
+        reader?.close()
+    }
+
+    def "shares the open jars of a jar index between readers"() {
+        def jarContents = tmp.createDir("jarContents")
+        jarContents.createFile("org/SomeClass.class").bytes = [2] as byte[]
+        def jar = tmp.file("lib.jar")
+        jarContents.zipTo(jar)
+        def jarIndex = new ClasspathJarIndex()
+
+        when:
+        def reader1 = new ClasspathClassFileReader([jar], jarIndex)
+        def reader2 = new ClasspathClassFileReader([jar], jarIndex)
+        reader1.close()
+
+        then:
+        jarIndex.get(jar).is(jarIndex.get(jar))
+        reader2.read("org/SomeClass") == [2] as byte[]
+
+        cleanup:
+        jarIndex.stop()
+    }
+
+    def "indexes the packages of a jar"() {
+        def jarContents = tmp.createDir("jarContents")
+        jarContents.createFile("org/SomeClass.class").bytes = [1] as byte[]
+        jarContents.createFile("org/gradle/OtherClass.class").bytes = [2] as byte[]
+        def jar = tmp.file("lib.jar")
+        jarContents.zipTo(jar)
+        def jarIndex = new ClasspathJarIndex()
+
+        expect:
+        jarIndex.get(jar).packages.containsAll(["org/", "org/gradle/"])
+        !jarIndex.get(jar).packages.contains("com/")
+
+        cleanup:
+        jarIndex.stop()
+    }
+}
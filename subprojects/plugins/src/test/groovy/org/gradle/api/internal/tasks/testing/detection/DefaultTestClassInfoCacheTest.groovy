@@ -0,0 +1,57 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.tasks.testing.detection
+
+import com.google.common.hash.HashCode
+import org.gradle.internal.Factory
+import spock.lang.Specification
+
+class DefaultTestClassInfoCacheTest extends Specification {
+    def cache = new DefaultTestClassInfoCache(2)
+    def info = new TestClassInfo("org/gradle/SomeTest", "java/lang/Object", true, false)
+
+    def "creates the value on a miss and uses it on a hit"() {
+        def factory = Mock(Factory)
+
+        when:
+        def first = cache.get(key(1), factory)
+        def second = cache.get(key(1), factory)
+
+        then:
+        1 * factory.create() >> info
+        first.is(info)
+        second.is(info)
+    }
+
+    def "discards entries once full"() {
+        def factory = Mock(Factory)
+
+        when:
+        cache.get(key(1), factory)
+        cache.get(key(2), factory)
+        cache.get(key(3), factory)
+        cache.get(key(1), factory)
+
+        then:
+        4 * factory.create() >> info
+    }
+
+    def key(int value) {
+        return HashCode.fromInt(value)
+    }
+}
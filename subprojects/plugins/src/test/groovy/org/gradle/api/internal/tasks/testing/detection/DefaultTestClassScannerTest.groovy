@@ -26,7 +26,11 @@ import org.gradle.api.internal.tasks.testing.TestClassProcessor
 import org.jmock.Sequence
 import org.gradle.api.file.FileTree
 import static org.hamcrest.Matchers.*
+import org.gradle.api.file.FileCollection
 import org.gradle.api.file.FileVisitDetails
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+
+import static org.junit.Assert.assertThat
 
 @RunWith(JMock.class)
 public class DefaultTestClassScannerTest {
@@ -51,8 +55,65 @@ public class DefaultTestClassScannerTest {
             one(detector).processTestClass(new File('class1.class'))
             one(detector).processTestClass(new File('class2.class'))
             inSequence(sequence)
+            one(detector).stopDetection()
+            inSequence(sequence)
         }
         
         scanner.run()
     }
+
+    @Test
+    public void processesClassFilesInTheSameOrderWhenReadingThemOnSeveralThreads() {
+        List<File> classFiles = (1..50).collect { new File("class${it}.class") }
+        context.checking {
+            allowing(files).visit(withParam(notNullValue()))
+            will { visitor ->
+                classFiles.each { file -> visitor.visitFile({ file } as FileVisitDetails) }
+            }
+        }
+
+        RecordingDetector serial = new RecordingDetector()
+        new DefaultTestClassScanner(files, serial, processor).run()
+        RecordingDetector parallel = new RecordingDetector()
+        new DefaultTestClassScanner(files, parallel, processor, new DefaultExecutorFactory(), 4).run()
+
+        assertThat(serial.processed, equalTo(classFiles))
+        assertThat(parallel.processed, equalTo(classFiles))
+        assertThat(parallel.prefetched as Set, equalTo(classFiles as Set))
+    }
+
+    private static class RecordingDetector implements TestFrameworkDetector {
+        final List<File> prefetched = Collections.synchronizedList(new ArrayList<File>())
+        final List<File> processed = new ArrayList<File>()
+        final Random random = new Random()
+
+        void startDetection(TestClassProcessor testClassProcessor) {
+        }
+
+        void prefetchTestClass(File testClassFile) {
+            // Finish the reads in some other order
+            Thread.sleep(random.nextInt(3))
+            prefetched.add(testClassFile)
+        }
+
+        boolean processTestClass(File testClassFile) {
+            processed.add(testClassFile)
+            return true
+        }
+
+        void stopDetection() {
+        }
+
+        void setTestClassesDirectory(File testClassesDir) {
+        }
+
+        void setTestClasspath(FileCollection classpath) {
+        }
+
+        void setClassInfoCache(TestClassInfoCache classInfoCache) {
+        }
+
+        void setClasspathJarIndex(ClasspathJarIndex jarIndex) {
+        }
+    }
 }
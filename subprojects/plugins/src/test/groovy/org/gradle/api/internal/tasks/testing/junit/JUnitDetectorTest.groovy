@@ -0,0 +1,87 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.tasks.testing.junit
+
+import com.google.common.hash.HashCode
+import org.gradle.api.internal.tasks.testing.TestClassProcessor
+import org.gradle.api.internal.tasks.testing.detection.DefaultTestClassScannerTest
+import org.gradle.api.internal.tasks.testing.detection.TestClassInfo
+import org.gradle.api.internal.tasks.testing.detection.TestClassInfoCache
+import org.gradle.internal.Factory
+import org.gradle.test.fixtures.file.TestFile
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+class JUnitDetectorTest extends Specification {
+    @Rule TestNameTestDirectoryProvider tmp = new TestNameTestDirectoryProvider()
+    def processor = Mock(TestClassProcessor)
+    def cache = Mock(TestClassInfoCache)
+    def detector = new JUnitDetector()
+    TestFile classFile
+
+    def setup() {
+        // A class annotated with @RunWith
+        classFile = tmp.createFile("classes/SomeTest.class")
+        classFile.bytes = DefaultTestClassScannerTest.getResourceAsStream("DefaultTestClassScannerTest.class").bytes
+        detector.testClassesDirectory = tmp.file("classes")
+        detector.classInfoCache = cache
+        detector.startDetection(processor)
+    }
+
+    def "parses the class file when the cache does not contain it"() {
+        when:
+        detector.processTestClass(classFile)
+
+        then:
+        1 * cache.get(_, _) >> { HashCode key, Factory<TestClassInfo> factory -> factory.create() }
+        1 * processor.processTestClass({ it.testClassName == DefaultTestClassScannerTest.name })
+    }
+
+    def "uses the cached class info instead of parsing the class file"() {
+        when:
+        detector.processTestClass(classFile)
+
+        then:
+        1 * cache.get(_, _) >> new TestClassInfo("org/gradle/CachedTest", "java/lang/Object", true, false)
+        1 * processor.processTestClass({ it.testClassName == "org.gradle.CachedTest" })
+    }
+
+    def "includes the kind of detector in the cache key"() {
+        def keys = []
+        def sameKind = new JUnitDetector()
+        def otherKind = new JUnitDetector() {}
+        [sameKind, otherKind].each {
+            it.classInfoCache = cache
+            it.startDetection(processor)
+        }
+
+        when:
+        detector.processTestClass(classFile)
+        sameKind.processTestClass(classFile)
+        otherKind.processTestClass(classFile)
+
+        then:
+        3 * cache.get(_, _) >> { HashCode key, Factory<TestClassInfo> factory ->
+            keys << key
+            factory.create()
+        }
+        keys[0] == keys[1]
+        keys[0] != keys[2]
+    }
+}
@@ -15,8 +15,11 @@
  */
 package org.gradle.api.internal.tasks.testing.junit.report
 
+import org.gradle.api.internal.tasks.testing.junit.result.TestFailure
 import spock.lang.Specification
 
+import static org.gradle.api.tasks.testing.TestResult.ResultType.FAILURE
+
 class TestResultTest extends Specification {
     def canOrderResultsByClassNameAndTestName() {
         ClassTestResults class1 = Mock()
@@ -47,4 +50,17 @@ class TestResultTest extends Specification {
         def r = [result, equalResult] as SortedSet
         r.size() == 2
     }
+
+    def "is still failed once the failure details are discarded"() {
+        ClassTestResults classResults = Mock()
+        TestResult result = new TestResult('name', 0, classResults)
+
+        when:
+        result.addFailure(new TestFailure("message", "stack trace", "java.lang.RuntimeException"))
+        result.discardFailureDetails()
+
+        then:
+        result.resultType == FAILURE
+        result.failures.empty
+    }
 }
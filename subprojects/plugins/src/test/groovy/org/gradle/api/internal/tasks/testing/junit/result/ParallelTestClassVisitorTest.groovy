@@ -0,0 +1,74 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.tasks.testing.junit.result
+
+import org.gradle.api.Action
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+import spock.lang.Specification
+
+import java.util.concurrent.CopyOnWriteArrayList
+
+class ParallelTestClassVisitorTest extends Specification {
+    def resultsProvider = Stub(TestResultsProvider) {
+        visitClasses(_) >> { Action action ->
+            (1..20).each { action.execute(new TestClassResult(it, "Class$it", 0)) }
+        }
+    }
+
+    def "visits each class once using several threads"() {
+        def visited = new CopyOnWriteArrayList<String>()
+        def threads = Collections.synchronizedSet(new HashSet<Thread>())
+
+        when:
+        new ParallelTestClassVisitor(new DefaultExecutorFactory(), "test", 4).visitClasses(resultsProvider, { TestClassResult result ->
+            threads << Thread.currentThread()
+            visited << result.className
+        } as Action)
+
+        then:
+        visited.sort() == (1..20).collect { "Class$it" }.sort()
+        !threads.contains(Thread.currentThread())
+    }
+
+    def "visits the classes on the calling thread when there is no executor factory"() {
+        def visited = []
+        def callingThread = Thread.currentThread()
+
+        when:
+        new ParallelTestClassVisitor(null, "test").visitClasses(resultsProvider, { TestClassResult result ->
+            assert Thread.currentThread() == callingThread
+            visited << result.className
+        } as Action)
+
+        then:
+        visited == (1..20).collect { "Class$it" }
+    }
+
+    def "rethrows the first failure once all classes are visited"() {
+        def failure = new RuntimeException()
+
+        when:
+        new ParallelTestClassVisitor(new DefaultExecutorFactory(), "test", 4).visitClasses(resultsProvider, { TestClassResult result ->
+            throw failure
+        } as Action)
+
+        then:
+        RuntimeException e = thrown()
+        e.is(failure)
+    }
+}
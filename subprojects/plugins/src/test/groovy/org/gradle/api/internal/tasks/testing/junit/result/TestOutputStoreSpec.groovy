@@ -129,6 +129,48 @@ class TestOutputStoreSpec extends WorkspaceTest {
         reader.close()
     }
 
+    def "reads messages larger than its buffers with multi-byte characters"() {
+        def message = "\u00e9\u4e2d" * 5000
+
+        when:
+        def writer = output.writer()
+        writer.onOutput(1, 1, output(StdOut, message))
+        writer.onOutput(1, 1, output(StdOut, "[out]"))
+        writer.close()
+        def reader = output.reader()
+
+        then:
+        collectAllOutput(reader, 1, StdOut) == message + "[out]"
+
+        cleanup:
+        reader.close()
+    }
+
+    def "can read output of several test classes at the same time"() {
+        when:
+        def writer = output.writer()
+        100.times { classId ->
+            10.times { writer.onOutput(classId, 1, output(StdOut, "[out-$classId]")) }
+        }
+        writer.close()
+        def reader = output.reader()
+        def results = Collections.synchronizedMap([:])
+        def threads = (0..<4).collect { thread ->
+            Thread.start {
+                (0..<100).each { classId ->
+                    results[classId] = collectAllOutput(reader, classId, StdOut)
+                }
+            }
+        }
+        threads*.join()
+
+        then:
+        (0..<100).every { classId -> results[classId] == "[out-$classId]" * 10 }
+
+        cleanup:
+        reader.close()
+    }
+
     def "can query whether output is available for a test class"() {
         when:
         def writer = output.writer()
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.tasks.testing.processors
+
+import org.gradle.api.internal.tasks.testing.*
+import org.gradle.api.internal.tasks.testing.worker.TestWorkerFailureListener
+import org.gradle.internal.Factory
+import org.gradle.messaging.actor.Actor
+import org.gradle.messaging.actor.ActorFactory
+import spock.lang.Specification
+
+class BalancedParallelTestClassProcessorTest extends Specification {
+    private final Factory<TestClassProcessor> factory = Mock()
+    private final TestResultProcessor resultProcessor = Mock()
+    private final TestResultProcessor asyncResultProcessor = Mock()
+    private final Actor resultProcessorActor = Mock()
+    private final ActorFactory actorFactory = Mock()
+    private final TestClassDurations durations = new TestClassDurations([A: 300L, B: 200L, C: 100L])
+    private final TestClassProcessor asyncProcessor1 = Mock()
+    private final TestClassProcessor asyncProcessor2 = Mock()
+    private TestResultProcessor fork1
+    private TestResultProcessor fork2
+
+    def setup() {
+        _ * actorFactory.createActor(resultProcessor) >> resultProcessorActor
+        _ * resultProcessorActor.getProxy(TestResultProcessor) >> asyncResultProcessor
+    }
+
+    def "does nothing when no tests processed"() {
+        def processor = new BalancedParallelTestClassProcessor(2, factory, actorFactory, durations)
+        processor.startProcessing(resultProcessor)
+
+        when:
+        processor.stop()
+
+        then:
+        0 * factory.create()
+        1 * resultProcessorActor.stop()
+    }
+
+    def "hands the longest test class to each fork and the next one to the first fork that completes"() {
+        def processor = new BalancedParallelTestClassProcessor(2, factory, actorFactory, durations)
+        def a = testClass("A")
+        def b = testClass("B")
+        def c = testClass("C")
+        startForks()
+
+        when:
+        processor.startProcessing(resultProcessor)
+        processor.processTestClass(c)
+        processor.processTestClass(a)
+        processor.processTestClass(b)
+        processor.stop()
+
+        then:
+        1 * asyncProcessor1.processTestClass(a)
+
+        then:
+        1 * asyncProcessor2.processTestClass(b) >> { complete(fork1, "A") }
+
+        then:
+        1 * asyncProcessor1.processTestClass(c)
+        1 * asyncResultProcessor.completed("A", _)
+        0 * asyncProcessor2.processTestClass(c)
+
+        then:
+        1 * asyncProcessor1.stop()
+        1 * asyncProcessor2.stop()
+        1 * resultProcessorActor.stop()
+    }
+
+    def "runs test classes without a recorded duration first"() {
+        def processor = new BalancedParallelTestClassProcessor(1, factory, actorFactory, durations)
+        def a = testClass("A")
+        def d = testClass("D")
+        startForks()
+
+        when:
+        processor.startProcessing(resultProcessor)
+        processor.processTestClass(a)
+        processor.processTestClass(d)
+        processor.stop()
+
+        then:
+        1 * asyncProcessor1.processTestClass(d) >> { complete(fork1, "D") }
+
+        then:
+        1 * asyncProcessor1.processTestClass(a)
+    }
+
+    def "stops handing test classes to a fork whose worker fails"() {
+        def processor = new BalancedParallelTestClassProcessor(2, factory, actorFactory, durations)
+        def a = testClass("A")
+        def b = testClass("B")
+        def c = testClass("C")
+        startForks()
+
+        when:
+        processor.startProcessing(resultProcessor)
+        [a, b, c].each { processor.processTestClass(it) }
+        processor.stop()
+
+        then:
+        1 * asyncProcessor1.processTestClass(a) >> { (fork1 as TestWorkerFailureListener).workerFailed(new RuntimeException()) }
+        1 * asyncProcessor2.processTestClass(b) >> { complete(fork2, "B") }
+        1 * asyncProcessor2.processTestClass(c)
+        0 * asyncProcessor1.processTestClass(c)
+    }
+
+    def "stops waiting when all forks have failed"() {
+        def processor = new BalancedParallelTestClassProcessor(1, factory, actorFactory, durations)
+        def a = testClass("A")
+        def b = testClass("B")
+        startForks()
+
+        when:
+        processor.startProcessing(resultProcessor)
+        processor.processTestClass(a)
+        processor.processTestClass(b)
+        processor.stop()
+
+        then:
+        1 * asyncProcessor1.processTestClass(a) >> { (fork1 as TestWorkerFailureListener).workerFailed(new RuntimeException()) }
+        0 * asyncProcessor1.processTestClass(b)
+        1 * asyncProcessor1.stop()
+    }
+
+    def startForks() {
+        def actor1 = Mock(Actor)
+        def actor2 = Mock(Actor)
+        _ * factory.create() >> Mock(TestClassProcessor)
+        _ * actorFactory.createActor({ it instanceof TestClassProcessor }) >>> [actor1, actor2]
+        _ * actor1.getProxy(TestClassProcessor) >> asyncProcessor1
+        _ * actor2.getProxy(TestClassProcessor) >> asyncProcessor2
+        _ * asyncProcessor1.startProcessing(_) >> { TestResultProcessor fork -> fork1 = fork }
+        _ * asyncProcessor2.startProcessing(_) >> { TestResultProcessor fork -> fork2 = fork }
+    }
+
+    def testClass(String name) {
+        TestClassRunInfo testClass = Mock()
+        _ * testClass.testClassName >> name
+        return testClass
+    }
+
+    def complete(TestResultProcessor fork, String className) {
+        fork.started(new DefaultTestClassDescriptor(className, className), new TestStartEvent(0))
+        fork.completed(className, new TestCompleteEvent(0))
+    }
+}
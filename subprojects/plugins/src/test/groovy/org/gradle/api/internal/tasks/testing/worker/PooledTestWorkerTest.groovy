@@ -0,0 +1,149 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.tasks.testing.worker
+
+import org.gradle.api.internal.tasks.testing.DefaultTestClassDescriptor
+import org.gradle.api.internal.tasks.testing.TestCompleteEvent
+import org.gradle.api.internal.tasks.testing.TestResultProcessor
+import org.gradle.api.internal.tasks.testing.TestStartEvent
+import org.gradle.process.ExecResult
+import org.gradle.process.internal.ExecHandle
+import org.gradle.process.internal.WorkerProcess
+import spock.lang.Specification
+
+class PooledTestWorkerTest extends Specification {
+    def spec = Stub(TestWorkerSpec)
+    def workerProcess = Mock(WorkerProcess)
+    def remoteProcessor = Mock(RemoteTestClassProcessor)
+    def resultProcessor = Mock(TestResultProcessor)
+    def pool = Mock(TestWorkerPool)
+    def worker = new PooledTestWorker(spec, pool)
+
+    def setup() {
+        worker.attach(workerProcess, remoteProcessor)
+    }
+
+    def "forwards the results of a session and waits for the worker suite to complete"() {
+        def suite = new WorkerTestClassProcessor.WorkerTestSuiteDescriptor("worker", "Gradle Test Executor 1")
+        def testClass = new DefaultTestClassDescriptor("class", "SomeTest")
+
+        when:
+        worker.startSession(resultProcessor)
+
+        then:
+        1 * remoteProcessor.startProcessing()
+
+        when:
+        def reusable = worker.stopSession()
+
+        then:
+        1 * remoteProcessor.stop() >> {
+            worker.started(suite, new TestStartEvent(0))
+            worker.started(testClass, new TestStartEvent(0))
+            worker.completed("class", new TestCompleteEvent(0))
+            worker.completed("worker", new TestCompleteEvent(0))
+        }
+        1 * resultProcessor.started(suite, _)
+        1 * resultProcessor.started(testClass, _)
+        1 * resultProcessor.completed("class", _)
+        1 * resultProcessor.completed("worker", _)
+        reusable
+        worker.isCompatibleWith(spec)
+    }
+
+    def "is not used again when the worker process fails"() {
+        when:
+        worker.startSession(resultProcessor)
+        def reusable = worker.stopSession()
+
+        then:
+        1 * remoteProcessor.stop() >> { worker.workerFailed(new RuntimeException()) }
+        !reusable
+        !worker.isCompatibleWith(spec)
+
+        when:
+        worker.stop()
+
+        then:
+        0 * remoteProcessor.exit()
+        1 * workerProcess.waitForStop()
+    }
+
+    def "notifies the session of a worker failure"() {
+        def failureListener = Mock(TestWorkerFailureListenerResultProcessor)
+        def failure = new RuntimeException()
+
+        when:
+        worker.startSession(failureListener)
+        worker.workerFailed(failure)
+
+        then:
+        1 * failureListener.workerFailed(failure)
+    }
+
+    def "removes itself from the pool when the worker process fails while idle"() {
+        def result = Stub(ExecResult)
+        _ * result.rethrowFailure() >> result
+        _ * result.assertNormalExitValue() >> { throw new RuntimeException() }
+
+        when:
+        worker.executionFinished(Stub(ExecHandle), result)
+
+        then:
+        1 * pool.remove(worker)
+        !worker.isCompatibleWith(spec)
+    }
+
+    def "removes itself from the pool when the worker process exits without being asked to"() {
+        def result = Stub(ExecResult)
+        _ * result.rethrowFailure() >> result
+
+        when:
+        worker.executionFinished(Stub(ExecHandle), result)
+
+        then:
+        1 * pool.remove(worker)
+        worker.hasFailed()
+    }
+
+    def "does not remove itself from the pool when the worker process exits on stop"() {
+        def result = Stub(ExecResult)
+        _ * result.rethrowFailure() >> result
+
+        when:
+        worker.stop()
+        worker.executionFinished(Stub(ExecHandle), result)
+
+        then:
+        0 * pool._
+    }
+
+    def "makes the worker process exit on stop"() {
+        when:
+        worker.stop()
+
+        then:
+        1 * remoteProcessor.exit()
+
+        then:
+        1 * workerProcess.waitForStop()
+    }
+
+    interface TestWorkerFailureListenerResultProcessor extends TestResultProcessor, TestWorkerFailureListener {
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.tasks.testing.worker
+
+import spock.lang.Specification
+
+class TestWorkerPoolTest extends Specification {
+    def spec = Stub(TestWorkerSpec)
+    def pool = new TestWorkerPool(2)
+
+    def "reserves an idle compatible worker"() {
+        def incompatible = Mock(PooledTestWorker)
+        def compatible = Mock(PooledTestWorker)
+        _ * incompatible.isCompatibleWith(spec) >> false
+        _ * compatible.isCompatibleWith(spec) >> true
+
+        given:
+        pool.add(compatible)
+        pool.add(incompatible)
+        pool.release(compatible)
+        pool.release(incompatible)
+
+        expect:
+        pool.reserveIdleWorker(spec) == compatible
+        pool.reserveIdleWorker(spec) == null
+    }
+
+    def "does not hand out a worker that is in use"() {
+        def worker = Mock(PooledTestWorker)
+        _ * worker.isCompatibleWith(spec) >> true
+
+        when:
+        pool.add(worker)
+
+        then:
+        pool.reserveIdleWorker(spec) == null
+    }
+
+    def "stops the least recently used worker when there are too many idle workers"() {
+        def worker1 = Mock(PooledTestWorker)
+        def worker2 = Mock(PooledTestWorker)
+        def worker3 = Mock(PooledTestWorker)
+        [worker1, worker2, worker3].each { pool.add(it) }
+
+        when:
+        pool.release(worker1)
+        pool.release(worker2)
+        pool.release(worker3)
+
+        then:
+        1 * worker1.stop()
+        0 * worker2.stop()
+        0 * worker3.stop()
+    }
+
+    def "does not fail when an evicted worker cannot be stopped"() {
+        def worker1 = Mock(PooledTestWorker)
+        def worker2 = Mock(PooledTestWorker)
+        def worker3 = Mock(PooledTestWorker)
+        [worker1, worker2, worker3].each { pool.add(it) }
+
+        when:
+        pool.release(worker1)
+        pool.release(worker2)
+        pool.release(worker3)
+
+        then:
+        1 * worker1.stop() >> { throw new RuntimeException("broken") }
+        noExceptionThrown()
+    }
+
+    def "removes a worker that exited while idle"() {
+        def worker = Mock(PooledTestWorker)
+        _ * worker.isCompatibleWith(spec) >> true
+        pool.add(worker)
+        pool.release(worker)
+
+        when:
+        pool.remove(worker)
+
+        then:
+        pool.reserveIdleWorker(spec) == null
+
+        when:
+        pool.stop()
+
+        then:
+        0 * worker.stop()
+    }
+
+    def "stops rather than keeps a released worker that has failed"() {
+        def worker = Mock(PooledTestWorker)
+        _ * worker.isCompatibleWith(spec) >> true
+        _ * worker.hasFailed() >> true
+        pool.add(worker)
+
+        when:
+        pool.release(worker)
+
+        then:
+        1 * worker.stop() >> { throw new RuntimeException("broken") }
+        pool.reserveIdleWorker(spec) == null
+    }
+
+    def "stops discarded worker"() {
+        def worker = Mock(PooledTestWorker)
+        pool.add(worker)
+
+        when:
+        pool.discard(worker)
+        pool.stop()
+
+        then:
+        1 * worker.stop()
+    }
+
+    def "stops all workers on stop"() {
+        def idle = Mock(PooledTestWorker)
+        def busy = Mock(PooledTestWorker)
+        pool.add(idle)
+        pool.add(busy)
+        pool.release(idle)
+
+        when:
+        pool.stop()
+
+        then:
+        1 * idle.stop() >> { throw new RuntimeException("broken") }
+        1 * busy.stop()
+        noExceptionThrown()
+
+        when:
+        pool.stop()
+
+        then:
+        0 * _.stop()
+    }
+}
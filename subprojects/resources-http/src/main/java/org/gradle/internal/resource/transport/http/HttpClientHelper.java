@@ -21,6 +21,7 @@ import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.conn.ClientConnectionManager;
 import org.apache.http.impl.client.*;
 import org.apache.http.protocol.BasicHttpContext;
 import org.apache.http.util.EntityUtils;
@@ -37,13 +38,20 @@ public class HttpClientHelper {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(HttpClientHelper.class);
     private final HttpClient client;
-    private final BasicHttpContext httpContext = new BasicHttpContext();
+    // The requests of different threads must not share a context, as the context holds the state of the request being executed
+    private final ThreadLocal<BasicHttpContext> httpContext = new ThreadLocal<BasicHttpContext>() {
+        @Override
+        protected BasicHttpContext initialValue() {
+            return new BasicHttpContext();
+        }
+    };
 
-    public HttpClientHelper(HttpSettings settings) {
+    public HttpClientHelper(HttpSettings settings, HttpConnectionPool connectionPool) {
         alwaysUseKeepAliveConnections();
 
-        DefaultHttpClient client = new SystemDefaultHttpClient();
+        DefaultHttpClient client = new PooledHttpClient(connectionPool.getConnectionManager());
         new HttpClientConfigurer(settings).configure(client);
+        connectionPool.configure(client);
         this.client = new DecompressingHttpClient(client);
     }
 
@@ -105,10 +113,11 @@ public class HttpClientHelper {
 
     public HttpResponse performHttpRequest(HttpRequestBase request) throws IOException {
         // Without this, HTTP Client prohibits multiple redirects to the same location within the same context
-        httpContext.removeAttribute(DefaultRedirectStrategy.REDIRECT_LOCATIONS);
+        BasicHttpContext context = httpContext.get();
+        context.removeAttribute(DefaultRedirectStrategy.REDIRECT_LOCATIONS);
 
         LOGGER.debug("Performing HTTP {}: {}", request.getMethod(), request.getURI());
-        return client.execute(request, httpContext);
+        return client.execute(request, context);
     }
 
     private HttpResponse processResponse(String source, String method, HttpResponse response) {
@@ -125,5 +134,19 @@ public class HttpClientHelper {
         return response;
     }
 
+    /**
+     * Uses the system properties in the same way as {@link SystemDefaultHttpClient}, with a shared connection manager.
+     */
+    private static class PooledHttpClient extends SystemDefaultHttpClient {
+        private final ClientConnectionManager connectionManager;
+
+        PooledHttpClient(ClientConnectionManager connectionManager) {
+            this.connectionManager = connectionManager;
+        }
 
+        @Override
+        protected ClientConnectionManager createClientConnectionManager() {
+            return connectionManager;
+        }
+    }
 }
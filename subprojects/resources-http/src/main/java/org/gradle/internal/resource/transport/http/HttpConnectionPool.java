@@ -0,0 +1,199 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.resource.transport.http;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ClientConnectionOperator;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.OperatedClientConnection;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.DefaultClientConnectionOperator;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+import org.gradle.BuildAdapter;
+import org.gradle.BuildResult;
+import org.gradle.internal.concurrent.Stoppable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of HTTP connections that is shared by the HTTP clients of all repositories, so that connections are kept alive and reused across requests, repositories
+ * and builds.
+ *
+ * <p>The SSL socket factory of the connections is created from the {@code javax.net.ssl} system properties, which can change from one build to the next. When they
+ * change, the pooled connections are closed and connections are opened using the new settings.</p>
+ *
+ * <p>Connections that have been idle for longer than the idle timeout are closed when a build completes and when a repository is about to be used. The number of
+ * requests and the number of connections opened during each build, including its nested builds, are logged when the build completes.</p>
+ */
+public class HttpConnectionPool extends BuildAdapter implements Stoppable {
+    public static final String MAX_CONNECTIONS_PROPERTY = "org.gradle.http.maxConnections";
+    public static final String MAX_CONNECTIONS_PER_ROUTE_PROPERTY = "org.gradle.http.maxConnectionsPerRoute";
+    public static final String IDLE_TIMEOUT_PROPERTY = "org.gradle.http.idleConnectionTimeout";
+    public static final int DEFAULT_MAX_CONNECTIONS = 64;
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 16;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60000;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HttpConnectionPool.class);
+
+    /**
+     * The system properties used by {@link SchemeRegistryFactory#createSystemDefault()} to create the SSL socket factory.
+     */
+    private static final List<String> SSL_PROPERTIES = Arrays.asList(
+        "javax.net.ssl.keyStore", "javax.net.ssl.keyStoreType", "javax.net.ssl.keyStorePassword", "javax.net.ssl.keyStoreProvider", "ssl.KeyManagerFactory.algorithm",
+        "javax.net.ssl.trustStore", "javax.net.ssl.trustStoreType", "javax.net.ssl.trustStorePassword", "javax.net.ssl.trustStoreProvider", "ssl.TrustManagerFactory.algorithm",
+        "https.protocols", "https.cipherSuites");
+
+    private final int maxConnections;
+    private final int maxConnectionsPerRoute;
+    private final long idleTimeoutMillis;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong connectionsOpened = new AtomicLong();
+    private PoolingClientConnectionManager connectionManager;
+    private List<String> sslSettings;
+
+    public HttpConnectionPool(int maxConnections, int maxConnectionsPerRoute, long idleTimeoutMillis) {
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    /**
+     * Creates a pool using the limits given by the system properties, falling back to the defaults.
+     */
+    public static HttpConnectionPool fromSystemProperties() {
+        return new HttpConnectionPool(
+            Integer.getInteger(MAX_CONNECTIONS_PROPERTY, DEFAULT_MAX_CONNECTIONS),
+            Integer.getInteger(MAX_CONNECTIONS_PER_ROUTE_PROPERTY, DEFAULT_MAX_CONNECTIONS_PER_ROUTE),
+            Long.getLong(IDLE_TIMEOUT_PROPERTY, DEFAULT_IDLE_TIMEOUT_MILLIS));
+    }
+
+    /**
+     * Returns the connection manager for the current SSL settings.
+     */
+    public synchronized ClientConnectionManager getConnectionManager() {
+        List<String> currentSslSettings = new ArrayList<String>(SSL_PROPERTIES.size());
+        for (String property : SSL_PROPERTIES) {
+            currentSslSettings.add(System.getProperty(property));
+        }
+        if (connectionManager == null || !currentSslSettings.equals(sslSettings)) {
+            if (connectionManager != null) {
+                LOGGER.debug("SSL settings have changed, closing pooled HTTP connections.");
+                connectionManager.shutdown();
+            }
+            connectionManager = new CountingConnectionManager(SchemeRegistryFactory.createSystemDefault());
+            connectionManager.setMaxTotal(maxConnections);
+            connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+            sslSettings = currentSslSettings;
+        }
+        return connectionManager;
+    }
+
+    /**
+     * Configures the given client, which must use the connection manager of this pool, to keep connections alive for at most the idle timeout and to count its requests.
+     */
+    public void configure(DefaultHttpClient httpClient) {
+        httpClient.setKeepAliveStrategy(new IdleTimeoutKeepAliveStrategy());
+        httpClient.addRequestInterceptor(new HttpRequestInterceptor() {
+            public void process(HttpRequest request, HttpContext context) {
+                requests.incrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Closes the connections that have been idle for longer than the idle timeout, and those whose keep-alive period has expired.
+     */
+    public synchronized void evictIdleConnections() {
+        if (connectionManager == null) {
+            return;
+        }
+        connectionManager.closeExpiredConnections();
+        connectionManager.closeIdleConnections(idleTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the statistics of the connections used since the last root build completed.
+     */
+    public HttpConnectionStatistics getStatistics() {
+        return new HttpConnectionStatistics(requests.get(), connectionsOpened.get());
+    }
+
+    @Override
+    public void buildFinished(BuildResult result) {
+        // The nested builds, such as buildSrc, are counted as part of the root build
+        if (result.getGradle() == null || result.getGradle().getParent() == null) {
+            logStatistics();
+        }
+        evictIdleConnections();
+    }
+
+    private synchronized void logStatistics() {
+        HttpConnectionStatistics statistics = new HttpConnectionStatistics(requests.getAndSet(0), connectionsOpened.getAndSet(0));
+        if (statistics.getRequests() > 0) {
+            LOGGER.info("{} ({} connections pooled).", statistics, connectionManager.getTotalStats().getAvailable());
+        }
+    }
+
+    public synchronized void stop() {
+        if (connectionManager != null) {
+            connectionManager.shutdown();
+        }
+    }
+
+    private class CountingConnectionManager extends PoolingClientConnectionManager {
+        CountingConnectionManager(SchemeRegistry schemeRegistry) {
+            super(schemeRegistry);
+        }
+
+        @Override
+        protected ClientConnectionOperator createConnectionOperator(SchemeRegistry schemeRegistry) {
+            return new DefaultClientConnectionOperator(schemeRegistry) {
+                @Override
+                public void openConnection(OperatedClientConnection conn, HttpHost target, InetAddress local, HttpContext context, HttpParams params) throws IOException {
+                    connectionsOpened.incrementAndGet();
+                    super.openConnection(conn, target, local, context, params);
+                }
+            };
+        }
+    }
+
+    private class IdleTimeoutKeepAliveStrategy implements ConnectionKeepAliveStrategy {
+        private final ConnectionKeepAliveStrategy serverStrategy = new DefaultConnectionKeepAliveStrategy();
+
+        public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+            long duration = serverStrategy.getKeepAliveDuration(response, context);
+            return duration < 0 || duration > idleTimeoutMillis ? idleTimeoutMillis : duration;
+        }
+    }
+}
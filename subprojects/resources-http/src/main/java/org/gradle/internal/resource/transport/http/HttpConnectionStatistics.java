@@ -0,0 +1,50 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.resource.transport.http;
+
+/**
+ * The number of HTTP requests made and the number of connections opened for them.
+ */
+public class HttpConnectionStatistics {
+    private final long requests;
+    private final long connectionsOpened;
+
+    public HttpConnectionStatistics(long requests, long connectionsOpened) {
+        this.requests = requests;
+        this.connectionsOpened = connectionsOpened;
+    }
+
+    public long getRequests() {
+        return requests;
+    }
+
+    public long getConnectionsOpened() {
+        return connectionsOpened;
+    }
+
+    /**
+     * Returns the number of requests that were made using a connection that had already been used.
+     */
+    public long getReusedConnections() {
+        return Math.max(0, requests - connectionsOpened);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("HTTP requests: %s, connections opened: %s, connections reused: %s", requests, connectionsOpened, getReusedConnections());
+    }
+}
@@ -16,6 +16,7 @@
 
 package org.gradle.internal.resource.transport.http;
 
+import org.gradle.internal.event.ListenerManager;
 import org.gradle.internal.resource.connector.ResourceConnectorFactory;
 import org.gradle.internal.service.ServiceRegistration;
 import org.gradle.internal.service.scopes.PluginServiceRegistry;
@@ -35,8 +36,14 @@ public class HttpResourcesPluginServiceRegistry implements PluginServiceRegistry
     }
 
     private static class GlobalScopeServices {
-        ResourceConnectorFactory createHttpConnectorFactory() {
-            return new HttpConnectorFactory();
+        HttpConnectionPool createHttpConnectionPool(ListenerManager listenerManager) {
+            HttpConnectionPool connectionPool = HttpConnectionPool.fromSystemProperties();
+            listenerManager.addListener(connectionPool);
+            return connectionPool;
+        }
+
+        ResourceConnectorFactory createHttpConnectorFactory(HttpConnectionPool connectionPool) {
+            return new HttpConnectorFactory(connectionPool);
         }
     }
 }
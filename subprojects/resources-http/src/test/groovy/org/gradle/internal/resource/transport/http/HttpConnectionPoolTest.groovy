@@ -0,0 +1,110 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.resource.transport.http
+
+import org.apache.http.HttpRequest
+import org.apache.http.HttpVersion
+import org.apache.http.impl.client.DefaultHttpClient
+import org.apache.http.message.BasicHttpResponse
+import org.apache.http.protocol.BasicHttpContext
+import org.gradle.BuildResult
+import org.gradle.api.invocation.Gradle
+import org.gradle.util.SetSystemProperties
+import org.junit.Rule
+import spock.lang.Specification
+
+class HttpConnectionPoolTest extends Specification {
+    @Rule SetSystemProperties sysProp = new SetSystemProperties()
+    def pool = new HttpConnectionPool(10, 4, 5000)
+
+    def cleanup() {
+        pool.stop()
+    }
+
+    def "limits the number of connections per route and in total"() {
+        expect:
+        pool.connectionManager.maxTotal == 10
+        pool.connectionManager.defaultMaxPerRoute == 4
+    }
+
+    def "keeps connections alive for at most the idle timeout"() {
+        def httpClient = new DefaultHttpClient(pool.connectionManager)
+        def response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK")
+        if (keepAlive != null) {
+            response.addHeader("Keep-Alive", "timeout=${keepAlive}")
+        }
+
+        when:
+        pool.configure(httpClient)
+
+        then:
+        httpClient.connectionKeepAliveStrategy.getKeepAliveDuration(response, new BasicHttpContext()) == duration
+
+        where:
+        keepAlive | duration
+        null      | 5000
+        2         | 2000
+        60        | 5000
+    }
+
+    def "counts the requests made until the root build completes"() {
+        def httpClient = new DefaultHttpClient(pool.connectionManager)
+        pool.configure(httpClient)
+        def counter = httpClient.getRequestInterceptor(httpClient.requestInterceptorCount - 1)
+
+        when:
+        3.times { counter.process(Stub(HttpRequest), new BasicHttpContext()) }
+
+        then:
+        pool.statistics.requests == 3
+        pool.statistics.connectionsOpened == 0
+
+        when:
+        pool.buildFinished(new BuildResult(Stub(Gradle) { getParent() >> Stub(Gradle) }, null))
+
+        then:
+        pool.statistics.requests == 3
+
+        when:
+        pool.buildFinished(new BuildResult(Stub(Gradle) { getParent() >> null }, null))
+
+        then:
+        pool.statistics.requests == 0
+    }
+
+    def "uses a new connection manager when the SSL settings change"() {
+        def connectionManager = pool.connectionManager
+
+        when:
+        pool.evictIdleConnections()
+
+        then:
+        pool.connectionManager.is(connectionManager)
+
+        when:
+        System.setProperty("https.protocols", "TLSv1")
+
+        then:
+        !pool.connectionManager.is(connectionManager)
+    }
+
+    def "requests that did not open a connection reused one"() {
+        expect:
+        new HttpConnectionStatistics(10, 3).reusedConnections == 7
+        new HttpConnectionStatistics(2, 3).reusedConnections == 0
+    }
+}